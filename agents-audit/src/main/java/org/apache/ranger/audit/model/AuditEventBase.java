@@ -20,10 +20,13 @@
 package org.apache.ranger.audit.model;
 
 import java.util.Date;
+import java.util.Objects;
 
 import org.apache.ranger.audit.dao.DaoManager;
 
 public abstract class AuditEventBase {
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME        = 0x100000001b3L;
 
 	protected AuditEventBase() {
 	}
@@ -34,4 +37,46 @@ public abstract class AuditEventBase {
 	public abstract Date getEventTime ();
 	public abstract void setEventCount(long eventCount);
 	public abstract void setEventDurationMS(long eventDurationMS);
+
+	/**
+	 * 64-bit hash of the event key, used to summarize events without building the key string. Subclasses should
+	 * override this and isSameEventKey() to hash and compare the key fields directly
+	 */
+	public long getEventKeyHash() {
+		return hash(hashInit(), getEventKey());
+	}
+
+	public boolean isSameEventKey(AuditEventBase other) {
+		return other != null && Objects.equals(getEventKey(), other.getEventKey());
+	}
+
+	protected static long hashInit() {
+		return FNV_OFFSET_BASIS;
+	}
+
+	protected static long hash(long hash, String value) {
+		if (value == null) {
+			hash = hashOctet(hash, 0xff);
+		} else {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+
+				hash = hashOctet(hashOctet(hash, c & 0xff), c >>> 8);
+			}
+		}
+
+		return hashOctet(hash, '^'); // separator, so that ("ab", "c") and ("a", "bc") hash differently
+	}
+
+	protected static long hash(long hash, long value) {
+		for (int i = 0; i < 8; i++, value >>>= 8) {
+			hash = hashOctet(hash, (int) (value & 0xff));
+		}
+
+		return hash;
+	}
+
+	private static long hashOctet(long hash, int octet) {
+		return (hash ^ octet) * FNV_PRIME;
+	}
 }
@@ -522,6 +522,40 @@ public class AuthzAuditEvent extends AuditEventBase {
 		return key;
 	}
 
+	@Override
+	public long getEventKeyHash() {
+		long hash = hashInit();
+
+		hash = hash(hash, user);
+		hash = hash(hash, accessType);
+		hash = hash(hash, resourcePath);
+		hash = hash(hash, resourceType);
+		hash = hash(hash, action);
+		hash = hash(hash, accessResult);
+		hash = hash(hash, sessionId);
+		hash = hash(hash, clientIP);
+
+		return hash;
+	}
+
+	@Override
+	public boolean isSameEventKey(AuditEventBase other) {
+		if (!(other instanceof AuthzAuditEvent)) {
+			return super.isSameEventKey(other);
+		}
+
+		AuthzAuditEvent that = (AuthzAuditEvent) other;
+
+		return accessResult == that.accessResult
+				&& StringUtils.equals(user, that.user)
+				&& StringUtils.equals(accessType, that.accessType)
+				&& StringUtils.equals(resourcePath, that.resourcePath)
+				&& StringUtils.equals(resourceType, that.resourceType)
+				&& StringUtils.equals(action, that.action)
+				&& StringUtils.equals(sessionId, that.sessionId)
+				&& StringUtils.equals(clientIP, that.clientIP);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -24,17 +24,27 @@ import java.util.Collection;
 import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.log4j.MDC;
 import org.apache.ranger.audit.model.AuditEventBase;
 import org.apache.ranger.audit.provider.AuditHandler;
+import org.apache.ranger.audit.provider.MiscUtil;
 
 public class AuditBatchQueue extends AuditQueue implements Runnable {
 	private static final Log logger = LogFactory.getLog(AuditBatchQueue.class);
 
+	public static final String PROP_CONSUMER_THREADS = "consumer.threads";
+	public static final String PROP_MAX_INFLIGHT_BATCHES = "consumer.max.inflight.batches";
+	public static final String PROP_DROP_ON_FULL = "drop.on.queue.full";
+
 	private BlockingQueue<AuditEventBase> queue = null;
 	private Collection<AuditEventBase> localBatchBuffer = new ArrayList<AuditEventBase>();
 
@@ -42,6 +52,23 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 	static int threadCount = 0;
 	static final String DEFAULT_NAME = "batch";
 
+	// With more than one consumer thread, batches are sent to the consumer in
+	// these threads; at most maxInflightBatches batches at a time, so batches
+	// can reach the destination out of order. Once all are in flight, the
+	// queue fills up; if dropOnFull is set, events are then dropped instead
+	// of failing the caller
+	private int consumerThreads = 1;
+	private int maxInflightBatches = 1;
+	private boolean dropOnFull = false;
+	private ExecutorService consumerPool = null;
+	private Semaphore inflightBatches = null;
+	private volatile boolean isDestActive = true;
+
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong batchTotalTimeMs = new AtomicLong();
+	private final AtomicLong batchMaxTimeMs = new AtomicLong();
+
 	public AuditBatchQueue(AuditHandler consumer) {
 		super(consumer);
 		setName(DEFAULT_NAME);
@@ -56,8 +83,21 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 	 */
 	@Override
 	public boolean log(AuditEventBase event) {
-		// Add to batchQueue. Block if full
-		queue.add(event);
+		if (!dropOnFull) {
+			// Add to batchQueue. Can throw exception if queue is full
+			queue.add(event);
+			return true;
+		}
+
+		// Add to batchQueue. Drop if full
+		if (!queue.offer(event)) {
+			droppedCount.incrementAndGet();
+			synchronized (this) {
+				addFailedCount(1);
+			}
+			logFailedEvent(event, "queue is full. name=" + getName());
+			return false;
+		}
 		return true;
 	}
 
@@ -65,9 +105,8 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 	public boolean log(Collection<AuditEventBase> events) {
 		boolean ret = true;
 		for (AuditEventBase event : events) {
-			ret = log(event);
-			if (!ret) {
-				break;
+			if (!log(event)) {
+				ret = false;
 			}
 		}
 		return ret;
@@ -82,6 +121,55 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 
 		super.init(prop, propPrefix);
 
+		consumerThreads = Math.max(1, MiscUtil.getIntProperty(prop, propPrefix
+				+ "." + PROP_CONSUMER_THREADS, consumerThreads));
+		maxInflightBatches = Math.max(1, MiscUtil.getIntProperty(prop,
+				propPrefix + "." + PROP_MAX_INFLIGHT_BATCHES, consumerThreads));
+		dropOnFull = MiscUtil.getBooleanProperty(prop, propPrefix + "."
+				+ PROP_DROP_ON_FULL, dropOnFull);
+
+		if (consumerThreads > 1 && fileSpoolerEnabled) {
+			// Switching between the destination and the file spool must see
+			// the batches in order
+			logger.warn(propPrefix + "." + PROP_CONSUMER_THREADS + "="
+					+ consumerThreads
+					+ " is not supported with file spool. Using 1. name="
+					+ getName());
+			consumerThreads = 1;
+		} else if (consumerThreads > 1) {
+			logger.warn("Batches will be sent in " + consumerThreads
+					+ " threads, and can reach the destination out of order. name="
+					+ getName());
+		}
+
+		logger.info("consumerThreads=" + consumerThreads
+				+ ", maxInflightBatches=" + maxInflightBatches
+				+ ", dropOnFull=" + dropOnFull + ", name=" + getName());
+	}
+
+	public int getQueueDepth() {
+		return queue == null ? 0 : queue.size();
+	}
+
+	public int getInflightBatchCount() {
+		return inflightBatches == null ? 0 : maxInflightBatches
+				- inflightBatches.availablePermits();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	public long getBatchTotalTimeMs() {
+		return batchTotalTimeMs.get();
+	}
+
+	public long getBatchMaxTimeMs() {
+		return batchMaxTimeMs.get();
 	}
 
 	/*
@@ -107,6 +195,24 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 			fileSpooler.start();
 		}
 
+		if (consumerThreads > 1) {
+			final String poolName = getName();
+			consumerPool = Executors.newFixedThreadPool(consumerThreads,
+					new ThreadFactory() {
+						int workerCount = 0;
+
+						@Override
+						public synchronized Thread newThread(Runnable r) {
+							Thread ret = new Thread(r, AuditBatchQueue.class
+									.getName() + "-" + poolName + "-worker"
+									+ (workerCount++));
+							ret.setDaemon(true);
+							return ret;
+						}
+					});
+			inflightBatches = new Semaphore(maxInflightBatches);
+		}
+
 		// Finally the queue listener
 		consumerThread = new Thread(this, this.getClass().getName()
 				+ (threadCount++));
@@ -159,7 +265,7 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 		long startTime = System.currentTimeMillis();
 		int prevQueueSize = -1;
 		int staticLoopCount = 0;
-		while ((queue.size() > 0 || localBatchBuffer.size() > 0)) {
+		while ((queue.size() > 0 || localBatchBuffer.size() > 0 || getInflightBatchCount() > 0)) {
 			if (prevQueueSize == queue.size()) {
 				logger.error("Queue size is not changing. " + getName()
 						+ ".size=" + queue.size());
@@ -220,7 +326,6 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 
 	public void runLogAudit() {
 		long lastDispatchTime = System.currentTimeMillis();
-		boolean isDestActive = true;
 		while (true) {
 			logStatusIfRequired();
 
@@ -295,7 +400,9 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 				// Just before stashing
 				lastDispatchTime = System.currentTimeMillis();
 				fileSpooler.stashLogs(localBatchBuffer);
-				addStashedCount(localBatchBuffer.size());
+				synchronized (this) {
+					addStashedCount(localBatchBuffer.size());
+				}
 				localBatchBuffer.clear();
 			} else if (localBatchBuffer.size() > 0
 					&& (isDrain()
@@ -306,23 +413,10 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 				}
 				// Reset time just before sending the logs
 				lastDispatchTime = System.currentTimeMillis();
-				boolean ret = consumer.log(localBatchBuffer);
-				if (!ret) {
-					if (fileSpoolerEnabled) {
-						logger.info("Switching to file spool. Queue="
-								+ getName() + ", dest=" + consumer.getName());
-						// Transient error. Stash and move on
-						fileSpooler.stashLogs(localBatchBuffer);
-						isDestActive = false;
-						addStashedCount(localBatchBuffer.size());
-					} else {
-						// We need to drop this event
-						addFailedCount(localBatchBuffer.size());
-						logFailedEvent(localBatchBuffer);
-					}
+				if (consumerPool == null) {
+					sendBatch(localBatchBuffer);
 				} else {
-					isDestActive = true;
-					addSuccessCount(localBatchBuffer.size());
+					dispatchBatch(new ArrayList<AuditEventBase>(localBatchBuffer));
 				}
 				localBatchBuffer.clear();
 			}
@@ -346,6 +440,21 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 
 		logger.info("Exiting consumerThread. Queue=" + getName() + ", dest="
 				+ consumer.getName());
+		if (consumerPool != null) {
+			consumerPool.shutdown();
+			try {
+				if (!consumerPool.awaitTermination(
+						AUDIT_CONSUMER_THREAD_WAIT_MS, TimeUnit.MILLISECONDS)) {
+					logger.warn("Batches still in flight after waiting for "
+							+ AUDIT_CONSUMER_THREAD_WAIT_MS + " ms. name="
+							+ getName() + ", inflightBatches="
+							+ getInflightBatchCount());
+				}
+			} catch (InterruptedException e) {
+				logger.info("Interrupted while waiting for consumer threads to complete. name="
+						+ getName());
+			}
+		}
 		try {
 			// Call stop on the consumer
 			logger.info("Calling to stop consumer. name=" + getName()
@@ -361,4 +470,75 @@ public class AuditBatchQueue extends AuditQueue implements Runnable {
 		logStatus();
 		logger.info("Exiting consumerThread.run() method. name=" + getName());
 	}
+
+	// Sends the batch in a consumer thread, once a batch can be in flight
+	private void dispatchBatch(final Collection<AuditEventBase> batch) {
+		try {
+			inflightBatches.acquire();
+		} catch (InterruptedException e) {
+			logger.info("Interrupted while waiting to send batch. Shutdown might be in progress. name="
+					+ getName());
+			setDrain(true);
+			sendBatch(batch);
+			return;
+		}
+
+		try {
+			consumerPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						sendBatch(batch);
+					} catch (Throwable t) {
+						logger.error("Caught error while sending batch. name="
+								+ getName(), t);
+					} finally {
+						inflightBatches.release();
+					}
+				}
+			});
+		} catch (Throwable t) {
+			// RejectedExecutionException, after the pool is shutdown
+			inflightBatches.release();
+			sendBatch(batch);
+		}
+	}
+
+	private void sendBatch(Collection<AuditEventBase> batch) {
+		long startTime = System.currentTimeMillis();
+		boolean ret = consumer.log(batch);
+		long timeTaken = System.currentTimeMillis() - startTime;
+
+		batchCount.incrementAndGet();
+		batchTotalTimeMs.addAndGet(timeTaken);
+		long maxTime;
+		do {
+			maxTime = batchMaxTimeMs.get();
+		} while (timeTaken > maxTime
+				&& !batchMaxTimeMs.compareAndSet(maxTime, timeTaken));
+
+		if (!ret) {
+			if (fileSpoolerEnabled) {
+				logger.info("Switching to file spool. Queue="
+						+ getName() + ", dest=" + consumer.getName());
+				// Transient error. Stash and move on
+				fileSpooler.stashLogs(batch);
+				isDestActive = false;
+				synchronized (this) {
+					addStashedCount(batch.size());
+				}
+			} else {
+				// We need to drop this event
+				synchronized (this) {
+					addFailedCount(batch.size());
+				}
+				logFailedEvent(batch);
+			}
+		} else {
+			isDestActive = true;
+			synchronized (this) {
+				addSuccessCount(batch.size());
+			}
+		}
+	}
 }
@@ -21,9 +21,6 @@ package org.apache.ranger.audit.queue;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -36,13 +33,16 @@ import org.apache.ranger.audit.provider.AuditHandler;
 import org.apache.ranger.audit.provider.MiscUtil;
 
 /**
- * This is a non-blocking queue with no limit on capacity.
+ * This is a non-blocking queue with no limit on capacity. Events with the same key are summarized into one event
+ * per interval; at most summary.max.cardinality summaries are kept, and they are sent early when an interval has
+ * more distinct events.
  */
 public class AuditSummaryQueue extends AuditQueue implements Runnable {
 	private static final Log logger = LogFactory
 			.getLog(AuditSummaryQueue.class);
 
 	public static final String PROP_SUMMARY_INTERVAL = "summary.interval.ms";
+	public static final String PROP_SUMMARY_MAX_CARDINALITY = "summary.max.cardinality";
 
 	LinkedBlockingQueue<AuditEventBase> queue = new LinkedBlockingQueue<AuditEventBase>();
 	Thread consumerThread = null;
@@ -51,10 +51,13 @@ public class AuditSummaryQueue extends AuditQueue implements Runnable {
 	static final String DEFAULT_NAME = "summary";
 
 	private static final int MAX_DRAIN = 100000;
+	private static final int DEFAULT_SUMMARY_MAX_CARDINALITY = 100000;
 
 	private int maxSummaryIntervalMs = 5000;
 
-	HashMap<String, AuditSummary> summaryMap = new HashMap<String, AuditSummary>();
+	private int maxSummaryCardinality = DEFAULT_SUMMARY_MAX_CARDINALITY;
+
+	private long spillCount = 0;
 
 	public AuditSummaryQueue(AuditHandler consumer) {
 		super(consumer);
@@ -66,7 +69,15 @@ public class AuditSummaryQueue extends AuditQueue implements Runnable {
 		super.init(props, propPrefix);
 		maxSummaryIntervalMs = MiscUtil.getIntProperty(props, propPrefix + "."
 				+ PROP_SUMMARY_INTERVAL, maxSummaryIntervalMs);
-		logger.info("maxSummaryInterval=" + maxSummaryIntervalMs + ", name="
+		maxSummaryCardinality = MiscUtil.getIntProperty(props, propPrefix + "."
+				+ PROP_SUMMARY_MAX_CARDINALITY, maxSummaryCardinality);
+		if (maxSummaryCardinality > AuditSummaryTable.MAX_CARDINALITY_LIMIT) {
+			logger.warn(PROP_SUMMARY_MAX_CARDINALITY + "=" + maxSummaryCardinality + " is above the limit. Using "
+					+ AuditSummaryTable.MAX_CARDINALITY_LIMIT + ". name=" + getName());
+			maxSummaryCardinality = AuditSummaryTable.MAX_CARDINALITY_LIMIT;
+		}
+		logger.info("maxSummaryInterval=" + maxSummaryIntervalMs
+				+ ", maxSummaryCardinality=" + maxSummaryCardinality + ", name="
 				+ getName());
 	}
 
@@ -160,13 +171,15 @@ public class AuditSummaryQueue extends AuditQueue implements Runnable {
 
 		long lastDispatchTime = System.currentTimeMillis();
 
+		// reused across iterations, so that the loop doesn't allocate per batch of events
+		ArrayList<AuditEventBase> eventList    = new ArrayList<AuditEventBase>();
+		AuditSummaryTable         summaryTable = new AuditSummaryTable(maxSummaryCardinality);
+
 		while (true) {
 			// Time to next dispatch
 			long nextDispatchDuration = lastDispatchTime
 					- System.currentTimeMillis() + maxSummaryIntervalMs;
 
-			Collection<AuditEventBase> eventList = new ArrayList<AuditEventBase>();
-
 			try {
 				AuditEventBase event = null;
 				if (!isDrain() && nextDispatchDuration > 0) {
@@ -192,46 +205,34 @@ public class AuditSummaryQueue extends AuditQueue implements Runnable {
 				logger.error("Caught error during processing request.", t);
 			}
 
-			for (AuditEventBase event : eventList) {
-				// Add to hash map
-				String key = event.getEventKey();
-				AuditSummary auditSummary = summaryMap.get(key);
-				if (auditSummary == null) {
-					auditSummary = new AuditSummary();
-					auditSummary.event = event;
-					auditSummary.startTime = event.getEventTime();
-					auditSummary.endTime = event.getEventTime();
-					auditSummary.count = 1;
-					summaryMap.put(key, auditSummary);
-				} else {
-					auditSummary.endTime = event.getEventTime();
-					auditSummary.count++;
+			for (int i = 0; i < eventList.size(); i++) {
+				AuditEventBase event = eventList.get(i);
+
+				if (!summaryTable.add(event)) {
+					// too many distinct events in this interval: send the summaries so far, instead of growing the table
+					spillCount++;
+
+					if (logger.isDebugEnabled()) {
+						logger.debug("Summary table full. Sending " + summaryTable.size()
+								+ " summaries before the interval ends. name=" + getName());
+					}
+
+					summaryTable.drain(summarySender);
+					summaryTable.add(event);
 				}
 			}
 
+			eventList.clear(); // release the events, which are referenced from summaryTable as needed
+
 			if (isDrain() || nextDispatchDuration <= 0) {
 				// Reset time just before sending the logs
 				lastDispatchTime = System.currentTimeMillis();
 
-				for (Map.Entry<String, AuditSummary> entry : summaryMap
-						.entrySet()) {
-					AuditSummary auditSummary = entry.getValue();
-					auditSummary.event.setEventCount(auditSummary.count);
-					long timeDiff = auditSummary.endTime.getTime()
-							- auditSummary.startTime.getTime();
-					timeDiff = timeDiff > 0 ? timeDiff : 1;
-					auditSummary.event.setEventDurationMS(timeDiff);
-					boolean ret = consumer.log(auditSummary.event);
-					if (!ret) {
-						// We need to drop this event
-						logFailedEvent(auditSummary.event);
-					}
-				}
-				summaryMap.clear();
+				summaryTable.drain(summarySender);
 			}
 
 			if (isDrain()) {
-				if (summaryMap.isEmpty() && queue.isEmpty()) {
+				if (summaryTable.isEmpty() && queue.isEmpty()) {
 					break;
 				}
 				if (isDrainMaxTimeElapsed()) {
@@ -244,6 +245,11 @@ public class AuditSummaryQueue extends AuditQueue implements Runnable {
 
 		}
 
+		if (spillCount > 0) {
+			logger.info("Summaries were sent early " + spillCount + " times, as distinct events in an interval exceeded "
+					+ PROP_SUMMARY_MAX_CARDINALITY + "=" + maxSummaryCardinality + ". name=" + getName());
+		}
+
 		logger.info("Exiting polling loop. name=" + getName());
 		try {
 			// Call stop on the consumer
@@ -256,10 +262,14 @@ public class AuditSummaryQueue extends AuditQueue implements Runnable {
 		logger.info("Exiting consumerThread.run() method. name=" + getName());
 	}
 
-	class AuditSummary {
-		Date startTime = null;
-		Date endTime = null;
-		int count = 0;
-		AuditEventBase event;
-	}
+	private final AuditSummaryTable.Visitor summarySender = new AuditSummaryTable.Visitor() {
+		@Override
+		public void visit(AuditEventBase event) {
+			boolean ret = consumer.log(event);
+			if (!ret) {
+				// We need to drop this event
+				logFailedEvent(event);
+			}
+		}
+	};
 }
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.audit.queue;
+
+import java.util.Date;
+
+import org.apache.ranger.audit.model.AuditEventBase;
+
+/**
+ * Summaries of audit events with the same key, in an open-addressed table keyed by AuditEventBase.getEventKeyHash().
+ * Events with the same hash are verified with AuditEventBase.isSameEventKey(), so hash collisions don't merge
+ * summaries of different events.
+ *
+ * The table holds at most maxCardinality summaries. Its arrays start small and double as summaries are added, up to
+ * the size needed for maxCardinality; they are kept and reused after each clear().
+ * Not thread-safe: used only by the consumer thread of AuditSummaryQueue.
+ */
+final class AuditSummaryTable {
+	static final int MAX_CARDINALITY_LIMIT = 1 << 20;
+	static final int INITIAL_CAPACITY      = 64;
+
+	private final int              maxCardinality;
+	private final int              maxCapacity;
+	private       int              mask;
+	private       long[]           hashes;
+	private       AuditEventBase[] events;     // first event of each summary; null for empty slots
+	private       long[]           startTimes;
+	private       long[]           endTimes;
+	private       int[]            counts;
+	private       int[]            usedSlots;  // in the order summaries were added, to iterate and clear without scanning the table
+	private       int              size;
+
+	AuditSummaryTable(int maxCardinality) {
+		this.maxCardinality = Math.min(Math.max(1, maxCardinality), MAX_CARDINALITY_LIMIT);
+		this.maxCapacity    = Integer.highestOneBit(this.maxCardinality * 2 - 1) << 1; // power of 2, at most half full
+
+		allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+	}
+
+	int getMaxCardinality() {
+		return maxCardinality;
+	}
+
+	int getCapacity() {
+		return mask + 1;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return false if the event has a new key and the table already holds maxCardinality summaries
+	 */
+	boolean add(AuditEventBase event) {
+		long hash      = event.getEventKeyHash();
+		long eventTime = getTime(event.getEventTime());
+		int  slot      = getSlot(hash);
+
+		while (events[slot] != null) {
+			if (hashes[slot] == hash && events[slot].isSameEventKey(event)) {
+				endTimes[slot] = eventTime;
+				counts[slot]++;
+
+				return true;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		if (size == maxCardinality) {
+			return false;
+		}
+
+		if ((size + 1) * 2 > getCapacity()) {
+			grow();
+
+			slot = getSlot(hash);
+
+			while (events[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		hashes[slot]     = hash;
+		events[slot]     = event;
+		startTimes[slot] = eventTime;
+		endTimes[slot]   = eventTime;
+		counts[slot]     = 1;
+
+		usedSlots[size++] = slot;
+
+		return true;
+	}
+
+	/**
+	 * Sets count and duration on the first event of each summary and passes it to the visitor, then clears the table
+	 */
+	void drain(Visitor visitor) {
+		try {
+			for (int i = 0; i < size; i++) {
+				int            slot  = usedSlots[i];
+				AuditEventBase event = events[slot];
+
+				long timeDiff = endTimes[slot] - startTimes[slot];
+
+				event.setEventCount(counts[slot]);
+				event.setEventDurationMS(timeDiff > 0 ? timeDiff : 1);
+
+				visitor.visit(event);
+			}
+		} finally {
+			clear();
+		}
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			events[usedSlots[i]] = null; // no other slot needs resetting: a slot is in use only if it has an event
+		}
+
+		size = 0;
+	}
+
+	private int getSlot(long hash) {
+		return (int) ((hash * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+	}
+
+	private void allocate(int capacity) {
+		mask       = capacity - 1;
+		hashes     = new long[capacity];
+		events     = new AuditEventBase[capacity];
+		startTimes = new long[capacity];
+		endTimes   = new long[capacity];
+		counts     = new int[capacity];
+		usedSlots  = new int[Math.min(capacity / 2, maxCardinality)];
+	}
+
+	// doubles the table and re-inserts the summaries, in the order they were added
+	private void grow() {
+		long[]           oldHashes     = hashes;
+		AuditEventBase[] oldEvents     = events;
+		long[]           oldStartTimes = startTimes;
+		long[]           oldEndTimes   = endTimes;
+		int[]            oldCounts     = counts;
+		int[]            oldUsedSlots  = usedSlots;
+
+		allocate(getCapacity() * 2);
+
+		for (int i = 0; i < size; i++) {
+			int oldSlot = oldUsedSlots[i];
+			int slot    = getSlot(oldHashes[oldSlot]);
+
+			while (events[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+
+			hashes[slot]     = oldHashes[oldSlot];
+			events[slot]     = oldEvents[oldSlot];
+			startTimes[slot] = oldStartTimes[oldSlot];
+			endTimes[slot]   = oldEndTimes[oldSlot];
+			counts[slot]     = oldCounts[oldSlot];
+			usedSlots[i]     = slot;
+		}
+	}
+
+	private static long getTime(Date date) {
+		return date != null ? date.getTime() : 0;
+	}
+
+	interface Visitor {
+		void visit(AuditEventBase event);
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.audit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ranger.audit.model.AuditEventBase;
+import org.apache.ranger.audit.model.AuthzAuditEvent;
+import org.apache.ranger.audit.provider.BaseAuditHandler;
+import org.junit.Test;
+
+public class TestAuditBatchQueue {
+	private static final String PROP_PREFIX = "xasecure.audit.test.batch";
+
+	@Test
+	public void testQueueFullFailsByDefault() throws Exception {
+		BlockingConsumer consumer = new BlockingConsumer();
+		AuditBatchQueue  queue    = createQueue(consumer, 1, false);
+
+		queue.start();
+
+		try {
+			fillQueue(queue, consumer);
+
+			try {
+				queue.log(new AuthzAuditEvent());
+
+				fail("expected the full queue to reject the event");
+			} catch (IllegalStateException excp) {
+				// expected
+			}
+
+			assertEquals(0, queue.getDroppedCount());
+		} finally {
+			stopQueue(queue, consumer);
+		}
+
+		assertEquals(3, consumer.getEventCount());
+	}
+
+	@Test
+	public void testDropOnFull() throws Exception {
+		BlockingConsumer consumer = new BlockingConsumer();
+		AuditBatchQueue  queue    = createQueue(consumer, 1, true);
+
+		queue.start();
+
+		try {
+			fillQueue(queue, consumer);
+
+			assertFalse(queue.log(new AuthzAuditEvent()));
+			assertFalse(queue.log(Collections.<AuditEventBase>singletonList(new AuthzAuditEvent())));
+			assertEquals(2, queue.getDroppedCount());
+			assertEquals(2, queue.getTotalFailedCount());
+		} finally {
+			stopQueue(queue, consumer);
+		}
+
+		assertEquals(3, consumer.getEventCount());
+	}
+
+	@Test
+	public void testBatchesInFlight() throws Exception {
+		BlockingConsumer consumer = new BlockingConsumer();
+		AuditBatchQueue  queue    = createQueue(consumer, 2, false);
+
+		queue.start();
+
+		try {
+			assertTrue(queue.log(new AuthzAuditEvent()));
+			assertTrue(queue.log(new AuthzAuditEvent()));
+
+			consumer.awaitBatches(2);
+
+			assertEquals(2, queue.getInflightBatchCount());
+
+			// with both batches in flight, the next one waits in the queue
+			assertTrue(queue.log(new AuthzAuditEvent()));
+
+			consumer.release(1);
+			consumer.awaitBatches(3);
+		} finally {
+			stopQueue(queue, consumer);
+		}
+
+		assertEquals(3, consumer.getEventCount());
+		assertEquals(3, queue.getBatchCount());
+		assertEquals(0, queue.getInflightBatchCount());
+	}
+
+	private static AuditBatchQueue createQueue(BlockingConsumer consumer, int consumerThreads, boolean dropOnFull) {
+		Properties props = new Properties();
+
+		props.setProperty(PROP_PREFIX + "." + AuditQueue.PROP_QUEUE_SIZE, "2");
+		props.setProperty(PROP_PREFIX + "." + AuditQueue.PROP_BATCH_SIZE, "1");
+		props.setProperty(PROP_PREFIX + "." + AuditQueue.PROP_BATCH_INTERVAL, "10");
+		props.setProperty(PROP_PREFIX + "." + AuditBatchQueue.PROP_CONSUMER_THREADS, String.valueOf(consumerThreads));
+		props.setProperty(PROP_PREFIX + "." + AuditBatchQueue.PROP_DROP_ON_FULL, String.valueOf(dropOnFull));
+
+		AuditBatchQueue ret = new AuditBatchQueue(consumer);
+
+		ret.init(props, PROP_PREFIX);
+
+		return ret;
+	}
+
+	// the consumer holds the first event; the next two fill the queue
+	private static void fillQueue(AuditBatchQueue queue, BlockingConsumer consumer) throws InterruptedException {
+		assertTrue(queue.log(new AuthzAuditEvent()));
+
+		consumer.awaitBatches(1);
+
+		assertTrue(queue.log(new AuthzAuditEvent()));
+		assertTrue(queue.log(new AuthzAuditEvent()));
+		assertEquals(2, queue.getQueueDepth());
+	}
+
+	private static void stopQueue(AuditBatchQueue queue, BlockingConsumer consumer) {
+		consumer.release(Integer.MAX_VALUE / 2);
+
+		queue.waitToComplete(5000);
+		queue.stop();
+	}
+
+	private static class BlockingConsumer extends BaseAuditHandler {
+		private final List<AuditEventBase> events  = new ArrayList<AuditEventBase>();
+		private final Semaphore            permits = new Semaphore(0);
+		private final Semaphore            batches = new Semaphore(0);
+
+		@Override
+		public boolean log(Collection<AuditEventBase> events) {
+			batches.release();
+
+			permits.acquireUninterruptibly();
+
+			synchronized (this.events) {
+				this.events.addAll(events);
+			}
+
+			return true;
+		}
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public void stop() {
+		}
+
+		@Override
+		public void waitToComplete() {
+		}
+
+		@Override
+		public void waitToComplete(long timeout) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		void release(int count) {
+			permits.release(count);
+		}
+
+		void awaitBatches(int count) throws InterruptedException {
+			assertTrue("timed out waiting for " + count + " batches", batches.tryAcquire(count, 10, TimeUnit.SECONDS));
+
+			batches.release(count);
+		}
+
+		int getEventCount() {
+			synchronized (events) {
+				return events.size();
+			}
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.audit.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ranger.audit.model.AuditEventBase;
+import org.apache.ranger.audit.model.AuthzAuditEvent;
+import org.junit.Test;
+
+public class TestAuditSummaryTable {
+	@Test
+	public void testSummarize() {
+		AuditSummaryTable table  = new AuditSummaryTable(10);
+		AuthzAuditEvent   first  = createEvent("user1", "/db1/tbl1", 1000);
+		AuthzAuditEvent   second = createEvent("user2", "/db1/tbl1", 1500);
+
+		assertTrue(table.add(first));
+		assertTrue(table.add(second));
+		assertTrue(table.add(createEvent("user1", "/db1/tbl1", 1200)));
+		assertTrue(table.add(createEvent("user1", "/db1/tbl1", 1800)));
+		assertEquals(2, table.size());
+
+		List<AuditEventBase> summaries = drain(table);
+
+		// the first event of each summary is sent, in the order the summaries were added
+		assertEquals(2, summaries.size());
+		assertSame(first, summaries.get(0));
+		assertSame(second, summaries.get(1));
+		assertEquals(3, first.getEventCount());
+		assertEquals(800, first.getEventDurationMS());
+		assertEquals(1, second.getEventCount());
+		assertEquals(1, second.getEventDurationMS());
+		assertTrue(table.isEmpty());
+	}
+
+	@Test
+	public void testHashCollision() {
+		AuditSummaryTable table  = new AuditSummaryTable(10);
+		AuthzAuditEvent   event1 = new CollidingEvent("user1", "/db1/tbl1", 1000);
+		AuthzAuditEvent   event2 = new CollidingEvent("user2", "/db1/tbl1", 1000);
+		AuthzAuditEvent   event3 = new CollidingEvent("user1", "/db1/tbl2", 1000);
+
+		assertEquals(event1.getEventKeyHash(), event2.getEventKeyHash());
+		assertEquals(event1.getEventKeyHash(), event3.getEventKeyHash());
+
+		// events with the same hash, but different keys, are not merged
+		assertTrue(table.add(event1));
+		assertTrue(table.add(event2));
+		assertTrue(table.add(event3));
+		assertTrue(table.add(new CollidingEvent("user2", "/db1/tbl1", 2000)));
+		assertEquals(3, table.size());
+
+		List<AuditEventBase> summaries = drain(table);
+
+		assertEquals(3, summaries.size());
+		assertEquals(1, event1.getEventCount());
+		assertEquals(2, event2.getEventCount());
+		assertEquals(1, event3.getEventCount());
+	}
+
+	@Test
+	public void testFull() {
+		AuditSummaryTable table = new AuditSummaryTable(2);
+
+		assertTrue(table.add(createEvent("user1", "/db1/tbl1", 1000)));
+		assertTrue(table.add(createEvent("user2", "/db1/tbl1", 1000)));
+
+		// a new key doesn't fit; events of summaries already in the table do
+		assertFalse(table.add(createEvent("user3", "/db1/tbl1", 1000)));
+		assertTrue(table.add(createEvent("user1", "/db1/tbl1", 1100)));
+		assertEquals(2, table.size());
+
+		List<AuditEventBase> summaries = drain(table);
+
+		assertEquals(2, summaries.size());
+		assertEquals(2, ((AuthzAuditEvent) summaries.get(0)).getEventCount());
+
+		// after the summaries are sent, the table accepts new keys again
+		assertTrue(table.add(createEvent("user3", "/db1/tbl1", 1000)));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void testReuseAfterDrain() {
+		AuditSummaryTable table = new AuditSummaryTable(1000);
+
+		addEvents(table, 500, 1000);
+
+		int capacity = table.getCapacity();
+
+		drain(table);
+
+		// arrays are kept after the table is drained, and summaries of the previous interval are gone
+		AuthzAuditEvent event = createEvent("user0", "/db1/tbl0", 2000);
+
+		assertTrue(table.add(event));
+		assertEquals(1, table.size());
+		assertEquals(capacity, table.getCapacity());
+
+		addEvents(table, 500, 3000);
+
+		assertEquals(500, table.size());
+		assertEquals(capacity, table.getCapacity());
+
+		List<AuditEventBase> summaries = drain(table);
+
+		assertEquals(500, summaries.size());
+		assertSame(event, summaries.get(0));
+		assertEquals(2, event.getEventCount());
+	}
+
+	@Test
+	public void testGrowth() {
+		AuditSummaryTable table = new AuditSummaryTable(100000);
+
+		// arrays are not sized for the max cardinality up front
+		assertEquals(AuditSummaryTable.INITIAL_CAPACITY, table.getCapacity());
+
+		addEvents(table, 5000, 1000);
+		addEvents(table, 5000, 2000);
+
+		assertEquals(5000, table.size());
+		assertTrue(table.getCapacity() >= 2 * 5000);
+		assertTrue(table.getCapacity() < 4 * 5000);
+
+		List<AuditEventBase> summaries = drain(table);
+
+		assertEquals(5000, summaries.size());
+
+		for (int i = 0; i < summaries.size(); i++) {
+			AuthzAuditEvent summary = (AuthzAuditEvent) summaries.get(i);
+
+			assertEquals("user" + i, summary.getUser());
+			assertEquals(2, summary.getEventCount());
+			assertEquals(1000, summary.getEventDurationMS());
+		}
+	}
+
+	@Test
+	public void testMaxCardinalityLimit() {
+		AuditSummaryTable table = new AuditSummaryTable(Integer.MAX_VALUE);
+
+		assertEquals(AuditSummaryTable.MAX_CARDINALITY_LIMIT, table.getMaxCardinality());
+		assertEquals(AuditSummaryTable.INITIAL_CAPACITY, table.getCapacity());
+		assertEquals(1, new AuditSummaryTable(0).getMaxCardinality());
+	}
+
+	private static void addEvents(AuditSummaryTable table, int count, long eventTime) {
+		for (int i = 0; i < count; i++) {
+			assertTrue(table.add(createEvent("user" + i, "/db1/tbl" + i, eventTime)));
+		}
+	}
+
+	private static List<AuditEventBase> drain(AuditSummaryTable table) {
+		final List<AuditEventBase> ret = new ArrayList<AuditEventBase>();
+
+		table.drain(new AuditSummaryTable.Visitor() {
+			@Override
+			public void visit(AuditEventBase event) {
+				ret.add(event);
+			}
+		});
+
+		return ret;
+	}
+
+	private static AuthzAuditEvent createEvent(String user, String resourcePath, long eventTime) {
+		AuthzAuditEvent ret = new AuthzAuditEvent();
+
+		init(ret, user, resourcePath, eventTime);
+
+		return ret;
+	}
+
+	private static void init(AuthzAuditEvent event, String user, String resourcePath, long eventTime) {
+		event.setUser(user);
+		event.setResourcePath(resourcePath);
+		event.setAccessType("select");
+		event.setAccessResult((short) 1);
+		event.setEventTime(new Date(eventTime));
+	}
+
+	// every event has the same hash
+	private static class CollidingEvent extends AuthzAuditEvent {
+		CollidingEvent(String user, String resourcePath, long eventTime) {
+			init(this, user, resourcePath, eventTime);
+		}
+
+		@Override
+		public long getEventKeyHash() {
+			return 42;
+		}
+	}
+}
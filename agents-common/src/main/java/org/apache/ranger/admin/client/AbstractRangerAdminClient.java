@@ -90,4 +90,9 @@ public abstract class AbstractRangerAdminClient implements RangerAdminClient {
     public List<String> getTagTypes(String tagTypePattern) throws Exception {
         return null;
     }
+
+    @Override
+    public void cleanup() {
+
+    }
 }
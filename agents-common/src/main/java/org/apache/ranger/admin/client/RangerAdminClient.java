@@ -58,4 +58,6 @@ public interface RangerAdminClient {
 
 	void removeAccess(GrantRevokeRequest request) throws Exception;
 
+	void cleanup();
+
 }
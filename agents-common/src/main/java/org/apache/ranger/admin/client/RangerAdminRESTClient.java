@@ -24,6 +24,7 @@ import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.GenericType;
 import com.sun.jersey.api.client.WebResource;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.security.AccessControlException;
@@ -36,6 +37,9 @@ import org.apache.ranger.plugin.model.RangerRole;
 import org.apache.ranger.plugin.util.*;
 
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.HttpHeaders;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -50,8 +54,12 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 	private String           pluginId;
 	private String clusterName;
 	private RangerRESTClient restClient;
+	private RangerRESTEndpointSelector endpointSelector;
 	private RangerRESTUtils restUtils   = new RangerRESTUtils();
 	private String 		 supportsPolicyDeltas = "true";
+	private long             longPollTimeoutMs;
+	private volatile String policiesETag;
+	private volatile long   policiesETagVersion = -1;
 
 	public static <T> GenericType<List<T>> getGenericType(final T clazz) {
 
@@ -77,7 +85,7 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 		this.serviceName = serviceName;
 		this.pluginId    = restUtils.getPluginId(serviceName, appId);
 
-		String url                      = "";
+		String url;
 		String tmpUrl                   = RangerConfiguration.getInstance().get(propertyPrefix + ".policy.rest.url");
 		String sslConfigFileName 		= RangerConfiguration.getInstance().get(propertyPrefix + ".policy.rest.ssl.config.file");
 		clusterName       				= RangerConfiguration.getInstance().get(propertyPrefix + ".access.cluster.name", "");
@@ -87,17 +95,19 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 		int	 restClientConnTimeOutMs	= RangerConfiguration.getInstance().getInt(propertyPrefix + ".policy.rest.client.connection.timeoutMs", 120 * 1000);
 		int	 restClientReadTimeOutMs	= RangerConfiguration.getInstance().getInt(propertyPrefix + ".policy.rest.client.read.timeoutMs", 30 * 1000);
 		supportsPolicyDeltas                    = RangerConfiguration.getInstance().get(propertyPrefix + ".policy.rest.supports.policy.deltas", "false");
-        if (!StringUtil.isEmpty(tmpUrl)) {
-            url = tmpUrl.trim();
-        }
-        if (url.endsWith("/")) {
-            url = url.substring(0, url.length() - 1);
-        }
+		boolean isCompressionEnabled            = RangerConfiguration.getInstance().getBoolean(propertyPrefix + ".policy.rest.client.compression.enabled", true);
+		longPollTimeoutMs                       = Math.max(0, RangerConfiguration.getInstance().getLong(propertyPrefix + ".policy.longpoll.timeoutMs", 0));
+		// comma separated list of Ranger Admin URLs
+		endpointSelector = RangerRESTEndpointSelector.create(RangerConfiguration.getInstance(), propertyPrefix, tmpUrl);
+		url              = StringUtils.join(endpointSelector.getUrls(), ",");
 		if (!"true".equalsIgnoreCase(supportsPolicyDeltas)) {
 			supportsPolicyDeltas = "false";
 		}
 
-		init(url, sslConfigFileName, restClientConnTimeOutMs , restClientReadTimeOutMs);
+		// a long-poll request is held by Ranger Admin for up to longPollTimeoutMs, before the response is sent
+		init(url, sslConfigFileName, restClientConnTimeOutMs , (int) Math.min(Integer.MAX_VALUE, restClientReadTimeOutMs + longPollTimeoutMs));
+
+		restClient.setCompressionEnabled(isCompressionEnabled);
 
         try {
             this.serviceNameUrlParam = URLEncoderUtil.encodeURIParam(serviceName);
@@ -117,49 +127,72 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 
 		final UserGroupInformation user = MiscUtil.getUGILoginUser();
 		final boolean isSecureMode = user != null && UserGroupInformation.isSecurityEnabled();
-		final ClientResponse response;
 
-		if (isSecureMode) {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Checking Service policy if updated as user : " + user);
+		final ClientResponse response = endpointSelector.execute(new AdminCall() {
+			@Override
+			public boolean isLongPoll() {
+				return longPollTimeoutMs > 0;
 			}
-			PrivilegedAction<ClientResponse> action = new PrivilegedAction<ClientResponse>() {
-				public ClientResponse run() {
-					WebResource secureWebResource = createWebResource(RangerRESTUtils.REST_URL_POLICY_GET_FOR_SECURE_SERVICE_IF_UPDATED + serviceNameUrlParam)
+
+			@Override
+			public ClientResponse call(final String adminUrl) {
+				final ClientResponse ret;
+
+				if (isSecureMode) {
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Checking Service policy if updated as user : " + user + ", adminUrl=" + adminUrl);
+					}
+					PrivilegedAction<ClientResponse> action = new PrivilegedAction<ClientResponse>() {
+						public ClientResponse run() {
+							WebResource secureWebResource = createWebResource(adminUrl, RangerRESTUtils.REST_URL_POLICY_GET_FOR_SECURE_SERVICE_IF_UPDATED + serviceNameUrlParam)
+									.queryParam(RangerRESTUtils.REST_PARAM_LAST_KNOWN_POLICY_VERSION, Long.toString(lastKnownVersion))
+									.queryParam(RangerRESTUtils.REST_PARAM_LAST_ACTIVATION_TIME, Long.toString(lastActivationTimeInMillis))
+									.queryParam(RangerRESTUtils.REST_PARAM_PLUGIN_ID, pluginId)
+									.queryParam(RangerRESTUtils.REST_PARAM_CLUSTER_NAME, clusterName)
+									.queryParam(RangerRESTUtils.REST_PARAM_SUPPORTS_POLICY_DELTAS, supportsPolicyDeltas);
+							return downloadPolicies(secureWebResource, lastKnownVersion);
+						}
+					};
+					ret = user.doAs(action);
+				} else {
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Checking Service policy if updated with old api call, adminUrl=" + adminUrl);
+					}
+					WebResource webResource = createWebResource(adminUrl, RangerRESTUtils.REST_URL_POLICY_GET_FOR_SERVICE_IF_UPDATED + serviceNameUrlParam)
 							.queryParam(RangerRESTUtils.REST_PARAM_LAST_KNOWN_POLICY_VERSION, Long.toString(lastKnownVersion))
 							.queryParam(RangerRESTUtils.REST_PARAM_LAST_ACTIVATION_TIME, Long.toString(lastActivationTimeInMillis))
 							.queryParam(RangerRESTUtils.REST_PARAM_PLUGIN_ID, pluginId)
 							.queryParam(RangerRESTUtils.REST_PARAM_CLUSTER_NAME, clusterName)
 							.queryParam(RangerRESTUtils.REST_PARAM_SUPPORTS_POLICY_DELTAS, supportsPolicyDeltas);
-					return secureWebResource.accept(RangerRESTUtils.REST_MIME_TYPE_JSON).get(ClientResponse.class);
+					ret = downloadPolicies(webResource, lastKnownVersion);
 				}
-			};
-			response = user.doAs(action);
-		} else {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Checking Service policy if updated with old api call");
-			}
-			WebResource webResource = createWebResource(RangerRESTUtils.REST_URL_POLICY_GET_FOR_SERVICE_IF_UPDATED + serviceNameUrlParam)
-					.queryParam(RangerRESTUtils.REST_PARAM_LAST_KNOWN_POLICY_VERSION, Long.toString(lastKnownVersion))
-					.queryParam(RangerRESTUtils.REST_PARAM_LAST_ACTIVATION_TIME, Long.toString(lastActivationTimeInMillis))
-					.queryParam(RangerRESTUtils.REST_PARAM_PLUGIN_ID, pluginId)
-					.queryParam(RangerRESTUtils.REST_PARAM_CLUSTER_NAME, clusterName)
-					.queryParam(RangerRESTUtils.REST_PARAM_SUPPORTS_POLICY_DELTAS, supportsPolicyDeltas);
-			response = webResource.accept(RangerRESTUtils.REST_MIME_TYPE_JSON).get(ClientResponse.class);
-		}
 
-		if (response == null || response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
-			if (response == null) {
-				LOG.error("Error getting policies; Received NULL response!!. secureMode=" + isSecureMode + ", user=" + user + ", serviceName=" + serviceName);
-			} else {
-				RESTResponse resp = RESTResponse.fromClientResponse(response);
-				if (LOG.isDebugEnabled()) {
-					LOG.debug("No change in policies. secureMode=" + isSecureMode + ", user=" + user + ", response=" + resp + ", serviceName=" + serviceName);
-				}
+				return ret;
+			}
+		});
+
+		if (response == null) {
+			LOG.error("Error getting policies; Received NULL response!!. secureMode=" + isSecureMode + ", user=" + user + ", serviceName=" + serviceName);
+
+			throw new Exception("unknown error getting policies. serviceName=" + serviceName);
+		} else if (response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+			RESTResponse resp = RESTResponse.fromClientResponse(response);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("No change in policies. secureMode=" + isSecureMode + ", user=" + user + ", response=" + resp + ", serviceName=" + serviceName);
 			}
 			ret = null;
 		} else if (response.getStatus() == HttpServletResponse.SC_OK) {
-			ret = response.getEntity(ServicePolicies.class);
+			String eTag = response.getHeaders().getFirst(HttpHeaders.ETAG);
+
+			ret = readEntity(response, ServicePolicies.class);
+
+			if (ret != null && ret.getPolicyVersion() != null && eTag != null) {
+				policiesETag        = eTag;
+				policiesETagVersion = ret.getPolicyVersion();
+			} else {
+				policiesETag        = null;
+				policiesETagVersion = -1;
+			}
 		} else if (response.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
 			LOG.error("Error getting policies; service not found. secureMode=" + isSecureMode + ", user=" + user
 					+ ", response=" + response.getStatus() + ", serviceName=" + serviceName
@@ -172,9 +205,15 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 
 			LOG.warn("Received 404 error code with body:[" + exceptionMsg + "], Ignoring");
 		} else {
+			// not a confirmation that the policies in use are current: the caller must see a failed download
 			RESTResponse resp = RESTResponse.fromClientResponse(response);
 			LOG.warn("Error getting policies. secureMode=" + isSecureMode + ", user=" + user + ", response=" + resp + ", serviceName=" + serviceName);
-			ret = null;
+
+			if (response.getStatus() == HttpServletResponse.SC_UNAUTHORIZED) {
+				throw new AccessControlException();
+			}
+
+			throw new Exception("HTTP " + response.getStatus() + " Error: " + resp.getMessage());
 		}
 
 		if (LOG.isDebugEnabled()) {
@@ -632,11 +671,45 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 	}
 
 	private WebResource createWebResource(String url) {
-		WebResource ret = restClient.getResource(url);
+		WebResource ret = restClient.getResource(endpointSelector.getPreferredUrl(), url);
 		
 		return ret;
 	}
 
+	private WebResource createWebResource(String adminUrl, String url) {
+		return restClient.getResource(adminUrl, url);
+	}
+
+	/*
+	 * In long-poll mode, Ranger Admin is asked to hold the request until the policies change, or longPollTimeoutMs elapses.
+	 *
+	 * The ETag of the last downloaded policies is sent only while the caller still has that version:
+	 * after a restart from the policy cache, or when the download could not be applied, a full response is needed.
+	 */
+	private ClientResponse downloadPolicies(WebResource webResource, long lastKnownVersion) {
+		if (longPollTimeoutMs > 0) {
+			webResource = webResource.queryParam(RangerRESTUtils.REST_PARAM_LONG_POLL_TIMEOUT_MS, Long.toString(longPollTimeoutMs));
+		}
+
+		WebResource.Builder builder = webResource.accept(RangerRESTUtils.REST_MIME_TYPE_JSON);
+		String              eTag    = policiesETag;
+
+		if (eTag != null && policiesETagVersion == lastKnownVersion) {
+			builder = builder.header(HttpHeaders.IF_NONE_MATCH, eTag);
+		}
+
+		return builder.get(ClientResponse.class);
+	}
+
+	// binds the (decompressed) response stream to the result type, without buffering the body as a String or a tree; closes the response
+	private static <T> T readEntity(ClientResponse response, Class<T> cls) throws IOException {
+		try (InputStream in = response.getEntityInputStream()) {
+			return in == null ? null : JsonUtilsV2.getMapper().readValue(in, cls);
+		} finally {
+			response.close();
+		}
+	}
+
 	@Override
 	public ServiceTags getServiceTagsIfUpdated(final long lastKnownVersion, final long lastActivationTimeInMillis) throws Exception {
 		if(LOG.isDebugEnabled()) {
@@ -644,48 +717,55 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 		}
 
 		ServiceTags ret = null;
-		ClientResponse response = null;
-		WebResource webResource = null;
-		UserGroupInformation user = MiscUtil.getUGILoginUser();
-		boolean isSecureMode = user != null && UserGroupInformation.isSecurityEnabled();
+		final UserGroupInformation user = MiscUtil.getUGILoginUser();
+		final boolean isSecureMode = user != null && UserGroupInformation.isSecurityEnabled();
 
-		if (isSecureMode) {
-			PrivilegedAction<ClientResponse> action = new PrivilegedAction<ClientResponse>() {
-				public ClientResponse run() {
-					WebResource secureWebResource = createWebResource(RangerRESTUtils.REST_URL_GET_SECURE_SERVICE_TAGS_IF_UPDATED + serviceNameUrlParam)
+		final ClientResponse response = endpointSelector.execute(new AdminCall() {
+			@Override
+			public ClientResponse call(final String adminUrl) {
+				final ClientResponse ret;
+
+				if (isSecureMode) {
+					PrivilegedAction<ClientResponse> action = new PrivilegedAction<ClientResponse>() {
+						public ClientResponse run() {
+							WebResource secureWebResource = createWebResource(adminUrl, RangerRESTUtils.REST_URL_GET_SECURE_SERVICE_TAGS_IF_UPDATED + serviceNameUrlParam)
+									.queryParam(RangerRESTUtils.LAST_KNOWN_TAG_VERSION_PARAM, Long.toString(lastKnownVersion))
+									.queryParam(RangerRESTUtils.REST_PARAM_LAST_ACTIVATION_TIME, Long.toString(lastActivationTimeInMillis))
+									.queryParam(RangerRESTUtils.REST_PARAM_PLUGIN_ID, pluginId);
+							return secureWebResource.accept(RangerRESTUtils.REST_MIME_TYPE_JSON).get(ClientResponse.class);
+						}
+					};
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("getServiceTagsIfUpdated as user " + user + ", adminUrl=" + adminUrl);
+					}
+					ret = user.doAs(action);
+				} else {
+					WebResource webResource = createWebResource(adminUrl, RangerRESTUtils.REST_URL_GET_SERVICE_TAGS_IF_UPDATED + serviceNameUrlParam)
 							.queryParam(RangerRESTUtils.LAST_KNOWN_TAG_VERSION_PARAM, Long.toString(lastKnownVersion))
 							.queryParam(RangerRESTUtils.REST_PARAM_LAST_ACTIVATION_TIME, Long.toString(lastActivationTimeInMillis))
 							.queryParam(RangerRESTUtils.REST_PARAM_PLUGIN_ID, pluginId);
-					return secureWebResource.accept(RangerRESTUtils.REST_MIME_TYPE_JSON).get(ClientResponse.class);
+					ret = webResource.accept(RangerRESTUtils.REST_MIME_TYPE_JSON).get(ClientResponse.class);
 				}
-			};
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("getServiceTagsIfUpdated as user " + user);
+
+				return ret;
 			}
-			response = user.doAs(action);
-		} else {
-			webResource = createWebResource(RangerRESTUtils.REST_URL_GET_SERVICE_TAGS_IF_UPDATED + serviceNameUrlParam)
-					.queryParam(RangerRESTUtils.LAST_KNOWN_TAG_VERSION_PARAM, Long.toString(lastKnownVersion))
-					.queryParam(RangerRESTUtils.REST_PARAM_LAST_ACTIVATION_TIME, Long.toString(lastActivationTimeInMillis))
-					.queryParam(RangerRESTUtils.REST_PARAM_PLUGIN_ID, pluginId);
-			response = webResource.accept(RangerRESTUtils.REST_MIME_TYPE_JSON).get(ClientResponse.class);
-		}
+		});
 
-		if (response == null || response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
-			if (response == null) {
-				LOG.error("Error getting tags; Received NULL response!!. secureMode=" + isSecureMode + ", user=" + user + ", serviceName=" + serviceName);
-			} else {
-				RESTResponse resp = RESTResponse.fromClientResponse(response);
-				if (LOG.isDebugEnabled()) {
-					LOG.debug("No change in tags. secureMode=" + isSecureMode + ", user=" + user
-							+ ", response=" + resp + ", serviceName=" + serviceName
-							+ ", " + "lastKnownVersion=" + lastKnownVersion
-							+ ", " + "lastActivationTimeInMillis=" + lastActivationTimeInMillis);
-				}
+		if (response == null) {
+			LOG.error("Error getting tags; Received NULL response!!. secureMode=" + isSecureMode + ", user=" + user + ", serviceName=" + serviceName);
+
+			throw new Exception("unknown error getting tags. serviceName=" + serviceName);
+		} else if (response.getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+			RESTResponse resp = RESTResponse.fromClientResponse(response);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("No change in tags. secureMode=" + isSecureMode + ", user=" + user
+						+ ", response=" + resp + ", serviceName=" + serviceName
+						+ ", " + "lastKnownVersion=" + lastKnownVersion
+						+ ", " + "lastActivationTimeInMillis=" + lastActivationTimeInMillis);
 			}
 			ret = null;
 		} else if (response.getStatus() == HttpServletResponse.SC_OK) {
-			ret = response.getEntity(ServiceTags.class);
+			ret = readEntity(response, ServiceTags.class);
 		} else if (response.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
 			LOG.error("Error getting tags; service not found. secureMode=" + isSecureMode + ", user=" + user
 					+ ", response=" + response.getStatus() + ", serviceName=" + serviceName
@@ -697,9 +777,15 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 
 			LOG.warn("Received 404 error code with body:[" + exceptionMsg + "], Ignoring");
 		} else {
+			// not a confirmation that the tags in use are current: the caller must see a failed download
 			RESTResponse resp = RESTResponse.fromClientResponse(response);
 			LOG.warn("Error getting tags. secureMode=" + isSecureMode + ", user=" + user + ", response=" + resp + ", serviceName=" + serviceName);
-			ret = null;
+
+			if (response.getStatus() == HttpServletResponse.SC_UNAUTHORIZED) {
+				throw new AccessControlException();
+			}
+
+			throw new Exception("HTTP " + response.getStatus() + " Error: " + resp.getMessage());
 		}
 
 		if(LOG.isDebugEnabled()) {
@@ -810,4 +896,25 @@ public class RangerAdminRESTClient extends AbstractRangerAdminClient {
 		}
 	}
 
+	@Override
+	public void cleanup() {
+		if (endpointSelector != null) {
+			endpointSelector.cleanup();
+		}
+	}
+
+	/*
+	 * Request to one of the Ranger Admin endpoints: HTTP 5xx responses are failures, and are retried on another endpoint
+	 */
+	private static abstract class AdminCall extends RangerRESTEndpointSelector.Call<ClientResponse> {
+		@Override
+		public boolean isFailure(ClientResponse response) {
+			return response == null || response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		}
+
+		@Override
+		public void discard(ClientResponse response) {
+			response.close();
+		}
+	}
 }
@@ -37,6 +37,8 @@ import org.apache.ranger.plugin.policyengine.*;
 import org.apache.ranger.plugin.service.RangerBasePlugin;
 import org.apache.ranger.plugin.util.JsonUtilsV2;
 import org.apache.ranger.plugin.util.RangerAccessRequestUtil;
+import org.apache.ranger.plugin.util.RangerLatencyHistogram;
+import org.apache.ranger.plugin.util.RangerMetricsRegistry;
 import org.apache.ranger.plugin.util.RangerRESTUtils;
 
 
@@ -45,6 +47,8 @@ public class RangerDefaultAuditHandler implements RangerAccessResultProcessor {
 	protected static final String RangerModuleName =  RangerConfiguration.getInstance().get(RangerHadoopConstants.AUDITLOG_RANGER_MODULE_ACL_NAME_PROP , RangerHadoopConstants.DEFAULT_RANGER_MODULE_ACL_NAME);
 
 	private static final Log LOG = LogFactory.getLog(RangerDefaultAuditHandler.class);
+
+	private static final RangerLatencyHistogram AUDIT_ENQUEUE_LATENCY = RangerMetricsRegistry.getInstance().getHistogram(RangerMetricsRegistry.METRIC_AUDIT_ENQUEUE);
 	static long sequenceNumber;
 
 	private static String UUID 	= MiscUtil.generateUniqueId();
@@ -178,8 +182,15 @@ public class RangerDefaultAuditHandler implements RangerAccessResultProcessor {
 		if(auditEvent != null) {
 			populateDefaults(auditEvent);
 
-			AuditHandler auditProvider = RangerBasePlugin.getAuditProvider(auditEvent.getRepositoryName());
-			if (auditProvider == null || !auditProvider.log(auditEvent)) {
+			AuditHandler auditProvider  = RangerBasePlugin.getAuditProvider(auditEvent.getRepositoryName());
+			long         startTimeNanos = System.nanoTime();
+			boolean      isLogged       = auditProvider != null && auditProvider.log(auditEvent);
+
+			AUDIT_ENQUEUE_LATENCY.recordSince(startTimeNanos);
+
+			if (!isLogged) {
+				RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_AUDIT_ENQUEUE_FAILED).increment();
+
 				MiscUtil.logErrorMessageByInterval(LOG, "fail to log audit event " + auditEvent);
 			}
 		}
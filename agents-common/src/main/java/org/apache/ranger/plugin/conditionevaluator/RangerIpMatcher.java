@@ -30,6 +30,7 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.util.RangerIpAddressTrie;
 
 /**
  * Credits: Large parts of this file have been lifted as is from org.apache.ranger.pdp.knox.URLBasedAuthDB.  Credits for those are due to Dilli Arumugam.
@@ -39,6 +40,10 @@ public class RangerIpMatcher extends RangerAbstractConditionEvaluator {
 	private static final Log LOG = LogFactory.getLog(RangerIpMatcher.class);
 	private List<String> _exactIps = new ArrayList<>();
 	private List<String> _wildCardIps = new ArrayList<>();
+	// policy ips that can't be added to _ipTrie; these are matched as strings against request ips that are valid addresses
+	private List<String> _unindexedExactIps = new ArrayList<>();
+	private List<String> _unindexedWildCardIps = new ArrayList<>();
+	private final RangerIpAddressTrie _ipTrie = new RangerIpAddressTrie();
 	private boolean _allowAny;
 	
 	@Override
@@ -67,14 +72,20 @@ public class RangerIpMatcher extends RangerAbstractConditionEvaluator {
 					_allowAny = true;
 				} else if (digestedIp.equals(ip)) {
 					_exactIps.add(ip);
+					if (!_ipTrie.add(ip)) { // ip could be in CIDR notation as well
+						_unindexedExactIps.add(ip);
+					}
 				} else {
 					_wildCardIps.add(digestedIp);
+					if (!_ipTrie.add(wildcardToCidr(digestedIp))) {
+						_unindexedWildCardIps.add(digestedIp);
+					}
 				}
 			}
 		}
 
 		if(LOG.isDebugEnabled()) {
-			LOG.debug("<== RangerIpMatcher.init(" + condition + "): exact-ips[" + _exactIps + "], wildcard-ips[" + _wildCardIps + "]");
+			LOG.debug("<== RangerIpMatcher.init(" + condition + "): exact-ips[" + _exactIps + "], wildcard-ips[" + _wildCardIps + "], ip-trie[" + _ipTrie + "]");
 		}
 	}
 
@@ -92,7 +103,16 @@ public class RangerIpMatcher extends RangerAbstractConditionEvaluator {
 			if (requestIp == null) {
 				LOG.debug("isMatched: couldn't get ip address from request.  Ok.  Implicitly matched!");
 			} else {
-				ipMatched = isWildcardMatched(_wildCardIps, requestIp) || isExactlyMatched(_exactIps, requestIp);
+				RangerIpAddressTrie.MatchResult trieResult = _ipTrie.match(requestIp);
+
+				if (trieResult == RangerIpAddressTrie.MatchResult.NOT_AN_ADDRESS) {
+					// retain the string match semantics for request ips that are not valid addresses
+					ipMatched = isWildcardMatched(_wildCardIps, requestIp) || isExactlyMatched(_exactIps, requestIp);
+				} else {
+					ipMatched = trieResult == RangerIpAddressTrie.MatchResult.MATCHED
+							|| (!_unindexedWildCardIps.isEmpty() && isWildcardMatched(_unindexedWildCardIps, requestIp))
+							|| (!_unindexedExactIps.isEmpty() && isExactlyMatched(_unindexedExactIps, requestIp));
+				}
 			}
 		}
 		
@@ -139,6 +159,48 @@ public class RangerIpMatcher extends RangerAbstractConditionEvaluator {
 		return result;
 	}
 	
+	/**
+	 * Converts a digested wildcard ip to CIDR notation, so that it can be added to the ip trie: "10.20." to "10.20.0.0/16", "a0:b0:" to "a0:b0:0:0:0:0:0:0/32"
+	 * @param digestedIp
+	 * @return null if the digested ip has no equivalent CIDR range
+	 */
+	static String wildcardToCidr(final String digestedIp) {
+		final char separator = digestedIp.charAt(digestedIp.length() - 1);
+		final int  bitsPerGroup;
+		final int  groupsPerIp;
+
+		if (separator == '.') {
+			bitsPerGroup = 8;
+			groupsPerIp  = 4;
+		} else if (separator == ':' && !digestedIp.contains("::")) { // "a0::" prefix doesn't match "a0:0:..." as a string
+			bitsPerGroup = 16;
+			groupsPerIp  = 8;
+		} else {
+			return null;
+		}
+
+		int groupCount = 0;
+		for (int i = 0; i < digestedIp.length(); i++) {
+			if (digestedIp.charAt(i) == separator) {
+				groupCount++;
+			}
+		}
+
+		if (groupCount >= groupsPerIp) {
+			return null;
+		}
+
+		StringBuilder sb = new StringBuilder(digestedIp);
+		for (int i = groupCount; i < groupsPerIp; i++) {
+			sb.append('0');
+			if (i < groupsPerIp - 1) {
+				sb.append(separator);
+			}
+		}
+
+		return sb.append('/').append(groupCount * bitsPerGroup).toString();
+	}
+
 	boolean isWildcardMatched(final List<String> ips, final String requestIp) {
 
 		if(LOG.isDebugEnabled()) {
@@ -28,6 +28,8 @@ import org.apache.ranger.plugin.contextenricher.RangerTagForEval;
 import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
 
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
@@ -40,6 +42,10 @@ public class RangerScriptConditionEvaluator extends RangerAbstractConditionEvalu
 
 	private ScriptEngine scriptEngine;
 
+	// script is compiled on first evaluation, as getScript() of subclasses is initialized after init() of this class
+	private volatile boolean        isScriptCompiled;
+	private volatile CompiledScript compiledScript;
+
 	@Override
 	public void init() {
 
@@ -96,6 +102,7 @@ public class RangerScriptConditionEvaluator extends RangerAbstractConditionEvalu
 				RangerTagForEval             currentTag = context.getCurrentTag();
 				Map<String, String>          tagAttribs = currentTag != null ? currentTag.getAttributes() : Collections.<String, String>emptyMap();
 
+				// new bindings for each evaluation, so that globals set by the script are not seen by other requests
 				Bindings bindings = scriptEngine.createBindings();
 
 				bindings.put("ctx", context);
@@ -107,7 +114,9 @@ public class RangerScriptConditionEvaluator extends RangerAbstractConditionEvalu
 				}
 				try {
 
-					Object ret = scriptEngine.eval(script, bindings);
+					CompiledScript compiledScript = getCompiledScript(script);
+
+					Object ret = compiledScript != null ? compiledScript.eval(bindings) : scriptEngine.eval(script, bindings);
 
 					if (ret == null) {
 						ret = context.getResult();
@@ -135,6 +144,26 @@ public class RangerScriptConditionEvaluator extends RangerAbstractConditionEvalu
 
 	}
 
+	CompiledScript getCompiledScript(String script) {
+		if (!isScriptCompiled) {
+			synchronized (this) {
+				if (!isScriptCompiled) {
+					if (scriptEngine instanceof Compilable) {
+						try {
+							compiledScript = ((Compilable) scriptEngine).compile(script);
+						} catch (ScriptException exception) {
+							LOG.error("RangerScriptConditionEvaluator.getCompiledScript(): failed to compile script={" + script + "}, exception=" + exception + ". Script will be evaluated without compiling");
+						}
+					}
+
+					isScriptCompiled = true;
+				}
+			}
+		}
+
+		return compiledScript;
+	}
+
 	protected String getScript() {
 		String ret = null;
 
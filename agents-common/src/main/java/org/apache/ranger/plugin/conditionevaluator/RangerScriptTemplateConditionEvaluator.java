@@ -24,14 +24,32 @@ import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.plugin.contextenricher.RangerTagForEval;
 import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
 
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class RangerScriptTemplateConditionEvaluator extends RangerScriptConditionEvaluator {
 	private static final Log LOG = LogFactory.getLog(RangerScriptTemplateConditionEvaluator.class);
 
+	// common templates, evaluated in Java instead of the script engine:
+	//   ctx.isAccessedAfter('attr');  ctx.isAccessedAfter('tagType', 'attr');  - and isAccessedBefore()
+	//   tagAttr['attr'] == 'value';   tagAttr['attr'] != 'value';
+	private static final String  QUOTED_STRING         = "(?:'([^'\\\\]*)'|\"([^\"\\\\]*)\")";
+	private static final Pattern PATTERN_ACCESSED_TIME = Pattern.compile("^ctx\\.(isAccessedAfter|isAccessedBefore)\\(\\s*" + QUOTED_STRING + "\\s*(?:,\\s*" + QUOTED_STRING + "\\s*)?\\)\\s*;?$");
+	private static final Pattern PATTERN_TAG_ATTR      = Pattern.compile("^tagAttr\\[\\s*" + QUOTED_STRING + "\\s*\\]\\s*(===?|!==?)\\s*" + QUOTED_STRING + "\\s*;?$");
+
+	private enum NativeTemplate { ACCESSED_AFTER, ACCESSED_BEFORE, TAG_ATTR_EQUALS, TAG_ATTR_NOT_EQUALS }
+
 	protected String  script;
 	private   boolean reverseResult;
 
+	private NativeTemplate nativeTemplate;
+	private String         nativeArg1;
+	private String         nativeArg2;
+
 	@Override
 	public void init() {
 		if (LOG.isDebugEnabled()) {
@@ -52,12 +70,14 @@ public class RangerScriptTemplateConditionEvaluator extends RangerScriptConditio
 
 				if(script != null) {
 					script = script.trim();
+
+					initNativeTemplate();
 				}
 			}
 		}
 
 		if (LOG.isDebugEnabled()) {
-			LOG.debug("<== RangerScriptTemplateConditionEvaluator.init(" + condition + "): script=" + script + "; reverseResult=" + reverseResult);
+			LOG.debug("<== RangerScriptTemplateConditionEvaluator.init(" + condition + "): script=" + script + "; reverseResult=" + reverseResult + "; nativeTemplate=" + nativeTemplate);
 		}
 	}
 
@@ -67,7 +87,7 @@ public class RangerScriptTemplateConditionEvaluator extends RangerScriptConditio
 			LOG.debug("==> RangerScriptTemplateConditionEvaluator.isMatched()");
 		}
 
-		boolean ret = super.isMatched(request);
+		boolean ret = nativeTemplate != null ? isMatchedNative(request) : super.isMatched(request);
 
 		if(reverseResult) {
 			ret = !ret;
@@ -84,4 +104,63 @@ public class RangerScriptTemplateConditionEvaluator extends RangerScriptConditio
 	protected String getScript() {
 		return script;
 	}
+
+	private void initNativeTemplate() {
+		Matcher matcher = PATTERN_ACCESSED_TIME.matcher(script);
+
+		if (matcher.matches()) {
+			String arg1 = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+			String arg2 = matcher.group(4) != null ? matcher.group(4) : matcher.group(5);
+
+			nativeTemplate = "isAccessedAfter".equals(matcher.group(1)) ? NativeTemplate.ACCESSED_AFTER : NativeTemplate.ACCESSED_BEFORE;
+
+			if (arg2 == null) { // isAccessedAfter(attributeName)
+				nativeArg1 = null;
+				nativeArg2 = arg1;
+			} else {            // isAccessedAfter(tagType, attributeName)
+				nativeArg1 = arg1;
+				nativeArg2 = arg2;
+			}
+		} else {
+			matcher = PATTERN_TAG_ATTR.matcher(script);
+
+			if (matcher.matches()) {
+				nativeTemplate = matcher.group(3).startsWith("=") ? NativeTemplate.TAG_ATTR_EQUALS : NativeTemplate.TAG_ATTR_NOT_EQUALS;
+				nativeArg1     = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+				nativeArg2     = matcher.group(4) != null ? matcher.group(4) : matcher.group(5);
+			}
+		}
+	}
+
+	private boolean isMatchedNative(RangerAccessRequest request) {
+		final boolean ret;
+
+		RangerScriptExecutionContext context = new RangerScriptExecutionContext(request);
+
+		switch (nativeTemplate) {
+			case ACCESSED_AFTER:
+				ret = nativeArg1 == null ? context.isAccessedAfter(nativeArg2) : context.isAccessedAfter(nativeArg1, nativeArg2);
+				break;
+
+			case ACCESSED_BEFORE:
+				ret = nativeArg1 == null ? context.isAccessedBefore(nativeArg2) : context.isAccessedBefore(nativeArg1, nativeArg2);
+				break;
+
+			default: {
+				RangerTagForEval    currentTag = context.getCurrentTag();
+				Map<String, String> tagAttribs = currentTag != null ? currentTag.getAttributes() : null;
+				String              attrValue  = tagAttribs != null ? tagAttribs.get(nativeArg1) : null;
+				boolean             isEqual    = StringUtils.equals(attrValue, nativeArg2);
+
+				ret = nativeTemplate == NativeTemplate.TAG_ATTR_EQUALS ? isEqual : !isEqual;
+			}
+			break;
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("RangerScriptTemplateConditionEvaluator.isMatchedNative(): script={" + script + "}, ret=" + ret);
+		}
+
+		return ret;
+	}
 }
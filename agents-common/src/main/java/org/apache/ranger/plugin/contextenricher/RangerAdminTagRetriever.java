@@ -63,5 +63,12 @@ public class RangerAdminTagRetriever extends RangerTagRetriever {
 		return serviceTags;
 	}
 
+	@Override
+	public void cleanup() {
+		if (adminClient != null) {
+			adminClient.cleanup();
+		}
+	}
+
 }
 
@@ -37,7 +37,7 @@ import org.apache.ranger.plugin.policyengine.RangerAccessResource;
 import org.apache.ranger.plugin.policyresourcematcher.RangerDefaultPolicyResourceMatcher;
 import org.apache.ranger.plugin.policyresourcematcher.RangerPolicyResourceMatcher;
 import org.apache.ranger.plugin.util.DownloadTrigger;
-import org.apache.ranger.plugin.util.DownloaderTask;
+import org.apache.ranger.plugin.util.DownloadScheduler;
 import org.apache.ranger.plugin.service.RangerAuthContext;
 import org.apache.ranger.plugin.service.RangerBasePlugin;
 import org.apache.ranger.plugin.util.RangerAccessRequestUtil;
@@ -59,7 +59,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -81,7 +80,7 @@ public class RangerTagEnricher extends RangerAbstractContextEnricher {
 	private boolean                            disableCacheIfServiceNotFound = true;
 
 	private final BlockingQueue<DownloadTrigger> tagDownloadQueue = new LinkedBlockingQueue<>();
-	private Timer                              tagDownloadTimer;
+	private DownloadScheduler                  tagDownloadScheduler;
 
 	@Override
 	public void init() {
@@ -139,18 +138,8 @@ public class RangerTagEnricher extends RangerAbstractContextEnricher {
 				tagRefresher.setDaemon(true);
 				tagRefresher.startRefresher();
 
-				tagDownloadTimer = new Timer("policyDownloadTimer", true);
-
-				try {
-					tagDownloadTimer.schedule(new DownloaderTask(tagDownloadQueue), pollingIntervalMs, pollingIntervalMs);
-					if (LOG.isDebugEnabled()) {
-						LOG.debug("Scheduled tagDownloadRefresher to download tags every " + pollingIntervalMs + " milliseconds");
-					}
-				} catch (IllegalStateException exception) {
-					LOG.error("Error scheduling tagDownloadTimer:", exception);
-					LOG.error("*** Tags will NOT be downloaded every " + pollingIntervalMs + " milliseconds ***");
-					tagDownloadTimer = null;
-				}
+				tagDownloadScheduler = DownloadScheduler.create(RangerConfiguration.getInstance(), propertyPrefix, "tagDownloadScheduler", tagDownloadQueue, pollingIntervalMs, 0);
+				tagDownloadScheduler.start();
 			}
 		} else {
 			LOG.error("No value specified for " + TAG_RETRIEVER_CLASSNAME_OPTION + " in the RangerTagEnricher options");
@@ -341,9 +330,9 @@ public class RangerTagEnricher extends RangerAbstractContextEnricher {
 
 		super.preCleanup();
 
-		if (tagDownloadTimer != null) {
-			tagDownloadTimer.cancel();
-			tagDownloadTimer = null;
+		if (tagDownloadScheduler != null) {
+			tagDownloadScheduler.stopScheduler();
+			tagDownloadScheduler = null;
 		}
 
 		if (tagRefresher != null) {
@@ -605,8 +594,8 @@ public class RangerTagEnricher extends RangerAbstractContextEnricher {
 						perf = RangerPerfTracer.getPerfTracer(PERF_CONTEXTENRICHER_INIT_LOG, "RangerTagRefresher.populateTags(serviceName=" + tagRetriever.getServiceName() + ",lastKnownVersion=" + lastKnownVersion + ")");
 					}
 					DownloadTrigger trigger = tagDownloadQueue.take();
-					populateTags();
-					trigger.signalCompletion();
+					DownloadTrigger.Result result = populateTags();
+					trigger.signalCompletion(result);
 
 					RangerPerfTracer.log(perf);
 
@@ -621,13 +610,24 @@ public class RangerTagEnricher extends RangerAbstractContextEnricher {
 			}
 		}
 
-		private void populateTags() throws InterruptedException {
+		private DownloadTrigger.Result populateTags() throws InterruptedException {
+			DownloadTrigger.Result ret = DownloadTrigger.Result.FAILED;
 
 			if (tagEnricher != null) {
 				ServiceTags serviceTags = null;
 
 				try {
-					serviceTags = tagRetriever.retrieveTags(lastKnownVersion, lastActivationTimeInMillis);
+					try {
+						serviceTags = tagRetriever.retrieveTags(lastKnownVersion, lastActivationTimeInMillis);
+						ret         = serviceTags != null ? DownloadTrigger.Result.UPDATED : DownloadTrigger.Result.NOT_MODIFIED;
+					} catch (RangerServiceNotFoundException | InterruptedException excp) {
+						throw excp;
+					} catch (Exception excp) {
+						// an error response from Ranger Admin: tags from the cache are still used, if none were provided yet
+						LOG.error("RangerTagRefresher.populateTags() - failed to retrieve tags. Will continue to use last known version of tags (" + lastKnownVersion + ")", excp);
+
+						ret = DownloadTrigger.Result.FAILED;
+					}
 
 					if (serviceTags == null) {
 						if (!hasProvidedTagsToReceiver) {
@@ -663,11 +663,15 @@ public class RangerTagEnricher extends RangerAbstractContextEnricher {
 					throw interruptedException;
 				} catch (Exception e) {
 					LOG.error("Encountered unexpected exception. Ignoring", e);
+
+					ret = DownloadTrigger.Result.FAILED;
 				}
 
 			} else {
 				LOG.error("RangerTagRefresher.populateTags() - no tag receiver to update tag-cache");
 			}
+
+			return ret;
 		}
 
 		void cleanup() {
@@ -677,6 +681,8 @@ public class RangerTagEnricher extends RangerAbstractContextEnricher {
 
 			stopRefresher();
 
+			tagRetriever.cleanup();
+
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("<== RangerTagRefresher.cleanup()");
 			}
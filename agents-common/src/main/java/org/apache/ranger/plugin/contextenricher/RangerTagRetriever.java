@@ -34,6 +34,9 @@ public abstract class RangerTagRetriever {
 
 	public abstract ServiceTags retrieveTags(long lastKnownVersion, long lastActivationTimeInMillis) throws Exception;
 
+	public void cleanup() {
+	}
+
 	public String getServiceName() {
 		return serviceName;
 	}
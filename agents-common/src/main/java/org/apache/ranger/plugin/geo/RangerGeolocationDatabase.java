@@ -22,14 +22,51 @@ package org.apache.ranger.plugin.geo;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.plugin.util.RangerIpAddressTrie;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class RangerGeolocationDatabase {
 	private static final Log LOG = LogFactory.getLog(RangerGeolocationDatabase.class);
 
-	private BinarySearchTree<RangerGeolocationData, Long> data = new BinarySearchTree<>();
+	private List<RangerGeolocationData> pendingData = new ArrayList<>(); // added after the last optimize()
+
+	private volatile RangerGeolocationIndex index = RangerGeolocationIndex.build(Collections.<RangerGeolocationData>emptyList());
 
 	private GeolocationMetadata metadata = new GeolocationMetadata();
 
+	/**
+	 * Loads a database from an index file written by save(). Ranges in the index are read from the memory-mapped file.
+	 */
+	public static RangerGeolocationDatabase load(final File indexFile) throws IOException {
+		long start = System.currentTimeMillis();
+
+		List<String>              metadataNames = new ArrayList<>();
+		RangerGeolocationDatabase ret           = new RangerGeolocationDatabase();
+
+		ret.setIndex(RangerGeolocationIndex.load(indexFile, metadataNames));
+		ret.setMetadata(new GeolocationMetadata(metadataNames.toArray(new String[metadataNames.size()])));
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("RangerGeolocationDatabase.load() - Time taken for loading " + ret.getIndex().size() + " ranges from " + indexFile + " = " + (System.currentTimeMillis() - start) + " milliseconds");
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Writes metadata and ranges of this database to an index file, which can be loaded with load().
+	 *
+	 * @param sourceSignature identifies the data file the database was built from, to detect a stale index file later
+	 */
+	public void save(final File indexFile, final long sourceSignature) throws IOException {
+		getIndex().write(indexFile, getMetadata().getLocationDataItemNames(), sourceSignature);
+	}
+
 	public String getValue(final RangerGeolocationData geolocationData, final String attributeName) {
 		String value = null;
 		int index = -1;
@@ -55,17 +92,57 @@ public class RangerGeolocationDatabase {
 	public RangerGeolocationData find(final String ipAddressStr) {
 		RangerGeolocationData ret = null;
 
-		if (StringUtils.isNotBlank(ipAddressStr) && RangerGeolocationData.validateAsIP(ipAddressStr, true)) {
-			ret = data.find(RangerGeolocationData.ipAddressToLong(ipAddressStr));
+		if (StringUtils.isNotBlank(ipAddressStr)) {
+			long ipAddress = RangerIpAddressTrie.parseIpv4(ipAddressStr);
+
+			if (ipAddress == -1 && RangerGeolocationData.validateAsIP(ipAddressStr, true)) { // not in dotted-decimal form
+				ipAddress = RangerGeolocationData.ipAddressToLong(ipAddressStr);
+			}
+
+			if (ipAddress != -1) {
+				RangerGeolocationIndex index = this.index;
+				int                    idx   = index.find(ipAddress);
+
+				if (idx != -1) {
+					ret = new RangerGeolocationData(index.getStart(idx), index.getEnd(idx), index.getLocationData(idx));
+				}
+			}
 		}
 		return ret;
 	}
 
+	/**
+	 * Adds a range to the database; it will be found only after the next call to optimize().
+	 */
+	public void add(final RangerGeolocationData data) {
+		if (data != null) {
+			pendingData.add(data);
+		}
+	}
+
+	/**
+	 * Builds the index of ranges added so far, along with the ranges already in the index.
+	 */
 	public void optimize() {
 		long start = 0L, end = 0L;
 
 		start = System.currentTimeMillis();
-		data.rebalance();
+
+		if (!pendingData.isEmpty()) {
+			RangerGeolocationIndex      current = getIndex();
+			List<RangerGeolocationData> data    = new ArrayList<>(current.size() + pendingData.size());
+
+			for (int i = 0; i < current.size(); i++) {
+				data.add(new RangerGeolocationData(current.getStart(i), current.getEnd(i), current.getLocationData(i)));
+			}
+
+			data.addAll(pendingData);
+
+			setIndex(RangerGeolocationIndex.build(data));
+
+			pendingData = new ArrayList<>();
+		}
+
 		end = System.currentTimeMillis();
 
 		if (LOG.isDebugEnabled()) {
@@ -73,17 +150,17 @@ public class RangerGeolocationDatabase {
 		}
 	}
 
-	public void setData(final BinarySearchTree<RangerGeolocationData, Long> dataArg) { data = dataArg != null ? dataArg : new BinarySearchTree<RangerGeolocationData, Long>();}
+	public void setIndex(final RangerGeolocationIndex indexArg) { index = indexArg != null ? indexArg : RangerGeolocationIndex.build(Collections.<RangerGeolocationData>emptyList()); }
 
 	public void setMetadata(final GeolocationMetadata metadataArg) { metadata = metadataArg != null ? metadataArg : new GeolocationMetadata();}
 
 	public GeolocationMetadata getMetadata() { return metadata; }
 
-	public BinarySearchTree<RangerGeolocationData, Long> getData() { return data; }
+	public RangerGeolocationIndex getIndex() { return index; }
 
 	public void dump(ValuePrinter<RangerGeolocationData> processor) {
 
-		BinarySearchTree<RangerGeolocationData, Long> geoDatabase = getData();
+		RangerGeolocationIndex geoIndex = getIndex();
 		GeolocationMetadata metadata = getMetadata();
 		processor.build();
 
@@ -91,7 +168,9 @@ public class RangerGeolocationDatabase {
 		processor.print(metadata.toString());
 
 		processor.print("#================== Dump of geoDatabase - START ==================");
-		geoDatabase.preOrderTraverseTree(processor);
+		for (int i = 0; i < geoIndex.size(); i++) {
+			processor.process(new RangerGeolocationData(geoIndex.getStart(i), geoIndex.getEnd(i), geoIndex.getLocationData(i)));
+		}
 		processor.print("#================== Dump of geoDatabase - END   ==================");
 
 		processor.close();
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.geo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of geolocation ranges, sorted by start address and searched by binary search. Range boundaries are
+ * kept in primitive buffers - either on heap or in a memory-mapped index file - and each range refers to a location in
+ * a table of distinct locations, whose attribute values are interned; so a database with many ranges per location
+ * needs little heap.
+ *
+ * Index file layout:
+ *   header   : int magic, int format-version, long source-signature, int range-count, int location-count
+ *   ranges   : long start[range-count], long end[range-count], int location-id[range-count]
+ *   strings  : int count, followed by int length and UTF-8 bytes of each string
+ *   metadata : int count, followed by int string-index of each location data item name
+ *   locations: for each location: int count, followed by int string-index of each value (-1 for null)
+ *
+ * The source-signature identifies the file the index was built from, so that a stale index file can be detected.
+ */
+public final class RangerGeolocationIndex {
+	public static final int MAGIC          = 0x5247454f; // "RGEO"
+	public static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_SIZE = 24;
+
+	private final LongBuffer starts;
+	private final LongBuffer ends;
+	private final IntBuffer  locationIds;
+	private final String[][] locations;
+	private final int        size;
+	private final long       sourceSignature;
+	private final boolean    isMapped;
+
+	private RangerGeolocationIndex(LongBuffer starts, LongBuffer ends, IntBuffer locationIds, String[][] locations, long sourceSignature, boolean isMapped) {
+		this.starts          = starts;
+		this.ends            = ends;
+		this.locationIds     = locationIds;
+		this.locations       = locations;
+		this.size            = starts.limit();
+		this.sourceSignature = sourceSignature;
+		this.isMapped        = isMapped;
+	}
+
+	/**
+	 * Builds an on-heap index of the given ranges. Duplicate ranges are dropped; ranges are expected not to overlap.
+	 */
+	public static RangerGeolocationIndex build(Collection<RangerGeolocationData> data) {
+		RangerGeolocationData[] sorted = data.toArray(new RangerGeolocationData[data.size()]);
+
+		Arrays.sort(sorted);
+
+		long[]                     starts      = new long[sorted.length];
+		long[]                     ends        = new long[sorted.length];
+		int[]                      locationIds = new int[sorted.length];
+		List<String[]>             locations   = new ArrayList<>();
+		Map<List<String>, Integer> locationIdx = new HashMap<>();
+		Map<String, String>        strings     = new HashMap<>();
+		int                        count       = 0;
+
+		for (RangerGeolocationData range : sorted) {
+			if (count > 0 && starts[count - 1] == range.getFromIPAddress() && ends[count - 1] == range.getToIPAddress()
+					&& Arrays.equals(locations.get(locationIds[count - 1]), range.getLocationData())) {
+				continue;
+			}
+
+			List<String> location   = Arrays.asList(range.getLocationData());
+			Integer      locationId = locationIdx.get(location);
+
+			if (locationId == null) {
+				String[] values = new String[location.size()];
+
+				for (int i = 0; i < values.length; i++) {
+					values[i] = intern(strings, location.get(i));
+				}
+
+				locationId = locations.size();
+
+				locations.add(values);
+				locationIdx.put(location, locationId);
+			}
+
+			starts[count]      = range.getFromIPAddress();
+			ends[count]        = range.getToIPAddress();
+			locationIds[count] = locationId;
+
+			count++;
+		}
+
+		return new RangerGeolocationIndex(LongBuffer.wrap(starts, 0, count).slice(), LongBuffer.wrap(ends, 0, count).slice(), IntBuffer.wrap(locationIds, 0, count).slice(),
+		                                  locations.toArray(new String[locations.size()][]), 0, false);
+	}
+
+	/**
+	 * Loads an index from a file written by write(), by memory-mapping it; the ranges are read from the mapped file.
+	 *
+	 * @param metadataNames if not null, location data item names in the file are added to it
+	 */
+	public static RangerGeolocationIndex load(File file, List<String> metadataNames) throws IOException {
+		final MappedByteBuffer buffer;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+				throw new IOException(file.getAbsolutePath() + ": not a geolocation index file");
+			}
+
+			if (buffer.getInt(4) != FORMAT_VERSION) {
+				throw new IOException(file.getAbsolutePath() + ": unsupported format-version " + buffer.getInt(4));
+			}
+
+			long sourceSignature = buffer.getLong(8);
+			int  rangeCount      = buffer.getInt(16);
+			int  locationCount   = buffer.getInt(20);
+
+			if (rangeCount < 0 || locationCount < 0 || HEADER_SIZE + rangeCount * 20L > buffer.limit()) {
+				throw new IOException(file.getAbsolutePath() + ": invalid range-count " + rangeCount);
+			}
+
+			int startsOffset  = HEADER_SIZE;
+			int endsOffset    = startsOffset + rangeCount * 8;
+			int idsOffset     = endsOffset + rangeCount * 8;
+			int stringsOffset = idsOffset + rangeCount * 4;
+
+			LongBuffer starts      = slice(buffer, startsOffset, endsOffset).asLongBuffer();
+			LongBuffer ends        = slice(buffer, endsOffset, idsOffset).asLongBuffer();
+			IntBuffer  locationIds = slice(buffer, idsOffset, stringsOffset).asIntBuffer();
+
+			buffer.position(stringsOffset);
+
+			String[]   strings   = new String[buffer.getInt()];
+			String[][] locations = new String[locationCount][];
+
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[buffer.getInt()];
+
+				buffer.get(bytes);
+
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			for (int i = buffer.getInt(); i > 0; i--) {
+				String name = strings[buffer.getInt()];
+
+				if (metadataNames != null) {
+					metadataNames.add(name);
+				}
+			}
+
+			for (int i = 0; i < locationCount; i++) {
+				String[] values = new String[buffer.getInt()];
+
+				for (int j = 0; j < values.length; j++) {
+					int stringIdx = buffer.getInt();
+
+					values[j] = stringIdx == -1 ? null : strings[stringIdx];
+				}
+
+				locations[i] = values;
+			}
+
+			for (int i = 0; i < rangeCount; i++) {
+				int locationId = locationIds.get(i);
+
+				if (locationId < 0 || locationId >= locationCount) {
+					throw new IOException(file.getAbsolutePath() + ": invalid location-id " + locationId + " for range #" + i);
+				}
+			}
+
+			return new RangerGeolocationIndex(starts, ends, locationIds, locations, sourceSignature, true);
+		} catch (RuntimeException excp) { // like BufferUnderflowException, ArrayIndexOutOfBoundsException for a truncated or corrupt file
+			throw new IOException(file.getAbsolutePath() + ": invalid geolocation index file", excp);
+		}
+	}
+
+	/**
+	 * Writes the index, along with the location data item names, to the given file.
+	 *
+	 * @param sourceSignature identifies the file the index was built from; see getSourceSignature() of the loaded index
+	 */
+	public void write(File file, String[] metadataNames, long sourceSignature) throws IOException {
+		Map<String, Integer> stringIdx = new HashMap<>();
+		List<String>         strings   = new ArrayList<>();
+
+		for (String name : metadataNames) {
+			addString(name, stringIdx, strings);
+		}
+
+		for (String[] location : locations) {
+			for (String value : location) {
+				addString(value, stringIdx, strings);
+			}
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(sourceSignature);
+			out.writeInt(size);
+			out.writeInt(locations.length);
+
+			for (int i = 0; i < size; i++) {
+				out.writeLong(starts.get(i));
+			}
+
+			for (int i = 0; i < size; i++) {
+				out.writeLong(ends.get(i));
+			}
+
+			for (int i = 0; i < size; i++) {
+				out.writeInt(locationIds.get(i));
+			}
+
+			out.writeInt(strings.size());
+
+			for (String str : strings) {
+				byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(metadataNames.length);
+
+			for (String name : metadataNames) {
+				out.writeInt(stringIdx.get(name));
+			}
+
+			for (String[] location : locations) {
+				out.writeInt(location.length);
+
+				for (String value : location) {
+					out.writeInt(value == null ? -1 : stringIdx.get(value));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return index of the range containing the given IPv4 address; -1 if no range contains it
+	 */
+	public int find(long ipAddress) {
+		int low  = 0;
+		int high = size - 1;
+		int ret  = -1;
+
+		while (low <= high) { // find the last range that starts at or before ipAddress
+			int mid = (low + high) >>> 1;
+
+			if (starts.get(mid) <= ipAddress) {
+				ret = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return ret != -1 && ends.get(ret) >= ipAddress ? ret : -1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getLocationCount() {
+		return locations.length;
+	}
+
+	/**
+	 * @return source-signature in the index file this index was loaded from; 0 for an index built on heap
+	 */
+	public long getSourceSignature() {
+		return sourceSignature;
+	}
+
+	public boolean isMapped() {
+		return isMapped;
+	}
+
+	public long getStart(int idx) {
+		return starts.get(idx);
+	}
+
+	public long getEnd(int idx) {
+		return ends.get(idx);
+	}
+
+	public String[] getLocationData(int idx) {
+		return locations[locationIds.get(idx)];
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+		ByteBuffer dup = buffer.duplicate();
+
+		dup.position(from);
+		dup.limit(to);
+
+		return dup.slice();
+	}
+
+	private static String intern(Map<String, String> strings, String str) {
+		if (str == null) {
+			return null;
+		}
+
+		String ret = strings.get(str);
+
+		if (ret == null) {
+			ret = str;
+
+			strings.put(str, str);
+		}
+
+		return ret;
+	}
+
+	private static void addString(String str, Map<String, Integer> stringIdx, List<String> strings) {
+		if (str != null && !stringIdx.containsKey(str)) {
+			stringIdx.put(str, strings.size());
+			strings.add(str);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.policyengine;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded map for caches that are read concurrently by many threads, as an alternative to
+ * Collections.synchronizedMap(new CacheMap(size)).
+ *
+ * Lookups don't take any lock or update any shared state: each entry records the time of its last access. When the map grows beyond its size,
+ * the least recently used entry among a sample of entries is evicted (sampled LRU), by one thread at a time.
+ */
+public class ConcurrentCacheMap<K, V> {
+    private static final Log LOG = LogFactory.getLog(ConcurrentCacheMap.class);
+
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private final int                            maxSize;
+    private final ConcurrentHashMap<K, Entry<V>> map;
+    private final AtomicBoolean                  evicting      = new AtomicBoolean();
+    private final LongAdder                      hitCount      = new LongAdder();
+    private final LongAdder                      missCount     = new LongAdder();
+    private final LongAdder                      evictionCount = new LongAdder();
+    private Iterator<Map.Entry<K, Entry<V>>>     evictionIter  = null; // accessed only by the thread that holds 'evicting'
+
+    public ConcurrentCacheMap(int maxSize) {
+        this.maxSize = maxSize;
+        this.map     = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+    }
+
+    public V get(K key) {
+        Entry<V> entry = key != null ? map.get(key) : null;
+
+        if (entry != null) {
+            hitCount.increment();
+
+            entry.lastAccessTime = System.nanoTime();
+
+            return entry.value;
+        }
+
+        missCount.increment();
+
+        return null;
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+
+        map.put(key, new Entry<>(value, System.nanoTime()));
+
+        if (map.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public V remove(K key) {
+        Entry<V> entry = key != null ? map.remove(key) : null;
+
+        return entry != null ? entry.value : null;
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public int getMaxSize() { return maxSize; }
+
+    public long getHitCount() { return hitCount.sum(); }
+
+    public long getMissCount() { return missCount.sum(); }
+
+    public long getEvictionCount() { return evictionCount.sum(); }
+
+    @Override
+    public String toString() {
+        return "ConcurrentCacheMap={size=" + map.size() + ", maxSize=" + maxSize + ", hitCount=" + hitCount.sum() + ", missCount=" + missCount.sum() + ", evictionCount=" + evictionCount.sum() + "}";
+    }
+
+    private void evict() {
+        // a thread that finds another thread evicting moves on; the evicting thread checks the size again after
+        // it is done, so that entries added meanwhile don't leave the map above maxSize
+        while (map.size() > maxSize && evicting.compareAndSet(false, true)) {
+            boolean isEmpty = false;
+
+            try {
+                while (!isEmpty && map.size() > maxSize) {
+                    K    victimKey  = null;
+                    long victimTime = Long.MAX_VALUE;
+
+                    // continue sampling where the previous eviction stopped, to sweep over all entries over time
+                    for (int sampled = 0; sampled < EVICTION_SAMPLE_SIZE; sampled++) {
+                        if (evictionIter == null || !evictionIter.hasNext()) {
+                            evictionIter = map.entrySet().iterator();
+
+                            if (!evictionIter.hasNext()) {
+                                break;
+                            }
+                        }
+
+                        Map.Entry<K, Entry<V>> mapEntry = evictionIter.next();
+
+                        if (mapEntry.getValue().lastAccessTime < victimTime) {
+                            victimKey  = mapEntry.getKey();
+                            victimTime = mapEntry.getValue().lastAccessTime;
+                        }
+                    }
+
+                    if (victimKey == null) {
+                        isEmpty = true;
+                    } else if (map.remove(victimKey) != null) {
+                        evictionCount.increment();
+                    }
+                }
+            } finally {
+                evicting.set(false);
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("ConcurrentCacheMap.evict(): " + this);
+            }
+
+            if (isEmpty) {
+                break;
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        final V       value;
+        volatile long lastAccessTime; // System.nanoTime() of the last access
+
+        Entry(V value, long lastAccessTime) {
+            this.value          = value;
+            this.lastAccessTime = lastAccessTime;
+        }
+    }
+}
@@ -65,6 +65,14 @@ public interface RangerPolicyEngine {
 
 	RangerResourceACLs getResourceACLs(RangerAccessRequest request);
 
+	/**
+	 * @return true if the access in request is allowed on every resource of type childResourceName under
+	 *         request.getResource() - like every table of a database; false if it isn't, or can't be determined without
+	 *         evaluating each child. Not audited: callers that audit access evaluate a request for childResourceName
+	 *         '*' to audit the access to all children with one event.
+	 */
+	boolean isAccessAllowedForAllChildren(RangerAccessRequest request, String childResourceName);
+
 	String getMatchedZoneName(GrantRevokeRequest grantRevokeRequest);
 
 	boolean preCleanup();
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.policyengine;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Bounded fork-join pool, shared by all policy-engines in the process, used to build policy-evaluators and
+ * resource-tries of a policy-repository in parallel. With the default thread count of 1, no pool is created
+ * and everything is built in the calling thread, as before.
+ */
+final class RangerPolicyEngineBuildPool {
+    private static final Log LOG = LogFactory.getLog(RangerPolicyEngineBuildPool.class);
+
+    static final String PROP_BUILD_THREAD_COUNT       = "ranger.policyengine.build.thread.count";
+    static final String PROP_BUILD_MIN_PARALLEL_ITEMS = "ranger.policyengine.build.min.parallel.items";
+
+    private static final int DEFAULT_BUILD_THREAD_COUNT       = 1;
+    private static final int DEFAULT_BUILD_MIN_PARALLEL_ITEMS = 64;
+
+    private static volatile ForkJoinPool pool;
+    private static volatile boolean      isInitialized = false;
+    private static          int          minParallelItems;
+
+    private RangerPolicyEngineBuildPool() {
+    }
+
+    /*
+     * Returns the results of applying function to each item, in the order of items. Items are processed in
+     * parallel only if the pool is enabled and there are at least minParallelItems of them.
+     */
+    static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> function, int minItems) {
+        final ForkJoinPool pool = getPool();
+        final List<R>      ret  = new ArrayList<>(items.size());
+
+        if (pool == null || items.size() < Math.max(minItems, 2)) {
+            for (T item : items) {
+                ret.add(function.apply(item));
+            }
+        } else {
+            // worker threads are shared across plugins; run each task with the caller's context class-loader
+            final ClassLoader       classLoader = Thread.currentThread().getContextClassLoader();
+            final List<Callable<R>> tasks       = new ArrayList<>(items.size());
+
+            for (final T item : items) {
+                tasks.add(new Callable<R>() {
+                    @Override
+                    public R call() {
+                        final Thread      thread         = Thread.currentThread();
+                        final ClassLoader oldClassLoader = thread.getContextClassLoader();
+
+                        thread.setContextClassLoader(classLoader);
+
+                        try {
+                            return function.apply(item);
+                        } finally {
+                            thread.setContextClassLoader(oldClassLoader);
+                        }
+                    }
+                });
+            }
+
+            try {
+                for (Future<R> future : pool.invokeAll(tasks)) {
+                    ret.add(future.get());
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+
+                throw new RuntimeException("interrupted while building policy-engine", excp);
+            } catch (ExecutionException excp) {
+                Throwable cause = excp.getCause();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+
+                throw new RuntimeException(cause);
+            }
+        }
+
+        return ret;
+    }
+
+    static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> function) {
+        if (!isInitialized) {
+            getPool();
+        }
+
+        return map(items, function, minParallelItems);
+    }
+
+    private static ForkJoinPool getPool() {
+        if (!isInitialized) {
+            synchronized (RangerPolicyEngineBuildPool.class) {
+                if (!isInitialized) {
+                    RangerConfiguration config      = RangerConfiguration.getInstance();
+                    int                 threadCount = config.getInt(PROP_BUILD_THREAD_COUNT, DEFAULT_BUILD_THREAD_COUNT);
+
+                    minParallelItems = config.getInt(PROP_BUILD_MIN_PARALLEL_ITEMS, DEFAULT_BUILD_MIN_PARALLEL_ITEMS);
+
+                    if (threadCount > 1) {
+                        pool = new ForkJoinPool(threadCount, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                            @Override
+                            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                                ForkJoinWorkerThread ret = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+
+                                ret.setName("RangerPolicyEngineBuilder-" + ret.getPoolIndex());
+                                ret.setDaemon(true);
+
+                                return ret;
+                            }
+                        }, null, false);
+                    }
+
+                    LOG.info("RangerPolicyEngineBuildPool: threadCount=" + threadCount + ", minParallelItems=" + minParallelItems);
+
+                    isInitialized = true;
+                }
+            }
+        }
+
+        return pool;
+    }
+}
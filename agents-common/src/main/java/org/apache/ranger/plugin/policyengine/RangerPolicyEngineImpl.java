@@ -36,6 +36,7 @@ import org.apache.ranger.plugin.model.validation.RangerZoneResourceMatcher;
 import org.apache.ranger.plugin.policyevaluator.RangerPolicyEvaluator;
 import org.apache.ranger.plugin.policyevaluator.RangerPolicyEvaluator.PolicyACLSummary;
 import org.apache.ranger.plugin.policyresourcematcher.RangerPolicyResourceMatcher;
+import org.apache.ranger.plugin.resourcematcher.RangerAbstractResourceMatcher;
 import org.apache.ranger.plugin.store.EmbeddedServiceDefsUtil;
 import org.apache.ranger.plugin.util.*;
 
@@ -50,11 +51,15 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
     private static final Log PERF_POLICYENGINE_REQUEST_LOG = RangerPerfTracer.getPerfLogger("policyengine.request");
     private static final Log PERF_POLICYENGINE_AUDIT_LOG = RangerPerfTracer.getPerfLogger("policyengine.audit");
     private static final Log PERF_CONTEXTENRICHER_REQUEST_LOG = RangerPerfTracer.getPerfLogger("contextenricher.request");
+
+    private static final RangerLatencyHistogram EVALUATE_LATENCY = RangerMetricsRegistry.getInstance().getHistogram(RangerMetricsRegistry.METRIC_POLICY_ENGINE_EVALUATE);
+    private static final RangerLatencyHistogram ENRICHER_LATENCY = RangerMetricsRegistry.getInstance().getHistogram(RangerMetricsRegistry.METRIC_CONTEXT_ENRICHER);
     private static final Log PERF_POLICYENGINE_REBALANCE_LOG = RangerPerfTracer.getPerfLogger("policyengine.rebalance");
     private static final Log PERF_POLICYENGINE_USAGE_LOG = RangerPerfTracer.getPerfLogger("policyengine.usage");
     private static final Log PERF_POLICYENGINE_GET_ACLS_LOG = RangerPerfTracer.getPerfLogger("policyengine.getResourceACLs");
 
     private static final int MAX_POLICIES_FOR_CACHE_TYPE_EVALUATOR = 100;
+    private static final int DEFAULT_ROLES_CACHE_SIZE               = 16 * 1024;
 
     private final RangerPolicyRepository policyRepository;
     private final RangerPolicyRepository tagPolicyRepository;
@@ -73,7 +78,11 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
     private Map<String, String> zoneTagServiceMap;
     private final Map<String, Set<String>> userRoleMapping;
     private final Map<String, Set<String>> groupRoleMapping;
+    private final Set<String> publicGroupRoles;
+    private final ConcurrentCacheMap<UserAndGroups, Set<String>> rolesCache;
     private final RangerPluginContext rangerPluginContext;
+    private final Map<String, Long> buildTimesMs = new HashMap<>();
+    private volatile Boolean hasContextSensitivePolicies; // computed on first use
 
     public RangerPolicyEngineImpl(final RangerPolicyEngineImpl other, ServicePolicies servicePolicies) {
         this(other, servicePolicies, null);
@@ -137,6 +146,8 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
                     } else {
                         policyRepository = new RangerPolicyRepository(otherRepository, zoneDeltas, policyVersion);
                     }
+
+                    addBuildTimes(policyRepository);
                 } else {
                     policyRepository = otherRepository;
                 }
@@ -155,6 +166,8 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
 
         if (other.policyRepository != null && CollectionUtils.isNotEmpty(defaultZoneDeltas)) {
             this.policyRepository = new RangerPolicyRepository(other.policyRepository, defaultZoneDeltas, policyVersion);
+
+            addBuildTimes(this.policyRepository);
         } else {
             this.policyRepository = other.policyRepository;
             other.isPolicyRepositoryShared = true;
@@ -181,6 +194,8 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
                     servicePolicies.getTagPolicies().setPolicies(tagPolicies);
                     this.tagPolicyRepository = new RangerPolicyRepository(other.policyRepository.getAppId(), servicePolicies.getTagPolicies(), other.policyRepository.getOptions(), servicePolicies.getServiceDef(), servicePolicies.getServiceName());
                 }
+
+                addBuildTimes(this.tagPolicyRepository);
             } else {
                 this.tagPolicyRepository = other.tagPolicyRepository;
                 other.isTagPolicyRepositoryShared = true;
@@ -204,8 +219,10 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
         this.allContextEnrichers = tmpList;
 
         // Initialize role-related information
-        userRoleMapping = MapUtils.isNotEmpty(servicePolicies.getUserRoles()) ? servicePolicies.getUserRoles() : null;
-        groupRoleMapping = MapUtils.isNotEmpty(servicePolicies.getGroupRoles()) ? servicePolicies.getGroupRoles() : null;
+        userRoleMapping = getImmutableRoleMapping(servicePolicies.getUserRoles());
+        groupRoleMapping = getImmutableRoleMapping(servicePolicies.getGroupRoles());
+        publicGroupRoles = groupRoleMapping != null && groupRoleMapping.containsKey(RangerPolicyEngine.GROUP_PUBLIC) ? groupRoleMapping.get(RangerPolicyEngine.GROUP_PUBLIC) : Collections.<String>emptySet();
+        rolesCache = new ConcurrentCacheMap<>(other.rolesCache.getMaxSize()); // roles of the other engine may be stale
 
         reorderPolicyEvaluators();
 
@@ -258,6 +275,8 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
 
         policyRepository = new RangerPolicyRepository(appId, servicePolicies, options);
 
+        addBuildTimes(policyRepository);
+
         ServicePolicies.TagPolicies tagPolicies = servicePolicies.getTagPolicies();
 
         if (!options.disableTagPolicyEvaluation
@@ -271,6 +290,8 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
             }
             tagPolicyRepository = new RangerPolicyRepository(appId, tagPolicies, options, servicePolicies.getServiceDef(), servicePolicies.getServiceName());
 
+            addBuildTimes(tagPolicyRepository);
+
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("RangerPolicyEngineImpl : No tag-policy-repository for service " + servicePolicies.getServiceName());
@@ -299,12 +320,15 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
             for (Map.Entry<String, ServicePolicies.SecurityZoneInfo> zone : servicePolicies.getSecurityZones().entrySet()) {
                 RangerPolicyRepository policyRepository = new RangerPolicyRepository(appId, servicePolicies, options, zone.getKey());
                 policyRepositories.put(zone.getKey(), policyRepository);
+                addBuildTimes(policyRepository);
             }
         }
 
         // Initialize role-related information
-        userRoleMapping = MapUtils.isNotEmpty(servicePolicies.getUserRoles()) ? servicePolicies.getUserRoles() : null;
-        groupRoleMapping = MapUtils.isNotEmpty(servicePolicies.getGroupRoles()) ? servicePolicies.getGroupRoles() : null;
+        userRoleMapping = getImmutableRoleMapping(servicePolicies.getUserRoles());
+        groupRoleMapping = getImmutableRoleMapping(servicePolicies.getGroupRoles());
+        publicGroupRoles = groupRoleMapping != null && groupRoleMapping.containsKey(RangerPolicyEngine.GROUP_PUBLIC) ? groupRoleMapping.get(RangerPolicyEngine.GROUP_PUBLIC) : Collections.<String>emptySet();
+        rolesCache = new ConcurrentCacheMap<>(RangerConfiguration.getInstance().getInt("ranger.plugin." + servicePolicies.getServiceName() + ".policyengine.rolescachesize", DEFAULT_ROLES_CACHE_SIZE));
 
         RangerPerfTracer.log(perf);
 
@@ -400,6 +424,23 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
         return policyRepository.getPolicyVersion();
     }
 
+    /**
+     * Time taken, in milliseconds, by each phase of building this policy-engine: "evaluators", "contextEnrichers" and "tries"
+     * for policy-repositories built from policies, and "deltas" for policy-repositories updated with policy-deltas. Repositories
+     * reused from the previous policy-engine are not included.
+     */
+    public Map<String, Long> getBuildTimesMs() {
+        return Collections.unmodifiableMap(buildTimesMs);
+    }
+
+    private void addBuildTimes(RangerPolicyRepository repository) {
+        for (Map.Entry<String, Long> entry : repository.getBuildTimesMs().entrySet()) {
+            Long buildTimeMs = buildTimesMs.get(entry.getKey());
+
+            buildTimesMs.put(entry.getKey(), buildTimeMs == null ? entry.getValue() : buildTimeMs + entry.getValue());
+        }
+    }
+
     @Override
     public void preProcess(RangerAccessRequest request) {
         if (LOG.isDebugEnabled()) {
@@ -437,8 +478,12 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
                     perf = RangerPerfTracer.getPerfTracer(PERF_CONTEXTENRICHER_REQUEST_LOG, "RangerContextEnricher.enrich(requestHashCode=" + Integer.toHexString(System.identityHashCode(request)) + ", enricherName=" + enricher.getName() + ")");
                 }
 
+                long startTimeNanos = System.nanoTime();
+
                 enricher.enrich(request);
 
+                ENRICHER_LATENCY.recordSince(startTimeNanos);
+
                 RangerPerfTracer.log(perf);
             }
 
@@ -479,10 +524,14 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
             LOG.info("RangerPolicyEngineImpl.evaluatePolicies(" + requestHashCode + ", " + request + ")");
         }
 
+        long startTimeNanos = System.nanoTime();
+
         RangerAccessResult ret = zoneAwareAccessEvaluationWithNoAudit(request, policyType);
 
         updatePolicyUsageCounts(request, ret);
 
+        EVALUATE_LATENCY.recordSince(startTimeNanos);
+
         if (resultProcessor != null) {
 
             RangerPerfTracer perfAuditTracer = null;
@@ -515,8 +564,12 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
 
         if (requests != null) {
             for (RangerAccessRequest request : requests) {
+                long startTimeNanos = System.nanoTime();
+
                 RangerAccessResult result = zoneAwareAccessEvaluationWithNoAudit(request, policyType);
 
+                EVALUATE_LATENCY.recordSince(startTimeNanos);
+
                 ret.add(result);
             }
         }
@@ -706,6 +759,92 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
         return ret;
     }
 
+    /*
+     * Access is allowed on every child when, among policies that could match any child:
+     *  - there are no deny policies, so no child can be denied
+     *  - a policy allows the access with wildcards for childResourceName and levels below it, without conditions, so
+     *    that it matches every child alike; evaluating it for one child gives the result for all children
+     * Tag policies and security zones can apply to children individually, so they are not looked into here.
+     * Audit is not looked into either: callers audit the access to all children with one request, for childResourceName
+     * '*' - the allowing policy matches that request as it matches every child.
+     */
+    @Override
+    public boolean isAccessAllowedForAllChildren(RangerAccessRequest request, String childResourceName) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("==> RangerPolicyEngineImpl.isAccessAllowedForAllChildren(" + request + ", " + childResourceName + ")");
+        }
+
+        boolean ret = false;
+
+        if (trieMap == null && !hasTagPolicies(tagPolicyRepository) && hasResourcePolicies(policyRepository)) {
+            setResourceServiceDef(request);
+
+            RangerAccessResource        resource    = request.getResource();
+            Date                        accessTime  = request.getAccessTime() != null ? request.getAccessTime() : new Date();
+            Map<String, Object>         evalContext = new HashMap<>();
+            List<RangerPolicyEvaluator> allowers    = null;
+
+            RangerAccessRequestUtil.setCurrentUserInContext(evalContext, request.getUser());
+
+            for (RangerPolicyEvaluator evaluator : policyRepository.getLikelyMatchPolicyEvaluators(resource, RangerPolicy.POLICY_TYPE_ACCESS)) {
+                if (!evaluator.isApplicable(accessTime)) {
+                    continue;
+                }
+
+                if (evaluator.hasDeny()) {
+                    allowers = null;
+
+                    break;
+                }
+
+                if (isMatchForAllChildren(evaluator, resource, childResourceName, evalContext)) {
+                    if (allowers == null) {
+                        allowers = new ArrayList<>();
+                    }
+
+                    allowers.add(evaluator);
+                }
+            }
+
+            if (allowers != null) {
+                Map<String, Object> childElements = new HashMap<>(resource.getAsMap());
+
+                childElements.put(childResourceName, RangerAbstractResourceMatcher.WILDCARD_ASTERISK);
+
+                RangerAccessResourceImpl childResource = new RangerAccessResourceImpl(childElements, resource.getOwnerUser());
+                RangerAccessRequestImpl  childRequest  = new RangerAccessRequestImpl(childResource, request.getAccessType(), request.getUser(), request.getUserGroups());
+
+                childResource.setServiceDef(resource.getServiceDef());
+                childRequest.setAccessTime(accessTime);
+                RangerAccessRequestUtil.setCurrentUserInContext(childRequest.getContext(), request.getUser());
+
+                Set<String> roles = getRolesFromUserAndGroups(request.getUser(), request.getUserGroups());
+
+                if (CollectionUtils.isNotEmpty(roles)) {
+                    RangerAccessRequestUtil.setCurrentUserRolesInContext(childRequest.getContext(), roles);
+                }
+
+                for (RangerPolicyEvaluator evaluator : allowers) {
+                    RangerAccessResult result = createAccessResult(childRequest, RangerPolicy.POLICY_TYPE_ACCESS);
+
+                    evaluator.evaluate(childRequest, result);
+
+                    if (result.getIsAllowed()) {
+                        ret = true;
+
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("<== RangerPolicyEngineImpl.isAccessAllowedForAllChildren(" + request + ", " + childResourceName + "): " + ret);
+        }
+
+        return ret;
+    }
+
     @Override
     public boolean preCleanup() {
 
@@ -749,6 +888,12 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
             tagPolicyRepository.cleanup();
         }
 
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("RangerPolicyEngineImpl.cleanup(): rolesCache=" + rolesCache);
+        }
+
+        rolesCache.clear();
+
         RangerPerfTracer.log(perf);
 
         if (LOG.isDebugEnabled()) {
@@ -1270,32 +1415,30 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
         return ret;
     }
 
+    /*
+     * Roles of a user and groups are looked up in a cache, as most requests come from a small set of users. The returned
+     * set is immutable, and is shared by requests from the same user and groups.
+     */
     @Override
     public Set<String> getRolesFromUserAndGroups(String user, Set<String> groups) {
-        Set<String> allRoles = new HashSet<>();
-        if (MapUtils.isNotEmpty(userRoleMapping) && StringUtils.isNotEmpty(user)) {
-            Set<String> userRoles = userRoleMapping.get(user);
-            if (CollectionUtils.isNotEmpty(userRoles)) {
-                allRoles.addAll(userRoles);
-            }
+        if (userRoleMapping == null && groupRoleMapping == null) {
+            return Collections.emptySet();
         }
 
-        if (MapUtils.isNotEmpty(groupRoleMapping)) {
-            if (CollectionUtils.isNotEmpty(groups)) {
-                for (String group : groups) {
-                    Set<String> groupRoles = groupRoleMapping.get(group);
-                    if (CollectionUtils.isNotEmpty(groupRoles)) {
-                        allRoles.addAll(groupRoles);
-                    }
-                }
-            }
-            Set<String> publicGroupRoles = groupRoleMapping.get(RangerPolicyEngine.GROUP_PUBLIC);
-            if (CollectionUtils.isNotEmpty(publicGroupRoles)) {
-                allRoles.addAll(publicGroupRoles);
-            }
+        UserAndGroups key = new UserAndGroups(user, groups);
+        Set<String>   ret = rolesCache.get(key);
+
+        if (ret == null) {
+            ret = computeRolesFromUserAndGroups(user, groups);
+
+            rolesCache.put(key.copy(), ret); // key copies groups, which the caller might modify later
         }
 
-        return allRoles;
+        return ret;
+    }
+
+    ConcurrentCacheMap<?, Set<String>> getRolesCache() {
+        return rolesCache;
     }
 
     public List<RangerPolicy> getResourcePolicies(String zoneName) {
@@ -1311,6 +1454,127 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
         return tagPolicyRepository == null ? ListUtils.EMPTY_LIST : tagPolicyRepository.getPolicies();
     }
 
+    /**
+     * @return true if the result of an access request can depend on more than the user, groups, resource and access
+     *         type: i.e. if any policy has a validity schedule or conditions, which can depend on the time of access,
+     *         client address or other context of the request
+     */
+    public boolean hasContextSensitivePolicies() {
+        Boolean ret = hasContextSensitivePolicies;
+
+        if (ret == null) {
+            ret = hasContextSensitivePolicies(getResourcePolicies()) || hasContextSensitivePolicies(getTagPolicies());
+
+            for (RangerPolicyRepository zoneRepository : policyRepositories.values()) {
+                if (ret) {
+                    break;
+                }
+
+                ret = hasContextSensitivePolicies(zoneRepository.getPolicies());
+            }
+
+            hasContextSensitivePolicies = ret;
+        }
+
+        return ret;
+    }
+
+    private Set<String> computeRolesFromUserAndGroups(String user, Set<String> groups) {
+        Set<String> ret = null; // one of the role sets in userRoleMapping/groupRoleMapping, until roles from another set are added
+
+        if (userRoleMapping != null && StringUtils.isNotEmpty(user)) {
+            ret = userRoleMapping.get(user);
+        }
+
+        if (groupRoleMapping != null) {
+            if (CollectionUtils.isNotEmpty(groups)) {
+                for (String group : groups) {
+                    ret = addRoles(ret, groupRoleMapping.get(group));
+                }
+            }
+
+            ret = addRoles(ret, publicGroupRoles);
+        }
+
+        if (ret == null) {
+            ret = Collections.emptySet();
+        } else if (ret instanceof HashSet) { // roles were added to a new set
+            ret = Collections.unmodifiableSet(ret);
+        }
+
+        return ret;
+    }
+
+    private static boolean hasContextSensitivePolicies(List<RangerPolicy> policies) {
+        if (policies != null) {
+            for (RangerPolicy policy : policies) {
+                if (CollectionUtils.isNotEmpty(policy.getValiditySchedules()) || CollectionUtils.isNotEmpty(policy.getConditions()) ||
+                    hasConditions(policy.getPolicyItems()) || hasConditions(policy.getDenyPolicyItems()) ||
+                    hasConditions(policy.getAllowExceptions()) || hasConditions(policy.getDenyExceptions()) ||
+                    hasConditions(policy.getDataMaskPolicyItems()) || hasConditions(policy.getRowFilterPolicyItems())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean hasConditions(List<? extends RangerPolicy.RangerPolicyItem> policyItems) {
+        if (policyItems != null) {
+            for (RangerPolicy.RangerPolicyItem policyItem : policyItems) {
+                if (policyItem != null && CollectionUtils.isNotEmpty(policyItem.getConditions())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static Set<String> addRoles(Set<String> roles, Set<String> rolesToAdd) {
+        final Set<String> ret;
+
+        if (CollectionUtils.isEmpty(rolesToAdd) || rolesToAdd == roles) {
+            ret = roles;
+        } else if (CollectionUtils.isEmpty(roles)) {
+            ret = rolesToAdd;
+        } else if (roles instanceof HashSet) {
+            ret = roles;
+
+            ret.addAll(rolesToAdd);
+        } else if (roles.containsAll(rolesToAdd)) {
+            ret = roles;
+        } else {
+            ret = new HashSet<>(roles);
+
+            ret.addAll(rolesToAdd);
+        }
+
+        return ret;
+    }
+
+    /*
+     * Role sets are copied into immutable sets once, when the engine is built, so that they can be returned by
+     * getRolesFromUserAndGroups() without a copy. Role mappings received from Ranger Admin are already expanded to
+     * include roles granted via other roles.
+     */
+    private static Map<String, Set<String>> getImmutableRoleMapping(Map<String, Set<String>> roleMapping) {
+        Map<String, Set<String>> ret = null;
+
+        if (MapUtils.isNotEmpty(roleMapping)) {
+            ret = new HashMap<>(roleMapping.size());
+
+            for (Map.Entry<String, Set<String>> entry : roleMapping.entrySet()) {
+                if (CollectionUtils.isNotEmpty(entry.getValue())) {
+                    ret.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+                }
+            }
+        }
+
+        return MapUtils.isEmpty(ret) ? null : ret;
+    }
+
     private RangerAccessResult zoneAwareAccessEvaluationWithNoAudit(RangerAccessRequest request, int policyType) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("==> RangerPolicyEngineImpl.zoneAwareAccessEvaluationWithNoAudit(" + request + ", policyType =" + policyType + ")");
@@ -1567,6 +1831,31 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
         return policyRepository != null && CollectionUtils.isNotEmpty(policyRepository.getPolicies());
     }
 
+    /*
+     * true if the policy matches every child of resource of type childResourceName: childResourceName and all levels
+     * below it are wildcards, and nothing in the policy depends on the request - like conditions or {OWNER}
+     */
+    private boolean isMatchForAllChildren(RangerPolicyEvaluator evaluator, RangerAccessResource resource, String childResourceName, Map<String, Object> evalContext) {
+        Map<String, RangerPolicyResource> policyResources = evaluator.getPolicyResource();
+        RangerPolicyResourceMatcher       matcher         = evaluator.getPolicyResourceMatcher();
+
+        if (matcher == null || policyResources == null || !policyResources.containsKey(childResourceName)) {
+            return false;
+        }
+
+        if (CollectionUtils.isNotEmpty(evaluator.getPolicy().getConditions()) || evaluator.hasContextSensitiveSpecification()) {
+            return false;
+        }
+
+        for (Map.Entry<String, RangerPolicyResource> entry : policyResources.entrySet()) {
+            if (resource.getValue(entry.getKey()) == null && Boolean.TRUE.equals(entry.getValue().getIsExcludes())) {
+                return false;
+            }
+        }
+
+        return matcher.getMatchType(resource, evalContext) == RangerPolicyResourceMatcher.MatchType.ANCESTOR_WITH_WILDCARDS;
+    }
+
     private void updatePolicyUsageCounts(RangerAccessRequest accessRequest, RangerAccessResult accessResult) {
 
         boolean auditCountUpdated = false;
@@ -1899,4 +2188,46 @@ public class RangerPolicyEngineImpl implements RangerPolicyEngine {
 
         return ret;
     }
+
+    private static final class UserAndGroups {
+        private final String      user;
+        private final Set<String> groups;
+        private final int         hashCode;
+
+        UserAndGroups(String user, Set<String> groups) {
+            this.user     = user;
+            this.groups   = groups != null ? groups : Collections.<String>emptySet();
+            this.hashCode = 31 * Objects.hashCode(user) + this.groups.hashCode();
+        }
+
+        private UserAndGroups(String user, Set<String> groups, int hashCode) {
+            this.user     = user;
+            this.groups   = groups;
+            this.hashCode = hashCode;
+        }
+
+        UserAndGroups copy() {
+            return new UserAndGroups(user, groups.isEmpty() ? Collections.<String>emptySet() : new HashSet<>(groups), hashCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof UserAndGroups)) {
+                return false;
+            }
+
+            UserAndGroups other = (UserAndGroups) obj;
+
+            return hashCode == other.hashCode && Objects.equals(user, other.user) && groups.equals(other.groups);
+        }
+    }
 }
@@ -34,6 +34,8 @@ public class RangerPolicyEngineOptions {
 	public boolean enableTagEnricherWithLocalRefresher = false;
 	public boolean disableAccessEvaluationWithPolicyACLSummary = true;
 	public boolean optimizeTrieForRetrieval = false;
+	public boolean compactTrieNodes = false;
+	public boolean presetupTrie = false;
 
 	private RangerServiceDefHelper serviceDefHelper;
 
@@ -49,6 +51,8 @@ public class RangerPolicyEngineOptions {
 		this.enableTagEnricherWithLocalRefresher = other.enableTagEnricherWithLocalRefresher;
 		this.disableAccessEvaluationWithPolicyACLSummary = other.disableAccessEvaluationWithPolicyACLSummary;
 		this.optimizeTrieForRetrieval = other.optimizeTrieForRetrieval;
+		this.compactTrieNodes = other.compactTrieNodes;
+		this.presetupTrie = other.presetupTrie;
 		this.serviceDefHelper = null;
 	}
 
@@ -67,6 +71,8 @@ public class RangerPolicyEngineOptions {
 		enableTagEnricherWithLocalRefresher = false;
 		disableAccessEvaluationWithPolicyACLSummary = conf.getBoolean(propertyPrefix + ".policyengine.option.disable.access.evaluation.with.policy.acl.summary", true);
 		optimizeTrieForRetrieval = conf.getBoolean(propertyPrefix + ".policyengine.option.optimize.trie.for.retrieval", false);
+		compactTrieNodes = conf.getBoolean(propertyPrefix + ".policyengine.option.compact.trie.nodes", false);
+		presetupTrie = conf.getBoolean(propertyPrefix + ".policyengine.option.presetup.trie", false);
 
 	}
 
@@ -81,6 +87,8 @@ public class RangerPolicyEngineOptions {
 		enableTagEnricherWithLocalRefresher = false;
 		disableAccessEvaluationWithPolicyACLSummary = conf.getBoolean(propertyPrefix + ".policyengine.option.disable.access.evaluation.with.policy.acl.summary", true);
 		optimizeTrieForRetrieval = conf.getBoolean(propertyPrefix + ".policyengine.option.optimize.trie.for.retrieval", false);
+		compactTrieNodes = conf.getBoolean(propertyPrefix + ".policyengine.option.compact.trie.nodes", false);
+		presetupTrie = conf.getBoolean(propertyPrefix + ".policyengine.option.presetup.trie", false);
 
 	}
 
@@ -90,6 +98,8 @@ public class RangerPolicyEngineOptions {
 		disableTagPolicyEvaluation = conf.getBoolean(propertyPrefix + ".policyengine.option.disable.tagpolicy.evaluation", true);
 		disableTrieLookupPrefilter = conf.getBoolean(propertyPrefix + ".policyengine.option.disable.trie.lookup.prefilter", false);
 		optimizeTrieForRetrieval = conf.getBoolean(propertyPrefix + ".policyengine.option.optimize.trie.for.retrieval", false);
+		compactTrieNodes = conf.getBoolean(propertyPrefix + ".policyengine.option.compact.trie.nodes", false);
+		presetupTrie = conf.getBoolean(propertyPrefix + ".policyengine.option.presetup.trie", false);
 
 
 		cacheAuditResults = false;
@@ -104,6 +114,8 @@ public class RangerPolicyEngineOptions {
 		disableTagPolicyEvaluation = conf.getBoolean(propertyPrefix + ".policyengine.option.disable.tagpolicy.evaluation", false);
 		disableTrieLookupPrefilter = conf.getBoolean(propertyPrefix + ".policyengine.option.disable.trie.lookup.prefilter", false);
 		optimizeTrieForRetrieval = conf.getBoolean(propertyPrefix + ".policyengine.option.optimize.trie.for.retrieval", false);
+		compactTrieNodes = conf.getBoolean(propertyPrefix + ".policyengine.option.compact.trie.nodes", false);
+		presetupTrie = conf.getBoolean(propertyPrefix + ".policyengine.option.presetup.trie", false);
 
 
 		cacheAuditResults = false;
@@ -136,7 +148,9 @@ public class RangerPolicyEngineOptions {
 					&& this.cacheAuditResults == that.cacheAuditResults
 					&& this.evaluateDelegateAdminOnly == that.evaluateDelegateAdminOnly
 					&& this.enableTagEnricherWithLocalRefresher == that.enableTagEnricherWithLocalRefresher
-					&& this.optimizeTrieForRetrieval == that.optimizeTrieForRetrieval;
+					&& this.optimizeTrieForRetrieval == that.optimizeTrieForRetrieval
+					&& this.compactTrieNodes == that.compactTrieNodes
+					&& this.presetupTrie == that.presetupTrie;
 		}
 		return ret;
 	}
@@ -160,6 +174,10 @@ public class RangerPolicyEngineOptions {
 		ret *= 2;
 		ret += optimizeTrieForRetrieval ? 1 : 0;
 		ret *= 2;
+		ret += compactTrieNodes ? 1 : 0;
+		ret *= 2;
+		ret += presetupTrie ? 1 : 0;
+		ret *= 2;
 		return ret;
 	}
 
@@ -174,6 +192,8 @@ public class RangerPolicyEngineOptions {
 				", enableTagEnricherWithLocalRefresher: " + enableTagEnricherWithLocalRefresher +
 				", disableTrieLookupPrefilter: " + disableTrieLookupPrefilter +
 				", optimizeTrieForRetrieval: " + optimizeTrieForRetrieval +
+				", compactTrieNodes: " + compactTrieNodes +
+				", presetupTrie: " + presetupTrie +
 				", cacheAuditResult: " + cacheAuditResults +
 				" }";
 
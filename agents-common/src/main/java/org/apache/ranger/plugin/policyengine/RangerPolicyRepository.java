@@ -36,6 +36,8 @@ import org.apache.ranger.plugin.policyevaluator.RangerCachedPolicyEvaluator;
 import org.apache.ranger.plugin.policyevaluator.RangerOptimizedPolicyEvaluator;
 import org.apache.ranger.plugin.policyevaluator.RangerPolicyEvaluator;
 import org.apache.ranger.plugin.store.AbstractServiceStore;
+import org.apache.ranger.plugin.util.RangerLatencyHistogram;
+import org.apache.ranger.plugin.util.RangerMetricsRegistry;
 import org.apache.ranger.plugin.util.RangerPerfTracer;
 import org.apache.ranger.plugin.util.RangerResourceTrie;
 import org.apache.ranger.plugin.util.ServiceDefUtil;
@@ -57,6 +59,14 @@ class RangerPolicyRepository {
     private static final Log PERF_CONTEXTENRICHER_INIT_LOG = RangerPerfTracer.getPerfLogger("contextenricher.init");
     private static final Log PERF_TRIE_OP_LOG = RangerPerfTracer.getPerfLogger("resourcetrie.retrieval");
 
+    private static final RangerLatencyHistogram TRIE_LOOKUP_LATENCY = RangerMetricsRegistry.getInstance().getHistogram(RangerMetricsRegistry.METRIC_TRIE_LOOKUP);
+
+    // phases of repository construction, for which the time taken is recorded in buildTimesMs
+    static final String BUILD_PHASE_EVALUATORS        = "evaluators";
+    static final String BUILD_PHASE_TRIES             = "tries";
+    static final String BUILD_PHASE_CONTEXT_ENRICHERS = "contextEnrichers";
+    static final String BUILD_PHASE_DELTAS            = "deltas";
+
     enum AuditModeEnum {
         AUDIT_ALL, AUDIT_NONE, AUDIT_DEFAULT
     }
@@ -90,7 +100,7 @@ class RangerPolicyRepository {
     private List<RangerPolicyEvaluator>       rowFilterPolicyEvaluators;
     private Map<Long, RangerPolicyEvaluator>  policyEvaluatorsMap;
     private final AuditModeEnum               auditModeEnum;
-    private final Map<String, AuditInfo>      accessAuditCache;
+    private final ConcurrentCacheMap<String, AuditInfo> accessAuditCache;
 
     private final String                      componentServiceName;
     private final RangerServiceDef            componentServiceDef;
@@ -99,8 +109,10 @@ class RangerPolicyRepository {
     private final Map<String, RangerResourceTrie> rowFilterResourceTrie;
 
     private boolean                           isContextEnrichersShared = false;
+    private final Map<String, Long>           buildTimesMs = new HashMap<>();
 
     RangerPolicyRepository(final RangerPolicyRepository other, final List<RangerPolicyDelta> deltas, long policyVersion) {
+        long startTimeMs = System.currentTimeMillis();
 
         this.serviceName = other.serviceName;
         this.zoneName = other.zoneName;
@@ -116,6 +128,7 @@ class RangerPolicyRepository {
         this.componentServiceDef = other.componentServiceDef;
         this.policyEvaluatorsMap = new HashMap<>(other.policyEvaluatorsMap);
 
+        // tries share nodes with tries of other; only the nodes updated by deltas are copied, in updateTrie()
         if (other.policyResourceTrie != null) {
             this.policyResourceTrie = new HashMap<>();
             for (Map.Entry<String, RangerResourceTrie> entry : other.policyResourceTrie.entrySet()) {
@@ -144,8 +157,8 @@ class RangerPolicyRepository {
         }
 
         if (other.accessAuditCache != null) {
-            int auditResultCacheSize = other.accessAuditCache.size();
-            this.accessAuditCache = Collections.synchronizedMap(new CacheMap<String, AuditInfo>(auditResultCacheSize));
+            int auditResultCacheSize = other.accessAuditCache.getMaxSize();
+            this.accessAuditCache = new ConcurrentCacheMap<>(auditResultCacheSize);
         } else {
             this.accessAuditCache = null;
         }
@@ -250,6 +263,7 @@ class RangerPolicyRepository {
 
         this.policyVersion = policyVersion;
 
+        buildTimesMs.put(BUILD_PHASE_DELTAS, System.currentTimeMillis() - startTimeMs);
     }
 
     RangerPolicyRepository(String appId, ServicePolicies servicePolicies, RangerPolicyEngineOptions options) {
@@ -291,7 +305,7 @@ class RangerPolicyRepository {
                 final int RANGER_POLICYENGINE_AUDITRESULT_CACHE_SIZE = 64 * 1024;
 
                 int auditResultCacheSize = RangerConfiguration.getInstance().getInt(propertyName, RANGER_POLICYENGINE_AUDITRESULT_CACHE_SIZE);
-                accessAuditCache = Collections.synchronizedMap(new CacheMap<String, AuditInfo>(auditResultCacheSize));
+                accessAuditCache = new ConcurrentCacheMap<>(auditResultCacheSize);
             } else {
                 accessAuditCache = null;
             }
@@ -303,23 +317,35 @@ class RangerPolicyRepository {
             LOG.debug("RangerPolicyRepository : building policy-repository for service[" + serviceName + "], and zone:[" + zoneName + "] with auditMode[" + auditModeEnum + "]");
         }
 
+        long startTimeMs = System.currentTimeMillis();
+
         init(options);
 
+        buildTimesMs.put(BUILD_PHASE_EVALUATORS, System.currentTimeMillis() - startTimeMs);
+
+        startTimeMs = System.currentTimeMillis();
+
         if (StringUtils.isEmpty(zoneName)) {
             this.contextEnrichers = Collections.unmodifiableList(buildContextEnrichers(options));
         } else {
             this.contextEnrichers = null;
         }
 
+        buildTimesMs.put(BUILD_PHASE_CONTEXT_ENRICHERS, System.currentTimeMillis() - startTimeMs);
+
+        startTimeMs = System.currentTimeMillis();
+
         if(options.disableTrieLookupPrefilter) {
             policyResourceTrie    = null;
             dataMaskResourceTrie  = null;
             rowFilterResourceTrie = null;
         } else {
-            policyResourceTrie    = createResourceTrieMap(policyEvaluators, options.optimizeTrieForRetrieval);
-            dataMaskResourceTrie  = createResourceTrieMap(dataMaskPolicyEvaluators, options.optimizeTrieForRetrieval);
-            rowFilterResourceTrie = createResourceTrieMap(rowFilterPolicyEvaluators, options.optimizeTrieForRetrieval);
+            policyResourceTrie    = createResourceTrieMap(policyEvaluators, options.optimizeTrieForRetrieval, options.compactTrieNodes, options.presetupTrie);
+            dataMaskResourceTrie  = createResourceTrieMap(dataMaskPolicyEvaluators, options.optimizeTrieForRetrieval, options.compactTrieNodes, options.presetupTrie);
+            rowFilterResourceTrie = createResourceTrieMap(rowFilterPolicyEvaluators, options.optimizeTrieForRetrieval, options.compactTrieNodes, options.presetupTrie);
         }
+
+        buildTimesMs.put(BUILD_PHASE_TRIES, System.currentTimeMillis() - startTimeMs);
     }
 
     RangerPolicyRepository(String appId, ServicePolicies.TagPolicies tagPolicies, RangerPolicyEngineOptions options,
@@ -356,23 +382,35 @@ class RangerPolicyRepository {
             LOG.debug("RangerPolicyRepository : building tag-policy-repository for tag service:[" + serviceName +"], with auditMode[" + auditModeEnum +"]");
         }
 
+        long startTimeMs = System.currentTimeMillis();
+
         init(options);
 
+        buildTimesMs.put(BUILD_PHASE_EVALUATORS, System.currentTimeMillis() - startTimeMs);
+
+        startTimeMs = System.currentTimeMillis();
+
         if (StringUtils.isEmpty(zoneName)) {
             this.contextEnrichers = Collections.unmodifiableList(buildContextEnrichers(options));
         } else {
             this.contextEnrichers = null;
         }
 
+        buildTimesMs.put(BUILD_PHASE_CONTEXT_ENRICHERS, System.currentTimeMillis() - startTimeMs);
+
+        startTimeMs = System.currentTimeMillis();
+
         if(options.disableTrieLookupPrefilter) {
             policyResourceTrie    = null;
             dataMaskResourceTrie  = null;
             rowFilterResourceTrie = null;
         } else {
-            policyResourceTrie    = createResourceTrieMap(policyEvaluators, options.optimizeTrieForRetrieval);
-            dataMaskResourceTrie  = createResourceTrieMap(dataMaskPolicyEvaluators, options.optimizeTrieForRetrieval);
-            rowFilterResourceTrie = createResourceTrieMap(rowFilterPolicyEvaluators, options.optimizeTrieForRetrieval);
+            policyResourceTrie    = createResourceTrieMap(policyEvaluators, options.optimizeTrieForRetrieval, options.compactTrieNodes, options.presetupTrie);
+            dataMaskResourceTrie  = createResourceTrieMap(dataMaskPolicyEvaluators, options.optimizeTrieForRetrieval, options.compactTrieNodes, options.presetupTrie);
+            rowFilterResourceTrie = createResourceTrieMap(rowFilterPolicyEvaluators, options.optimizeTrieForRetrieval, options.compactTrieNodes, options.presetupTrie);
         }
+
+        buildTimesMs.put(BUILD_PHASE_TRIES, System.currentTimeMillis() - startTimeMs);
     }
 
     @Override
@@ -397,6 +435,10 @@ class RangerPolicyRepository {
     void cleanup() {
         preCleanup();
 
+        if (accessAuditCache != null && LOG.isDebugEnabled()) {
+            LOG.debug("RangerPolicyRepository.cleanup(serviceName=" + serviceName + "): accessAuditCache=" + accessAuditCache);
+        }
+
         if (CollectionUtils.isNotEmpty(this.contextEnrichers) && !isContextEnrichersShared) {
             for (RangerContextEnricher enricher : this.contextEnrichers) {
                 enricher.cleanup();
@@ -459,7 +501,8 @@ class RangerPolicyRepository {
             LOG.debug("==> RangerPolicyRepository.setAuditEnabledFromCache()");
         }
 
-        final AuditInfo auditInfo = accessAuditCache != null ? accessAuditCache.get(request.getResource().getAsString()) : null;
+        // getCacheKey() is computed once per resource and, unlike getAsString(), includes resource names
+        final AuditInfo auditInfo = accessAuditCache != null ? accessAuditCache.get(request.getResource().getCacheKey()) : null;
 
         if (auditInfo != null) {
             result.setIsAudited(auditInfo.getIsAudited());
@@ -479,7 +522,7 @@ class RangerPolicyRepository {
         }
 
         if (accessAuditCache != null && result.getIsAuditedDetermined()) {
-            accessAuditCache.put(request.getResource().getAsString(), new AuditInfo(result.getIsAudited(), result.getAuditPolicyId()));
+            accessAuditCache.put(request.getResource().getCacheKey(), new AuditInfo(result.getIsAudited(), result.getAuditPolicyId()));
         }
 
         if (LOG.isDebugEnabled()) {
@@ -518,6 +561,8 @@ class RangerPolicyRepository {
 
     RangerPolicyEngineOptions getOptions() { return options; }
 
+    Map<String, Long> getBuildTimesMs() { return buildTimesMs; }
+
     List<PolicyEvaluatorForTag> getLikelyMatchPolicyEvaluators(Set<RangerTagForEval> tags, int policyType, Date accessTime) {
         List<PolicyEvaluatorForTag> ret = Collections.EMPTY_LIST;
 
@@ -622,6 +667,8 @@ class RangerPolicyRepository {
             perf = RangerPerfTracer.getPerfTracer(PERF_TRIE_OP_LOG, "RangerPolicyRepository.getLikelyMatchEvaluators(resource=" + resource.getAsString() + ")");
         }
 
+        long startTimeNanos = System.nanoTime();
+
         if(CollectionUtils.isNotEmpty(resourceKeys)) {
             List<List<RangerPolicyEvaluator>> resourceEvaluatorsList = null;
             List<RangerPolicyEvaluator> smallestList = null;
@@ -657,17 +704,26 @@ class RangerPolicyRepository {
             }
 
             if (resourceEvaluatorsList != null) {
-                ret = new ArrayList<>(smallestList);
-                for (List<RangerPolicyEvaluator> resourceEvaluators : resourceEvaluatorsList) {
-                    if (resourceEvaluators != smallestList) {
-                        // remove policies from ret that are not in resourceEvaluators
-                        ret.retainAll(resourceEvaluators);
-
-                        if (CollectionUtils.isEmpty(ret)) { // if no policy exists, bail out and return empty list
-                            ret = null;
+                // keep evaluators of smallestList, in its order, that are present in all other lists
+                ret = new ArrayList<>(smallestList.size());
+
+                for (RangerPolicyEvaluator evaluator : smallestList) {
+                    boolean isInAllLists = true;
+
+                    for (List<RangerPolicyEvaluator> resourceEvaluators : resourceEvaluatorsList) {
+                        if (resourceEvaluators != smallestList && !containsEvaluator(resourceEvaluators, evaluator)) {
+                            isInAllLists = false;
                             break;
                         }
                     }
+
+                    if (isInAllLists) {
+                        ret.add(evaluator);
+                    }
+                }
+
+                if (ret.isEmpty()) { // if no policy exists, return empty list
+                    ret = null;
                 }
             } else {
                 ret = smallestList;
@@ -678,6 +734,8 @@ class RangerPolicyRepository {
             ret = Collections.emptyList();
         }
 
+        TRIE_LOOKUP_LATENCY.recordSince(startTimeNanos);
+
         RangerPerfTracer.logAlways(perf);
 
         if(LOG.isDebugEnabled()) {
@@ -687,6 +745,20 @@ class RangerPolicyRepository {
         return ret;
     }
 
+    @SuppressWarnings("unchecked")
+    private static boolean containsEvaluator(List<RangerPolicyEvaluator> evaluators, RangerPolicyEvaluator evaluator) {
+        // lists returned by a trie keep sorted evaluator IDs, which avoids a linear scan over long lists
+        if (evaluators instanceof RangerResourceTrie.EvaluatorList) {
+            return ((RangerResourceTrie.EvaluatorList<RangerPolicyEvaluator>) evaluators).containsId(evaluator.getId());
+        }
+
+        if (evaluators instanceof RangerResourceTrie.MergedEvaluatorList) {
+            return ((RangerResourceTrie.MergedEvaluatorList<RangerPolicyEvaluator>) evaluators).containsId(evaluator.getId());
+        }
+
+        return evaluators.contains(evaluator);
+    }
+
     private RangerServiceDef normalizeAccessTypeDefs(RangerServiceDef serviceDef, final String componentType) {
 
         if (serviceDef != null && StringUtils.isNotBlank(componentType)) {
@@ -901,13 +973,20 @@ class RangerPolicyRepository {
         List<RangerPolicyEvaluator> policyEvaluators = new ArrayList<>();
         List<RangerPolicyEvaluator> dataMaskPolicyEvaluators  = new ArrayList<>();
         List<RangerPolicyEvaluator> rowFilterPolicyEvaluators = new ArrayList<>();
+        List<RangerPolicy>          policiesToBuild           = new ArrayList<>(policies.size());
 
         for (RangerPolicy policy : policies) {
-            if (skipBuildingPolicyEvaluator(policy, options)) {
-                continue;
+            if (!skipBuildingPolicyEvaluator(policy, options)) {
+                policiesToBuild.add(policy);
             }
+        }
 
-            RangerPolicyEvaluator evaluator = buildPolicyEvaluator(policy, serviceDef, options);
+        // evaluators are independent of each other, and can be built in parallel
+        List<RangerPolicyEvaluator> evaluators = RangerPolicyEngineBuildPool.map(policiesToBuild, policy -> buildPolicyEvaluator(policy, serviceDef, options));
+
+        for (int i = 0; i < policiesToBuild.size(); i++) {
+            RangerPolicy          policy    = policiesToBuild.get(i);
+            RangerPolicyEvaluator evaluator = evaluators.get(i);
 
             if (evaluator != null) {
                 if(policy.getPolicyType() == null || policy.getPolicyType() == RangerPolicy.POLICY_TYPE_ACCESS) {
@@ -1131,14 +1210,17 @@ class RangerPolicyRepository {
         return ret;
     }
 
-    private Map<String, RangerResourceTrie> createResourceTrieMap(List<RangerPolicyEvaluator> evaluators, boolean optimizeTrieForRetrieval) {
+    private Map<String, RangerResourceTrie> createResourceTrieMap(List<RangerPolicyEvaluator> evaluators, boolean optimizeTrieForRetrieval, boolean compactTrieNodes, boolean presetupTrie) {
         final Map<String, RangerResourceTrie> ret;
 
         if (serviceDef != null && CollectionUtils.isNotEmpty(serviceDef.getResources())) {
             ret = new HashMap<>();
 
-            for (RangerServiceDef.RangerResourceDef resourceDef : serviceDef.getResources()) {
-                ret.put(resourceDef.getName(), new RangerResourceTrie(resourceDef, evaluators, RangerPolicyEvaluator.EVAL_ORDER_COMPARATOR, optimizeTrieForRetrieval));
+            List<RangerServiceDef.RangerResourceDef> resourceDefs = serviceDef.getResources();
+            List<RangerResourceTrie>                 tries        = RangerPolicyEngineBuildPool.map(resourceDefs, resourceDef -> new RangerResourceTrie(resourceDef, evaluators, RangerPolicyEvaluator.EVAL_ORDER_COMPARATOR, optimizeTrieForRetrieval, compactTrieNodes, presetupTrie), 2);
+
+            for (int i = 0; i < resourceDefs.size(); i++) {
+                ret.put(resourceDefs.get(i).getName(), tries.get(i));
             }
         } else {
             ret = null;
@@ -228,6 +228,11 @@ public class RangerAuthContext implements RangerPolicyEngine {
 		return policyEngine.getResourceACLs(request);
 	}
 
+	@Override
+	public boolean isAccessAllowedForAllChildren(RangerAccessRequest request, String childResourceName) {
+		return policyEngine.isAccessAllowedForAllChildren(request, childResourceName);
+	}
+
 	@Override
 	public String getMatchedZoneName(GrantRevokeRequest grantRevokeRequest) {
 		return policyEngine.getMatchedZoneName(grantRevokeRequest);
@@ -19,20 +19,27 @@
 
 package org.apache.ranger.plugin.service;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.ranger.admin.client.RangerAdminClient;
 import org.apache.ranger.admin.client.RangerAdminRESTClient;
 import org.apache.ranger.audit.provider.AuditHandler;
 import org.apache.ranger.audit.provider.AuditProviderFactory;
+import org.apache.ranger.audit.provider.MiscUtil;
+import org.apache.ranger.audit.provider.MultiDestAuditProvider;
 import org.apache.ranger.audit.provider.StandAloneAuditProviderFactory;
+import org.apache.ranger.audit.queue.AuditBatchQueue;
+import org.apache.ranger.audit.queue.AuditQueue;
 import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
 import org.apache.ranger.authorization.utils.StringUtil;
 import org.apache.ranger.plugin.contextenricher.RangerContextEnricher;
@@ -74,13 +81,19 @@ public class RangerBasePlugin {
 	private RangerAccessResultProcessor resultProcessor;
 	private boolean                   useForwardedIPAddress;
 	private String[]                  trustedProxyAddresses;
-	private Timer                     policyDownloadTimer;
+	private DownloadScheduler         policyDownloadScheduler;
 	private Timer                     policyEngineRefreshTimer;
+	private Timer                     metricsSnapshotTimer;
 	private RangerAuthContextListener authContextListener;
 	private AuditProviderFactory      auditProviderFactory;
+	private RangerPolicyEngineWarmer  policyEngineWarmer;
+	private RangerUserGroupCache      userGroupCache;
+	private volatile Map<String, Long> policyEngineBuildMetrics = Collections.emptyMap();
+	private final Map<String, RangerMetricsRegistry.Gauge> auditQueueGauges = new HashMap<>();
 
 	private final BlockingQueue<DownloadTrigger> policyDownloadQueue = new LinkedBlockingQueue<>();
 	private final DownloadTrigger                accessTrigger       = new DownloadTrigger();
+	private final AtomicLong                     authContextVersion  = new AtomicLong();
 
 
 	Map<String, LogHistory> logHistoryList = new Hashtable<String, RangerBasePlugin.LogHistory>();
@@ -182,6 +195,7 @@ public class RangerBasePlugin {
 
 		String propertyPrefix    = "ranger.plugin." + serviceType;
 		long   pollingIntervalMs = configuration.getLong(propertyPrefix + ".policy.pollIntervalMs", 30 * 1000);
+		long   longPollTimeoutMs = configuration.getLong(propertyPrefix + ".policy.longpoll.timeoutMs", 0);
 		String cacheDir          = configuration.get(propertyPrefix + ".policy.cache.dir");
 		serviceName = configuration.get(propertyPrefix + ".service.name");
 		clusterName = RangerConfiguration.getInstance().get(propertyPrefix + ".access.cluster.name", "");
@@ -220,6 +234,10 @@ public class RangerBasePlugin {
 
 		LOG.info(policyEngineOptions);
 
+		policyEngineWarmer = RangerPolicyEngineWarmer.create(configuration, propertyPrefix);
+
+		userGroupCache = RangerUserGroupCache.create(configuration, propertyPrefix);
+
 		servicePluginMap.put(serviceName, this);
 
 		RangerAdminClient admin = createAdminClient(serviceName, appId, propertyPrefix);
@@ -228,18 +246,8 @@ public class RangerBasePlugin {
 		refresher.setDaemon(true);
 		refresher.startRefresher();
 
-		policyDownloadTimer = new Timer("policyDownloadTimer", true);
-
-		try {
-			policyDownloadTimer.schedule(new DownloaderTask(policyDownloadQueue), pollingIntervalMs, pollingIntervalMs);
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Scheduled policyDownloadRefresher to download policies every " + pollingIntervalMs + " milliseconds");
-			}
-		} catch (IllegalStateException exception) {
-			LOG.error("Error scheduling policyDownloadTimer:", exception);
-			LOG.error("*** Policies will NOT be downloaded every " + pollingIntervalMs + " milliseconds ***");
-			policyDownloadTimer = null;
-		}
+		policyDownloadScheduler = DownloadScheduler.create(configuration, propertyPrefix, "policyDownloadScheduler", policyDownloadQueue, pollingIntervalMs, longPollTimeoutMs);
+		policyDownloadScheduler.start();
 
 		long policyReorderIntervalMs = configuration.getLong(propertyPrefix + ".policy.policyReorderInterval", 60 * 1000);
 		if (policyReorderIntervalMs >= 0 && policyReorderIntervalMs < 15 * 1000) {
@@ -265,6 +273,8 @@ public class RangerBasePlugin {
 		} else {
 			LOG.info("Policies will NOT be reordered based on number of evaluations");
 		}
+
+		initMetrics(configuration, propertyPrefix);
 	}
 
 	public void setPolicies(ServicePolicies policies) {
@@ -309,6 +319,7 @@ public class RangerBasePlugin {
 
 			if (isValid) {
 				RangerPolicyEngine newPolicyEngine = null;
+				long               buildStartTimeMs = System.currentTimeMillis();
 
 				if (!usePolicyDeltas) {
 					if (LOG.isDebugEnabled()) {
@@ -350,6 +361,11 @@ public class RangerBasePlugin {
 
 					newPolicyEngine.setUseForwardedIPAddress(useForwardedIPAddress);
 					newPolicyEngine.setTrustedProxyAddresses(trustedProxyAddresses);
+
+					long buildTimeMs = System.currentTimeMillis() - buildStartTimeMs;
+
+					warmUpAndRecordBuildMetrics(newPolicyEngine, buildTimeMs);
+
 					this.policyEngine = newPolicyEngine;
 					currentAuthContext.setPolicyEngine(this.policyEngine);
 					readOnlyAuthContext = new RangerAuthContext(currentAuthContext);
@@ -360,7 +376,11 @@ public class RangerBasePlugin {
 						LOG.error("preCleanup() failed on the previous policy engine instance !!");
 					}
 					if (this.refresher != null) {
-						this.refresher.saveToCache(usePolicyDeltas ? servicePolicies : policies);
+						if (usePolicyDeltas) {
+							this.refresher.saveToCache(policies, servicePolicies);
+						} else {
+							this.refresher.saveToCache(policies);
+						}
 					}
 				}
 			} else {
@@ -375,7 +395,136 @@ public class RangerBasePlugin {
 		}
 	}
 
+	/**
+	 * Time taken, in milliseconds, to build the current policy-engine: "build" for the whole build, "warmUp" to replay
+	 * sampled requests against it before it was used, and per phase of the build - see RangerPolicyEngineImpl.getBuildTimesMs().
+	 * Also includes "warmUpRequestCount", the number of requests replayed. The times are recorded in histograms
+	 * policyengine.build.&lt;name&gt; of RangerMetricsRegistry, and the request count in counter policyengine.warmup.requests.
+	 */
+	public Map<String, Long> getPolicyEngineBuildMetrics() {
+		return policyEngineBuildMetrics;
+	}
+
+	private void warmUpAndRecordBuildMetrics(RangerPolicyEngine newPolicyEngine, long buildTimeMs) {
+		RangerPolicyEngineWarmer policyEngineWarmer = this.policyEngineWarmer;
+		Map<String, Long>        metrics            = new LinkedHashMap<>();
+		long                     warmUpTimeMs       = 0;
+		long                     warmUpRequestCount = 0;
+
+		if (policyEngineWarmer != null) {
+			long startTimeMs = System.currentTimeMillis();
+
+			warmUpRequestCount = policyEngineWarmer.warmUp(newPolicyEngine);
+			warmUpTimeMs       = System.currentTimeMillis() - startTimeMs;
+		}
+
+		metrics.put("build", buildTimeMs);
+
+		if (newPolicyEngine instanceof RangerPolicyEngineImpl) {
+			metrics.putAll(((RangerPolicyEngineImpl) newPolicyEngine).getBuildTimesMs());
+		}
+
+		metrics.put("warmUp", warmUpTimeMs);
+		metrics.put("warmUpRequestCount", warmUpRequestCount);
+
+		policyEngineBuildMetrics = Collections.unmodifiableMap(metrics);
+
+		RangerMetricsRegistry metricsRegistry = RangerMetricsRegistry.getInstance();
+
+		for (Map.Entry<String, Long> entry : metrics.entrySet()) {
+			if (entry.getKey().equals("warmUpRequestCount")) {
+				metricsRegistry.getCounter(RangerMetricsRegistry.COUNTER_POLICY_ENGINE_WARMUP_REQUESTS).add(entry.getValue());
+			} else {
+				metricsRegistry.getHistogram(RangerMetricsRegistry.METRIC_POLICY_ENGINE_BUILD + "." + entry.getKey()).record(entry.getValue() * 1000);
+			}
+		}
+
+		LOG.info("Policy engine for policy-version " + newPolicyEngine.getPolicyVersion() + " built: timesMs=" + policyEngineBuildMetrics);
+	}
+
+	private void initMetrics(RangerConfiguration configuration, String propertyPrefix) {
+		RangerMetricsRegistry metricsRegistry  = RangerMetricsRegistry.getInstance();
+		boolean               isJmxEnabled     = configuration.getBoolean(propertyPrefix + ".metrics.jmx.enabled", true);
+		String                snapshotFile     = configuration.get(propertyPrefix + ".metrics.snapshot.file");
+		long                  snapshotInterval = configuration.getLong(propertyPrefix + ".metrics.snapshot.intervalMs", 60 * 1000);
+
+		if (isJmxEnabled) {
+			metricsRegistry.enableJmx();
+		}
+
+		if (StringUtils.isNotBlank(snapshotFile) && snapshotInterval > 0) {
+			metricsSnapshotTimer = new Timer("metricsSnapshotTimer", true);
+
+			metricsSnapshotTimer.schedule(metricsRegistry.createSnapshotTask(new File(snapshotFile)), snapshotInterval, snapshotInterval);
+
+			LOG.info("Metrics will be written to " + snapshotFile + " every " + snapshotInterval + " milliseconds");
+		}
+
+		if (auditProviderFactory != null) {
+			addAuditQueueGauges(auditProviderFactory.getAuditProvider());
+
+			for (Map.Entry<String, RangerMetricsRegistry.Gauge> entry : auditQueueGauges.entrySet()) {
+				metricsRegistry.registerGauge(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	// audit queues can't use the registry, as agents-audit doesn't depend on agents-common
+	private void addAuditQueueGauges(AuditHandler auditHandler) {
+		if (auditHandler instanceof MultiDestAuditProvider) {
+			for (AuditHandler provider : ((MultiDestAuditProvider) auditHandler).getAuditProviders()) {
+				addAuditQueueGauges(provider);
+			}
+		} else if (auditHandler instanceof AuditQueue) {
+			if (auditHandler instanceof AuditBatchQueue) {
+				final AuditBatchQueue queue = (AuditBatchQueue) auditHandler;
+				final String          suffix = "." + queue.getFinalPath();
+
+				auditQueueGauges.put(RangerMetricsRegistry.GAUGE_AUDIT_QUEUE_DEPTH + suffix, new RangerMetricsRegistry.Gauge() {
+					@Override
+					public long getValue() {
+						return queue.getQueueDepth();
+					}
+				});
+				auditQueueGauges.put(RangerMetricsRegistry.GAUGE_AUDIT_QUEUE_INFLIGHT + suffix, new RangerMetricsRegistry.Gauge() {
+					@Override
+					public long getValue() {
+						return queue.getInflightBatchCount();
+					}
+				});
+				auditQueueGauges.put(RangerMetricsRegistry.GAUGE_AUDIT_QUEUE_DROPPED + suffix, new RangerMetricsRegistry.Gauge() {
+					@Override
+					public long getValue() {
+						return queue.getDroppedCount();
+					}
+				});
+			}
+
+			addAuditQueueGauges(((AuditQueue) auditHandler).getConsumer());
+		}
+	}
+
+	/**
+	 * Incremented every time the policy-engine is replaced or tags are refreshed, i.e. whenever a
+	 * previously computed access result may no longer be valid.
+	 */
+	public long getAuthContextVersion() {
+		return authContextVersion.get();
+	}
+
+	/**
+	 * @return true if access results can depend on the context of a request - like the time of access - beyond the
+	 *         user, groups, resource and access type; also true if no policy-engine has been set up yet
+	 */
+	public boolean hasContextSensitivePolicies() {
+		RangerPolicyEngine policyEngine = this.policyEngine;
+
+		return !(policyEngine instanceof RangerPolicyEngineImpl) || ((RangerPolicyEngineImpl) policyEngine).hasContextSensitivePolicies();
+	}
+
 	public void contextChanged() {
+		authContextVersion.incrementAndGet();
+
 		RangerAuthContextListener authContextListener = this.authContextListener;
 
 		if (authContextListener != null) {
@@ -391,7 +540,11 @@ public class RangerBasePlugin {
 
 		Timer policyEngineRefreshTimer = this.policyEngineRefreshTimer;
 
-		Timer policyDownloadTimer = this.policyDownloadTimer;
+		DownloadScheduler policyDownloadScheduler = this.policyDownloadScheduler;
+
+		Timer metricsSnapshotTimer = this.metricsSnapshotTimer;
+
+		RangerUserGroupCache userGroupCache = this.userGroupCache;
 
 		String serviceName = this.serviceName;
 
@@ -399,20 +552,36 @@ public class RangerBasePlugin {
 		this.policyEngine = null;
 		this.refresher    = null;
 		this.policyEngineRefreshTimer = null;
-		this.policyDownloadTimer = null;
+		this.policyDownloadScheduler = null;
+		this.metricsSnapshotTimer = null;
+		this.userGroupCache = null;
 
 		if (refresher != null) {
 			refresher.stopRefresher();
 		}
 
-		if (policyDownloadTimer != null) {
-			policyDownloadTimer.cancel();
+		if (policyDownloadScheduler != null) {
+			policyDownloadScheduler.stopScheduler();
 		}
 
 		if (policyEngineRefreshTimer != null) {
 			policyEngineRefreshTimer.cancel();
 		}
 
+		if (metricsSnapshotTimer != null) {
+			metricsSnapshotTimer.cancel();
+		}
+
+		for (Map.Entry<String, RangerMetricsRegistry.Gauge> entry : auditQueueGauges.entrySet()) {
+			RangerMetricsRegistry.getInstance().unregisterGauge(entry.getKey(), entry.getValue());
+		}
+
+		auditQueueGauges.clear();
+
+		if (userGroupCache != null) {
+			userGroupCache.cleanup();
+		}
+
 		if (policyEngine != null) {
 			policyEngine.cleanup();
 		}
@@ -430,6 +599,38 @@ public class RangerBasePlugin {
 		return this.resultProcessor;
 	}
 
+	/**
+	 * @return cache of groups of users, for plugins to look up groups of the user making a request; null if the cache
+	 *         is disabled
+	 */
+	public RangerUserGroupCache getUserGroupCache() {
+		return userGroupCache;
+	}
+
+	/**
+	 * @return groups of the given user, via the group cache if enabled
+	 */
+	public Set<String> getUserGroups(UserGroupInformation ugi) {
+		RangerUserGroupCache userGroupCache = this.userGroupCache;
+
+		if (userGroupCache != null) {
+			return userGroupCache.getGroups(ugi);
+		}
+
+		String[] groups = ugi != null ? ugi.getGroupNames() : null;
+
+		return groups != null ? new HashSet<>(Arrays.asList(groups)) : new HashSet<String>();
+	}
+
+	/**
+	 * @return groups of the given user, via the group cache if enabled
+	 */
+	public Set<String> getUserGroups(String user) {
+		RangerUserGroupCache userGroupCache = this.userGroupCache;
+
+		return userGroupCache != null ? userGroupCache.getGroups(user) : MiscUtil.getGroupsForRequestUser(user);
+	}
+
 	public RangerAccessResult isAccessAllowed(RangerAccessRequest request) {
 		return isAccessAllowed(request, resultProcessor);
 	}
@@ -439,7 +640,12 @@ public class RangerBasePlugin {
 	}
 
 	public RangerAccessResult isAccessAllowed(RangerAccessRequest request, RangerAccessResultProcessor resultProcessor) {
-		RangerPolicyEngine policyEngine = this.policyEngine;
+		RangerPolicyEngine       policyEngine       = this.policyEngine;
+		RangerPolicyEngineWarmer policyEngineWarmer = this.policyEngineWarmer;
+
+		if (policyEngineWarmer != null) {
+			policyEngineWarmer.recordRequest(request);
+		}
 
 		if(policyEngine != null) {
 			policyEngine.preProcess(request);
@@ -451,7 +657,12 @@ public class RangerBasePlugin {
 	}
 
 	public Collection<RangerAccessResult> isAccessAllowed(Collection<RangerAccessRequest> requests, RangerAccessResultProcessor resultProcessor) {
-		RangerPolicyEngine policyEngine = this.policyEngine;
+		RangerPolicyEngine       policyEngine       = this.policyEngine;
+		RangerPolicyEngineWarmer policyEngineWarmer = this.policyEngineWarmer;
+
+		if (policyEngineWarmer != null) {
+			policyEngineWarmer.recordRequests(requests);
+		}
 
 		if(policyEngine != null) {
 			policyEngine.preProcess(requests);
@@ -462,6 +673,17 @@ public class RangerBasePlugin {
 		return null;
 	}
 
+	/**
+	 * @return true if the access in request is allowed on every resource of type childResourceName under the resource
+	 *         of request; false if it isn't, or if each child needs to be evaluated. Not audited; see
+	 *         RangerPolicyEngine.isAccessAllowedForAllChildren()
+	 */
+	public boolean isAccessAllowedForAllChildren(RangerAccessRequest request, String childResourceName) {
+		RangerPolicyEngine policyEngine = this.policyEngine;
+
+		return policyEngine != null && policyEngine.isAccessAllowedForAllChildren(request, childResourceName);
+	}
+
 	public RangerAccessResult evalDataMaskPolicies(RangerAccessRequest request, RangerAccessResultProcessor resultProcessor) {
 		RangerPolicyEngine policyEngine = this.policyEngine;
 
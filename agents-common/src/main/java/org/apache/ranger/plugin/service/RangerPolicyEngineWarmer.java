@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
+import org.apache.ranger.plugin.policyengine.RangerAccessResource;
+import org.apache.ranger.plugin.policyengine.RangerAccessResourceImpl;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngine;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps a sample of recent access requests, and replays them against a newly built policy-engine before it
+ * replaces the current one - so that lazily initialized parts of the new engine (trie nodes, evaluator caches)
+ * are set up by the policy-refresher thread, instead of by the first requests after the switch.
+ *
+ * On average one in sampleInterval requests is kept in a ring of requestCount entries. Sampling is cheap, as it runs
+ * on request threads: a thread-local random draw, and for a sampled request a reference store. Requests are copied
+ * only when replayed, on the policy-refresher thread. Replay doesn't generate audits.
+ */
+class RangerPolicyEngineWarmer {
+    private static final Log LOG = LogFactory.getLog(RangerPolicyEngineWarmer.class);
+
+    private static final int  DEFAULT_WARMUP_REQUEST_COUNT   = 0;
+    private static final int  DEFAULT_WARMUP_SAMPLE_INTERVAL = 100;
+    private static final long DEFAULT_WARMUP_MAX_TIME_MS     = 5 * 1000;
+
+    private final AtomicReferenceArray<RangerAccessRequest> samples;
+    private final AtomicLong                                sampleCount = new AtomicLong();
+    private final int                                       sampleInterval;
+    private final long                                      maxTimeMs;
+
+    RangerPolicyEngineWarmer(int sampleCount, int sampleInterval, long maxTimeMs) {
+        this.samples        = new AtomicReferenceArray<>(sampleCount);
+        this.sampleInterval = sampleInterval;
+        this.maxTimeMs      = maxTimeMs;
+    }
+
+    static RangerPolicyEngineWarmer create(RangerConfiguration config, String propertyPrefix) {
+        int  sampleCount    = config.getInt(propertyPrefix + ".policyengine.warmup.request.count", DEFAULT_WARMUP_REQUEST_COUNT);
+        int  sampleInterval = config.getInt(propertyPrefix + ".policyengine.warmup.sample.interval", DEFAULT_WARMUP_SAMPLE_INTERVAL);
+        long maxTimeMs      = config.getLong(propertyPrefix + ".policyengine.warmup.max.time.ms", DEFAULT_WARMUP_MAX_TIME_MS);
+
+        RangerPolicyEngineWarmer ret = null;
+
+        if (sampleCount > 0 && maxTimeMs > 0) {
+            ret = new RangerPolicyEngineWarmer(sampleCount, Math.max(sampleInterval, 1), maxTimeMs);
+        }
+
+        LOG.info("RangerPolicyEngineWarmer: enabled=" + (ret != null) + ", requestCount=" + sampleCount + ", sampleInterval=" + sampleInterval + ", maxTimeMs=" + maxTimeMs);
+
+        return ret;
+    }
+
+    void recordRequest(RangerAccessRequest request) {
+        if (request != null && ThreadLocalRandom.current().nextInt(sampleInterval) == 0) {
+            samples.set((int) (sampleCount.getAndIncrement() % samples.length()), request);
+        }
+    }
+
+    void recordRequests(Collection<RangerAccessRequest> requests) {
+        if (requests != null) {
+            for (RangerAccessRequest request : requests) {
+                recordRequest(request);
+            }
+        }
+    }
+
+    /*
+     * Returns the number of requests replayed. Stops after maxTimeMs, to not delay a policy update indefinitely.
+     */
+    int warmUp(RangerPolicyEngine policyEngine) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("==> RangerPolicyEngineWarmer.warmUp()");
+        }
+
+        long startTimeMs = System.currentTimeMillis();
+        int  ret         = 0;
+
+        for (int i = 0; i < samples.length(); i++) {
+            RangerAccessRequest sample = samples.get(i);
+
+            if (sample == null) {
+                continue;
+            }
+
+            if (System.currentTimeMillis() - startTimeMs > maxTimeMs) {
+                LOG.warn("RangerPolicyEngineWarmer.warmUp(): stopped after " + ret + " requests, as it took longer than " + maxTimeMs + "ms");
+
+                break;
+            }
+
+            try {
+                // replay a copy: the sample is the caller's request, and preProcess() updates the request
+                RangerAccessRequest request = copyRequest(sample);
+
+                if (request == null) {
+                    continue;
+                }
+
+                policyEngine.preProcess(request);
+                policyEngine.evaluatePolicies(request, RangerPolicy.POLICY_TYPE_ACCESS, null);
+
+                ret++;
+            } catch (Exception excp) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("RangerPolicyEngineWarmer.warmUp(): failed to evaluate request " + sample, excp);
+                }
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("<== RangerPolicyEngineWarmer.warmUp(): replayed " + ret + " requests in " + (System.currentTimeMillis() - startTimeMs) + "ms");
+        }
+
+        return ret;
+    }
+
+    // copies only the fields used in policy evaluation; context is populated again by preProcess()
+    private static RangerAccessRequest copyRequest(RangerAccessRequest request) {
+        RangerAccessResource resource = request.getResource();
+
+        if (resource == null) {
+            return null;
+        }
+
+        RangerAccessRequestImpl ret = new RangerAccessRequestImpl(new RangerAccessResourceImpl(new HashMap<>(resource.getAsMap()), resource.getOwnerUser()),
+                                                                  request.getAccessType(), request.getUser(),
+                                                                  request.getUserGroups() != null ? new HashSet<>(request.getUserGroups()) : null);
+
+        ret.setClientIPAddress(request.getClientIPAddress());
+        ret.setRemoteIPAddress(request.getRemoteIPAddress());
+        ret.setForwardedAddresses(request.getForwardedAddresses());
+        ret.setClientType(request.getClientType());
+        ret.setAction(request.getAction());
+        ret.setClusterName(request.getClusterName());
+        ret.setClusterType(request.getClusterType());
+        ret.setResourceMatchingScope(request.getResourceMatchingScope());
+
+        return ret;
+    }
+}
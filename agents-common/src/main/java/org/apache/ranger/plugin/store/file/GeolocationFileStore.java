@@ -35,6 +35,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -47,6 +49,7 @@ public class GeolocationFileStore implements GeolocationStore {
 	public static final String PROP_GEOLOCATION_FILE_LOCATION = "FilePath";
 	public static final String PROP_GEOLOCATION_FILE_REINIT = "ForceRead";
 	public static final String PROP_GEOLOCATION_IP_IN_DOT_FORMAT = "IPInDotFormat";
+	public static final String PROP_GEOLOCATION_INDEX_FILE_LOCATION = "IndexFilePath";
 
 	private static Map<String, RangerGeolocationDatabase> geolocationDBMap = new HashMap<>();
 
@@ -54,6 +57,7 @@ public class GeolocationFileStore implements GeolocationStore {
 
 	private boolean isMetalineProcessed;
 	private boolean useDotFormat;
+	private String indexFilePath;
 
 	@Override
 	public void init(final Map<String, String> context) {
@@ -70,11 +74,13 @@ public class GeolocationFileStore implements GeolocationStore {
 		String ipInDotFormat = context.get(PROP_GEOLOCATION_IP_IN_DOT_FORMAT);
 		useDotFormat = ipInDotFormat == null || Boolean.parseBoolean(ipInDotFormat);
 
+		indexFilePath = context.get(PROP_GEOLOCATION_INDEX_FILE_LOCATION);
 
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("GeolocationFileStore.init() - Geolocation file location=" + filePathToGeolocationFile);
 			LOG.debug("GeolocationFileStore.init() - Reinitialize flag =" + reinitialize);
 			LOG.debug("GeolocationFileStore.init() - UseDotFormat flag =" + useDotFormat);
+			LOG.debug("GeolocationFileStore.init() - Geolocation index file location=" + indexFilePath);
 		}
 
 		RangerGeolocationDatabase database = geolocationDBMap.get(filePathToGeolocationFile);
@@ -161,6 +167,72 @@ public class GeolocationFileStore implements GeolocationStore {
 	}
 
 	RangerGeolocationDatabase build(String dataFileName) {
+		RangerGeolocationDatabase ret;
+
+		if (StringUtils.isBlank(indexFilePath)) {
+			ret = buildFromDataFile(dataFileName);
+		} else {
+			ret = buildWithIndexFile(dataFileName, new File(indexFilePath));
+		}
+
+		return ret;
+	}
+
+	/*
+	 * Loads the database from the index file, if it was built from the current data file. Otherwise, the database is
+	 * built from the data file and saved to the index file, to be loaded quickly the next time; the database is then
+	 * loaded from the index file, so that ranges are read from the memory-mapped file instead of the heap.
+	 */
+	private RangerGeolocationDatabase buildWithIndexFile(String dataFileName, File indexFile) {
+		long sourceSignature = getSourceSignature(dataFileName);
+
+		if (sourceSignature != -1 && indexFile.isFile()) {
+			try {
+				RangerGeolocationDatabase database = RangerGeolocationDatabase.load(indexFile);
+
+				if (database.getIndex().getSourceSignature() == sourceSignature) {
+					LOG.info("GeolocationFileStore: loaded " + database.getIndex().size() + " ranges from index file '" + indexFile + "'");
+
+					return database;
+				}
+
+				LOG.info("GeolocationFileStore: index file '" + indexFile + "' is stale. Rebuilding it from '" + dataFileName + "'");
+			} catch (IOException excp) {
+				LOG.warn("GeolocationFileStore: failed to load index file '" + indexFile + "'. Rebuilding it from '" + dataFileName + "'", excp);
+			}
+		}
+
+		RangerGeolocationDatabase ret = buildFromDataFile(dataFileName);
+
+		if (ret != null) {
+			File tmpFile = new File(indexFile.getPath() + ".tmp");
+
+			try {
+				ret.save(tmpFile, sourceSignature);
+
+				Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+				ret = RangerGeolocationDatabase.load(indexFile);
+			} catch (IOException excp) {
+				LOG.warn("GeolocationFileStore: failed to write index file '" + indexFile + "'. Using the database on heap", excp);
+
+				tmpFile.delete();
+			}
+		}
+
+		return ret;
+	}
+
+	/*
+	 * @return value that changes when the data file changes; -1 if the data file is not a file, like a resource
+	 */
+	private long getSourceSignature(String dataFileName) {
+		File f = new File(dataFileName);
+
+		return f.isFile() ? (f.lastModified() * 31 + f.length()) & Long.MAX_VALUE : -1;
+	}
+
+	private RangerGeolocationDatabase buildFromDataFile(String dataFileName) {
 
 		RangerGeolocationDatabase database = null;
 
@@ -241,7 +313,7 @@ public class GeolocationFileStore implements GeolocationStore {
 				} else {
 					RangerGeolocationData data = RangerGeolocationData.create(fields, lineNumber, useDotFormat);
 					if (data != null) {
-						database.getData().insert(data);
+						database.add(data);
 					} else {
 						LOG.error("GeolocationFileStore.processLine() - Invalid data specification " + lineNumber + ":" + line);
 					}
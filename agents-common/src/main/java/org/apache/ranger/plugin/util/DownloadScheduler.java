@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Triggers downloads - of policies or tags - by putting a trigger in the given queue, and waits for the download to
+ * complete before scheduling the next one:
+ *
+ * - each interval is varied randomly by +/- jitter, so that plugins started at the same time don't download in lockstep
+ * - after a failed download, the interval doubles with each consecutive failure, up to maxBackoffIntervalMs
+ * - in long-poll mode, where Ranger Admin holds a download request until there is a change or longPollTimeoutMs
+ *   elapses, the next download is triggered as soon as the previous one completes. When a download completes early
+ *   without a change, as with a Ranger Admin that doesn't hold requests, the regular interval is used
+ */
+public final class DownloadScheduler extends Thread {
+    private static final Log LOG = LogFactory.getLog(DownloadScheduler.class);
+
+    private static final double DEFAULT_JITTER           = 0.2;
+    private static final int    DEFAULT_MAX_BACKOFF_RATE = 10; // max interval after failures, as a multiple of the interval
+
+    private final BlockingQueue<DownloadTrigger> queue;
+    private final DownloadTrigger                trigger = new DownloadTrigger();
+    private final long                           intervalMs;
+    private final double                         jitter;
+    private final long                           maxBackoffIntervalMs;
+    private final long                           longPollTimeoutMs;
+
+    /**
+     * @param longPollTimeoutMs time for which Ranger Admin holds a download request without a change; 0 to poll at intervals
+     */
+    public DownloadScheduler(String name, BlockingQueue<DownloadTrigger> queue, long intervalMs, double jitter, long maxBackoffIntervalMs, long longPollTimeoutMs) {
+        super(name);
+
+        this.queue                = queue;
+        this.intervalMs           = Math.max(1, intervalMs);
+        this.jitter               = Math.min(Math.max(jitter, 0), 1);
+        this.maxBackoffIntervalMs = Math.max(this.intervalMs, maxBackoffIntervalMs);
+        this.longPollTimeoutMs    = Math.max(0, longPollTimeoutMs);
+
+        setDaemon(true);
+    }
+
+    /**
+     * @return scheduler configured by properties propertyPrefix.policy.pollInterval.jitter and
+     *         propertyPrefix.policy.pollInterval.max.backoffMs
+     */
+    public static DownloadScheduler create(RangerConfiguration config, String propertyPrefix, String name, BlockingQueue<DownloadTrigger> queue, long intervalMs, long longPollTimeoutMs) {
+        double jitter               = config.getDouble(propertyPrefix + ".policy.pollInterval.jitter", DEFAULT_JITTER);
+        long   maxBackoffIntervalMs = config.getLong(propertyPrefix + ".policy.pollInterval.max.backoffMs", intervalMs * DEFAULT_MAX_BACKOFF_RATE);
+
+        LOG.info(name + ": intervalMs=" + intervalMs + ", jitter=" + jitter + ", maxBackoffIntervalMs=" + maxBackoffIntervalMs + ", longPollTimeoutMs=" + longPollTimeoutMs);
+
+        return new DownloadScheduler(name, queue, intervalMs, jitter, maxBackoffIntervalMs, longPollTimeoutMs);
+    }
+
+    public void stopScheduler() {
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        int  consecutiveFailures = 0;
+        long delayMs             = getNextDelayMs(DownloadTrigger.Result.NOT_MODIFIED, 0, 0);
+
+        try {
+            while (!isInterrupted()) {
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+
+                long startTimeMs = System.currentTimeMillis();
+
+                queue.put(trigger);
+
+                DownloadTrigger.Result result = trigger.waitForCompletion();
+
+                consecutiveFailures = result == DownloadTrigger.Result.FAILED ? consecutiveFailures + 1 : 0;
+                delayMs             = getNextDelayMs(result, consecutiveFailures, System.currentTimeMillis() - startTimeMs);
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(getName() + ": result=" + result + ", consecutiveFailures=" + consecutiveFailures + "; next download in " + delayMs + "ms");
+                }
+            }
+        } catch (InterruptedException excp) {
+            LOG.debug(getName() + ": interrupted. Exiting thread");
+        }
+    }
+
+    long getNextDelayMs(DownloadTrigger.Result result, int consecutiveFailures, long elapsedMs) {
+        final long ret;
+
+        if (result == DownloadTrigger.Result.FAILED) {
+            long backoffMs = intervalMs;
+
+            for (int i = 0; i < consecutiveFailures && backoffMs < maxBackoffIntervalMs; i++) {
+                backoffMs *= 2;
+            }
+
+            ret = addJitter(Math.min(backoffMs, maxBackoffIntervalMs));
+        } else if (longPollTimeoutMs > 0 && (result == DownloadTrigger.Result.UPDATED || elapsedMs >= longPollTimeoutMs / 2)) {
+            ret = 0;
+        } else {
+            ret = addJitter(intervalMs);
+        }
+
+        return ret;
+    }
+
+    private long addJitter(long delayMs) {
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+
+        return (long) (delayMs * factor);
+    }
+}
@@ -20,17 +20,30 @@
 package org.apache.ranger.plugin.util;
 
 public final class DownloadTrigger {
+    public enum Result { UPDATED, NOT_MODIFIED, FAILED }
+
     private boolean isNotified = false;
+    private Result  result     = Result.NOT_MODIFIED;
 
-    public synchronized void waitForCompletion() throws InterruptedException {
+    /**
+     * @return result of the download, as given to signalCompletion()
+     */
+    public synchronized Result waitForCompletion() throws InterruptedException {
         while (!isNotified) {
             wait();
         }
         isNotified = false;
+
+        return result;
     }
 
     public synchronized void signalCompletion() {
+        signalCompletion(Result.NOT_MODIFIED);
+    }
+
+    public synchronized void signalCompletion(Result result) {
+        this.result = result;
         isNotified = true;
         notifyAll();
     }
-}
\ No newline at end of file
+}
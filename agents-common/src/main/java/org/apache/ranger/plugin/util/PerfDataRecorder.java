@@ -27,17 +27,20 @@ import com.google.common.collect.ImmutableMap;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Statistics of RangerPerfCollectorTracer tags, for perf tests and tools. Each tag is recorded in a
+ * RangerLatencyHistogram, so the statistics include percentiles; for always-on metrics, see RangerMetricsRegistry.
+ */
 public class PerfDataRecorder {
 	private static final Log LOG  = LogFactory.getLog(PerfDataRecorder.class);
 	private static final Log PERF = RangerPerfTracer.getPerfLogger(PerfDataRecorder.class);
 
 	private static volatile PerfDataRecorder instance;
-	private Map<String, PerfStatistic> perfStatistics = new HashMap<>();
+	private final ConcurrentHashMap<String, PerfStatistic> perfStatistics = new ConcurrentHashMap<>();
 
 	public static void initialize(List<String> names) {
 		if (instance == null) {
@@ -77,20 +80,17 @@ public class PerfDataRecorder {
 		Collections.sort(tags);
 
 		for (String tag : tags) {
-			PerfStatistic perfStatistic = perfStatistics.get(tag);
-
-			long averageTimeSpent = 0L;
-
-			if (perfStatistic.numberOfInvocations.get() != 0L) {
-				averageTimeSpent = perfStatistic.microSecondsSpent.get()/perfStatistic.numberOfInvocations.get();
-			}
+			RangerLatencyHistogram.Snapshot snapshot = perfStatistics.get(tag).histogram.getSnapshot();
 
 			String logMsg = "[" + tag + "]" +
-                             " execCount: " + perfStatistic.numberOfInvocations.get() +
-                             ", totalTimeTaken: " + perfStatistic.microSecondsSpent.get() + " μs" +
-                             ", maxTimeTaken: " + perfStatistic.maxTimeSpent.get() + " μs" +
-                             ", minTimeTaken: " + perfStatistic.minTimeSpent.get() + " μs" +
-                             ", avgTimeTaken: " + averageTimeSpent + " μs";
+                             " execCount: " + snapshot.getCount() +
+                             ", totalTimeTaken: " + snapshot.getSum() + " μs" +
+                             ", maxTimeTaken: " + snapshot.getMax() + " μs" +
+                             ", minTimeTaken: " + snapshot.getMin() + " μs" +
+                             ", avgTimeTaken: " + snapshot.getMean() + " μs" +
+                             ", p50TimeTaken: " + snapshot.getPercentile(50) + " μs" +
+                             ", p99TimeTaken: " + snapshot.getPercentile(99) + " μs" +
+                             ", p999TimeTaken: " + snapshot.getPercentile(99.9) + " μs";
 
 			LOG.info(logMsg);
 			PERF.debug(logMsg);
@@ -105,13 +105,12 @@ public class PerfDataRecorder {
 		PerfStatistic perfStatistic = perfStatistics.get(tag);
 
 		if (perfStatistic == null) {
-			synchronized (PerfDataRecorder.class) {
-				perfStatistic = perfStatistics.get(tag);
+			PerfStatistic newStatistic = new PerfStatistic(tag);
 
-				if(perfStatistic == null) {
-					perfStatistic = new PerfStatistic();
-					perfStatistics.put(tag, perfStatistic);
-				}
+			perfStatistic = perfStatistics.putIfAbsent(tag, newStatistic);
+
+			if (perfStatistic == null) {
+				perfStatistic = newStatistic;
 			}
 		}
 
@@ -122,7 +121,7 @@ public class PerfDataRecorder {
 		if (CollectionUtils.isNotEmpty(names)) {
 			for (String name : names) {
 				// Create structure
-				perfStatistics.put(name, new PerfStatistic());
+				perfStatistics.put(name, new PerfStatistic(name));
 			}
 		}
 	}
@@ -135,40 +134,38 @@ public class PerfDataRecorder {
 	}
 
 	public static class PerfStatistic {
-		private AtomicLong numberOfInvocations = new AtomicLong(0L);
-		private AtomicLong microSecondsSpent = new AtomicLong(0L);
-		private AtomicLong minTimeSpent = new AtomicLong(Long.MAX_VALUE);
-		private AtomicLong maxTimeSpent = new AtomicLong(Long.MIN_VALUE);
-
-		void addPerfDataItem(final long timeTaken) {
-			numberOfInvocations.getAndIncrement();
-			microSecondsSpent.getAndAdd(timeTaken);
+		private final RangerLatencyHistogram histogram;
 
-			long min = minTimeSpent.get();
-			if(timeTaken < min) {
-				minTimeSpent.compareAndSet(min, timeTaken);
-			}
+		PerfStatistic(String tag) {
+			histogram = new RangerLatencyHistogram(tag);
+		}
 
-			long max = maxTimeSpent.get();
-			if(timeTaken > max) {
-				maxTimeSpent.compareAndSet(max, timeTaken);
-			}
+		void addPerfDataItem(final long timeTaken) {
+			histogram.record(timeTaken);
 		}
 
 		public long getNumberOfInvocations() {
-			return numberOfInvocations.get();
+			return histogram.getSnapshot().getCount();
 		}
 
 		public long getMicroSecondsSpent() {
-			return microSecondsSpent.get();
+			return histogram.getSnapshot().getSum();
 		}
 
 		public long getMinTimeSpent() {
-			return minTimeSpent.get();
+			return histogram.getSnapshot().getMin();
 		}
 
 		public long getMaxTimeSpent() {
-			return maxTimeSpent.get();
+			return histogram.getMaxMicros();
+		}
+
+		public long getPercentileTimeSpent(double percentile) {
+			return histogram.getSnapshot().getPercentile(percentile);
+		}
+
+		public RangerLatencyHistogram.Snapshot getSnapshot() {
+			return histogram.getSnapshot();
 		}
 	}
 }
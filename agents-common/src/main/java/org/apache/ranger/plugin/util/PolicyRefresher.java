@@ -22,9 +22,20 @@ package org.apache.ranger.plugin.util;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -40,8 +51,13 @@ import com.google.gson.GsonBuilder;
 public class PolicyRefresher extends Thread {
 	private static final Log LOG = LogFactory.getLog(PolicyRefresher.class);
 
+	public static final String CACHE_FORMAT_BINARY = "binary";
+	public static final String CACHE_FORMAT_JSON   = "json";
+
 	private static final Log PERF_POLICYENGINE_INIT_LOG = RangerPerfTracer.getPerfLogger("policyengine.init");
 
+	private static final RangerLatencyHistogram REFRESH_LATENCY = RangerMetricsRegistry.getInstance().getHistogram(RangerMetricsRegistry.METRIC_POLICY_REFRESH);
+
 	private final RangerBasePlugin  plugIn;
 	private final String            serviceType;
 	private final String            serviceName;
@@ -49,12 +65,29 @@ public class PolicyRefresher extends Thread {
 	private final BlockingQueue<DownloadTrigger> policyDownloadQueue;
 
 	private final String            cacheFileName;
+	private final String            binaryCacheFileName;
 	private final String            cacheDir;
 	private final Gson              gson;
 	private final boolean           disableCacheIfServiceNotFound;
+	private final boolean           useBinaryCache;
+	private final ExecutorService   cacheWriter;
+	private final long              cacheWriterShutdownTimeoutMs;
+	private final RangerPolicyDeltaLog deltaLog;
+	private final int               deltaLogMaxRecords;
+	private final int               deltaLogMaxSizePercent;
+	private final String            stalenessGaugeName;
+	private final RangerMetricsRegistry.Gauge stalenessGauge;
+
+	private final Object                cacheUpdateLock = new Object();
+	private       ServicePolicies       pendingPolicies;  // latest policies to save; null if there is nothing to save
+	private       List<ServicePolicies> pendingDeltas;    // policy-deltas received since the last save; null if the cache file must be written
+	private       long                  cacheGeneration;  // incremented by disableCache(); updates taken earlier are dropped
+	private volatile long               cacheFileSize;
 
 	private long 	lastKnownVersion    = -1L;
-	private long	lastActivationTimeInMillis;
+	private volatile long lastActivationTimeInMillis;
+	private volatile long lastConfirmedTimeInMillis; // when Ranger Admin last confirmed the policies in use are current
+	private boolean isLastDownloadFailed;
 	private boolean policiesSetInPlugin;
 	private boolean serviceDefSetInPlugin;
 
@@ -78,18 +111,56 @@ public class PolicyRefresher extends Thread {
 		cacheFilename = cacheFilename.replace(File.pathSeparatorChar,  '_');
 
 		this.cacheFileName = cacheFilename;
+		this.binaryCacheFileName = cacheFilename.substring(0, cacheFilename.length() - ".json".length()) + ".bin";
 		this.cacheDir = cacheDir;
 
 		Gson gson = null;
 		try {
-			gson = new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z").create();
+			gson = RangerBinaryJsonFormat.registerTypeAdapters(new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z")).create();
 		} catch(Throwable excp) {
 			LOG.fatal("PolicyRefresher(): failed to create GsonBuilder object", excp);
 		}
 		this.gson = gson;
 
 		String propertyPrefix    = "ranger.plugin." + serviceType;
-		disableCacheIfServiceNotFound = RangerConfiguration.getInstance().getBoolean(propertyPrefix + ".disable.cache.if.servicenotfound", true);
+		RangerConfiguration config = RangerConfiguration.getInstance();
+		disableCacheIfServiceNotFound = config.getBoolean(propertyPrefix + ".disable.cache.if.servicenotfound", true);
+		useBinaryCache                = !StringUtils.equalsIgnoreCase(config.get(propertyPrefix + ".policy.cache.format", CACHE_FORMAT_BINARY), CACHE_FORMAT_JSON);
+		cacheWriterShutdownTimeoutMs  = config.getLong(propertyPrefix + ".policy.cache.writer.shutdown.timeout.ms", 30 * 1000);
+
+		deltaLogMaxRecords            = config.getInt(propertyPrefix + ".policy.cache.delta.log.max.records", 100);
+		deltaLogMaxSizePercent        = config.getInt(propertyPrefix + ".policy.cache.delta.log.max.size.percent", 50);
+
+		if (cacheDir != null && config.getBoolean(propertyPrefix + ".policy.cache.delta.log.enabled", true)) {
+			String deltaLogFileName = cacheFilename.substring(0, cacheFilename.length() - ".json".length()) + "_deltas.log";
+
+			deltaLog = new RangerPolicyDeltaLog(new File(cacheDir + File.separator + deltaLogFileName), gson);
+		} else {
+			deltaLog = null;
+		}
+
+		if (config.getBoolean(propertyPrefix + ".policy.cache.async.write", true)) {
+			cacheWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread ret = new Thread(r, "PolicyCacheWriter-" + serviceName);
+
+					ret.setDaemon(true);
+
+					return ret;
+				}
+			});
+		} else {
+			cacheWriter = null;
+		}
+
+		stalenessGaugeName = RangerMetricsRegistry.GAUGE_POLICY_STALENESS + "." + serviceName;
+		stalenessGauge     = new RangerMetricsRegistry.Gauge() {
+			@Override
+			public long getValue() {
+				return getPolicyStalenessMs();
+			}
+		};
 
 		if(LOG.isDebugEnabled()) {
 			LOG.debug("<== PolicyRefresher(serviceName=" + serviceName + ").PolicyRefresher()");
@@ -132,14 +203,28 @@ public class PolicyRefresher extends Thread {
 		this.lastActivationTimeInMillis = lastActivationTimeInMillis;
 	}
 
+	/**
+	 * @return time in milliseconds since the policies in use were last known to be current: since they were activated,
+	 *         or since Ranger Admin last reported no change; -1 if no policies were activated yet
+	 */
+	public long getPolicyStalenessMs() {
+		long lastCurrentTimeInMillis = Math.max(lastActivationTimeInMillis, lastConfirmedTimeInMillis);
+
+		return lastCurrentTimeInMillis > 0 ? System.currentTimeMillis() - lastCurrentTimeInMillis : -1;
+	}
+
 	public void startRefresher() {
 
 		loadPolicy();
 
+		RangerMetricsRegistry.getInstance().registerGauge(stalenessGaugeName, stalenessGauge);
+
 		super.start();
 	}
 
 	public void stopRefresher() {
+		RangerMetricsRegistry.getInstance().unregisterGauge(stalenessGaugeName, stalenessGauge);
+
 		super.interrupt();
 
 	    try {
@@ -147,6 +232,25 @@ public class PolicyRefresher extends Thread {
 	      } catch (InterruptedException excp) {
 	        LOG.warn("PolicyRefresher(serviceName=" + serviceName + "): error while waiting for thread to exit", excp);
 	      }
+
+		if (rangerAdmin != null) {
+			rangerAdmin.cleanup();
+		}
+
+		if (cacheWriter != null) {
+			// let a pending update reach the cache, so that a restart doesn't start with older policies
+			cacheWriter.shutdown();
+
+			try {
+				if (!cacheWriter.awaitTermination(cacheWriterShutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+					LOG.warn("PolicyRefresher(serviceName=" + serviceName + "): policy cache writer did not complete in " + cacheWriterShutdownTimeoutMs + "ms");
+				}
+			} catch (InterruptedException excp) {
+				LOG.warn("PolicyRefresher(serviceName=" + serviceName + "): interrupted while waiting for policy cache writer to complete", excp);
+
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	public void run() {
@@ -158,8 +262,8 @@ public class PolicyRefresher extends Thread {
 		while(true) {
 			try {
 				DownloadTrigger trigger = policyDownloadQueue.take();
-				loadPolicy();
-				trigger.signalCompletion();
+				DownloadTrigger.Result result = loadPolicy();
+				trigger.signalCompletion(result);
 			} catch(InterruptedException excp) {
 				LOG.info("PolicyRefresher(serviceName=" + serviceName + ").run(): interrupted! Exiting thread", excp);
 				break;
@@ -171,7 +275,7 @@ public class PolicyRefresher extends Thread {
 		}
 	}
 
-	private void loadPolicy() {
+	private DownloadTrigger.Result loadPolicy() {
 
 		if(LOG.isDebugEnabled()) {
 			LOG.debug("==> PolicyRefresher(serviceName=" + serviceName + ").loadPolicy()");
@@ -186,10 +290,24 @@ public class PolicyRefresher extends Thread {
 			PERF_POLICYENGINE_INIT_LOG.debug("In-Use memory: " + (totalMemory-freeMemory) + ", Free memory:" + freeMemory);
 		}
 
+		long startTimeNanos = System.nanoTime();
+
+		DownloadTrigger.Result ret;
+
 		try {
 			//load policy from PolicyAdmin
 			ServicePolicies svcPolicies = loadPolicyfromPolicyAdmin();
 
+			if (svcPolicies != null) {
+				ret = DownloadTrigger.Result.UPDATED;
+			} else if (isLastDownloadFailed) {
+				ret = DownloadTrigger.Result.FAILED;
+			} else {
+				ret = DownloadTrigger.Result.NOT_MODIFIED;
+
+				lastConfirmedTimeInMillis = System.currentTimeMillis();
+			}
+
 			if (svcPolicies == null) {
 				//if Policy fetch from Policy Admin Fails, load from cache
 				if (!policiesSetInPlugin) {
@@ -222,15 +340,25 @@ public class PolicyRefresher extends Thread {
 				lastKnownVersion = -1;
 				serviceDefSetInPlugin = true;
 			}
+
+			ret = DownloadTrigger.Result.FAILED;
 		} catch (Exception excp) {
 			LOG.error("Encountered unexpected exception, ignoring..", excp);
+
+			RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_POLICY_REFRESH_ERROR).increment();
+
+			ret = DownloadTrigger.Result.FAILED;
 		}
 
+		REFRESH_LATENCY.recordSince(startTimeNanos);
+
 		RangerPerfTracer.log(perf);
 
 		if(LOG.isDebugEnabled()) {
-			LOG.debug("<== PolicyRefresher(serviceName=" + serviceName + ").loadPolicy()");
+			LOG.debug("<== PolicyRefresher(serviceName=" + serviceName + ").loadPolicy(): " + ret);
 		}
+
+		return ret;
 	}
 
 	private ServicePolicies loadPolicyfromPolicyAdmin() throws RangerServiceNotFoundException {
@@ -247,6 +375,8 @@ public class PolicyRefresher extends Thread {
 			perf = RangerPerfTracer.getPerfTracer(PERF_POLICYENGINE_INIT_LOG, "PolicyRefresher.loadPolicyFromPolicyAdmin(serviceName=" + serviceName + ")");
 		}
 
+		isLastDownloadFailed = false;
+
 		try {
 			svcPolicies = rangerAdmin.getServicePoliciesIfUpdated(lastKnownVersion, lastActivationTimeInMillis);
 
@@ -274,6 +404,7 @@ public class PolicyRefresher extends Thread {
 		} catch (Exception excp) {
 			LOG.error("PolicyRefresher(serviceName=" + serviceName + "): failed to refresh policies. Will continue to use last known version of policies (" + lastKnownVersion + ")", excp);
 			svcPolicies = null;
+			isLastDownloadFailed = true;
 		}
 
 		RangerPerfTracer.log(perf);
@@ -294,46 +425,76 @@ public class PolicyRefresher extends Thread {
 			LOG.debug("==> PolicyRefresher(serviceName=" + serviceName + ").loadFromCache()");
 		}
 
-		File cacheFile = cacheDir == null ? null : new File(cacheDir + File.separator + cacheFileName);
+		File binaryCacheFile = cacheDir == null ? null : new File(cacheDir + File.separator + binaryCacheFileName);
+		File cacheFile       = cacheDir == null ? null : new File(cacheDir + File.separator + cacheFileName);
 
-    	if(cacheFile != null && cacheFile.isFile() && cacheFile.canRead()) {
-    		Reader reader = null;
+		if(useBinaryCache && binaryCacheFile != null && binaryCacheFile.isFile() && binaryCacheFile.canRead()) {
+			RangerPerfTracer perf = null;
 
-    		RangerPerfTracer perf = null;
+			if(RangerPerfTracer.isPerfTraceEnabled(PERF_POLICYENGINE_INIT_LOG)) {
+				perf = RangerPerfTracer.getPerfTracer(PERF_POLICYENGINE_INIT_LOG, "PolicyRefresher.loadFromBinaryCache(serviceName=" + serviceName + ")");
+			}
 
-    		if(RangerPerfTracer.isPerfTraceEnabled(PERF_POLICYENGINE_INIT_LOG)) {
-    			perf = RangerPerfTracer.getPerfTracer(PERF_POLICYENGINE_INIT_LOG, "PolicyRefresher.loadFromCache(serviceName=" + serviceName + ")");
-    		}
+			try {
+				policies = RangerBinaryJsonFormat.read(gson, binaryCacheFile, ServicePolicies.class);
 
-    		try {
-	        	reader = new FileReader(cacheFile);
+				cacheFileSize = binaryCacheFile.length();
+			} catch (Exception excp) {
+				LOG.error("failed to load policies from cache file " + binaryCacheFile.getAbsolutePath() + ". Will try JSON cache file " + (cacheFile == null ? null : cacheFile.getAbsolutePath()), excp);
+			} finally {
+				RangerPerfTracer.log(perf);
+			}
+		}
+
+		if(policies == null) {
+			// JSON cache: when binary format is disabled, or written by an earlier version
+			if(cacheFile != null && cacheFile.isFile() && cacheFile.canRead()) {
+				Reader reader = null;
 
-		        policies = gson.fromJson(reader, ServicePolicies.class);
+				RangerPerfTracer perf = null;
 
-		        if(policies != null) {
-		        	if(!StringUtils.equals(serviceName, policies.getServiceName())) {
-		        		LOG.warn("ignoring unexpected serviceName '" + policies.getServiceName() + "' in cache file '" + cacheFile.getAbsolutePath() + "'");
+				if(RangerPerfTracer.isPerfTraceEnabled(PERF_POLICYENGINE_INIT_LOG)) {
+					perf = RangerPerfTracer.getPerfTracer(PERF_POLICYENGINE_INIT_LOG, "PolicyRefresher.loadFromCache(serviceName=" + serviceName + ")");
+				}
 
-		        		policies.setServiceName(serviceName);
-		        	}
+				try {
+					reader = new FileReader(cacheFile);
+
+					policies = gson.fromJson(reader, ServicePolicies.class);
+
+					cacheFileSize = cacheFile.length();
+				} catch (Exception excp) {
+					LOG.error("failed to load policies from cache file " + cacheFile.getAbsolutePath(), excp);
+				} finally {
+					RangerPerfTracer.log(perf);
+
+					if(reader != null) {
+						try {
+							reader.close();
+						} catch(Exception excp) {
+							LOG.error("error while closing opened cache file " + cacheFile.getAbsolutePath(), excp);
+						}
+					}
+				}
+			} else if(!useBinaryCache || binaryCacheFile == null || !binaryCacheFile.isFile()) {
+				LOG.warn("cache file does not exist or not readable '" + (cacheFile == null ? null : cacheFile.getAbsolutePath()) + "'");
+			}
+		}
 
-		        	lastKnownVersion = policies.getPolicyVersion() == null ? -1 : policies.getPolicyVersion().longValue();
-		         }
-	        } catch (Exception excp) {
-	        	LOG.error("failed to load policies from cache file " + cacheFile.getAbsolutePath(), excp);
-	        } finally {
-	        	RangerPerfTracer.log(perf);
+		if(policies != null) {
+			if(!StringUtils.equals(serviceName, policies.getServiceName())) {
+				LOG.warn("ignoring unexpected serviceName '" + policies.getServiceName() + "' in policy cache of service '" + serviceName + "'");
 
-	        	if(reader != null) {
-	        		try {
-	        			reader.close();
-	        		} catch(Exception excp) {
-	        			LOG.error("error while closing opened cache file " + cacheFile.getAbsolutePath(), excp);
-	        		}
-	        	}
-	        }
-		} else {
-			LOG.warn("cache file does not exist or not readable '" + (cacheFile == null ? null : cacheFile.getAbsolutePath()) + "'");
+				policies.setServiceName(serviceName);
+			}
+
+			if(deltaLog != null) {
+				policies = deltaLog.replay(policies);
+			}
+
+			lastKnownVersion = policies.getPolicyVersion() == null ? -1 : policies.getPolicyVersion().longValue();
+		} else if(deltaLog != null) {
+			deltaLog.delete();
 		}
 
 		if(LOG.isDebugEnabled()) {
@@ -342,64 +503,283 @@ public class PolicyRefresher extends Thread {
 
 		return policies;
 	}
-	
+
+	/**
+	 * Saves the policies to the cache file. When the cache writer is enabled, which is the default, the file is written
+	 * in its thread and only the latest of the policies saved while a write is in progress is written next.
+	 */
 	public void saveToCache(ServicePolicies policies) {
 		if(LOG.isDebugEnabled()) {
 			LOG.debug("==> PolicyRefresher(serviceName=" + serviceName + ").saveToCache()");
 		}
 
 		if(policies != null) {
-			File cacheFile = null;
-			if (cacheDir != null) {
-				// Create the cacheDir if it doesn't already exist
-				File cacheDirTmp = new File(cacheDir);
-				if (cacheDirTmp.exists()) {
-					cacheFile =  new File(cacheDir + File.separator + cacheFileName);
-				} else {
-					try {
-						cacheDirTmp.mkdirs();
-						cacheFile =  new File(cacheDir + File.separator + cacheFileName);
-					} catch (SecurityException ex) {
-						LOG.error("Cannot create cache directory", ex);
+			scheduleCacheUpdate(policies, null);
+		} else {
+			LOG.info("policies is null. Nothing to save in cache");
+		}
+
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("<== PolicyRefresher(serviceName=" + serviceName + ").saveToCache()");
+		}
+	}
+
+	/**
+	 * Saves policies updated with policy-deltas: the deltas are appended to the delta log, when enabled, instead of
+	 * writing all policies to the cache file. The cache file is written, and the log removed, when the log grows past
+	 * policy.cache.delta.log.max.records records or policy.cache.delta.log.max.size.percent of the cache file size.
+	 *
+	 * @param policyDeltas policy-deltas, as received from Ranger Admin
+	 * @param policies     policies with the deltas applied
+	 */
+	public void saveToCache(ServicePolicies policyDeltas, ServicePolicies policies) {
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("==> PolicyRefresher(serviceName=" + serviceName + ").saveToCache(policyDeltas)");
+		}
+
+		if(policies != null) {
+			scheduleCacheUpdate(policies, deltaLog != null ? policyDeltas : null);
+		} else {
+			LOG.info("policies is null. Nothing to save in cache");
+		}
+
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("<== PolicyRefresher(serviceName=" + serviceName + ").saveToCache(policyDeltas)");
+		}
+	}
+
+	private void scheduleCacheUpdate(ServicePolicies policies, ServicePolicies policyDeltas) {
+		if(cacheWriter == null) {
+			final long generation;
+
+			synchronized (cacheUpdateLock) {
+				generation = cacheGeneration;
+			}
+
+			writeToCache(policies, policyDeltas == null ? null : Collections.singletonList(policyDeltas), generation);
+
+			return;
+		}
+
+		final boolean isWriteScheduled;
+
+		synchronized (cacheUpdateLock) {
+			isWriteScheduled = pendingPolicies != null;
+
+			if(policyDeltas == null) {
+				pendingDeltas = null;
+			} else if(!isWriteScheduled) {
+				pendingDeltas = new ArrayList<>();
+				pendingDeltas.add(policyDeltas);
+			} else if(pendingDeltas != null) {
+				pendingDeltas.add(policyDeltas);
+			} // else: the pending write of the cache file will include these deltas
+
+			pendingPolicies = policies;
+		}
+
+		if(isWriteScheduled) {
+			if(LOG.isDebugEnabled()) {
+				LOG.debug("PolicyRefresher(serviceName=" + serviceName + ").scheduleCacheUpdate(): replaced pending update with policies of version " + policies.getPolicyVersion());
+			}
+		} else {
+			try {
+				cacheWriter.execute(new Runnable() {
+					@Override
+					public void run() {
+						writePendingCacheUpdate();
 					}
+				});
+			} catch (Exception excp) { // RejectedExecutionException, after stopRefresher()
+				LOG.warn("PolicyRefresher(serviceName=" + serviceName + "): policy cache writer is not available. Saving policies in this thread", excp);
+
+				writePendingCacheUpdate();
+			}
+		}
+	}
+
+	private void writePendingCacheUpdate() {
+		final ServicePolicies       policies;
+		final List<ServicePolicies> policyDeltas;
+		final long                  generation;
+
+		synchronized (cacheUpdateLock) {
+			policies     = pendingPolicies;
+			policyDeltas = pendingDeltas;
+			generation   = cacheGeneration;
+
+			pendingPolicies = null;
+			pendingDeltas   = null;
+		}
+
+		if(policies != null) {
+			writeToCache(policies, policyDeltas, generation);
+		}
+	}
+
+	/*
+	 * generation: value of cacheGeneration when the update was taken. Files are updated while holding cacheUpdateLock,
+	 * and only if disableCache() hasn't been called since; serializing the policies is done without the lock.
+	 */
+	private void writeToCache(ServicePolicies policies, List<ServicePolicies> policyDeltas, long generation) {
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("==> PolicyRefresher(serviceName=" + serviceName + ").writeToCache(policyVersion=" + policies.getPolicyVersion() + ", policyDeltas=" + (policyDeltas == null ? null : policyDeltas.size()) + ")");
+		}
+
+		if(policyDeltas == null || !appendToDeltaLog(policyDeltas, generation)) {
+			writeCacheFile(policies, generation);
+		}
+
+		if(LOG.isDebugEnabled()) {
+			LOG.debug("<== PolicyRefresher(serviceName=" + serviceName + ").writeToCache(policyVersion=" + policies.getPolicyVersion() + ")");
+		}
+	}
+
+	// returns true if the deltas were appended, or dropped as the cache has been disabled
+	private boolean appendToDeltaLog(List<ServicePolicies> policyDeltas, long generation) {
+		if(deltaLog == null) {
+			return false;
+		}
+
+		synchronized (cacheUpdateLock) {
+			if(generation != cacheGeneration) {
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("PolicyRefresher(serviceName=" + serviceName + "): policy cache has been disabled. Dropped " + policyDeltas.size() + " policy-deltas");
 				}
+
+				return true;
 			}
-			
-	    	if(cacheFile != null) {
 
+			return appendToDeltaLog(policyDeltas);
+		}
+	}
+
+	private boolean appendToDeltaLog(List<ServicePolicies> policyDeltas) {
+		boolean ret = false;
+
+		if(deltaLog != null && deltaLog.getBaseVersion() != -1) {
+			boolean isCompactionDue = deltaLog.getRecordCount() + policyDeltas.size() > deltaLogMaxRecords
+			                          || deltaLog.getSize() * 100 > cacheFileSize * deltaLogMaxSizePercent;
+
+			if(!isCompactionDue) {
 				RangerPerfTracer perf = null;
 
 				if(RangerPerfTracer.isPerfTraceEnabled(PERF_POLICYENGINE_INIT_LOG)) {
-					perf = RangerPerfTracer.getPerfTracer(PERF_POLICYENGINE_INIT_LOG, "PolicyRefresher.saveToCache(serviceName=" + serviceName + ")");
+					perf = RangerPerfTracer.getPerfTracer(PERF_POLICYENGINE_INIT_LOG, "PolicyRefresher.appendToDeltaLog(serviceName=" + serviceName + ")");
 				}
 
-				Writer writer = null;
-	
 				try {
-					writer = new FileWriter(cacheFile);
-	
-			        gson.toJson(policies, writer);
-		        } catch (Exception excp) {
-		        	LOG.error("failed to save policies to cache file '" + cacheFile.getAbsolutePath() + "'", excp);
-		        } finally {
-		        	if(writer != null) {
-		        		try {
-		        			writer.close();
-		        		} catch(Exception excp) {
-		        			LOG.error("error while closing opened cache file '" + cacheFile.getAbsolutePath() + "'", excp);
-		        		}
-		        	}
-		        }
+					deltaLog.append(policyDeltas);
+
+					ret = true;
+				} catch (Exception excp) {
+					LOG.error("failed to save policy-deltas to '" + deltaLog.getFile().getAbsolutePath() + "'. Will save all policies to cache file", excp);
+				}
 
 				RangerPerfTracer.log(perf);
+			} else {
+				if(LOG.isDebugEnabled()) {
+					LOG.debug("PolicyRefresher(serviceName=" + serviceName + "): compacting policy-delta log: recordCount=" + deltaLog.getRecordCount() + ", size=" + deltaLog.getSize() + ", cacheFileSize=" + cacheFileSize);
+				}
+			}
+		}
 
-	    	}
-		} else {
-			LOG.info("policies is null. Nothing to save in cache");
+		return ret;
+	}
+
+	private void writeCacheFile(ServicePolicies policies, long generation) {
+		File cacheDirFile = null;
+		if (cacheDir != null) {
+			// Create the cacheDir if it doesn't already exist
+			File cacheDirTmp = new File(cacheDir);
+			if (cacheDirTmp.exists()) {
+				cacheDirFile = cacheDirTmp;
+			} else {
+				try {
+					cacheDirTmp.mkdirs();
+					cacheDirFile = cacheDirTmp;
+				} catch (SecurityException ex) {
+					LOG.error("Cannot create cache directory", ex);
+				}
+			}
 		}
 
-		if(LOG.isDebugEnabled()) {
-			LOG.debug("<== PolicyRefresher(serviceName=" + serviceName + ").saveToCache()");
+		if(cacheDirFile != null) {
+			File cacheFile = new File(cacheDirFile, useBinaryCache ? binaryCacheFileName : cacheFileName);
+			File staleFile = new File(cacheDirFile, useBinaryCache ? cacheFileName : binaryCacheFileName);
+			File tmpFile   = null;
+
+			RangerPerfTracer perf = null;
+
+			if(RangerPerfTracer.isPerfTraceEnabled(PERF_POLICYENGINE_INIT_LOG)) {
+				perf = RangerPerfTracer.getPerfTracer(PERF_POLICYENGINE_INIT_LOG, "PolicyRefresher.saveToCache(serviceName=" + serviceName + ")");
+			}
+
+			try {
+				// write to a temporary file and rename, so that a crash or a concurrent reader never sees a partial file
+				tmpFile = File.createTempFile(cacheFile.getName() + ".", ".tmp", cacheDirFile);
+
+				if(useBinaryCache) {
+					RangerBinaryJsonFormat.write(gson, policies, ServicePolicies.class, tmpFile);
+				} else {
+					writeJson(policies, tmpFile);
+				}
+
+				synchronized (cacheUpdateLock) {
+					if(generation != cacheGeneration) {
+						LOG.info("PolicyRefresher(serviceName=" + serviceName + "): policy cache has been disabled. Dropped policies of version " + policies.getPolicyVersion());
+					} else {
+						try {
+							Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+						} catch (AtomicMoveNotSupportedException excp) {
+							Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+						}
+
+						tmpFile = null;
+
+						cacheFileSize = cacheFile.length();
+
+						// the cache file in the other format has older policies; remove it so that it isn't loaded later
+						if(staleFile.exists() && !staleFile.delete()) {
+							LOG.warn("failed to delete stale policy cache file '" + staleFile.getAbsolutePath() + "'");
+						}
+
+						// deltas in the log are included in the cache file now
+						if(deltaLog != null) {
+							deltaLog.reset(policies.getPolicyVersion() == null ? -1 : policies.getPolicyVersion());
+						}
+					}
+				}
+			} catch (Exception excp) {
+				LOG.error("failed to save policies to cache file '" + cacheFile.getAbsolutePath() + "'", excp);
+
+				// deltas can't be appended to a log for an older cache file
+				if(deltaLog != null) {
+					synchronized (cacheUpdateLock) {
+						deltaLog.delete();
+					}
+				}
+			} finally {
+				if(tmpFile != null && tmpFile.exists() && !tmpFile.delete()) {
+					LOG.warn("failed to delete temporary cache file '" + tmpFile.getAbsolutePath() + "'");
+				}
+			}
+
+			RangerPerfTracer.log(perf);
+		}
+	}
+
+	private void writeJson(ServicePolicies policies, File file) throws IOException {
+		Writer writer = null;
+
+		try {
+			writer = new FileWriter(file);
+
+			gson.toJson(policies, writer);
+		} finally {
+			if(writer != null) {
+				writer.close();
+			}
 		}
 	}
 
@@ -408,17 +788,37 @@ public class PolicyRefresher extends Thread {
 			LOG.debug("==> PolicyRefresher.disableCache(serviceName=" + serviceName + ")");
 		}
 
-		File cacheFile = cacheDir == null ? null : new File(cacheDir + File.separator + cacheFileName);
+		boolean cacheFound = false;
 
-		if(cacheFile != null && cacheFile.isFile() && cacheFile.canRead()) {
-			LOG.warn("Cleaning up local cache");
-			String renamedCacheFile = cacheFile.getAbsolutePath() + "_" + System.currentTimeMillis();
-			if (!cacheFile.renameTo(new File(renamedCacheFile))) {
-				LOG.error("Failed to move " + cacheFile.getAbsolutePath() + " to " + renamedCacheFile);
-			} else {
-				LOG.warn("Moved " + cacheFile.getAbsolutePath() + " to " + renamedCacheFile);
+		// under the lock, so that a cache update in progress in the writer thread doesn't restore the cache files
+		synchronized (cacheUpdateLock) {
+			cacheGeneration++;
+
+			pendingPolicies = null;
+			pendingDeltas   = null;
+
+			if (deltaLog != null) {
+				deltaLog.delete();
 			}
-		} else {
+
+			for (String fileName : new String[] { binaryCacheFileName, cacheFileName }) {
+				File cacheFile = cacheDir == null ? null : new File(cacheDir + File.separator + fileName);
+
+				if(cacheFile != null && cacheFile.isFile() && cacheFile.canRead()) {
+					cacheFound = true;
+
+					LOG.warn("Cleaning up local cache");
+					String renamedCacheFile = cacheFile.getAbsolutePath() + "_" + System.currentTimeMillis();
+					if (!cacheFile.renameTo(new File(renamedCacheFile))) {
+						LOG.error("Failed to move " + cacheFile.getAbsolutePath() + " to " + renamedCacheFile);
+					} else {
+						LOG.warn("Moved " + cacheFile.getAbsolutePath() + " to " + renamedCacheFile);
+					}
+				}
+			}
+		}
+
+		if (!cacheFound) {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("No local policy cache found. No need to disable it!");
 			}
@@ -0,0 +1,878 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact binary encoding of the JSON token stream produced by Gson, used for local caches of large objects like
+ * ServicePolicies. The same Gson type-adapters used for the JSON cache read and write this format, so the object
+ * model needs no changes to be cached in it.
+ *
+ * File layout:
+ *   header : int magic, int format-version, long offset of the string-table
+ *   body   : tokens - a tag byte, followed by a varint string-index for names and strings, a zig-zag varint for
+ *            integral numbers, or 8 bytes for other numbers
+ *   strings: varint count, followed by varint length and UTF-8 bytes of each string
+ *
+ * Every distinct name and string value is stored once, in the string-table; a file is read by memory-mapping it,
+ * decoding the string-table once and then reading the tokens directly from the mapped buffer - without the
+ * character decoding, tokenizing and per-value string allocation of JSON parsing.
+ *
+ * Gson must be configured with registerTypeAdapters(), since Gson's own map type-adapter relies on internals of
+ * JsonReader that a subclass can't provide. Methods of JsonReader/JsonWriter that this format doesn't implement fail
+ * with an IOException, instead of reading or writing JSON text.
+ */
+public final class RangerBinaryJsonFormat {
+    public static final int MAGIC          = 0x524a5342; // "RJSB"
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte TAG_BEGIN_OBJECT  = 1;
+    private static final byte TAG_END_OBJECT    = 2;
+    private static final byte TAG_BEGIN_ARRAY   = 3;
+    private static final byte TAG_END_ARRAY     = 4;
+    private static final byte TAG_NAME          = 5;
+    private static final byte TAG_STRING        = 6;
+    private static final byte TAG_NULL          = 7;
+    private static final byte TAG_TRUE          = 8;
+    private static final byte TAG_FALSE         = 9;
+    private static final byte TAG_LONG          = 10;
+    private static final byte TAG_DOUBLE        = 11;
+    private static final byte TAG_NUMBER_STRING = 12; // numbers that don't fit in long/double, like BigDecimal
+    private static final int  TAG_END_DOCUMENT  = -1;
+    private static final int  TAG_NOT_PEEKED    = -2;
+
+    private RangerBinaryJsonFormat() {
+    }
+
+    public static GsonBuilder registerTypeAdapters(GsonBuilder builder) {
+        return builder.registerTypeAdapterFactory(new MapTypeAdapterFactory());
+    }
+
+    public static void write(Gson gson, Object src, Type type, File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out    = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            BinaryJsonWriter writer = new BinaryJsonWriter(out);
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(0); // offset of the string-table, updated below
+
+            try {
+                gson.toJson(src, type, writer);
+            } catch (RuntimeException excp) { // like JsonIOException, for a value that can't be written in this format
+                throw new IOException("failed to write in binary JSON format", excp);
+            }
+
+            long stringTableOffset = HEADER_SIZE + writer.getBodySize();
+
+            writer.writeStringTable();
+
+            out.flush();
+
+            ByteBuffer offset = ByteBuffer.allocate(8);
+
+            offset.putLong(0, stringTableOffset);
+
+            channel.write(offset, 8);
+            channel.force(true);
+        }
+    }
+
+    public static <T> T read(Gson gson, File file, Type type) throws IOException {
+        final MappedByteBuffer buffer;
+
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException(file.getAbsolutePath() + ": truncated file");
+        }
+
+        int  magic             = buffer.getInt();
+        int  formatVersion     = buffer.getInt();
+        long stringTableOffset = buffer.getLong();
+
+        if (magic != MAGIC) {
+            throw new IOException(file.getAbsolutePath() + ": not in binary JSON format");
+        }
+
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException(file.getAbsolutePath() + ": unsupported format version " + formatVersion + "; expected " + FORMAT_VERSION);
+        }
+
+        if (stringTableOffset < HEADER_SIZE || stringTableOffset > buffer.limit()) {
+            throw new IOException(file.getAbsolutePath() + ": incomplete file, string-table offset=" + stringTableOffset);
+        }
+
+        try {
+            buffer.position((int) stringTableOffset);
+
+            String[] strings = readStringTable(buffer);
+
+            buffer.position(HEADER_SIZE);
+            buffer.limit((int) stringTableOffset);
+
+            return gson.fromJson(new BinaryJsonReader(buffer, strings), type);
+        } catch (RuntimeException excp) { // like BufferUnderflowException, JsonSyntaxException for a corrupt file
+            throw new IOException(file.getAbsolutePath() + ": failed to read", excp);
+        }
+    }
+
+    private static String[] readStringTable(ByteBuffer buffer) {
+        int      count   = readVarInt(buffer);
+        String[] ret     = new String[count];
+        byte[]   scratch = new byte[256];
+
+        for (int i = 0; i < count; i++) {
+            int length = readVarInt(buffer);
+
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+
+            buffer.get(scratch, 0, length);
+
+            ret[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        return ret;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        return (int) readVarLong(buffer);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long ret   = 0;
+        int  shift = 0;
+
+        while (true) {
+            byte b = buffer.get();
+
+            ret |= (long) (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                break;
+            }
+
+            shift += 7;
+        }
+
+        return ret;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+
+            value >>>= 7;
+        }
+
+        out.writeByte((int) value);
+    }
+
+    // JsonWriter/JsonReader write/read JSON text through these only in methods not overridden below
+    private static final Writer UNUSED_WRITER = new Writer() {
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException { throw new IOException("JSON text can't be written in binary JSON format"); }
+
+        @Override
+        public void flush() { }
+
+        @Override
+        public void close() { }
+    };
+
+    private static final Reader UNUSED_READER = new Reader() {
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException { throw new IOException("JSON text can't be read from binary JSON format"); }
+
+        @Override
+        public void close() { }
+    };
+
+    static final class BinaryJsonWriter extends JsonWriter {
+        private final DataOutputStream     out;
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final List<String>         strings     = new ArrayList<>();
+        private       String               deferredName;
+
+        BinaryJsonWriter(DataOutputStream out) {
+            super(UNUSED_WRITER);
+
+            this.out = out;
+        }
+
+        long getBodySize() throws IOException {
+            if (out.size() == Integer.MAX_VALUE) { // DataOutputStream.size() stops counting here
+                throw new IOException("too large to write in binary JSON format");
+            }
+
+            return out.size() - HEADER_SIZE;
+        }
+
+        void writeStringTable() throws IOException {
+            writeVarLong(out, strings.size());
+
+            for (String str : strings) {
+                byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+
+                writeVarLong(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            writeDeferredName();
+            out.writeByte(TAG_BEGIN_ARRAY);
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            out.writeByte(TAG_END_ARRAY);
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            writeDeferredName();
+            out.writeByte(TAG_BEGIN_OBJECT);
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            deferredName = null;
+
+            out.writeByte(TAG_END_OBJECT);
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            if (name == null) {
+                throw new NullPointerException("name == null");
+            }
+
+            if (deferredName != null) {
+                throw new IllegalStateException("name() called twice, without a value: " + deferredName + ", " + name);
+            }
+
+            // written along with the value, so that names of null values can be skipped when serializeNulls is false
+            deferredName = name;
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+
+            writeDeferredName();
+            writeString(TAG_STRING, value);
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            if (deferredName != null) {
+                if (!getSerializeNulls()) {
+                    deferredName = null;
+
+                    return this;
+                }
+
+                writeDeferredName();
+            }
+
+            out.writeByte(TAG_NULL);
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            writeDeferredName();
+            out.writeByte(value ? TAG_TRUE : TAG_FALSE);
+
+            return this;
+        }
+
+        // overrides JsonWriter.value(Boolean) of later Gson versions
+        public JsonWriter value(Boolean value) throws IOException {
+            return value == null ? nullValue() : value(value.booleanValue());
+        }
+
+        // overrides JsonWriter.value(float) of later Gson versions
+        public JsonWriter value(float value) throws IOException {
+            return value((double) value);
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+                throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+            }
+
+            writeDeferredName();
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(value);
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            writeDeferredName();
+            out.writeByte(TAG_LONG);
+            writeVarLong(out, (value << 1) ^ (value >> 63));
+
+            return this;
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            if (value == null) {
+                return nullValue();
+            }
+
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return value(value.longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                return value(value.doubleValue());
+            }
+
+            writeDeferredName();
+            writeString(TAG_NUMBER_STRING, value.toString());
+
+            return this;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+
+        private void writeDeferredName() throws IOException {
+            if (deferredName != null) {
+                writeString(TAG_NAME, deferredName);
+
+                deferredName = null;
+            }
+        }
+
+        private void writeString(byte tag, String str) throws IOException {
+            Integer index = stringIndex.get(str);
+
+            if (index == null) {
+                index = strings.size();
+
+                strings.add(str);
+                stringIndex.put(str, index);
+            }
+
+            out.writeByte(tag);
+            writeVarLong(out, index);
+        }
+    }
+
+    static final class BinaryJsonReader extends JsonReader {
+        private final ByteBuffer buffer;
+        private final String[]   strings;
+        private       int        peekedTag = TAG_NOT_PEEKED;
+
+        BinaryJsonReader(ByteBuffer buffer, String[] strings) {
+            super(UNUSED_READER);
+
+            this.buffer  = buffer;
+            this.strings = strings;
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            consume(TAG_BEGIN_ARRAY, JsonToken.BEGIN_ARRAY);
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            consume(TAG_END_ARRAY, JsonToken.END_ARRAY);
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            consume(TAG_BEGIN_OBJECT, JsonToken.BEGIN_OBJECT);
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            consume(TAG_END_OBJECT, JsonToken.END_OBJECT);
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            int tag = peekTag();
+
+            return tag != TAG_END_OBJECT && tag != TAG_END_ARRAY && tag != TAG_END_DOCUMENT;
+        }
+
+        @Override
+        public JsonToken peek() throws IOException {
+            switch (peekTag()) {
+                case TAG_BEGIN_OBJECT:
+                    return JsonToken.BEGIN_OBJECT;
+                case TAG_END_OBJECT:
+                    return JsonToken.END_OBJECT;
+                case TAG_BEGIN_ARRAY:
+                    return JsonToken.BEGIN_ARRAY;
+                case TAG_END_ARRAY:
+                    return JsonToken.END_ARRAY;
+                case TAG_NAME:
+                    return JsonToken.NAME;
+                case TAG_STRING:
+                    return JsonToken.STRING;
+                case TAG_NULL:
+                    return JsonToken.NULL;
+                case TAG_TRUE:
+                case TAG_FALSE:
+                    return JsonToken.BOOLEAN;
+                case TAG_LONG:
+                case TAG_DOUBLE:
+                case TAG_NUMBER_STRING:
+                    return JsonToken.NUMBER;
+                case TAG_END_DOCUMENT:
+                    return JsonToken.END_DOCUMENT;
+                default:
+                    throw new IOException("invalid tag " + peekTag() + " at offset " + buffer.position());
+            }
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            consume(TAG_NAME, JsonToken.NAME);
+
+            return strings[readVarInt(buffer)];
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            int tag = peekTag();
+
+            switch (tag) {
+                case TAG_STRING:
+                case TAG_NUMBER_STRING:
+                    peekedTag = TAG_NOT_PEEKED;
+
+                    return strings[readVarInt(buffer)];
+                case TAG_LONG:
+                    return Long.toString(nextLong());
+                case TAG_DOUBLE:
+                    return Double.toString(nextDouble());
+                default:
+                    throw new IllegalStateException("Expected a string but was " + peek());
+            }
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            int tag = peekTag();
+
+            if (tag != TAG_TRUE && tag != TAG_FALSE) {
+                throw new IllegalStateException("Expected a boolean but was " + peek());
+            }
+
+            peekedTag = TAG_NOT_PEEKED;
+
+            return tag == TAG_TRUE;
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            consume(TAG_NULL, JsonToken.NULL);
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            int tag = peekTag();
+
+            switch (tag) {
+                case TAG_DOUBLE:
+                    peekedTag = TAG_NOT_PEEKED;
+
+                    return buffer.getDouble();
+                case TAG_LONG:
+                    return nextLong();
+                case TAG_STRING:
+                case TAG_NUMBER_STRING:
+                    return Double.parseDouble(nextString());
+                default:
+                    throw new IllegalStateException("Expected a double but was " + peek());
+            }
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            int tag = peekTag();
+
+            switch (tag) {
+                case TAG_LONG: {
+                    peekedTag = TAG_NOT_PEEKED;
+
+                    long value = readVarLong(buffer);
+
+                    return (value >>> 1) ^ -(value & 1);
+                }
+                case TAG_DOUBLE: {
+                    double value = nextDouble();
+
+                    if ((long) value != value) {
+                        throw new NumberFormatException("Expected a long but was " + value);
+                    }
+
+                    return (long) value;
+                }
+                case TAG_STRING:
+                case TAG_NUMBER_STRING:
+                    return Long.parseLong(nextString());
+                default:
+                    throw new IllegalStateException("Expected a long but was " + peek());
+            }
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            long value = nextLong();
+
+            if ((int) value != value) {
+                throw new NumberFormatException("Expected an int but was " + value);
+            }
+
+            return (int) value;
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            int depth = 0;
+
+            do {
+                int tag = peekTag();
+
+                peekedTag = TAG_NOT_PEEKED;
+
+                switch (tag) {
+                    case TAG_BEGIN_OBJECT:
+                    case TAG_BEGIN_ARRAY:
+                        depth++;
+                        break;
+                    case TAG_END_OBJECT:
+                    case TAG_END_ARRAY:
+                        depth--;
+                        break;
+                    case TAG_NAME:
+                    case TAG_STRING:
+                    case TAG_NUMBER_STRING:
+                    case TAG_LONG:
+                        readVarLong(buffer);
+                        break;
+                    case TAG_DOUBLE:
+                        buffer.getDouble();
+                        break;
+                    case TAG_END_DOCUMENT:
+                        throw new IOException("unexpected end of document");
+                    default:
+                        break;
+                }
+            } while (depth > 0);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return "BinaryJsonReader(offset=" + buffer.position() + ")";
+        }
+
+        private int peekTag() {
+            if (peekedTag == TAG_NOT_PEEKED) {
+                peekedTag = buffer.hasRemaining() ? buffer.get() : TAG_END_DOCUMENT;
+            }
+
+            return peekedTag;
+        }
+
+        private void consume(byte tag, JsonToken expected) throws IOException {
+            if (peekTag() != tag) {
+                throw new IllegalStateException("Expected " + expected + " but was " + peek());
+            }
+
+            peekedTag = TAG_NOT_PEEKED;
+        }
+    }
+
+    /*
+     * Reads and writes all maps through name()/nextName(), as Gson's own map type-adapter reads keys using internals of
+     * JsonReader. Keys are written as names, like Gson does: String keys as they are, keys of other types (numbers,
+     * booleans, enums) as the string form of their JSON value. Keys whose JSON value is an object or an array can't
+     * be names; maps with such keys fail to write.
+     */
+    static final class MapTypeAdapterFactory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            Class<? super T> rawType = typeToken.getRawType();
+
+            if (!Map.class.isAssignableFrom(rawType)) {
+                return null;
+            }
+
+            Type[]              keyAndValueTypes = getMapKeyAndValueTypes(typeToken.getType(), rawType);
+            TypeAdapter<Object> keyAdapter       = keyAndValueTypes[0] == String.class ? null : (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(keyAndValueTypes[0]));
+            TypeAdapter<Object> valueAdapter     = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(keyAndValueTypes[1]));
+
+            return (TypeAdapter<T>) new MapTypeAdapter(rawType, keyAdapter, valueAdapter);
+        }
+
+        /*
+         * Key and value types of a map, as Gson's own map type-adapter finds them: the type arguments of Map, resolved
+         * through the type hierarchy of the map; Object for a raw map, or for a type argument that isn't bound.
+         */
+        static Type[] getMapKeyAndValueTypes(Type type, Class<?> rawType) {
+            if (Properties.class.isAssignableFrom(rawType)) {
+                return new Type[] { String.class, String.class };
+            }
+
+            Type[] ret = getTypeArguments(type, Map.class, Collections.<TypeVariable<?>, Type>emptyMap());
+
+            if (ret == null) {
+                ret = new Type[] { Object.class, Object.class };
+            } else {
+                for (int i = 0; i < ret.length; i++) {
+                    if (ret[i] instanceof TypeVariable) {
+                        ret[i] = Object.class;
+                    }
+                }
+            }
+
+            return ret;
+        }
+
+        // type arguments of supertype target of type; variables in type are bound by bindings. null if not found
+        private static Type[] getTypeArguments(Type type, Class<?> target, Map<TypeVariable<?>, Type> bindings) {
+            final Class<?>             rawType;
+            final Type[]               typeArgs;
+            Map<TypeVariable<?>, Type> typeBindings = new HashMap<>();
+
+            if (type instanceof ParameterizedType) {
+                rawType  = (Class<?>) ((ParameterizedType) type).getRawType();
+                typeArgs = ((ParameterizedType) type).getActualTypeArguments();
+            } else if (type instanceof Class) {
+                rawType  = (Class<?>) type;
+                typeArgs = null;
+            } else {
+                return null;
+            }
+
+            TypeVariable<?>[] typeParams = rawType.getTypeParameters();
+
+            if (typeArgs != null && typeArgs.length == typeParams.length) {
+                for (int i = 0; i < typeParams.length; i++) {
+                    Type typeArg = typeArgs[i] instanceof TypeVariable && bindings.containsKey(typeArgs[i]) ? bindings.get(typeArgs[i]) : typeArgs[i];
+
+                    typeBindings.put(typeParams[i], typeArg);
+                }
+            }
+
+            if (rawType == target) {
+                if (typeBindings.isEmpty()) {
+                    return null;
+                }
+
+                Type[] ret = new Type[typeParams.length];
+
+                for (int i = 0; i < typeParams.length; i++) {
+                    ret[i] = typeBindings.get(typeParams[i]);
+                }
+
+                return ret;
+            }
+
+            if (!target.isAssignableFrom(rawType)) {
+                return null;
+            }
+
+            for (Type superType : rawType.getGenericInterfaces()) {
+                Type[] ret = getTypeArguments(superType, target, typeBindings);
+
+                if (ret != null) {
+                    return ret;
+                }
+            }
+
+            return rawType.getGenericSuperclass() != null ? getTypeArguments(rawType.getGenericSuperclass(), target, typeBindings) : null;
+        }
+    }
+
+    static final class MapTypeAdapter extends TypeAdapter<Map<Object, Object>> {
+        private final Class<?>            rawType;
+        private final TypeAdapter<Object> keyAdapter; // null for String keys
+        private final TypeAdapter<Object> valueAdapter;
+
+        MapTypeAdapter(Class<?> rawType, TypeAdapter<Object> keyAdapter, TypeAdapter<Object> valueAdapter) {
+            this.rawType      = rawType;
+            this.keyAdapter   = keyAdapter;
+            this.valueAdapter = valueAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, Map<Object, Object> map) throws IOException {
+            if (map == null) {
+                out.nullValue();
+            } else {
+                out.beginObject();
+
+                for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                    out.name(keyToName(entry.getKey()));
+                    valueAdapter.write(out, entry.getValue());
+                }
+
+                out.endObject();
+            }
+        }
+
+        @Override
+        public Map<Object, Object> read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+
+                return null;
+            }
+
+            Map<Object, Object> ret = newMap();
+
+            in.beginObject();
+
+            while (in.hasNext()) {
+                String name  = in.nextName();
+                Object key   = keyAdapter == null ? name : keyAdapter.fromJsonTree(new JsonPrimitive(name));
+                Object value = valueAdapter.read(in);
+
+                if (value != null || !(ret instanceof ConcurrentMap)) {
+                    ret.put(key, value);
+                }
+            }
+
+            in.endObject();
+
+            return ret;
+        }
+
+        private String keyToName(Object key) throws IOException {
+            if (keyAdapter == null || key == null) {
+                return String.valueOf(key);
+            }
+
+            JsonElement element = keyAdapter.toJsonTree(key);
+
+            if (element.isJsonPrimitive()) {
+                return element.getAsString();
+            } else if (element.isJsonNull()) {
+                return "null";
+            }
+
+            throw new IOException("map key of type " + key.getClass().getName() + " can't be written in binary JSON format");
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<Object, Object> newMap() {
+            if (!rawType.isInterface() && !Modifier.isAbstract(rawType.getModifiers())) {
+                try {
+                    return (Map<Object, Object>) rawType.getDeclaredConstructor().newInstance();
+                } catch (Exception excp) {
+                    // fall through to the default for the interfaces implemented
+                }
+            }
+
+            if (SortedMap.class.isAssignableFrom(rawType)) {
+                return new TreeMap<>();
+            } else if (ConcurrentMap.class.isAssignableFrom(rawType)) {
+                return new ConcurrentHashMap<>();
+            }
+
+            return new LinkedHashMap<>();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import java.util.Arrays;
+
+/**
+ * Binary radix trie of IPv4 and IPv6 address ranges, keyed on the bits of the address. A lookup walks at most one node
+ * per address bit - 32 for IPv4, 128 for IPv6 - regardless of the number of ranges in the trie, and does not allocate.
+ *
+ * Ranges are added in CIDR notation (10.20.0.0/16, 2001:db8::/32) or as a single address. Addresses are parsed
+ * without name resolution; IPv4 octets must be decimal without leading zeros, and IPv6 addresses must be 8 groups of
+ * hex digits, with at most one "::". Text in other forms, like IPv4-mapped IPv6 addresses or zone-ids, is reported as
+ * NOT_AN_ADDRESS, so that callers can fall back to matching it as a string.
+ *
+ * Nodes are stored in primitive arrays. The trie is not thread-safe for updates; once built, it can be read by any
+ * number of threads.
+ */
+public final class RangerIpAddressTrie {
+    public enum MatchResult { MATCHED, NOT_MATCHED, NOT_AN_ADDRESS }
+
+    private static final int IPV4_BITS        = 32;
+    private static final int IPV6_BITS        = 128;
+    private static final int IPV6_GROUPS      = 8;
+    private static final int IPV4_ROOT        = 0;
+    private static final int IPV6_ROOT        = 1;
+    private static final int NO_CHILD         = 0; // root nodes are never children, so 0 is free to mean "none"
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final ThreadLocal<long[]> IPV6_WORDS = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private int[]     children  = new int[2 * INITIAL_CAPACITY];
+    private boolean[] rangeEnds = new boolean[INITIAL_CAPACITY];
+    private int       nodeCount = 2;
+    private int       rangeCount;
+
+    /**
+     * Adds an address range to the trie.
+     *
+     * @param cidr an address range in CIDR notation, or a single address. Bits after the prefix-length are ignored.
+     * @return false if cidr is not a valid IPv4/IPv6 address or range; the trie is unchanged in this case
+     */
+    public boolean add(String cidr) {
+        if (cidr == null) {
+            return false;
+        }
+
+        String address      = cidr;
+        int    prefixLength = -1;
+        int    sep          = address.indexOf('/');
+
+        if (sep != -1) {
+            prefixLength = parsePrefixLength(address, sep + 1);
+            address      = address.substring(0, sep);
+
+            if (prefixLength == -1) {
+                return false;
+            }
+        }
+
+        long ipv4 = parseIpv4(address, 0, address.length());
+
+        if (ipv4 != -1) {
+            if (prefixLength > IPV4_BITS) {
+                return false;
+            }
+
+            add(IPV4_ROOT, ipv4 << IPV4_BITS, 0, prefixLength == -1 ? IPV4_BITS : prefixLength);
+        } else {
+            long[] words = new long[2];
+
+            if (!parseIpv6(address, 0, address.length(), words)) {
+                return false;
+            }
+
+            add(IPV6_ROOT, words[0], words[1], prefixLength == -1 ? IPV6_BITS : prefixLength);
+        }
+
+        rangeCount++;
+
+        return true;
+    }
+
+    /**
+     * @param address IPv4 or IPv6 address
+     * @return MATCHED if the address falls in any of the ranges in the trie; NOT_AN_ADDRESS if it could not be parsed
+     */
+    public MatchResult match(String address) {
+        if (address == null) {
+            return MatchResult.NOT_AN_ADDRESS;
+        }
+
+        final boolean ret;
+        final long    ipv4 = parseIpv4(address, 0, address.length());
+
+        if (ipv4 != -1) {
+            ret = lookup(IPV4_ROOT, ipv4 << IPV4_BITS, 0, IPV4_BITS);
+        } else {
+            long[] words = IPV6_WORDS.get();
+
+            if (!parseIpv6(address, 0, address.length(), words)) {
+                return MatchResult.NOT_AN_ADDRESS;
+            }
+
+            ret = lookup(IPV6_ROOT, words[0], words[1], IPV6_BITS);
+        }
+
+        return ret ? MatchResult.MATCHED : MatchResult.NOT_MATCHED;
+    }
+
+    public boolean isEmpty() {
+        return rangeCount == 0;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "RangerIpAddressTrie={rangeCount=" + rangeCount + ", nodeCount=" + nodeCount + "}";
+    }
+
+    private void add(int root, long hi, long lo, int prefixLength) {
+        int node = root;
+
+        for (int i = 0; i < prefixLength; i++) {
+            if (rangeEnds[node]) { // a shorter range already covers this one
+                return;
+            }
+
+            int childIdx = 2 * node + bitAt(hi, lo, i);
+            int child    = children[childIdx];
+
+            if (child == NO_CHILD) {
+                child = newNode();
+
+                children[childIdx] = child;
+            }
+
+            node = child;
+        }
+
+        rangeEnds[node] = true;
+    }
+
+    private boolean lookup(int root, long hi, long lo, int bitCount) {
+        int node = root;
+
+        for (int i = 0; i < bitCount; i++) {
+            if (rangeEnds[node]) {
+                return true;
+            }
+
+            node = children[2 * node + bitAt(hi, lo, i)];
+
+            if (node == NO_CHILD) {
+                return false;
+            }
+        }
+
+        return rangeEnds[node];
+    }
+
+    private int newNode() {
+        if (nodeCount == rangeEnds.length) {
+            rangeEnds = Arrays.copyOf(rangeEnds, 2 * nodeCount);
+            children  = Arrays.copyOf(children, 4 * nodeCount);
+        }
+
+        return nodeCount++;
+    }
+
+    private static int bitAt(long hi, long lo, int idx) {
+        return (int) (idx < 64 ? (hi >>> (63 - idx)) & 1 : (lo >>> (127 - idx)) & 1);
+    }
+
+    private static int parsePrefixLength(String str, int from) {
+        int ret = 0;
+
+        if (from == str.length() || str.length() - from > 3) {
+            return -1;
+        }
+
+        for (int i = from; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+
+            ret = ret * 10 + (c - '0');
+        }
+
+        return ret <= IPV6_BITS ? ret : -1;
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value; -1 if address is not a dotted-decimal IPv4 address
+     */
+    public static long parseIpv4(String address) {
+        return address == null ? -1 : parseIpv4(address, 0, address.length());
+    }
+
+    /**
+     * @return the address as an unsigned 32-bit value; -1 if str[from, to) is not a dotted-decimal IPv4 address
+     */
+    static long parseIpv4(String str, int from, int to) {
+        long ret        = 0;
+        int  octetCount = 0;
+        int  octet      = 0;
+        int  digitCount = 0;
+
+        for (int i = from; i < to; i++) {
+            char c = str.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                if (digitCount > 0 && octet == 0) { // leading zero
+                    return -1;
+                }
+
+                octet = octet * 10 + (c - '0');
+
+                if (octet > 255) {
+                    return -1;
+                }
+
+                digitCount++;
+            } else if (c == '.') {
+                if (digitCount == 0 || octetCount == 3) {
+                    return -1;
+                }
+
+                ret = (ret << 8) | octet;
+
+                octetCount++;
+                octet      = 0;
+                digitCount = 0;
+            } else {
+                return -1;
+            }
+        }
+
+        if (digitCount == 0 || octetCount != 3) {
+            return -1;
+        }
+
+        return (ret << 8) | octet;
+    }
+
+    /**
+     * Parses str[from, to) as an IPv6 address into words: the upper 64 bits in words[0] and the lower 64 bits in words[1].
+     *
+     * @return false if str[from, to) is not an IPv6 address
+     */
+    static boolean parseIpv6(String str, int from, int to, long[] words) {
+        words[0] = 0;
+        words[1] = 0;
+
+        int compressionIdx = str.indexOf("::", from);
+
+        if (compressionIdx == -1 || compressionIdx + 2 > to) {
+            return parseGroups(str, from, to, 0, words) == IPV6_GROUPS;
+        }
+
+        int headCount = parseGroups(str, from, compressionIdx, 0, words);
+
+        if (headCount == -1) {
+            return false;
+        }
+
+        int tailFrom  = compressionIdx + 2;
+        int tailCount = 0;
+
+        if (tailFrom < to) {
+            tailCount = 1;
+
+            for (int i = tailFrom; i < to; i++) {
+                if (str.charAt(i) == ':') {
+                    tailCount++;
+                }
+            }
+        }
+
+        if (headCount + tailCount >= IPV6_GROUPS) { // "::" must stand for at least one group of zeros
+            return false;
+        }
+
+        return parseGroups(str, tailFrom, to, IPV6_GROUPS - tailCount, words) == tailCount;
+    }
+
+    /**
+     * Parses colon-separated groups of 1-4 hex digits in str[from, to), setting them in words starting at group firstGroup.
+     *
+     * @return number of groups parsed; -1 if str[from, to) has anything other than groups
+     */
+    private static int parseGroups(String str, int from, int to, int firstGroup, long[] words) {
+        if (from == to) {
+            return 0;
+        }
+
+        int groupCount = 0;
+        int group      = 0;
+        int digitCount = 0;
+
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? str.charAt(i) : ':';
+
+            if (c == ':') {
+                int groupIdx = firstGroup + groupCount;
+
+                if (digitCount == 0 || groupIdx >= IPV6_GROUPS) {
+                    return -1;
+                }
+
+                words[groupIdx >> 2] |= ((long) group) << (16 * (3 - (groupIdx & 3)));
+
+                groupCount++;
+                group      = 0;
+                digitCount = 0;
+            } else {
+                int digit = hexDigit(c);
+
+                if (digit == -1 || digitCount == 4) {
+                    return -1;
+                }
+
+                group = (group << 4) | digit;
+
+                digitCount++;
+            }
+        }
+
+        return groupCount;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, log-linear histogram of latencies in microseconds. Each power-of-2 range of values is split into
+ * SUB_BUCKET_COUNT linear buckets, so a reported percentile is within 1/SUB_BUCKET_COUNT (~6%) of the actual value,
+ * for any value from 0 to Long.MAX_VALUE, in a fixed ~1000 buckets.
+ *
+ * Buckets are striped by thread, so that threads recording at the same time seldom update the same cache line;
+ * stripes are merged only when a snapshot is taken. record() neither locks nor allocates.
+ */
+public class RangerLatencyHistogram implements RangerLatencyHistogramMXBean {
+	private static final int SUB_BUCKET_BITS  = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT     = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	private static final int MAX_STRIPES      = 8;
+
+	private final String            name;
+	private final AtomicLongArray[] stripes;
+	private final int               stripeMask;
+	private final AtomicLong        maxValue = new AtomicLong();
+	private final AtomicLong        minValue = new AtomicLong(Long.MAX_VALUE);
+
+	public RangerLatencyHistogram(String name) {
+		int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+		this.name       = name;
+		this.stripes    = new AtomicLongArray[stripeCount];
+		this.stripeMask = stripeCount - 1;
+
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new AtomicLongArray(BUCKET_COUNT + 1); // last slot: sum of values in the stripe
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param valueMicros latency in microseconds; negative values, like from a clock adjustment, are recorded as 0
+	 */
+	public void record(long valueMicros) {
+		long            value  = Math.max(0, valueMicros);
+		AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+
+		stripe.incrementAndGet(getBucketIndex(value));
+		stripe.addAndGet(BUCKET_COUNT, value);
+
+		for (long max = maxValue.get(); value > max && !maxValue.compareAndSet(max, value); max = maxValue.get()) {
+			// retry until value is recorded, or another thread records a larger value
+		}
+
+		for (long min = minValue.get(); value < min && !minValue.compareAndSet(min, value); min = minValue.get()) {
+			// retry until value is recorded, or another thread records a smaller value
+		}
+	}
+
+	/**
+	 * Records the time elapsed since startTimeNanos, as returned by System.nanoTime()
+	 */
+	public void recordSince(long startTimeNanos) {
+		record((System.nanoTime() - startTimeNanos + 500) / 1000);
+	}
+
+	public Snapshot getSnapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		long   sum    = 0;
+
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				counts[i] += stripe.get(i);
+			}
+
+			sum += stripe.get(BUCKET_COUNT);
+		}
+
+		long min = minValue.get();
+
+		return new Snapshot(counts, sum, min == Long.MAX_VALUE ? 0 : min, maxValue.get());
+	}
+
+	/**
+	 * Clears recorded values. Values recorded concurrently with reset() may be partially cleared.
+	 */
+	public void reset() {
+		for (AtomicLongArray stripe : stripes) {
+			for (int i = 0; i <= BUCKET_COUNT; i++) {
+				stripe.set(i, 0);
+			}
+		}
+
+		maxValue.set(0);
+		minValue.set(Long.MAX_VALUE);
+	}
+
+	@Override
+	public long getCount() {
+		return getSnapshot().getCount();
+	}
+
+	@Override
+	public long getMeanMicros() {
+		return getSnapshot().getMean();
+	}
+
+	@Override
+	public long getMaxMicros() {
+		return maxValue.get();
+	}
+
+	@Override
+	public long getP50Micros() {
+		return getSnapshot().getPercentile(50);
+	}
+
+	@Override
+	public long getP99Micros() {
+		return getSnapshot().getPercentile(99);
+	}
+
+	@Override
+	public long getP999Micros() {
+		return getSnapshot().getPercentile(99.9);
+	}
+
+	@Override
+	public String toString() {
+		return "RangerLatencyHistogram={name=" + name + ", " + getSnapshot() + "}";
+	}
+
+	static int getBucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+		int shift    = exponent - SUB_BUCKET_BITS;
+
+		return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+	}
+
+	/**
+	 * @return largest value that falls in the given bucket
+	 */
+	static long getBucketUpperBound(int bucketIndex) {
+		if (bucketIndex < SUB_BUCKET_COUNT) {
+			return bucketIndex;
+		}
+
+		int  shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+		long lower = ((long) (SUB_BUCKET_COUNT + bucketIndex % SUB_BUCKET_COUNT)) << shift;
+
+		return lower + ((1L << shift) - 1);
+	}
+
+	/**
+	 * Point-in-time, immutable view of a histogram.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long   count;
+		private final long   sum;
+		private final long   min;
+		private final long   max;
+
+		Snapshot(long[] counts, long sum, long min, long max) {
+			long count = 0;
+
+			for (long c : counts) {
+				count += c;
+			}
+
+			this.counts = counts;
+			this.count  = count;
+			this.sum    = sum;
+			this.min    = min;
+			this.max    = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public long getMin() {
+			return min;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public long getMean() {
+			return count == 0 ? 0 : sum / count;
+		}
+
+		/**
+		 * @param percentile between 0 and 100, like 99.9
+		 * @return a value within ~6% of the value at the given percentile; 0 if no value was recorded
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+
+			long rank       = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+			long cumulative = 0;
+
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i];
+
+				if (cumulative >= rank) {
+					return Math.min(max, getBucketUpperBound(i));
+				}
+			}
+
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + getMean() + ", min=" + min + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99) + ", p999=" + getPercentile(99.9) + ", max=" + max;
+		}
+	}
+}
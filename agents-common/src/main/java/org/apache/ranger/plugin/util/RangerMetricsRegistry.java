@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of always-on plugin metrics: latency histograms, counters and gauges. Recording a value is lock-free
+ * and does not allocate, so that instrumented code paths can record on every call; see RangerLatencyHistogram.
+ *
+ * Metrics can be exported via JMX, with MBeans named org.apache.ranger:type=RangerMetrics,name=metric-name, and
+ * written periodically to a JSON snapshot file.
+ */
+public class RangerMetricsRegistry implements RangerMetricsRegistryMXBean {
+	private static final Log LOG = LogFactory.getLog(RangerMetricsRegistry.class);
+
+	public static final String METRIC_POLICY_ENGINE_EVALUATE = "policyengine.evaluate";
+	public static final String METRIC_CONTEXT_ENRICHER       = "contextenricher.enrich";
+	public static final String METRIC_TRIE_LOOKUP            = "trie.lookup";
+	public static final String METRIC_AUDIT_ENQUEUE          = "audit.enqueue";
+	public static final String METRIC_POLICY_REFRESH         = "policy.refresh";
+	public static final String METRIC_USER_GROUPS_LOAD       = "usergroups.load";
+	public static final String METRIC_ADMIN_REQUEST          = "admin.request";
+	public static final String METRIC_PRIVILEGE_QUEUE_LATENCY = "metastore.privilege.latency"; // from enqueue to sent
+	public static final String METRIC_POLICY_ENGINE_BUILD     = "policyengine.build"; // suffixed by build phase, or "build"/"warmUp" for the totals
+
+	public static final String COUNTER_AUDIT_ENQUEUE_FAILED   = "audit.enqueue.failed";
+	public static final String COUNTER_POLICY_REFRESH_ERROR   = "policy.refresh.error";
+	public static final String COUNTER_USER_GROUPS_CACHE_HIT  = "usergroups.cache.hit";
+	public static final String COUNTER_USER_GROUPS_CACHE_MISS = "usergroups.cache.miss";
+	public static final String COUNTER_USER_GROUPS_REFRESH    = "usergroups.refresh";
+	public static final String COUNTER_USER_GROUPS_LOAD_ERROR = "usergroups.load.error";
+	public static final String COUNTER_ADMIN_REQUEST_ERROR    = "admin.request.error";
+	public static final String COUNTER_ADMIN_REQUEST_HEDGED   = "admin.request.hedged";
+	public static final String COUNTER_POLICY_ENGINE_WARMUP_REQUESTS = "policyengine.warmup.requests";
+
+	public static final String COUNTER_METASTORE_RESULT_CACHE_HIT    = "metastore.resultcache.hit";
+	public static final String COUNTER_METASTORE_RESULT_CACHE_MISS   = "metastore.resultcache.miss";
+	public static final String COUNTER_METASTORE_RESULT_CACHE_BYPASS = "metastore.resultcache.bypass"; // context-sensitive policies in use
+
+	public static final String COUNTER_PRIVILEGE_QUEUE_ENQUEUED  = "metastore.privilege.enqueued";
+	public static final String COUNTER_PRIVILEGE_QUEUE_COALESCED = "metastore.privilege.coalesced";
+	public static final String COUNTER_PRIVILEGE_QUEUE_DEDUPED   = "metastore.privilege.deduped";
+	public static final String COUNTER_PRIVILEGE_QUEUE_SENT      = "metastore.privilege.sent";
+	public static final String COUNTER_PRIVILEGE_QUEUE_FAILED    = "metastore.privilege.failed";
+
+	public static final String GAUGE_POLICY_STALENESS      = "policy.staleness"; // suffixed by service name; in milliseconds
+	public static final String GAUGE_PRIVILEGE_QUEUE_DEPTH = "metastore.privilege.queue.depth";
+	public static final String GAUGE_AUDIT_QUEUE_DEPTH     = "audit.queue.depth";    // suffixed by the final destination of the queue
+	public static final String GAUGE_AUDIT_QUEUE_INFLIGHT  = "audit.queue.inflight"; // suffixed by the final destination of the queue
+	public static final String GAUGE_AUDIT_QUEUE_DROPPED   = "audit.queue.dropped";  // suffixed by the final destination of the queue
+
+	public static final String JMX_DOMAIN = "org.apache.ranger";
+
+	/**
+	 * A value that is computed when metrics are read, like the age of the policies in use.
+	 */
+	public interface Gauge {
+		long getValue();
+	}
+
+	private static final RangerMetricsRegistry INSTANCE = new RangerMetricsRegistry();
+
+	private final ConcurrentHashMap<String, RangerLatencyHistogram> histograms = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LongAdder>              counters   = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Gauge>                  gauges     = new ConcurrentHashMap<>();
+	private volatile boolean                                        isJmxEnabled;
+
+	public static RangerMetricsRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	RangerMetricsRegistry() {
+	}
+
+	public RangerLatencyHistogram getHistogram(String name) {
+		RangerLatencyHistogram ret = histograms.get(name);
+
+		if (ret == null) {
+			RangerLatencyHistogram histogram = new RangerLatencyHistogram(name);
+
+			ret = histograms.putIfAbsent(name, histogram);
+
+			if (ret == null) {
+				ret = histogram;
+
+				if (isJmxEnabled) {
+					registerMBean(ret, getObjectName(name));
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	public LongAdder getCounter(String name) {
+		LongAdder ret = counters.get(name);
+
+		if (ret == null) {
+			LongAdder counter = new LongAdder();
+
+			ret = counters.putIfAbsent(name, counter);
+
+			if (ret == null) {
+				ret = counter;
+			}
+		}
+
+		return ret;
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> ret = new TreeMap<>();
+
+		for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+			ret.put(entry.getKey(), entry.getValue().sum());
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Registers the gauge with the given name, replacing a gauge registered earlier with the name.
+	 */
+	public void registerGauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Removes the gauge with the given name, if it is still the given gauge.
+	 */
+	public void unregisterGauge(String name, Gauge gauge) {
+		gauges.remove(name, gauge);
+	}
+
+	@Override
+	public Map<String, Long> getGauges() {
+		Map<String, Long> ret = new TreeMap<>();
+
+		for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+			ret.put(entry.getKey(), entry.getValue().getValue());
+		}
+
+		return ret;
+	}
+
+	public Map<String, RangerLatencyHistogram.Snapshot> getHistogramSnapshots() {
+		Map<String, RangerLatencyHistogram.Snapshot> ret = new TreeMap<>();
+
+		for (Map.Entry<String, RangerLatencyHistogram> entry : histograms.entrySet()) {
+			ret.put(entry.getKey(), entry.getValue().getSnapshot());
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Registers MBeans for the registry and its histograms, including histograms created later. Calling it again has
+	 * no effect.
+	 */
+	public synchronized void enableJmx() {
+		if (!isJmxEnabled) {
+			isJmxEnabled = true;
+
+			registerMBean(this, getObjectName("counters"));
+
+			for (RangerLatencyHistogram histogram : histograms.values()) {
+				registerMBean(histogram, getObjectName(histogram.getName()));
+			}
+		}
+	}
+
+	/**
+	 * Writes a snapshot of all metrics to the given file, in JSON. The file is replaced atomically, so that a reader
+	 * never sees a partially written snapshot.
+	 */
+	public void writeSnapshot(File file) throws IOException {
+		Map<String, Object> histogramsJson = new LinkedHashMap<>();
+
+		for (Map.Entry<String, RangerLatencyHistogram.Snapshot> entry : getHistogramSnapshots().entrySet()) {
+			RangerLatencyHistogram.Snapshot snapshot      = entry.getValue();
+			Map<String, Long>               histogramJson = new LinkedHashMap<>();
+
+			histogramJson.put("count", snapshot.getCount());
+			histogramJson.put("meanMicros", snapshot.getMean());
+			histogramJson.put("minMicros", snapshot.getMin());
+			histogramJson.put("p50Micros", snapshot.getPercentile(50));
+			histogramJson.put("p99Micros", snapshot.getPercentile(99));
+			histogramJson.put("p999Micros", snapshot.getPercentile(99.9));
+			histogramJson.put("maxMicros", snapshot.getMax());
+
+			histogramsJson.put(entry.getKey(), histogramJson);
+		}
+
+		Map<String, Object> json = new LinkedHashMap<>();
+
+		json.put("timestamp", System.currentTimeMillis());
+		json.put("histograms", histogramsJson);
+		json.put("counters", getCounters());
+		json.put("gauges", getGauges());
+
+		Gson gson    = new GsonBuilder().setPrettyPrinting().create();
+		File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8)) {
+			gson.toJson(json, writer);
+		}
+
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return a task that writes a snapshot to the given file every time it runs, for use with a java.util.Timer
+	 */
+	public TimerTask createSnapshotTask(final File file) {
+		return new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					writeSnapshot(file);
+				} catch (Throwable excp) {
+					LOG.warn("failed to write metrics snapshot to " + file.getAbsolutePath(), excp);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Clears all histograms and counters; meant for tests and tools that report per-run metrics. Gauges stay registered.
+	 */
+	public void reset() {
+		for (RangerLatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+
+		for (LongAdder counter : counters.values()) {
+			counter.reset();
+		}
+	}
+
+	private static ObjectName getObjectName(String name) {
+		try {
+			return new ObjectName(JMX_DOMAIN + ":type=RangerMetrics,name=" + ObjectName.quote(name));
+		} catch (Exception excp) { // MalformedObjectNameException shouldn't happen, as name is quoted
+			throw new IllegalArgumentException(name, excp);
+		}
+	}
+
+	private static void registerMBean(Object mbean, ObjectName objectName) {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+			if (!mbeanServer.isRegistered(objectName)) {
+				mbeanServer.registerMBean(mbean, objectName);
+			}
+		} catch (Exception excp) {
+			LOG.warn("failed to register MBean " + objectName, excp);
+		}
+	}
+}
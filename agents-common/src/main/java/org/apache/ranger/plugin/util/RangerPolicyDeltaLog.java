@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import com.google.gson.Gson;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the policy-deltas received after the policy cache file was last written. Together, the cache file
+ * and the log have the latest policies; so a policy change appends a record to the log instead of rewriting the
+ * cache file. The log is removed when the cache file is written again, which is how it is compacted.
+ *
+ * The log is a text file, with one record per line:
+ *   header: #<format-version> <policy-version of the cache file the deltas apply to>
+ *   record: <CRC32 of the JSON, in hex> <ServicePolicies with policy-deltas, as JSON>
+ *
+ * Replay stops at the first record that fails the checksum, like one partially written before a crash; the log is
+ * truncated there so that later records can be appended.
+ */
+final class RangerPolicyDeltaLog {
+	private static final Log LOG = LogFactory.getLog(RangerPolicyDeltaLog.class);
+
+	static final int FORMAT_VERSION = 1;
+
+	private static final char HEADER_PREFIX = '#';
+
+	private final File file;
+	private final Gson gson;
+
+	private long baseVersion = -1; // policy-version of the cache file; -1 when not known
+	private int  recordCount = 0;
+	private long size        = 0;
+
+	RangerPolicyDeltaLog(File file, Gson gson) {
+		this.file = file;
+		this.gson = gson;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	synchronized long getBaseVersion() {
+		return baseVersion;
+	}
+
+	synchronized int getRecordCount() {
+		return recordCount;
+	}
+
+	synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Applies the deltas in the log to the policies loaded from the cache file.
+	 *
+	 * @return the policies with deltas applied; the given policies when the log is empty or was written for another version of the cache file
+	 */
+	synchronized ServicePolicies replay(ServicePolicies policies) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("==> RangerPolicyDeltaLog.replay(" + file.getAbsolutePath() + ")");
+		}
+
+		long policyVersion = policies.getPolicyVersion() == null ? -1 : policies.getPolicyVersion();
+
+		ServicePolicies ret = policies;
+
+		baseVersion = -1;
+		recordCount = 0;
+		size        = 0;
+
+		if (file.isFile()) {
+			long validSize = 0;
+
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+				String header = reader.readLine();
+
+				if (header != null && header.equals(getHeader(policyVersion))) {
+					validSize = header.getBytes(StandardCharsets.UTF_8).length + 1;
+
+					for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+						ServicePolicies deltas = parseRecord(line);
+
+						if (deltas == null) {
+							LOG.warn("RangerPolicyDeltaLog.replay(): ignoring invalid record #" + (recordCount + 1) + " and the ones after it in " + file.getAbsolutePath());
+
+							break;
+						}
+
+						ret = ServicePolicies.applyDelta(deltas, ret);
+
+						recordCount++;
+						validSize += line.getBytes(StandardCharsets.UTF_8).length + 1;
+					}
+
+					baseVersion = policyVersion;
+				} else {
+					LOG.warn("RangerPolicyDeltaLog.replay(): ignoring " + file.getAbsolutePath() + ", as it is not for policy-version " + policyVersion + " of the cache file: " + header);
+				}
+			} catch (Exception excp) {
+				LOG.error("RangerPolicyDeltaLog.replay(): failed to read " + file.getAbsolutePath() + ". Using " + recordCount + " records read so far", excp);
+			}
+
+			if (baseVersion != -1) {
+				truncate(validSize);
+			}
+
+			if (recordCount > 0) {
+				LOG.info("RangerPolicyDeltaLog.replay(): applied " + recordCount + " policy-delta records from " + file.getAbsolutePath() + ": policyVersion " + policyVersion + " => " + ret.getPolicyVersion());
+			}
+		}
+
+		if (baseVersion == -1) {
+			// log is not usable; until the cache file is written again, deltas can't be appended
+			delete();
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("<== RangerPolicyDeltaLog.replay(" + file.getAbsolutePath() + "): recordCount=" + recordCount);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Appends the policy-deltas to the log. The log must have been reset to the policy-version of the cache file first.
+	 */
+	synchronized void append(List<ServicePolicies> deltas) throws IOException {
+		if (baseVersion == -1) {
+			throw new IOException(file.getAbsolutePath() + ": base policy-version not known");
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		if (size == 0) {
+			sb.append(getHeader(baseVersion)).append('\n');
+		}
+
+		for (ServicePolicies delta : deltas) {
+			String json = gson.toJson(delta);
+
+			sb.append(Long.toHexString(checksum(json))).append(' ').append(json).append('\n');
+		}
+
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(bytes);
+			out.getFD().sync();
+		} catch (IOException excp) {
+			// the file may have a partial record now; it will be ignored in replay(), but the records after it would be too
+			baseVersion = -1;
+
+			throw excp;
+		}
+
+		recordCount += deltas.size();
+		size        += bytes.length;
+	}
+
+	/**
+	 * Removes the log, after the cache file was written with policies of the given version.
+	 */
+	synchronized void reset(long cacheFileVersion) {
+		delete();
+
+		baseVersion = cacheFileVersion;
+	}
+
+	synchronized void delete() {
+		if (file.exists() && !file.delete()) {
+			LOG.warn("RangerPolicyDeltaLog: failed to delete " + file.getAbsolutePath());
+		}
+
+		baseVersion = -1;
+		recordCount = 0;
+		size        = 0;
+	}
+
+	private ServicePolicies parseRecord(String line) {
+		int sep = line.indexOf(' ');
+
+		if (sep <= 0) {
+			return null;
+		}
+
+		String json = line.substring(sep + 1);
+
+		try {
+			if (Long.parseLong(line.substring(0, sep), 16) != checksum(json)) {
+				return null;
+			}
+
+			ServicePolicies ret = gson.fromJson(json, ServicePolicies.class);
+
+			return ret != null && ret.getPolicyDeltas() != null ? ret : null;
+		} catch (Exception excp) {
+			LOG.warn("RangerPolicyDeltaLog: failed to parse record in " + file.getAbsolutePath(), excp);
+
+			return null;
+		}
+	}
+
+	private void truncate(long validSize) {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			if (raf.length() > validSize) {
+				LOG.warn("RangerPolicyDeltaLog: truncating " + file.getAbsolutePath() + " from " + raf.length() + " to " + validSize + " bytes");
+
+				raf.setLength(validSize);
+			}
+
+			size = validSize;
+		} catch (IOException excp) {
+			LOG.error("RangerPolicyDeltaLog: failed to truncate " + file.getAbsolutePath(), excp);
+
+			baseVersion = -1;
+		}
+	}
+
+	private static String getHeader(long baseVersion) {
+		return HEADER_PREFIX + Integer.toString(FORMAT_VERSION) + " " + baseVersion;
+	}
+
+	private static long checksum(String str) {
+		CRC32 crc = new CRC32();
+
+		crc.update(str.getBytes(StandardCharsets.UTF_8));
+
+		return crc.getValue();
+	}
+}
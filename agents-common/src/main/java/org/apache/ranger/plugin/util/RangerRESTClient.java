@@ -56,6 +56,7 @@ import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.client.filter.GZIPContentEncodingFilter;
 import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
 import com.sun.jersey.client.urlconnection.HTTPSProperties;
 
@@ -102,6 +103,7 @@ public class RangerRESTClient {
 
 	private int  mRestClientConnTimeOutMs;
 	private int  mRestClientReadTimeOutMs;
+	private boolean mIsCompressionEnabled;
 
 	public RangerRESTClient() {
 		this(RangerConfiguration.getInstance().get(RANGER_PROP_POLICYMGR_URL),
@@ -147,6 +149,15 @@ public class RangerRESTClient {
 		this.mRestClientReadTimeOutMs = mRestClientReadTimeOutMs;
 	}
 
+	public boolean isCompressionEnabled() {
+		return mIsCompressionEnabled;
+	}
+
+	// takes effect when the client is (re)built; see resetClient()
+	public void setCompressionEnabled(boolean isCompressionEnabled) {
+		this.mIsCompressionEnabled = isCompressionEnabled;
+	}
+
 	public void setBasicAuthInfo(String username, String password) {
 		mUsername = username;
 		mPassword = password;
@@ -158,6 +169,10 @@ public class RangerRESTClient {
 		return ret;
 	}
 
+	public WebResource getResource(String baseUrl, String relativeUrl) {
+		return getClient().resource(baseUrl + relativeUrl);
+	}
+
 	public String toJson(Object obj) {
 		return gsonBuilder.toJson(obj);		
 	}
@@ -215,6 +230,11 @@ public class RangerRESTClient {
 			client.addFilter(new HTTPBasicAuthFilter(mUsername, mPassword));
 		}
 
+		if(mIsCompressionEnabled) {
+			// sends 'Accept-Encoding: gzip' and decompresses gzip-encoded responses as they are read; request bodies are sent as-is
+			client.addFilter(new GZIPContentEncodingFilter(false));
+		}
+
 		// Set Connection Timeout and ReadTime for the PolicyRefresh
 		client.setConnectTimeout(mRestClientConnTimeOutMs);
 		client.setReadTimeout(mRestClientReadTimeOutMs);
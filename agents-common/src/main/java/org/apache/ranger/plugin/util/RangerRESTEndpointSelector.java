@@ -0,0 +1,587 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes requests to one of several Ranger Admin endpoints, like the policy and tag downloads of the refreshers.
+ *
+ * - latency and errors are tracked per endpoint; a request goes to the healthy endpoint with the lowest expected
+ *   latency (median latency of recent requests, weighed by the recent error rate). Endpoints not yet used are tried
+ *   first, so that every endpoint gets measured
+ * - an endpoint that fails - an exception, or a response the caller reports as failed, like HTTP 5xx - is tried
+ *   only after the healthy ones for errorBackoffMs; the backoff doubles with consecutive failures, up to 32 times
+ * - a failed request is retried on the next endpoint, until all have been tried
+ * - when hedging is enabled and a request takes longer than the given percentile of recent latencies of its endpoint,
+ *   the same request is sent to the next endpoint as well; the first successful response is returned, and the other
+ *   is discarded when it arrives. At most 2 requests are in flight for a call. Long-poll requests are not hedged, and
+ *   their latency is not tracked, as the server holds them until there is a change
+ */
+public class RangerRESTEndpointSelector {
+	private static final Log LOG = LogFactory.getLog(RangerRESTEndpointSelector.class);
+
+	private static final int    LATENCY_WINDOW_SIZE            = 64;
+	private static final int    MIN_SAMPLES_FOR_PERCENTILE     = 8;
+	private static final int    MAX_BACKOFF_SHIFT              = 5;
+	private static final double ERROR_RATE_WEIGHT              = 0.2;
+	private static final double MAX_ERROR_RATE                 = 0.9;
+	private static final double DEFAULT_HEDGE_PERCENTILE       = 95;
+	private static final long   DEFAULT_MIN_HEDGE_DELAY_MS     = 100;
+	private static final long   DEFAULT_INITIAL_HEDGE_DELAY_MS = 5 * 1000;
+	private static final long   DEFAULT_ERROR_BACKOFF_MS       = 30 * 1000;
+
+	/**
+	 * A request that can be sent to any of the endpoints.
+	 */
+	public static abstract class Call<T> {
+		/**
+		 * @param url base URL of the endpoint, without a trailing '/'
+		 */
+		public abstract T call(String url) throws Exception;
+
+		/**
+		 * @return true if the response shows the endpoint failed, like HTTP 5xx; the request is then retried on another endpoint
+		 */
+		public boolean isFailure(T response) {
+			return response == null;
+		}
+
+		/**
+		 * Releases a response that is not returned to the caller, like the slower of two hedged responses.
+		 */
+		public void discard(T response) {
+		}
+
+		/**
+		 * @return true if the server may hold the request until there is a change
+		 */
+		public boolean isLongPoll() {
+			return false;
+		}
+	}
+
+	private final List<Endpoint>         endpoints;
+	private final boolean                isHedgingEnabled;
+	private final double                 hedgePercentile;
+	private final long                   minHedgeDelayMs;
+	private final long                   initialHedgeDelayMs;
+	private final long                   errorBackoffMs;
+	private final RangerLatencyHistogram requestLatency;
+	private final LongAdder              errorCount;
+	private final LongAdder              hedgeCount;
+	private volatile ExecutorService     executor;
+
+	public RangerRESTEndpointSelector(List<String> urls, boolean isHedgingEnabled, double hedgePercentile, long minHedgeDelayMs, long initialHedgeDelayMs, long errorBackoffMs) {
+		if (urls == null || urls.isEmpty()) {
+			throw new IllegalArgumentException("no endpoints");
+		}
+
+		RangerMetricsRegistry metricsRegistry = RangerMetricsRegistry.getInstance();
+		List<Endpoint>        endpoints       = new ArrayList<>(urls.size());
+
+		for (int i = 0; i < urls.size(); i++) {
+			endpoints.add(new Endpoint(urls.get(i), i));
+		}
+
+		this.endpoints           = Collections.unmodifiableList(endpoints);
+		this.isHedgingEnabled    = isHedgingEnabled && endpoints.size() > 1;
+		this.hedgePercentile     = hedgePercentile;
+		this.minHedgeDelayMs     = minHedgeDelayMs;
+		this.initialHedgeDelayMs = initialHedgeDelayMs;
+		this.errorBackoffMs      = errorBackoffMs;
+		this.requestLatency      = metricsRegistry.getHistogram(RangerMetricsRegistry.METRIC_ADMIN_REQUEST);
+		this.errorCount          = metricsRegistry.getCounter(RangerMetricsRegistry.COUNTER_ADMIN_REQUEST_ERROR);
+		this.hedgeCount          = metricsRegistry.getCounter(RangerMetricsRegistry.COUNTER_ADMIN_REQUEST_HEDGED);
+	}
+
+	/**
+	 * @param urls comma separated list of Ranger Admin URLs
+	 * @return selector over the given URLs, configured by properties propertyPrefix.policy.rest.client.hedge.* and
+	 *         propertyPrefix.policy.rest.client.error.backoffMs
+	 */
+	public static RangerRESTEndpointSelector create(RangerConfiguration config, String propertyPrefix, String urls) {
+		List<String> endpointUrls        = parseUrls(urls);
+		boolean      isHedgingEnabled    = config.getBoolean(propertyPrefix + ".policy.rest.client.hedge.enabled", true);
+		double       hedgePercentile     = config.getDouble(propertyPrefix + ".policy.rest.client.hedge.percentile", DEFAULT_HEDGE_PERCENTILE);
+		long         minHedgeDelayMs     = config.getLong(propertyPrefix + ".policy.rest.client.hedge.min.delayMs", DEFAULT_MIN_HEDGE_DELAY_MS);
+		long         initialHedgeDelayMs = config.getLong(propertyPrefix + ".policy.rest.client.hedge.initial.delayMs", DEFAULT_INITIAL_HEDGE_DELAY_MS);
+		long         errorBackoffMs      = config.getLong(propertyPrefix + ".policy.rest.client.error.backoffMs", DEFAULT_ERROR_BACKOFF_MS);
+
+		if (endpointUrls.isEmpty()) {
+			endpointUrls = Collections.singletonList("");
+		}
+
+		LOG.info("RangerRESTEndpointSelector: urls=" + endpointUrls + ", hedgingEnabled=" + isHedgingEnabled + ", hedgePercentile=" + hedgePercentile
+				+ ", minHedgeDelayMs=" + minHedgeDelayMs + ", initialHedgeDelayMs=" + initialHedgeDelayMs + ", errorBackoffMs=" + errorBackoffMs);
+
+		return new RangerRESTEndpointSelector(endpointUrls, isHedgingEnabled, hedgePercentile, minHedgeDelayMs, initialHedgeDelayMs, errorBackoffMs);
+	}
+
+	/**
+	 * @return URLs in the given comma separated list, trimmed and without trailing '/'; duplicates and empty entries are skipped
+	 */
+	public static List<String> parseUrls(String urls) {
+		List<String> ret = new ArrayList<>();
+
+		if (urls != null) {
+			Set<String> seen = new HashSet<>();
+
+			for (String url : urls.split(",")) {
+				url = StringUtils.stripEnd(url.trim(), "/");
+
+				if (!url.isEmpty() && seen.add(url)) {
+					ret.add(url);
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	public List<String> getUrls() {
+		List<String> ret = new ArrayList<>(endpoints.size());
+
+		for (Endpoint endpoint : endpoints) {
+			ret.add(endpoint.url);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @return URL of the endpoint the next request would be sent to
+	 */
+	public String getPreferredUrl() {
+		return getCandidates().get(0).url;
+	}
+
+	/**
+	 * Sends the request to the preferred endpoint, and to others on failure or, when hedging, on slow response.
+	 *
+	 * @return the first successful response; if all endpoints failed, response from the last one to fail
+	 * @throws Exception thrown by the call to the last endpoint to fail, when it did not return a response
+	 */
+	public <T> T execute(Call<T> call) throws Exception {
+		List<Endpoint> candidates = getCandidates();
+
+		return isHedgingEnabled && !call.isLongPoll() ? executeHedged(call, candidates) : executeInSequence(call, candidates);
+	}
+
+	// stops the threads of hedged requests; a request made after cleanup() starts a new executor
+	public void cleanup() {
+		final ExecutorService executor;
+
+		synchronized (this) {
+			executor      = this.executor;
+			this.executor = null;
+		}
+
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RangerRESTEndpointSelector={endpoints=" + endpoints + ", hedgingEnabled=" + isHedgingEnabled + "}";
+	}
+
+	List<Endpoint> getCandidates() {
+		final long now     = System.currentTimeMillis();
+		List<Rank> healthy = new ArrayList<>(endpoints.size());
+		List<Rank> failed  = new ArrayList<>();
+
+		for (Endpoint endpoint : endpoints) {
+			Rank rank = endpoint.getRank();
+
+			if (rank.retryAfterMs <= now) {
+				healthy.add(rank);
+			} else {
+				failed.add(rank);
+			}
+		}
+
+		Collections.sort(healthy, new Comparator<Rank>() {
+			@Override
+			public int compare(Rank r1, Rank r2) {
+				int ret = Double.compare(r1.expectedLatencyMs, r2.expectedLatencyMs);
+
+				return ret != 0 ? ret : Integer.compare(r1.endpoint.index, r2.endpoint.index);
+			}
+		});
+
+		Collections.sort(failed, new Comparator<Rank>() {
+			@Override
+			public int compare(Rank r1, Rank r2) {
+				return Long.compare(r1.retryAfterMs, r2.retryAfterMs);
+			}
+		});
+
+		List<Endpoint> ret = new ArrayList<>(endpoints.size());
+
+		for (Rank rank : healthy) {
+			ret.add(rank.endpoint);
+		}
+
+		for (Rank rank : failed) {
+			ret.add(rank.endpoint);
+		}
+
+		return ret;
+	}
+
+	long getHedgeDelayMs(Endpoint endpoint) {
+		long ret = endpoint.getLatencyPercentile(hedgePercentile);
+
+		return Math.max(ret < 0 ? initialHedgeDelayMs : ret, minHedgeDelayMs);
+	}
+
+	private <T> T executeInSequence(Call<T> call, List<Endpoint> candidates) throws Exception {
+		Attempt<T> lastFailure = null;
+
+		for (Endpoint endpoint : candidates) {
+			Attempt<T> attempt = new Attempt<>(call, endpoint, null);
+
+			attempt.run();
+
+			if (attempt.isSuccess) {
+				discard(lastFailure);
+
+				return attempt.response;
+			}
+
+			discard(lastFailure);
+
+			lastFailure = attempt;
+		}
+
+		return lastFailure.getResponse();
+	}
+
+	private <T> T executeHedged(Call<T> call, List<Endpoint> candidates) throws Exception {
+		HedgedCall<T>   hedgedCall  = new HedgedCall<>();
+		List<Attempt<T>> inFlight    = new ArrayList<>(2);
+		Attempt<T>       lastFailure = null;
+		int              next        = 0;
+
+		try {
+			inFlight.add(submit(new Attempt<>(call, candidates.get(next++), hedgedCall)));
+
+			while (!inFlight.isEmpty()) {
+				Attempt<T> completed;
+
+				if (inFlight.size() == 1 && next < candidates.size()) {
+					Attempt<T> pending = inFlight.get(0);
+					long       waitMs  = getHedgeDelayMs(pending.endpoint) - (System.currentTimeMillis() - pending.startTimeMs);
+
+					completed = waitMs > 0 ? hedgedCall.completed.poll(waitMs, TimeUnit.MILLISECONDS) : null;
+
+					if (completed == null) {
+						if (LOG.isDebugEnabled()) {
+							LOG.debug("RangerRESTEndpointSelector: no response from " + pending.endpoint.url + " in " + (System.currentTimeMillis() - pending.startTimeMs) + "ms; sending request to " + candidates.get(next).url);
+						}
+
+						hedgeCount.increment();
+
+						inFlight.add(submit(new Attempt<>(call, candidates.get(next++), hedgedCall)));
+
+						continue;
+					}
+				} else {
+					completed = hedgedCall.completed.take();
+				}
+
+				inFlight.remove(completed);
+
+				if (completed.isSuccess) {
+					discard(lastFailure);
+
+					hedgedCall.complete(completed);
+
+					return completed.response;
+				}
+
+				discard(lastFailure);
+
+				lastFailure = completed;
+
+				if (inFlight.isEmpty() && next < candidates.size()) {
+					inFlight.add(submit(new Attempt<>(call, candidates.get(next++), hedgedCall)));
+				}
+			}
+
+			hedgedCall.complete(lastFailure);
+
+			return lastFailure.getResponse();
+		} finally {
+			hedgedCall.complete(null);
+		}
+	}
+
+	private <T> Attempt<T> submit(Attempt<T> attempt) {
+		getExecutor().execute(attempt);
+
+		return attempt;
+	}
+
+	private <T> void discard(Attempt<T> attempt) {
+		if (attempt != null) {
+			attempt.discard();
+		}
+	}
+
+	private ExecutorService getExecutor() {
+		ExecutorService ret = executor;
+
+		if (ret == null) {
+			synchronized (this) {
+				ret = executor;
+
+				if (ret == null) {
+					ret = Executors.newCachedThreadPool(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread ret = new Thread(r, "RangerRESTEndpointSelector-request");
+
+							ret.setDaemon(true);
+
+							return ret;
+						}
+					});
+
+					executor = ret;
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	// latencyNanos is -1 for requests whose latency is not tracked
+	private void onSuccess(Endpoint endpoint, long latencyNanos) {
+		if (latencyNanos >= 0) {
+			requestLatency.record(latencyNanos / 1000);
+
+			endpoint.onSuccess(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+		} else {
+			endpoint.onSuccess(-1);
+		}
+	}
+
+	private void onFailure(Endpoint endpoint, Exception excp) {
+		errorCount.increment();
+
+		endpoint.onFailure(System.currentTimeMillis(), errorBackoffMs);
+
+		LOG.warn("RangerRESTEndpointSelector: request to " + endpoint.url + " failed" + (excp != null ? ": " + excp : "") + "; endpoint=" + endpoint);
+	}
+
+	/*
+	 * Responses of a hedged call, in the order of completion. Once the caller has its response, responses that complete
+	 * later are discarded instead of being queued.
+	 */
+	private static class HedgedCall<T> {
+		final LinkedBlockingQueue<Attempt<T>> completed = new LinkedBlockingQueue<>();
+		private boolean                       isComplete;
+
+		synchronized void onCompletion(Attempt<T> attempt) {
+			if (isComplete) {
+				attempt.discard();
+			} else {
+				completed.add(attempt);
+			}
+		}
+
+		synchronized void complete(Attempt<T> result) {
+			if (!isComplete) {
+				isComplete = true;
+
+				for (Attempt<T> attempt = completed.poll(); attempt != null; attempt = completed.poll()) {
+					if (attempt != result) {
+						attempt.discard();
+					}
+				}
+			}
+		}
+	}
+
+	private class Attempt<T> implements Runnable {
+		final Call<T>       call;
+		final Endpoint      endpoint;
+		final HedgedCall<T> hedgedCall;
+		final long          startTimeMs = System.currentTimeMillis();
+		T                   response;
+		Exception           exception;
+		boolean             isSuccess;
+
+		Attempt(Call<T> call, Endpoint endpoint, HedgedCall<T> hedgedCall) {
+			this.call       = call;
+			this.endpoint   = endpoint;
+			this.hedgedCall = hedgedCall;
+		}
+
+		@Override
+		public void run() {
+			long startTimeNanos = System.nanoTime();
+
+			try {
+				response  = call.call(endpoint.url);
+				isSuccess = !call.isFailure(response);
+			} catch (Exception excp) {
+				exception = excp;
+			}
+
+			if (isSuccess) {
+				onSuccess(endpoint, call.isLongPoll() ? -1 : (System.nanoTime() - startTimeNanos));
+			} else {
+				onFailure(endpoint, exception);
+			}
+
+			if (hedgedCall != null) {
+				hedgedCall.onCompletion(this);
+			}
+		}
+
+		T getResponse() throws Exception {
+			if (response == null && exception != null) {
+				throw exception;
+			}
+
+			return response;
+		}
+
+		void discard() {
+			if (response != null) {
+				try {
+					call.discard(response);
+				} catch (Exception excp) {
+					LOG.debug("RangerRESTEndpointSelector: failed to discard response from " + endpoint.url, excp);
+				}
+			}
+		}
+	}
+
+	static class Endpoint {
+		final String        url;
+		final int           index;
+		private final long[] latencies = new long[LATENCY_WINDOW_SIZE]; // recent latencies, in ms
+		private int          latencyCount;
+		private double       errorRate;
+		private int          consecutiveFailures;
+		private long         retryAfterMs;
+
+		Endpoint(String url, int index) {
+			this.url   = url;
+			this.index = index;
+		}
+
+		// latencyMs is -1 when not known
+		synchronized void onSuccess(long latencyMs) {
+			errorRate           = errorRate * (1 - ERROR_RATE_WEIGHT);
+			consecutiveFailures = 0;
+			retryAfterMs        = 0;
+
+			if (latencyMs >= 0) {
+				latencies[latencyCount++ % LATENCY_WINDOW_SIZE] = latencyMs;
+
+				if (latencyCount == 2 * LATENCY_WINDOW_SIZE) { // keep the count from overflowing, and the window position
+					latencyCount = LATENCY_WINDOW_SIZE;
+				}
+			}
+		}
+
+		synchronized void onFailure(long now, long errorBackoffMs) {
+			errorRate    = errorRate * (1 - ERROR_RATE_WEIGHT) + ERROR_RATE_WEIGHT;
+			retryAfterMs = now + (errorBackoffMs << Math.min(consecutiveFailures, MAX_BACKOFF_SHIFT));
+
+			consecutiveFailures++;
+		}
+
+		/*
+		 * expected time to get a successful response is the median latency, weighed by the error rate; endpoints
+		 * not measured yet rank first
+		 */
+		synchronized Rank getRank() {
+			long   medianLatencyMs   = getLatencyPercentile(50, 1);
+			double expectedLatencyMs = medianLatencyMs < 0 ? -1 : medianLatencyMs / (1 - Math.min(errorRate, MAX_ERROR_RATE));
+
+			return new Rank(this, expectedLatencyMs, retryAfterMs);
+		}
+
+		synchronized long getLatencyPercentile(double percentile) {
+			return getLatencyPercentile(percentile, MIN_SAMPLES_FOR_PERCENTILE);
+		}
+
+		/*
+		 * @return the given percentile of recent latencies; -1 if there are fewer than minSamples
+		 */
+		private long getLatencyPercentile(double percentile, int minSamples) {
+			int count = Math.min(latencyCount, LATENCY_WINDOW_SIZE);
+
+			if (count < minSamples) {
+				return -1;
+			}
+
+			long[] sorted = Arrays.copyOf(latencies, count);
+
+			Arrays.sort(sorted);
+
+			int idx = (int) Math.ceil(percentile / 100 * count) - 1;
+
+			return sorted[Math.max(0, Math.min(idx, count - 1))];
+		}
+
+		@Override
+		public synchronized String toString() {
+			return "{url=" + url + ", p50LatencyMs=" + getLatencyPercentile(50, 1) + ", errorRate=" + errorRate + ", consecutiveFailures=" + consecutiveFailures + ", retryAfterMs=" + retryAfterMs + "}";
+		}
+	}
+
+	// point-in-time rank of an endpoint, so that concurrent updates don't affect sorting
+	private static class Rank {
+		final Endpoint endpoint;
+		final double   expectedLatencyMs;
+		final long     retryAfterMs;
+
+		Rank(Endpoint endpoint, double expectedLatencyMs, long retryAfterMs) {
+			this.endpoint          = endpoint;
+			this.expectedLatencyMs = expectedLatencyMs;
+			this.retryAfterMs      = retryAfterMs;
+		}
+	}
+}
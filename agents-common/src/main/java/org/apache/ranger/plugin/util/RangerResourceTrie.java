@@ -31,13 +31,21 @@ import org.apache.ranger.plugin.policyresourcematcher.RangerPolicyResourceEvalua
 import org.apache.ranger.plugin.resourcematcher.RangerAbstractResourceMatcher;
 import org.apache.ranger.plugin.resourcematcher.RangerResourceMatcher;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -49,22 +57,42 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
 
     private static final String DEFAULT_WILDCARD_CHARS = "*?";
     private static final String TRIE_BUILDER_THREAD_COUNT = "ranger.policyengine.trie.builder.thread.count";
+    private static final String TRIE_PRESETUP_MAX_MERGED_LIST_SIZE = "ranger.policyengine.trie.presetup.max.merged.list.size";
+    private static final int    DEFAULT_PRESETUP_MAX_MERGED_LIST_SIZE = 64;
 
     private final String resourceName;
     private final boolean optIgnoreCase;
     private final boolean optWildcard;
     private final String wildcardChars;
-    private final TrieNode<T> root;
+    private TrieNode<T> root;
     private final Comparator<T> comparator;
     private final boolean isOptimizedForRetrieval;
+    private final boolean isCompactNodes;
+    private final boolean isPresetup;
+    private final int maxMergedListSize;
+    private Map<TrieNode<T>, TrieNode<T>> copiedNodes; // nodes copied by add()/delete() since last wrapUpUpdate(), mapped to the node each was copied from
 
     public RangerResourceTrie(RangerServiceDef.RangerResourceDef resourceDef, List<T> evaluators) {
         this(resourceDef, evaluators, null, true);
     }
 
     public RangerResourceTrie(RangerServiceDef.RangerResourceDef resourceDef, List<T> evaluators, Comparator<T> comparator, boolean isOptimizedForRetrieval) {
+        this(resourceDef, evaluators, comparator, isOptimizedForRetrieval, false);
+    }
+
+    public RangerResourceTrie(RangerServiceDef.RangerResourceDef resourceDef, List<T> evaluators, Comparator<T> comparator, boolean isOptimizedForRetrieval, boolean isCompactNodes) {
+        this(resourceDef, evaluators, comparator, isOptimizedForRetrieval, isCompactNodes, false);
+    }
+
+    /*
+     * isPresetup: when isOptimizedForRetrieval is false, set up all nodes while the trie is built, instead of lazily during lookups.
+     * To limit memory use, nodes share parent's wildcard-evaluators list where possible; and a node whose evaluators list, after
+     * merging with wildcard-evaluators, would be longer than TRIE_PRESETUP_MAX_MERGED_LIST_SIZE keeps both lists separately
+     * sorted and merges them during lookup - without any lock, as these nodes are not modified after setup.
+     */
+    public RangerResourceTrie(RangerServiceDef.RangerResourceDef resourceDef, List<T> evaluators, Comparator<T> comparator, boolean isOptimizedForRetrieval, boolean isCompactNodes, boolean isPresetup) {
         if(LOG.isDebugEnabled()) {
-            LOG.debug("==> RangerResourceTrie(" + resourceDef.getName() + ", evaluatorCount=" + evaluators.size() + ", isOptimizedForRetrieval=" + isOptimizedForRetrieval + ")");
+            LOG.debug("==> RangerResourceTrie(" + resourceDef.getName() + ", evaluatorCount=" + evaluators.size() + ", isOptimizedForRetrieval=" + isOptimizedForRetrieval + ", isCompactNodes=" + isCompactNodes + ", isPresetup=" + isPresetup + ")");
         }
 
         RangerPerfTracer perf = null;
@@ -105,6 +133,9 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         this.wildcardChars = optWildcard ? DEFAULT_WILDCARD_CHARS + tokenReplaceSpecialChars : "" + tokenReplaceSpecialChars;
         this.comparator    = comparator;
         this.isOptimizedForRetrieval = isOptimizedForRetrieval;
+        this.isCompactNodes = isCompactNodes;
+        this.isPresetup = isPresetup && !isOptimizedForRetrieval;
+        this.maxMergedListSize = RangerConfiguration.getInstance().getInt(TRIE_PRESETUP_MAX_MERGED_LIST_SIZE, DEFAULT_PRESETUP_MAX_MERGED_LIST_SIZE);
 
         TrieNode<T> tmpRoot = buildTrie(resourceDef, evaluators, comparator, builderThreadCount);
 
@@ -161,11 +192,11 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         }
 
         if (resource.getIsExcludes()) {
-            root.addWildcardEvaluator(evaluator);
+            getRootForUpdate().addWildcardEvaluator(evaluator);
         } else {
             if (CollectionUtils.isNotEmpty(resource.getValues())) {
                 for (String value : resource.getValues()) {
-                    insert(root, value, resource.getIsRecursive(), evaluator);
+                    insertForUpdate(value, resource.getIsRecursive(), evaluator);
                 }
             }
         }
@@ -188,18 +219,15 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
 
         boolean isRemoved = false;
         if (resource.getIsExcludes()) {
-            if (CollectionUtils.isNotEmpty(root.wildcardEvaluators)) {
-                isRemoved = root.wildcardEvaluators.remove(evaluator);
-                if (isRemoved && CollectionUtils.isEmpty(root.wildcardEvaluators)) {
-                    root.wildcardEvaluators = null;
-                }
+            if (CollectionUtils.isNotEmpty(root.wildcardEvaluators) && root.wildcardEvaluators.contains(evaluator)) {
+                isRemoved = getRootForUpdate().removeEvaluator(evaluator);
             }
         }
         if (!isRemoved) {
             for (String value : resource.getValues()) {
-                TrieNode<T> node = getNodeForResource(value);
+                TrieNode<T> node = getNodeForUpdate(value, evaluator);
                 if (node != null) {
-                    node.removeEvaluatorFromSubtree(evaluator);
+                    node.removeEvaluator(evaluator);
                 }
             }
         }
@@ -212,12 +240,213 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         }
     }
 
+    /*
+     * Sets up nodes copied by add() and delete(). A subtree that is still shared with the trie this trie was copied from
+     * is left as is - whether or not its nodes are set up - unless wildcard-evaluators of its parent changed, in which case
+     * the subtree is copied and set up again.
+     */
     public void wrapUpUpdate() {
-        if (this.isOptimizedForRetrieval) {
-            root.postSetup(null, comparator);
+        if (copiedNodes != null) {
+            RangerPerfTracer perf = null;
+
+            if (RangerPerfTracer.isPerfTraceEnabled(PERF_TRIE_INIT_LOG)) {
+                perf = RangerPerfTracer.getPerfTracer(PERF_TRIE_INIT_LOG, "RangerResourceTrie.wrapUpUpdate(name=" + resourceName + ", copiedNodeCount=" + copiedNodes.size() + ")");
+            }
+
+            wrapUpUpdate(root, null, null);
+
+            copiedNodes = null;
+
+            RangerPerfTracer.logAlways(perf);
+        }
+    }
+
+    // sourceParentWildcardEvaluators: wildcard-evaluators, once set up, of the parent of node's source in the trie this trie was copied from
+    private void wrapUpUpdate(TrieNode<T> node, List<T> parentWildcardEvaluators, List<T> sourceParentWildcardEvaluators) {
+        TrieNode<T> source = copiedNodes.get(node);
+
+        node.setup(parentWildcardEvaluators, comparator, isPresetup ? maxMergedListSize : Integer.MAX_VALUE);
+
+        // a node created by add() has no source; children of such a node are all copied nodes, whose sources are children of the source of its parent
+        List<T> sourceWildcardEvaluators    = source != null ? getWildcardEvaluatorsOnSetup(source, sourceParentWildcardEvaluators) : sourceParentWildcardEvaluators;
+        boolean isWildcardEvaluatorsChanged = source == null || !isSameEvaluators(node.wildcardEvaluators, sourceWildcardEvaluators);
+
+        for (TrieNode<T> child : new ArrayList<>(node.getChildren())) {
+            if (copiedNodes.containsKey(child)) {
+                wrapUpUpdate(child, node.wildcardEvaluators, sourceWildcardEvaluators);
+            } else if (isWildcardEvaluatorsChanged) {
+                TrieNode<T> copy = copyTrieSubtree(child, sourceWildcardEvaluators);
+
+                if (isOptimizedForRetrieval) {
+                    copy.postSetup(node.wildcardEvaluators, comparator);
+                } else if (isPresetup) {
+                    copy.presetup(node.wildcardEvaluators, comparator, maxMergedListSize);
+                }
+
+                node.addChild(copy);
+            }
+        }
+    }
+
+    /*
+     * Returns wildcard-evaluators of source once it is set up, when its parent's are parentWildcardEvaluators. A child of
+     * source that is not set up yet is set up, by a lookup in either trie, from these; so it can be shared when these
+     * are the same as those of the copy of source.
+     */
+    private List<T> getWildcardEvaluatorsOnSetup(TrieNode<T> source, List<T> parentWildcardEvaluators) {
+        synchronized (source) { // source could be set up by a lookup in the trie it belongs to
+            if (source.isSetup || CollectionUtils.isEmpty(parentWildcardEvaluators)) {
+                return source.wildcardEvaluators;
+            }
+
+            if (CollectionUtils.isEmpty(source.wildcardEvaluators)) {
+                return parentWildcardEvaluators;
+            }
+
+            Set<T> ret = new LinkedHashSet<>(source.wildcardEvaluators);
+
+            ret.addAll(parentWildcardEvaluators);
+
+            return new ArrayList<>(ret);
+        }
+    }
+
+    private static <U> boolean isSameEvaluators(List<U> evaluators, List<U> other) {
+        int size      = evaluators == null ? 0 : evaluators.size();
+        int otherSize = other == null ? 0 : other.size();
+
+        return evaluators == other || (size == otherSize && (size == 0 || new HashSet<>(evaluators).containsAll(other)));
+    }
+
+    private TrieNode<T> getRootForUpdate() {
+        if (copiedNodes == null) {
+            copiedNodes = new IdentityHashMap<>();
+        }
+
+        if (!copiedNodes.containsKey(root)) {
+            TrieNode<T> copy = copyTrieNode(root, null);
+
+            copiedNodes.put(copy, root);
+
+            root = copy;
+        }
+
+        return root;
+    }
+
+    // returns child, if it is a copied node; otherwise a copy of child, which replaces child in parent. parent must be a copied node
+    private TrieNode<T> getChildForUpdate(TrieNode<T> parent, TrieNode<T> child) {
+        if (copiedNodes.containsKey(child)) {
+            return child;
+        }
+
+        TrieNode<T> parentSource = copiedNodes.get(parent);
+        TrieNode<T> ret          = copyTrieNode(child, parentSource != null ? parentSource.wildcardEvaluators : null);
+
+        copiedNodes.put(ret, child);
+        parent.addChild(ret);
+
+        return ret;
+    }
+
+    private TrieNode<T> createNodeForUpdate(String str) {
+        TrieNode<T> ret = new TrieNode<>(str);
+
+        copiedNodes.put(ret, null);
+
+        return ret;
+    }
+
+    /*
+     * Copy-on-write version of TrieNode.getOrCreateChild(): nodes shared with the trie this trie was copied from are copied
+     * before being updated, along with their parents up to the root; their other children continue to be shared.
+     */
+    private TrieNode<T> getOrCreateChildForUpdate(TrieNode<T> parent, String str) {
+        int len = str.length();
+
+        TrieNode<T> child = parent.getChild(getLookupChar(str, 0));
+
+        if (child == null) {
+            child = createNodeForUpdate(str);
+            parent.addChild(child);
         } else {
-            root.setup(null, comparator);
+            child = getChildForUpdate(parent, child);
+
+            final String childStr = child.getStr();
+            final int childStrLen = childStr.length();
+
+            final boolean isExactMatch = optIgnoreCase ? StringUtils.equalsIgnoreCase(childStr, str) : StringUtils.equals(childStr, str);
+
+            if (!isExactMatch) {
+                final int numOfCharactersToMatch = childStrLen < len ? childStrLen : len;
+                int index = 1;
+                for (; index < numOfCharactersToMatch; index++) {
+                    if (getLookupChar(childStr, index) != getLookupChar(str, index)) {
+                        break;
+                    }
+                }
+                if (index == numOfCharactersToMatch) {
+                    if (childStrLen > len) {
+                        TrieNode<T> newChild = createNodeForUpdate(str);
+                        parent.addChild(newChild);
+                        child.setStr(childStr.substring(index));
+                        newChild.addChild(child);
+                        child = newChild;
+                    } else {
+                        child = getOrCreateChildForUpdate(child, str.substring(index));
+                    }
+                } else {
+                    String matchedPart = str.substring(0, index);
+                    TrieNode<T> newChild = createNodeForUpdate(matchedPart);
+                    parent.addChild(newChild);
+                    child.setStr(childStr.substring(index));
+                    newChild.addChild(child);
+                    child = getOrCreateChildForUpdate(newChild, str.substring(index));
+                }
+            }
         }
+
+        return child;
+    }
+
+    // returns the node into which resource was inserted, copied for update; null if there is no such node or if it doesn't have the evaluator
+    private TrieNode<T> getNodeForUpdate(String resource, T evaluator) {
+        final String            prefix = getNonWildcardPrefix(resource);
+        final int               len    = prefix.length();
+        final List<TrieNode<T>> path   = new ArrayList<>();
+        TrieNode<T>             curr   = root;
+        int                     i      = 0;
+
+        while (i < len) {
+            final TrieNode<T> child = curr.getChild(getLookupChar(prefix, i));
+
+            if (child == null) {
+                return null;
+            }
+
+            final String childStr = child.getStr();
+
+            if (!prefix.regionMatches(optIgnoreCase, i, childStr, 0, childStr.length())) {
+                return null;
+            }
+
+            path.add(child);
+
+            curr = child;
+            i += childStr.length();
+        }
+
+        if (!curr.hasEvaluator(evaluator)) {
+            return null;
+        }
+
+        TrieNode<T> ret = getRootForUpdate();
+
+        for (TrieNode<T> node : path) {
+            ret = getChildForUpdate(ret, node);
+        }
+
+        return ret;
     }
 
     private TrieNode<T> copyTrieSubtree(TrieNode<T> source, List<T> parentWildcardEvaluators) {
@@ -227,13 +456,45 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             TRACE_LOG.trace("==> copyTrieSubtree(" + sb + ", parentWildCardEvaluators=" + (parentWildcardEvaluators != null ? Arrays.toString(parentWildcardEvaluators.toArray()) : "[]") + ")");
         }
         TrieNode<T> dest = new TrieNode<>(source.str);
+
+        copyEvaluators(source, dest, parentWildcardEvaluators);
+
+        for (TrieNode<T> child : source.getChildren()) {
+            TrieNode<T> copy = copyTrieSubtree(child, source.wildcardEvaluators);
+            dest.addChild(copy);
+        }
+
+        if (TRACE_LOG.isTraceEnabled()) {
+            StringBuilder sourceAsString = new StringBuilder(), destAsString = new StringBuilder();
+            source.toString(sourceAsString);
+            dest.toString(destAsString);
+
+            TRACE_LOG.trace("<== copyTrieSubtree(" + sourceAsString + ", parentWildCardEvaluators=" + (parentWildcardEvaluators != null ? Arrays.toString(parentWildcardEvaluators.toArray()) : "[]") + ") : " + destAsString);
+        }
+        return dest;
+    }
+
+    // copies source without its subtree: evaluator lists are copied as they were before setup; children are shared with source
+    private TrieNode<T> copyTrieNode(TrieNode<T> source, List<T> parentWildcardEvaluators) {
+        TrieNode<T> dest = new TrieNode<>(source.str);
+
+        copyEvaluators(source, dest, parentWildcardEvaluators);
+
+        for (TrieNode<T> child : source.getChildren()) {
+            dest.addChild(child);
+        }
+
+        return dest;
+    }
+
+    private void copyEvaluators(TrieNode<T> source, TrieNode<T> dest, List<T> parentWildcardEvaluators) {
         boolean setUpCompleted = source.isSetup;
         if (!setUpCompleted) {
             synchronized (source) {
                 setUpCompleted = source.isSetup;
                 if (!setUpCompleted) {
                     if (source.wildcardEvaluators != null) {
-                        dest.wildcardEvaluators = new ArrayList<>(source.wildcardEvaluators);
+                        dest.wildcardEvaluators = new EvaluatorList<>(source.wildcardEvaluators);
                     } else {
                         dest.wildcardEvaluators = null;
                     }
@@ -241,7 +502,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                         if (source.evaluators == source.wildcardEvaluators) {
                             dest.evaluators = null;
                         } else {
-                            dest.evaluators = new ArrayList<>(source.evaluators);
+                            dest.evaluators = new EvaluatorList<>(source.evaluators);
                         }
                     } else {
                         dest.evaluators = null;
@@ -254,7 +515,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                 dest.wildcardEvaluators = null;
             } else {
                 if (source.wildcardEvaluators != null) {
-                    dest.wildcardEvaluators = new ArrayList<>(source.wildcardEvaluators);
+                    dest.wildcardEvaluators = new EvaluatorList<>(source.wildcardEvaluators);
                     if (parentWildcardEvaluators != null) {
                         dest.wildcardEvaluators.removeAll(parentWildcardEvaluators);
                     }
@@ -266,7 +527,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                 if (source.evaluators == source.wildcardEvaluators) {
                     dest.evaluators = null;
                 } else {
-                    dest.evaluators = new ArrayList<>(source.evaluators);
+                    dest.evaluators = new EvaluatorList<>(source.evaluators);
                     if (source.wildcardEvaluators != null) {
                         dest.evaluators.removeAll(source.wildcardEvaluators);
                     }
@@ -275,23 +536,13 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                 dest.evaluators = null;
             }
         }
-
-        Map<Character, TrieNode<T>> children = source.getChildren();
-        for (Map.Entry<Character, TrieNode<T>> entry : children.entrySet()) {
-            TrieNode<T> copy = copyTrieSubtree(entry.getValue(), source.wildcardEvaluators);
-            dest.addChild(copy);
-        }
-
-        if (TRACE_LOG.isTraceEnabled()) {
-            StringBuilder sourceAsString = new StringBuilder(), destAsString = new StringBuilder();
-            source.toString(sourceAsString);
-            dest.toString(destAsString);
-
-            TRACE_LOG.trace("<== copyTrieSubtree(" + sourceAsString + ", parentWildCardEvaluators=" + (parentWildcardEvaluators != null ? Arrays.toString(parentWildcardEvaluators.toArray()) : "[]") + ") : " + destAsString);
-        }
-        return dest;
     }
 
+    /*
+     * Creates a trie that shares all nodes with other. Nodes are copied only when updated by add() or delete(), along with
+     * the nodes in their path from the root; so the cost of an update depends on the nodes it touches, not on the size of
+     * the trie. Nodes of other are not modified.
+     */
     public RangerResourceTrie(RangerResourceTrie<T> other) {
         RangerPerfTracer perf = null;
 
@@ -305,7 +556,10 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         this.wildcardChars = other.wildcardChars;
         this.comparator = other.comparator;
         this.isOptimizedForRetrieval = other.isOptimizedForRetrieval;
-        this.root = copyTrieSubtree(other.root, null);
+        this.isCompactNodes = other.isCompactNodes;
+        this.isPresetup = other.isPresetup;
+        this.maxMergedListSize = other.maxMergedListSize;
+        this.root = other.root;
 
         RangerPerfTracer.logAlways(perf);
 
@@ -339,7 +593,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         if (isMultiThreaded) {
             builderThreads = new ArrayList<>();
             for (int i = 0; i < builderThreadCount; i++) {
-                ResourceTrieBuilderThread t = new ResourceTrieBuilderThread(isOptimizedForRetrieval);
+                ResourceTrieBuilderThread t = new ResourceTrieBuilderThread(isOptimizedForRetrieval, isPresetup);
                 t.setDaemon(true);
                 builderThreads.add(t);
                 t.start();
@@ -405,7 +659,9 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                         t.add("", false, null);
                         // Wait for threads to finish work
                         t.join();
-                        ret.getChildren().putAll(t.getSubtrees());
+                        for (TrieNode<T> subtree : t.getSubtrees()) {
+                            ret.addChild(subtree);
+                        }
                     } catch (InterruptedException ex) {
                         LOG.error("BuilderThread " + t + " was interrupted:", ex);
                         LOG.error("Failing and retrying with one thread");
@@ -415,6 +671,10 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                         break;
                     }
                 }
+
+                if (ret != null && isPresetup) { // subtrees have been set up by builder threads
+                    ret.isSetup = true;
+                }
             } else {
                 if (isOptimizedForRetrieval) {
                     RangerPerfTracer postSetupPerf = null;
@@ -426,6 +686,16 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                     ret.postSetup(null, comparator);
 
                     RangerPerfTracer.logAlways(postSetupPerf);
+                } else if (isPresetup) {
+                    RangerPerfTracer presetupPerf = null;
+
+                    if (RangerPerfTracer.isPerfTraceEnabled(PERF_TRIE_INIT_LOG)) {
+                        presetupPerf = RangerPerfTracer.getPerfTracer(PERF_TRIE_INIT_LOG, "RangerResourceTrie.init(name=" + resourceDef.getName() + "-presetup)");
+                    }
+
+                    ret.presetup(null, comparator, maxMergedListSize);
+
+                    RangerPerfTracer.logAlways(presetupPerf);
                 } else {
                     ret.setup(null, comparator);
                 }
@@ -473,11 +743,11 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         return root.getMaxDepth();
     }
 
-    private Character getLookupChar(char ch) {
+    private char getLookupChar(char ch) {
         return optIgnoreCase ? Character.toLowerCase(ch) : ch;
     }
 
-    private Character getLookupChar(String str, int index) {
+    private char getLookupChar(String str, int index) {
         return getLookupChar(str.charAt(index));
     }
 
@@ -520,6 +790,22 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
 
     }
 
+    private void insertForUpdate(String resource, boolean isRecursive, T evaluator) {
+        TrieNode<T>   curr       = getRootForUpdate();
+        final String  prefix     = getNonWildcardPrefix(resource);
+        final boolean isWildcard = prefix.length() != resource.length();
+
+        if (StringUtils.isNotEmpty(prefix)) {
+            curr = getOrCreateChildForUpdate(curr, prefix);
+        }
+
+        if (isWildcard || isRecursive) {
+            curr.addWildcardEvaluator(evaluator);
+        } else {
+            curr.addEvaluator(evaluator);
+        }
+    }
+
     private String getNonWildcardPrefix(String str) {
 
         int minIndex = str.length();
@@ -552,7 +838,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         int         i      = 0;
 
         while (i < len) {
-            if (!isOptimizedForRetrieval) {
+            if (!isOptimizedForRetrieval && !isPresetup) {
                 curr.setupIfNeeded(parent, comparator);
             }
 
@@ -573,11 +859,11 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             i += childStr.length();
         }
 
-        if (!isOptimizedForRetrieval) {
+        if (!isOptimizedForRetrieval && !isPresetup) {
             curr.setupIfNeeded(parent, comparator);
         }
 
-        List<T> ret = i == len ? curr.getEvaluators() : curr.getWildcardEvaluators();
+        List<T> ret = i == len ? curr.getEvaluators(comparator) : curr.getWildcardEvaluators();
 
         RangerPerfTracer.logAlways(perf);
 
@@ -588,48 +874,6 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         return ret;
     }
 
-    private TrieNode<T> getNodeForResource(String resource) {
-        if(LOG.isDebugEnabled()) {
-            LOG.debug("==> RangerResourceTrie.getNodeForResource(" + resource + ")");
-        }
-
-        RangerPerfTracer perf = null;
-
-        if(RangerPerfTracer.isPerfTraceEnabled(PERF_TRIE_OP_LOG)) {
-            perf = RangerPerfTracer.getPerfTracer(PERF_TRIE_OP_LOG, "RangerResourceTrie.getNodeForResource(resource=" + resource + ")");
-        }
-
-        TrieNode<T> curr   = root;
-        final int   len    = resource.length();
-        int         i      = 0;
-
-        while (i < len) {
-
-            final TrieNode<T> child = curr.getChild(getLookupChar(resource, i));
-
-            if (child == null) {
-                break;
-            }
-
-            final String childStr = child.getStr();
-
-            if (!resource.regionMatches(optIgnoreCase, i, childStr, 0, childStr.length())) {
-                break;
-            }
-
-            curr = child;
-            i += childStr.length();
-        }
-
-        RangerPerfTracer.logAlways(perf);
-
-        if(LOG.isDebugEnabled()) {
-            LOG.debug("<== RangerResourceTrie.getNodeForResource(" + resource + ")");
-        }
-
-        return curr;
-    }
-
     private List<T> getEvaluatorsForResources(Collection<String> resources) {
         if(LOG.isDebugEnabled()) {
             LOG.debug("==> RangerResourceTrie.getEvaluatorsForResources(" + resources + ")");
@@ -667,7 +911,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         }
 
         if (ret == null && evaluatorsMap != null) {
-            ret = new ArrayList<>(evaluatorsMap.values());
+            ret = new EvaluatorList<>(evaluatorsMap.values());
 
             if (comparator != null) {
                 ret.sort(comparator);
@@ -690,6 +934,8 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         sb.append("resourceName=").append(resourceName);
         sb.append("; optIgnoreCase=").append(optIgnoreCase);
         sb.append("; optWildcard=").append(optWildcard);
+        sb.append("; isCompactNodes=").append(isCompactNodes);
+        sb.append("; isPresetup=").append(isPresetup);
         sb.append("; wildcardChars=").append(wildcardChars);
         sb.append("; nodeCount=").append(trieData.nodeCount);
         sb.append("; leafNodeCount=").append(trieData.leafNodeCount);
@@ -699,6 +945,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         sb.append("; wildcardEvaluatorListCount=").append(trieData.wildcardEvaluatorListCount);
         sb.append("; evaluatorListRefCount=").append(trieData.evaluatorListRefCount);
         sb.append("; wildcardEvaluatorListRefCount=").append(trieData.wildcardEvaluatorListRefCount);
+        sb.append("; mergedOnLookupNodeCount=").append(trieData.mergedOnLookupNodeCount);
 
         return sb.toString();
     }
@@ -727,10 +974,12 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         private final   TrieNode<T>             thisRoot  = new TrieNode<>(null);
         private final   BlockingQueue<WorkItem> workQueue = new LinkedBlockingQueue<>();
         private final   boolean                 isOptimizedForRetrieval;
+        private final   boolean                 isPresetup;
         private         List<T>                 parentWildcardEvaluators;
 
-        ResourceTrieBuilderThread(boolean isOptimizedForRetrieval) {
+        ResourceTrieBuilderThread(boolean isOptimizedForRetrieval, boolean isPresetup) {
             this.isOptimizedForRetrieval = isOptimizedForRetrieval;
+            this.isPresetup              = isPresetup;
         }
 
         void add(String resourceName, boolean isRecursive, T evaluator) throws InterruptedException {
@@ -741,7 +990,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             this.parentWildcardEvaluators = parentWildcardEvaluators;
         }
 
-        Map<Character, TrieNode<T>> getSubtrees() { return thisRoot.getChildren(); }
+        Collection<TrieNode<T>> getSubtrees() { return thisRoot.getChildren(); }
 
         @Override
         public void run() {
@@ -780,6 +1029,18 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                 thisRoot.postSetup(parentWildcardEvaluators, comparator);
 
                 RangerPerfTracer.logAlways(postSetupPerf);
+            } else if (!isInterrupted() && isPresetup) {
+                RangerPerfTracer presetupPerf = null;
+
+                if (RangerPerfTracer.isPerfTraceEnabled(PERF_TRIE_INIT_LOG)) {
+                    presetupPerf = RangerPerfTracer.getPerfTracer(PERF_TRIE_INIT_LOG, "RangerResourceTrie.init(thread=" + this.getName() + "-presetup)");
+                }
+
+                for (TrieNode<T> subtree : thisRoot.getChildren()) {
+                    subtree.presetup(parentWildcardEvaluators, comparator, maxMergedListSize);
+                }
+
+                RangerPerfTracer.logAlways(presetupPerf);
             }
 
             if (LOG.isDebugEnabled()) {
@@ -797,15 +1058,18 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
         int wildcardEvaluatorListCount;
         int evaluatorListRefCount;
         int wildcardEvaluatorListRefCount;
+        int mergedOnLookupNodeCount;
     }
 
     class TrieNode<U extends RangerPolicyResourceEvaluator> {
-        private          String                      str;
-        private final    Map<Character, TrieNode<U>> children = new HashMap<>();
-        private          List<U>                     evaluators;
-        private          List<U>                     wildcardEvaluators;
-        private          boolean                     isSharingParentWildcardEvaluators;
-        private volatile boolean                     isSetup = false;
+        private          String                        str;
+        private final    TrieNodeChildren<TrieNode<U>> children = isCompactNodes ? new ArrayTrieNodeChildren<TrieNode<U>>() : new MapTrieNodeChildren<TrieNode<U>>();
+        private          List<U>                       evaluators;
+        private          List<U>                       wildcardEvaluators;
+        private          boolean                       isSharingParentWildcardEvaluators;
+        private          boolean                       isMergedOnLookup; // evaluators doesn't include wildcardEvaluators; see presetup()
+        private          MergedEvaluatorList<U>        mergedEvaluators; // view of evaluators and wildcardEvaluators, when isMergedOnLookup
+        private volatile boolean                       isSetup = false;
 
         TrieNode(String str) {
             this.str = str;
@@ -819,20 +1083,24 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             this.str = str;
         }
 
-        Map<Character, TrieNode<U>> getChildren() {
-            return children;
+        Collection<TrieNode<U>> getChildren() {
+            return children.values();
         }
 
         List<U> getEvaluators() {
             return evaluators;
         }
 
+        List<U> getEvaluators(Comparator<U> comparator) {
+            return isMergedOnLookup ? mergedEvaluators : evaluators;
+        }
+
         List<U> getWildcardEvaluators() {
             return wildcardEvaluators;
         }
 
-        TrieNode<U> getChild(Character ch) {
-            return children == null ? null : children.get(ch);
+        TrieNode<U> getChild(char ch) {
+            return children.get(ch);
         }
 
         void populateTrieData(RangerResourceTrie.TrieData trieData) {
@@ -854,14 +1122,16 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                 }
             }
 
+            if (isMergedOnLookup) {
+                trieData.mergedOnLookupNodeCount++;
+            }
+
             if (children != null && !children.isEmpty()) {
                 if (children.size() == 1) {
                     trieData.singleChildNodeCount++;
                 }
 
-                for (Map.Entry<Character, TrieNode<U>> entry : children.entrySet()) {
-                    TrieNode child = entry.getValue();
-
+                for (TrieNode<U> child : children.values()) {
                     child.populateTrieData(trieData);
                 }
             } else {
@@ -873,9 +1143,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             int ret = 0;
 
             if (children != null) {
-                for (Map.Entry<Character, TrieNode<U>> entry : children.entrySet()) {
-                    TrieNode<U> child = entry.getValue();
-
+                for (TrieNode<U> child : children.values()) {
                     int maxChildDepth = child.getMaxDepth();
 
                     if (maxChildDepth > ret) {
@@ -937,13 +1205,13 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             return child;
         }
 
-        private void addChild(TrieNode<U> child) {
+        void addChild(TrieNode<U> child) {
             children.put(getLookupChar(child.getStr(), 0), child);
         }
 
         void addEvaluator(U evaluator) {
             if (evaluators == null) {
-                evaluators = new ArrayList<>();
+                evaluators = new EvaluatorList<>();
             }
 
             if (!evaluators.contains(evaluator)) {
@@ -953,7 +1221,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
 
         void addWildcardEvaluator(U evaluator) {
             if (wildcardEvaluators == null) {
-                wildcardEvaluators = new ArrayList<>();
+                wildcardEvaluators = new EvaluatorList<>();
             }
 
             if (!wildcardEvaluators.contains(evaluator)) {
@@ -966,9 +1234,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             setup(parentWildcardEvaluators, comparator);
 
             if (children != null) {
-                for (Map.Entry<Character, TrieNode<U>> entry : children.entrySet()) {
-                    TrieNode<U> child = entry.getValue();
-
+                for (TrieNode<U> child : children.values()) {
                     child.postSetup(wildcardEvaluators, comparator);
                 }
             }
@@ -998,7 +1264,27 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             }
         }
 
+        /*
+         * Sets up this node and its subtree, so that lookups don't need to call setupIfNeeded(). The only difference from
+         * setup() is that when a node has its own evaluators, these are merged with wildcard-evaluators only if the merged
+         * list would have at most maxMergedListSize entries; otherwise the lists are kept separate and sorted, and
+         * getEvaluators(comparator) returns a MergedEvaluatorList view of both. This avoids a copy of a long wildcard-evaluators list in each such node.
+         */
+        void presetup(List<U> parentWildcardEvaluators, Comparator<U> comparator, int maxMergedListSize) {
+            setup(parentWildcardEvaluators, comparator, maxMergedListSize);
+
+            isSetup = true;
+
+            for (TrieNode<U> child : children.values()) {
+                child.presetup(wildcardEvaluators, comparator, maxMergedListSize);
+            }
+        }
+
         void setup(List<U> parentWildcardEvaluators, Comparator<U> comparator) {
+            setup(parentWildcardEvaluators, comparator, Integer.MAX_VALUE);
+        }
+
+        private void setup(List<U> parentWildcardEvaluators, Comparator<U> comparator, int maxMergedListSize) {
             // finalize wildcard-evaluators list by including parent's wildcard evaluators
             if (parentWildcardEvaluators != null) {
                 if (CollectionUtils.isEmpty(this.wildcardEvaluators)) {
@@ -1012,9 +1298,20 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             this.isSharingParentWildcardEvaluators = wildcardEvaluators == parentWildcardEvaluators;
 
             // finalize evaluators list by including wildcard evaluators
+            this.isMergedOnLookup = false;
+            this.mergedEvaluators = null;
+
             if (wildcardEvaluators != null) {
                 if (CollectionUtils.isEmpty(this.evaluators)) {
                     this.evaluators = wildcardEvaluators;
+                } else if (this.evaluators != wildcardEvaluators && this.evaluators.size() + wildcardEvaluators.size() > maxMergedListSize) {
+                    this.evaluators.removeAll(wildcardEvaluators);
+
+                    if (this.evaluators.isEmpty()) {
+                        this.evaluators = wildcardEvaluators;
+                    } else {
+                        this.isMergedOnLookup = true;
+                    }
                 } else {
                     for (U evaluator : wildcardEvaluators) {
                         addEvaluator(evaluator);
@@ -1031,26 +1328,37 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
                     evaluators.sort(comparator);
                 }
             }
+
+            if (isMergedOnLookup) {
+                this.mergedEvaluators = new MergedEvaluatorList<>(evaluators, wildcardEvaluators, comparator);
+            }
+
+            this.isSetup = true; // lists now include parent's wildcard-evaluators; see copyEvaluators()
         }
 
-        private void removeEvaluatorFromSubtree(T evaluator) {
-            if (CollectionUtils.isNotEmpty(wildcardEvaluators)) {
-                if (wildcardEvaluators.remove(evaluator)) {
-                    if (CollectionUtils.isEmpty(wildcardEvaluators)) {
-                        wildcardEvaluators = null;
-                    }
-                    for (Map.Entry<Character, TrieNode<U>> entry : children.entrySet()) {
-                        entry.getValue().removeEvaluatorFromSubtree(evaluator);
-                    }
-                }
+        boolean hasEvaluator(U evaluator) {
+            synchronized (this) { // a node shared with another trie could be set up by a lookup in that trie
+                return (evaluators != null && evaluators.contains(evaluator)) || (wildcardEvaluators != null && wildcardEvaluators.contains(evaluator));
             }
-            if (CollectionUtils.isNotEmpty(evaluators)) {
-                if (evaluators.remove(evaluator)) {
-                    if (CollectionUtils.isEmpty(evaluators)) {
-                        evaluators = null;
-                    }
+        }
+
+        // removes evaluator from lists of a node copied for update; returns true if it was a wildcard-evaluator
+        boolean removeEvaluator(U evaluator) {
+            boolean ret = false;
+
+            if (evaluators != null && evaluators.remove(evaluator) && evaluators.isEmpty()) {
+                evaluators = null;
+            }
+
+            if (wildcardEvaluators != null) {
+                ret = wildcardEvaluators.remove(evaluator);
+
+                if (ret && wildcardEvaluators.isEmpty()) {
+                    wildcardEvaluators = null;
                 }
             }
+
+            return ret;
         }
 
         public void toString(StringBuilder sb) {
@@ -1059,6 +1367,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             sb.append("nodeValue=").append(nodeValue);
             sb.append("; isSetup=").append(isSetup);
             sb.append("; isSharingParentWildcardEvaluators=").append(isSharingParentWildcardEvaluators);
+            sb.append("; isMergedOnLookup=").append(isMergedOnLookup);
             sb.append("; childCount=").append(children == null ? 0 : children.size());
             sb.append("; evaluators=[ ");
             if (evaluators != null) {
@@ -1084,9 +1393,7 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             sb.append("]\n");
 
             if (children != null) {
-                for (Map.Entry<Character, TrieNode<U>> entry : children.entrySet()) {
-                    TrieNode<U> child = entry.getValue();
-
+                for (TrieNode<U> child : children.values()) {
                     child.toString(nodeValue, sb);
                 }
             }
@@ -1101,4 +1408,267 @@ public class RangerResourceTrie<T extends RangerPolicyResourceEvaluator> {
             wildcardEvaluators = null;
         }
     }
+
+    /*
+     * Children of a TrieNode, keyed by the lookup-char of the first character of the child's str
+     */
+    interface TrieNodeChildren<N> {
+        N get(char ch);
+
+        void put(char ch, N node);
+
+        int size();
+
+        boolean isEmpty();
+
+        Collection<N> values();
+
+        void clear();
+    }
+
+    static class MapTrieNodeChildren<N> extends HashMap<Character, N> implements TrieNodeChildren<N> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public N get(char ch) { return super.get(ch); }
+
+        @Override
+        public void put(char ch, N node) { super.put(ch, node); }
+    }
+
+    /*
+     * Compact alternative to MapTrieNodeChildren: keys are kept sorted in a char[], with nodes at the same index in
+     * an Object[]. Arrays are allocated only when the first child is added, and grow by one slot for small nodes.
+     * Lookups don't box the char; a linear scan is used for few children, binary search otherwise.
+     */
+    static class ArrayTrieNodeChildren<N> implements TrieNodeChildren<N> {
+        private static final char[]   EMPTY_KEYS       = new char[0];
+        private static final Object[] EMPTY_NODES      = new Object[0];
+        private static final int      LINEAR_SCAN_SIZE = 8;
+
+        private char[]   keys  = EMPTY_KEYS;
+        private Object[] nodes = EMPTY_NODES;
+        private int      size  = 0;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public N get(char ch) {
+            final int index = indexOf(ch);
+
+            return index >= 0 ? (N) nodes[index] : null;
+        }
+
+        @Override
+        public void put(char ch, N node) {
+            int index = indexOf(ch);
+
+            if (index >= 0) {
+                nodes[index] = node;
+            } else {
+                index = -(index + 1);
+
+                if (size == keys.length) {
+                    int newLength = size < 4 ? size + 1 : size + (size >> 1);
+
+                    keys  = Arrays.copyOf(keys, newLength);
+                    nodes = Arrays.copyOf(nodes, newLength);
+                }
+
+                System.arraycopy(keys, index, keys, index + 1, size - index);
+                System.arraycopy(nodes, index, nodes, index + 1, size - index);
+
+                keys[index]  = ch;
+                nodes[index] = node;
+
+                size++;
+            }
+        }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public boolean isEmpty() { return size == 0; }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Collection<N> values() {
+            return size == 0 ? Collections.<N>emptyList() : (List<N>) Arrays.asList(nodes).subList(0, size);
+        }
+
+        @Override
+        public void clear() {
+            keys  = EMPTY_KEYS;
+            nodes = EMPTY_NODES;
+            size  = 0;
+        }
+
+        // returns the index of ch, or (-(insertion point) - 1) if not found
+        private int indexOf(char ch) {
+            if (size <= LINEAR_SCAN_SIZE) {
+                for (int i = 0; i < size; i++) {
+                    final char key = keys[i];
+
+                    if (key == ch) {
+                        return i;
+                    } else if (key > ch) {
+                        return -(i + 1);
+                    }
+                }
+
+                return -(size + 1);
+            }
+
+            return Arrays.binarySearch(keys, 0, size, ch);
+        }
+    }
+
+    /**
+     * Read-only view of the evaluators of a node kept apart from its wildcard-evaluators (see presetup()), in comparator
+     * order. The view is created once, when the node is set up, so lookups neither copy the lists nor sort evaluator IDs
+     * for containsId(). get(int) walks the lists from the start; callers should iterate instead.
+     */
+    public static class MergedEvaluatorList<U extends RangerPolicyResourceEvaluator> extends AbstractList<U> {
+        private final List<U>       evaluators;
+        private final List<U>       wildcardEvaluators;
+        private final Comparator<U> comparator;
+
+        // both lists are sorted by the comparator and have no common entries
+        MergedEvaluatorList(List<U> evaluators, List<U> wildcardEvaluators, Comparator<U> comparator) {
+            this.evaluators         = evaluators;
+            this.wildcardEvaluators = wildcardEvaluators;
+            this.comparator         = comparator;
+        }
+
+        public boolean containsId(long id) {
+            return containsId(evaluators, id) || containsId(wildcardEvaluators, id);
+        }
+
+        @Override
+        public int size() {
+            return evaluators.size() + wildcardEvaluators.size();
+        }
+
+        @Override
+        public U get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+
+            Iterator<U> iter = iterator();
+
+            for (int i = 0; i < index; i++) {
+                iter.next();
+            }
+
+            return iter.next();
+        }
+
+        @Override
+        public Iterator<U> iterator() {
+            return new Iterator<U>() {
+                private int i = 0;
+                private int j = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return i < evaluators.size() || j < wildcardEvaluators.size();
+                }
+
+                @Override
+                public U next() {
+                    if (i < evaluators.size()) {
+                        if (j == wildcardEvaluators.size() || comparator == null || comparator.compare(evaluators.get(i), wildcardEvaluators.get(j)) <= 0) {
+                            return evaluators.get(i++);
+                        }
+                    } else if (j == wildcardEvaluators.size()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return wildcardEvaluators.get(j++);
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <U extends RangerPolicyResourceEvaluator> boolean containsId(List<U> evaluators, long id) {
+            if (evaluators instanceof EvaluatorList) {
+                return ((EvaluatorList<U>) evaluators).containsId(id);
+            }
+
+            for (U evaluator : evaluators) {
+                if (evaluator.getId() == id) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * List of evaluators held by trie nodes. It keeps a sorted array of evaluator IDs, built on first use, so
+     * that callers intersecting lists from several tries can check membership without a linear scan.
+     *
+     * The IDs are rebuilt when the list has been modified since they were computed: structural changes, including
+     * sort(), retainAll() and removeIf(), are detected by ArrayList.modCount, and set() discards the IDs. Sub-lists are
+     * read-only, as ArrayList sub-lists replace elements without going through set().
+     */
+    public static class EvaluatorList<U extends RangerPolicyResourceEvaluator> extends ArrayList<U> {
+        private static final long serialVersionUID = 1L;
+
+        private transient volatile SortedIds sortedIds = null;
+
+        EvaluatorList() {
+            super();
+        }
+
+        EvaluatorList(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        EvaluatorList(Collection<? extends U> evaluators) {
+            super(evaluators);
+        }
+
+        public boolean containsId(long id) {
+            SortedIds ids = sortedIds;
+
+            if (ids == null || ids.modCount != modCount) {
+                ids = new SortedIds(this);
+
+                sortedIds = ids;
+            }
+
+            return Arrays.binarySearch(ids.ids, id) >= 0;
+        }
+
+        @Override
+        public U set(int index, U evaluator) {
+            sortedIds = null;
+
+            return super.set(index, evaluator);
+        }
+
+        @Override
+        public List<U> subList(int fromIndex, int toIndex) {
+            return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+        }
+
+        private static final class SortedIds {
+            final long[] ids;
+            final int    modCount;
+
+            SortedIds(EvaluatorList<?> list) {
+                this.modCount = list.modCount;
+                this.ids      = new long[list.size()];
+
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = list.get(i).getId();
+                }
+
+                Arrays.sort(ids);
+            }
+        }
+    }
 }
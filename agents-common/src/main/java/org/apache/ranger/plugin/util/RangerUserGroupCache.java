@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+import org.apache.ranger.plugin.policyengine.ConcurrentCacheMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of groups of users, to avoid a call to the group mapping - which could be LDAP or a shell command - for every
+ * authorization request.
+ *
+ * - an entry expires ttlMs after it was loaded; a lookup of an expired entry loads the groups again, in the caller
+ * - an entry older than refreshAfterMs is returned as is, and reloaded in the background (refresh-ahead); so users
+ *   that make requests regularly don't wait for the group mapping
+ * - users with no groups, and failed lookups, are cached for negativeTtlMs; a failed reload keeps the previously
+ *   loaded groups for negativeTtlMs
+ * - number of entries is limited to maxSize; least recently used entries are evicted first
+ * - groups looked up via a UserGroupInformation are cached under its short user name, like lookups by user name;
+ *   UserGroupInformation.getGroupNames() resolves groups by the user name as well
+ *
+ * The cache is disabled by default; enable it with propertyPrefix.usergroup.cache.enabled=true.
+ *
+ * Lookups, reloads and errors are counted in RangerMetricsRegistry.
+ */
+public class RangerUserGroupCache {
+	private static final Log LOG = LogFactory.getLog(RangerUserGroupCache.class);
+
+	private static final long DEFAULT_TTL_MS          = 5 * 60 * 1000;
+	private static final long DEFAULT_NEGATIVE_TTL_MS = 30 * 1000;
+	private static final int  DEFAULT_MAX_SIZE        = 10 * 1000;
+	private static final int  MAX_PENDING_REFRESHES   = 1000;
+
+	public interface GroupsProvider {
+		Set<String> getGroups(String user) throws Exception;
+	}
+
+	private final ConcurrentCacheMap<String, Entry> cache;
+	private final GroupsProvider                    groupsProvider;
+	private final long                              ttlMs;
+	private final long                              refreshAfterMs;
+	private final long                              negativeTtlMs;
+	private final ThreadPoolExecutor                refresher;
+	private final RangerLatencyHistogram            loadLatency;
+	private final LongAdder                         hitCount;
+	private final LongAdder                         missCount;
+	private final LongAdder                         refreshCount;
+	private final LongAdder                         errorCount;
+
+	public RangerUserGroupCache(GroupsProvider groupsProvider, long ttlMs, long refreshAfterMs, long negativeTtlMs, int maxSize) {
+		RangerMetricsRegistry metricsRegistry = RangerMetricsRegistry.getInstance();
+
+		this.cache          = new ConcurrentCacheMap<>(maxSize);
+		this.groupsProvider = groupsProvider;
+		this.ttlMs          = ttlMs;
+		this.refreshAfterMs = Math.min(refreshAfterMs, ttlMs);
+		this.negativeTtlMs  = negativeTtlMs;
+		this.refresher      = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING_REFRESHES), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread ret = new Thread(r, "RangerUserGroupCache-refresher");
+
+				ret.setDaemon(true);
+
+				return ret;
+			}
+		});
+		this.loadLatency  = metricsRegistry.getHistogram(RangerMetricsRegistry.METRIC_USER_GROUPS_LOAD);
+		this.hitCount     = metricsRegistry.getCounter(RangerMetricsRegistry.COUNTER_USER_GROUPS_CACHE_HIT);
+		this.missCount    = metricsRegistry.getCounter(RangerMetricsRegistry.COUNTER_USER_GROUPS_CACHE_MISS);
+		this.refreshCount = metricsRegistry.getCounter(RangerMetricsRegistry.COUNTER_USER_GROUPS_REFRESH);
+		this.errorCount   = metricsRegistry.getCounter(RangerMetricsRegistry.COUNTER_USER_GROUPS_LOAD_ERROR);
+	}
+
+	/**
+	 * @return a cache that looks up groups via UserGroupInformation, configured by properties propertyPrefix.usergroup.cache.*;
+	 *         null if the cache is disabled
+	 */
+	public static RangerUserGroupCache create(RangerConfiguration config, String propertyPrefix) {
+		boolean isEnabled      = config.getBoolean(propertyPrefix + ".usergroup.cache.enabled", false);
+		long    ttlMs          = config.getLong(propertyPrefix + ".usergroup.cache.ttl.ms", DEFAULT_TTL_MS);
+		long    refreshAfterMs = config.getLong(propertyPrefix + ".usergroup.cache.refresh.after.ms", ttlMs * 4 / 5);
+		long    negativeTtlMs  = config.getLong(propertyPrefix + ".usergroup.cache.negative.ttl.ms", DEFAULT_NEGATIVE_TTL_MS);
+		int     maxSize        = config.getInt(propertyPrefix + ".usergroup.cache.max.size", DEFAULT_MAX_SIZE);
+
+		RangerUserGroupCache ret = null;
+
+		if (isEnabled && ttlMs > 0 && maxSize > 0) {
+			ret = new RangerUserGroupCache(new UgiGroupsProvider(), ttlMs, refreshAfterMs, negativeTtlMs, maxSize);
+		}
+
+		LOG.info("RangerUserGroupCache: enabled=" + (ret != null) + ", ttlMs=" + ttlMs + ", refreshAfterMs=" + refreshAfterMs + ", negativeTtlMs=" + negativeTtlMs + ", maxSize=" + maxSize);
+
+		return ret;
+	}
+
+	/**
+	 * @return groups of the given user; empty set if the user has no groups or they could not be looked up. The
+	 *         returned set is immutable.
+	 */
+	public Set<String> getGroups(String user) {
+		if (StringUtils.isEmpty(user)) {
+			return Collections.emptySet();
+		}
+
+		return getGroups(user, groupsProvider);
+	}
+
+	/**
+	 * @return groups of the user of ugi; for a user not in cache, the groups are looked up via ugi.getGroupNames().
+	 *         The returned set is immutable.
+	 */
+	public Set<String> getGroups(final UserGroupInformation ugi) {
+		if (ugi == null || StringUtils.isEmpty(ugi.getShortUserName())) {
+			return Collections.emptySet();
+		}
+
+		return getGroups(ugi.getShortUserName(), new GroupsProvider() {
+			@Override
+			public Set<String> getGroups(String user) {
+				return toSet(ugi.getGroupNames());
+			}
+		});
+	}
+
+	public void invalidate(String user) {
+		if (user != null) {
+			cache.remove(user);
+		}
+	}
+
+	public void invalidateAll() {
+		cache.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public void cleanup() {
+		refresher.shutdownNow();
+		cache.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "RangerUserGroupCache={ttlMs=" + ttlMs + ", refreshAfterMs=" + refreshAfterMs + ", negativeTtlMs=" + negativeTtlMs + ", cache=" + cache + "}";
+	}
+
+	private Set<String> getGroups(String user, GroupsProvider provider) {
+		long  now   = System.currentTimeMillis();
+		Entry entry = cache.get(user);
+
+		if (entry != null && now < entry.expiryTimeMs) {
+			hitCount.increment();
+
+			if (now >= entry.refreshTimeMs && entry.isRefreshing.compareAndSet(false, true)) {
+				scheduleRefresh(user, provider, entry);
+			}
+
+			return entry.groups;
+		}
+
+		missCount.increment();
+
+		return load(user, provider, entry).groups;
+	}
+
+	private Entry load(String user, GroupsProvider provider, Entry oldEntry) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("==> RangerUserGroupCache.load(" + user + ")");
+		}
+
+		long        startTimeNanos = System.nanoTime();
+		Set<String> groups         = null;
+		boolean     isFailed       = false;
+
+		try {
+			groups = provider.getGroups(user);
+		} catch (Throwable excp) {
+			isFailed = true;
+
+			errorCount.increment();
+
+			LOG.warn("RangerUserGroupCache.load(" + user + "): failed to get groups", excp);
+		}
+
+		loadLatency.recordSince(startTimeNanos);
+
+		long  now = System.currentTimeMillis();
+		Entry ret;
+
+		if (groups != null && !groups.isEmpty()) {
+			ret = new Entry(Collections.unmodifiableSet(new HashSet<>(groups)), now + ttlMs, now + refreshAfterMs);
+		} else if (isFailed && oldEntry != null) { // keep serving groups loaded earlier, and try again after negativeTtlMs
+			ret = new Entry(oldEntry.groups, now + negativeTtlMs, Long.MAX_VALUE);
+		} else {
+			ret = new Entry(Collections.<String>emptySet(), now + negativeTtlMs, Long.MAX_VALUE);
+		}
+
+		cache.put(user, ret);
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("<== RangerUserGroupCache.load(" + user + "): " + ret.groups);
+		}
+
+		return ret;
+	}
+
+	private void scheduleRefresh(final String user, final GroupsProvider provider, final Entry entry) {
+		try {
+			refresher.execute(new Runnable() {
+				@Override
+				public void run() {
+					refreshCount.increment();
+
+					load(user, provider, entry);
+				}
+			});
+		} catch (RejectedExecutionException excp) { // too many pending refreshes; a later lookup will try again
+			entry.isRefreshing.set(false);
+		}
+	}
+
+	private static Set<String> toSet(String[] groups) {
+		return groups == null || groups.length == 0 ? Collections.<String>emptySet() : new HashSet<>(Arrays.asList(groups));
+	}
+
+	private static class UgiGroupsProvider implements GroupsProvider {
+		@Override
+		public Set<String> getGroups(String user) {
+			return toSet(UserGroupInformation.createRemoteUser(user).getGroupNames());
+		}
+	}
+
+	private static class Entry {
+		final Set<String>   groups;
+		final long          expiryTimeMs;
+		final long          refreshTimeMs;
+		final AtomicBoolean isRefreshing = new AtomicBoolean();
+
+		Entry(Set<String> groups, long expiryTimeMs, long refreshTimeMs) {
+			this.groups        = groups;
+			this.expiryTimeMs  = expiryTimeMs;
+			this.refreshTimeMs = refreshTimeMs;
+		}
+	}
+}
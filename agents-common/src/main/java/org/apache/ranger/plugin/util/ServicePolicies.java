@@ -390,18 +390,46 @@ public class ServicePolicies implements java.io.Serializable {
 	}
 
 	public static ServicePolicies applyDelta(final ServicePolicies servicePolicies, RangerPolicyEngineImpl policyEngine) {
-		ServicePolicies ret = copyHeader(servicePolicies);
+		Map<String, List<RangerPolicy>> oldZonePolicies = new HashMap<>();
 
-		List<RangerPolicy> oldResourcePolicies = policyEngine.getResourcePolicies();
-		List<RangerPolicy> oldTagPolicies      = policyEngine.getTagPolicies();
+		if (MapUtils.isNotEmpty(servicePolicies.getSecurityZones())) {
+			for (String zoneName : servicePolicies.getSecurityZones().keySet()) {
+				oldZonePolicies.put(zoneName, policyEngine.getResourcePolicies(zoneName));
+			}
+		}
 
-		List<RangerPolicy> newResourcePolicies = RangerPolicyDeltaUtil.applyDeltas(oldResourcePolicies, servicePolicies.getPolicyDeltas(), servicePolicies.getServiceDef().getName());
+		return applyDelta(servicePolicies, policyEngine.getResourcePolicies(), policyEngine.getTagPolicies(), oldZonePolicies);
+	}
+
+	/**
+	 * Applies the deltas to policies of an earlier version, like those loaded from the policy cache, without a policy engine.
+	 */
+	public static ServicePolicies applyDelta(final ServicePolicies servicePolicies, final ServicePolicies basePolicies) {
+		Map<String, List<RangerPolicy>> oldZonePolicies = new HashMap<>();
+
+		if (MapUtils.isNotEmpty(servicePolicies.getSecurityZones())) {
+			for (String zoneName : servicePolicies.getSecurityZones().keySet()) {
+				SecurityZoneInfo baseZoneInfo = basePolicies.getSecurityZones() == null ? null : basePolicies.getSecurityZones().get(zoneName);
+
+				oldZonePolicies.put(zoneName, baseZoneInfo == null ? null : baseZoneInfo.getPolicies());
+			}
+		}
+
+		List<RangerPolicy> oldTagPolicies = basePolicies.getTagPolicies() == null ? null : basePolicies.getTagPolicies().getPolicies();
+
+		return applyDelta(servicePolicies, basePolicies.getPolicies(), oldTagPolicies, oldZonePolicies);
+	}
+
+	private static ServicePolicies applyDelta(final ServicePolicies servicePolicies, List<RangerPolicy> oldResourcePolicies, List<RangerPolicy> oldTagPolicies, Map<String, List<RangerPolicy>> oldZonePolicies) {
+		ServicePolicies ret = copyHeader(servicePolicies);
+
+		List<RangerPolicy> newResourcePolicies = RangerPolicyDeltaUtil.applyDeltas(nullToEmpty(oldResourcePolicies), servicePolicies.getPolicyDeltas(), servicePolicies.getServiceDef().getName());
 
 		ret.setPolicies(newResourcePolicies);
 
 		final List<RangerPolicy> newTagPolicies;
 		if (servicePolicies.getTagPolicies() != null) {
-			newTagPolicies = RangerPolicyDeltaUtil.applyDeltas(oldTagPolicies, servicePolicies.getPolicyDeltas(), servicePolicies.getTagPolicies().getServiceDef().getName());
+			newTagPolicies = RangerPolicyDeltaUtil.applyDeltas(nullToEmpty(oldTagPolicies), servicePolicies.getPolicyDeltas(), servicePolicies.getTagPolicies().getServiceDef().getName());
 		} else {
 			newTagPolicies = null;
 		}
@@ -417,7 +445,7 @@ public class ServicePolicies implements java.io.Serializable {
 				String 			 zoneName = entry.getKey();
 				SecurityZoneInfo zoneInfo = entry.getValue();
 
-				List<RangerPolicy> zoneResourcePolicies = policyEngine.getResourcePolicies(zoneName);
+				List<RangerPolicy> zoneResourcePolicies = nullToEmpty(oldZonePolicies.get(zoneName));
 				// There are no separate tag-policy-repositories for each zone
 
 				final List<RangerPolicy> newZonePolicies = RangerPolicyDeltaUtil.applyDeltas(zoneResourcePolicies, zoneInfo.getPolicyDeltas(), servicePolicies.getServiceDef().getName());
@@ -436,4 +464,8 @@ public class ServicePolicies implements java.io.Serializable {
 
 		return ret;
 	}
+
+	private static List<RangerPolicy> nullToEmpty(List<RangerPolicy> policies) {
+		return policies == null ? Collections.<RangerPolicy>emptyList() : policies;
+	}
 }
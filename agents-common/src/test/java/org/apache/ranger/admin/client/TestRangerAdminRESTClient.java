@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.admin.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+import org.apache.ranger.plugin.util.RangerRESTUtils;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestRangerAdminRESTClient {
+	private static final String SERVICE_NAME = "dev_hive";
+	private static final String ETAG         = "\"policies-5\"";
+
+	private static final AtomicInteger CLIENT_COUNT = new AtomicInteger();
+
+	private final List<RangerAdminRESTClient> clients = new ArrayList<>();
+
+	private MockAdmin admin;
+
+	@Before
+	public void setUp() throws IOException {
+		admin = new MockAdmin();
+	}
+
+	@After
+	public void tearDown() {
+		for (RangerAdminRESTClient client : clients) {
+			client.cleanup();
+		}
+
+		admin.stop();
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		RangerAdminRESTClient client = createClient(true);
+
+		ServicePolicies policies = client.getServicePoliciesIfUpdated(-1, 0);
+
+		assertNotNull(policies);
+		assertEquals(Long.valueOf(5), policies.getPolicyVersion());
+		assertNull("no ETag is sent before policies are downloaded", admin.lastIfNoneMatch);
+
+		// the ETag of the downloaded policies is sent while the caller has that version, and Ranger Admin answers 304
+		assertNull(client.getServicePoliciesIfUpdated(5, 0));
+		assertEquals(ETAG, admin.lastIfNoneMatch);
+		assertEquals(1, admin.notModifiedCount.get());
+
+		// a caller with another version, like after a restart from the policy cache, gets the full response
+		policies = client.getServicePoliciesIfUpdated(4, 0);
+
+		assertNotNull(policies);
+		assertNull(admin.lastIfNoneMatch);
+		assertEquals(1, admin.notModifiedCount.get());
+		assertEquals(3, admin.requestCount.get());
+	}
+
+	@Test
+	public void testCompressedResponse() throws Exception {
+		RangerAdminRESTClient client   = createClient(true);
+		ServicePolicies       policies = client.getServicePoliciesIfUpdated(-1, 0);
+
+		assertTrue("gzip should be accepted", admin.lastAcceptsGzip);
+		assertEquals(1, admin.gzipResponseCount.get());
+		assertNotNull(policies);
+		assertEquals(SERVICE_NAME, policies.getServiceName());
+		assertEquals(Long.valueOf(5), policies.getPolicyVersion());
+	}
+
+	@Test
+	public void testCompressionDisabled() throws Exception {
+		RangerAdminRESTClient client   = createClient(false);
+		ServicePolicies       policies = client.getServicePoliciesIfUpdated(-1, 0);
+
+		assertFalse("gzip should not be accepted", admin.lastAcceptsGzip);
+		assertEquals(0, admin.gzipResponseCount.get());
+		assertNotNull(policies);
+		assertEquals(Long.valueOf(5), policies.getPolicyVersion());
+	}
+
+	@Test
+	public void testErrorResponse() throws Exception {
+		RangerAdminRESTClient client = createClient(true);
+
+		assertNotNull(client.getServicePoliciesIfUpdated(-1, 0));
+
+		// an error response is a failed download, not "no change": it must not be mistaken for a 304
+		for (int status : new int[] { 401, 403, 500, 503 }) {
+			admin.errorStatus = status;
+
+			try {
+				client.getServicePoliciesIfUpdated(5, 0);
+
+				fail("expected exception for HTTP " + status + " getting policies");
+			} catch (Exception excp) {
+				assertEquals(status == 401, excp instanceof AccessControlException);
+			}
+
+			try {
+				client.getServiceTagsIfUpdated(5, 0);
+
+				fail("expected exception for HTTP " + status + " getting tags");
+			} catch (Exception excp) {
+				assertEquals(status == 401, excp instanceof AccessControlException);
+			}
+		}
+
+		admin.errorStatus = 0;
+
+		assertNull(client.getServicePoliciesIfUpdated(5, 0));
+	}
+
+	private RangerAdminRESTClient createClient(boolean isCompressionEnabled) {
+		String                propertyPrefix = "ranger.plugin.adminclienttest" + CLIENT_COUNT.incrementAndGet();
+		RangerConfiguration   config         = RangerConfiguration.getInstance();
+		RangerAdminRESTClient ret            = new RangerAdminRESTClient();
+
+		config.set(propertyPrefix + ".policy.rest.url", admin.url);
+		config.setBoolean(propertyPrefix + ".policy.rest.client.compression.enabled", isCompressionEnabled);
+		config.setBoolean(propertyPrefix + ".policy.rest.client.hedge.enabled", false);
+
+		ret.init(SERVICE_NAME, "test", propertyPrefix);
+
+		clients.add(ret);
+
+		return ret;
+	}
+
+	private static class MockAdmin implements HttpHandler {
+		final String          url;
+		final HttpServer      server;
+		final ExecutorService executor          = Executors.newCachedThreadPool();
+		final AtomicInteger   requestCount      = new AtomicInteger();
+		final AtomicInteger   notModifiedCount  = new AtomicInteger();
+		final AtomicInteger   gzipResponseCount = new AtomicInteger();
+		volatile String       lastIfNoneMatch;
+		volatile boolean      lastAcceptsGzip;
+		volatile int          errorStatus;
+
+		MockAdmin() throws IOException {
+			this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+			server.createContext(RangerRESTUtils.REST_URL_POLICY_GET_FOR_SERVICE_IF_UPDATED, this);
+			server.createContext(RangerRESTUtils.REST_URL_GET_SERVICE_TAGS_IF_UPDATED, this);
+			server.setExecutor(executor);
+			server.start();
+
+			this.url = "http://127.0.0.1:" + server.getAddress().getPort();
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+			requestCount.incrementAndGet();
+
+			lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			lastAcceptsGzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+			try {
+				if (errorStatus != 0) {
+					exchange.sendResponseHeaders(errorStatus, -1);
+				} else if (ETAG.equals(lastIfNoneMatch)) {
+					notModifiedCount.incrementAndGet();
+
+					exchange.sendResponseHeaders(304, -1);
+				} else {
+					byte[] body = ("{\"serviceName\":\"" + SERVICE_NAME + "\",\"policyVersion\":5,\"policies\":[]}").getBytes(StandardCharsets.UTF_8);
+
+					if (lastAcceptsGzip) {
+						ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+						try (GZIPOutputStream out = new GZIPOutputStream(buf)) {
+							out.write(body);
+						}
+
+						body = buf.toByteArray();
+
+						gzipResponseCount.incrementAndGet();
+
+						exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+					}
+
+					exchange.getResponseHeaders().set("Content-Type", "application/json");
+					exchange.getResponseHeaders().set("ETag", ETAG);
+					exchange.sendResponseHeaders(200, body.length);
+
+					try (OutputStream out = exchange.getResponseBody()) {
+						out.write(body);
+					}
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+
+		void stop() {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+}
@@ -221,6 +221,36 @@ public class RangerIpMatcherTest {
 		Assert.assertFalse(ipMatcher.isMatched(createRequest("10.20.33.10")));
 	}
 	
+	@Test
+	public void test_cidr() {
+		RangerIpMatcher ipMatcher = createMatcher(new String[]{"10.0.0.0/8", "192.168.1.128/25", "2001:db8::/32"} );
+		Assert.assertTrue(ipMatcher.isMatched(createRequest("10.20.30.40")));
+		Assert.assertTrue(ipMatcher.isMatched(createRequest("192.168.1.200")));
+		Assert.assertTrue(ipMatcher.isMatched(createRequest("2001:db8:1::1")));
+		Assert.assertTrue(ipMatcher.isMatched(createRequest("2001:DB8:0:0:0:0:0:1")));
+		Assert.assertFalse(ipMatcher.isMatched(createRequest("11.20.30.40")));
+		Assert.assertFalse(ipMatcher.isMatched(createRequest("192.168.1.100")));
+		Assert.assertFalse(ipMatcher.isMatched(createRequest("2001:db9::1")));
+
+		// CIDR and wildcard notations can be mixed
+		ipMatcher = createMatcher(new String[]{"10.20.*", "172.16.0.0/12", "a0:b0:*"} );
+		Assert.assertTrue(ipMatcher.isMatched(createRequest("10.20.1.2")));
+		Assert.assertTrue(ipMatcher.isMatched(createRequest("172.31.255.1")));
+		Assert.assertTrue(ipMatcher.isMatched(createRequest("a0:b0::1")));
+		Assert.assertFalse(ipMatcher.isMatched(createRequest("10.21.1.2")));
+		Assert.assertFalse(ipMatcher.isMatched(createRequest("172.32.0.1")));
+		Assert.assertFalse(ipMatcher.isMatched(createRequest("a0:b1::1")));
+	}
+
+	@Test
+	public void test_wildcardToCidr() {
+		Assert.assertEquals("10.0.0.0/8", RangerIpMatcher.wildcardToCidr("10."));
+		Assert.assertEquals("10.20.30.0/24", RangerIpMatcher.wildcardToCidr("10.20.30."));
+		Assert.assertEquals("a0:b0:0:0:0:0:0:0/32", RangerIpMatcher.wildcardToCidr("a0:b0:"));
+		Assert.assertNull(RangerIpMatcher.wildcardToCidr("a0::"));
+		Assert.assertNull(RangerIpMatcher.wildcardToCidr("1.2.3.4."));
+	}
+
 	RangerIpMatcher createMatcher(String[] ipArray) {
 		RangerIpMatcher matcher = new RangerIpMatcher();
 
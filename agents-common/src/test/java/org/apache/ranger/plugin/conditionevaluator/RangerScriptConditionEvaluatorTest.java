@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.conditionevaluator;
+
+import org.apache.ranger.plugin.contextenricher.RangerTagForEval;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItemCondition;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerPolicyConditionDef;
+import org.apache.ranger.plugin.model.RangerTag;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
+import org.apache.ranger.plugin.policyengine.RangerAccessResource;
+import org.apache.ranger.plugin.policyresourcematcher.RangerPolicyResourceMatcher;
+import org.apache.ranger.plugin.util.RangerAccessRequestUtil;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.script.ScriptEngineManager;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+
+public class RangerScriptConditionEvaluatorTest {
+	private static final Date ACCESS_TIME = new Date(1500000000000L); // 2017-07-14T02:40:00Z
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeNotNull(new ScriptEngineManager().getEngineByName("JavaScript"));
+	}
+
+	@Test
+	public void testScriptIsCompiledOnce() {
+		String                         script    = "ctx.getUser() == 'user1'";
+		RangerScriptConditionEvaluator evaluator = createScriptEvaluator(script);
+
+		Assert.assertTrue(evaluator.isMatched(createRequest("user1", null)));
+		Assert.assertFalse(evaluator.isMatched(createRequest("user2", null)));
+
+		Assert.assertNotNull(evaluator.getCompiledScript(script));
+		Assert.assertSame(evaluator.getCompiledScript(script), evaluator.getCompiledScript(script));
+	}
+
+	@Test
+	public void testGlobalsAreNotSharedAcrossEvaluations() {
+		// a global set by one evaluation must not be visible to the next one
+		RangerScriptConditionEvaluator evaluator = createScriptEvaluator("var seen = (typeof lastUser !== 'undefined'); lastUser = ctx.getUser(); !seen");
+
+		for (int i = 0; i < 5; i++) {
+			Assert.assertTrue("evaluation " + i + " saw a global set by an earlier evaluation", evaluator.isMatched(createRequest("user" + i, null)));
+		}
+	}
+
+	@Test
+	public void testNativeTemplatesMatchScriptEvaluation() {
+		List<String> templates = Arrays.asList("ctx.isAccessedAfter('expiry_date');",
+		                                       "ctx.isAccessedBefore('expiry_date');",
+		                                       "ctx.isAccessedAfter('PII', 'expiry_date')",
+		                                       "ctx.isAccessedBefore(\"PII\", \"expiry_date\")",
+		                                       "ctx.isAccessedAfter('PCI', 'expiry_date')",
+		                                       "tagAttr['level'] == 'high'",
+		                                       "tagAttr['level'] != 'high';",
+		                                       "tagAttr[\"level\"] === \"low\"",
+		                                       "tagAttr['owner'] !== 'hr'");
+		List<Map<String, String>> tagAttributes = Arrays.asList(createAttributes("2016/01/01", "high"),
+		                                                        createAttributes("2018/01/01", "low"),
+		                                                        createAttributes("2017/07/14", "medium"),
+		                                                        Collections.<String, String>emptyMap());
+
+		for (String template : templates) {
+			RangerScriptConditionEvaluator scriptEvaluator = createScriptEvaluator(template);
+
+			for (String expectedResult : Arrays.asList("true", "false")) {
+				RangerScriptTemplateConditionEvaluator templateEvaluator = createTemplateEvaluator(template, expectedResult);
+
+				for (Map<String, String> attributes : tagAttributes) {
+					RangerAccessRequest request  = createRequest("user1", attributes);
+					boolean             expected = scriptEvaluator.isMatched(request) == Boolean.parseBoolean(expectedResult);
+
+					Assert.assertEquals("template={" + template + "}, expectedResult=" + expectedResult + ", attributes=" + attributes, expected, templateEvaluator.isMatched(request));
+				}
+			}
+		}
+
+		RangerScriptTemplateConditionEvaluator expiry = createTemplateEvaluator("ctx.isAccessedAfter('expiry_date');", "true");
+
+		Assert.assertTrue(expiry.isMatched(createRequest("user1", createAttributes("2016/01/01", "high"))));
+		Assert.assertFalse(expiry.isMatched(createRequest("user1", createAttributes("2018/01/01", "high"))));
+	}
+
+	private static RangerScriptConditionEvaluator createScriptEvaluator(String script) {
+		RangerScriptConditionEvaluator ret = new RangerScriptConditionEvaluator();
+
+		ret.setConditionDef(new RangerPolicyConditionDef(1L, "script", RangerScriptConditionEvaluator.class.getName(), null));
+		ret.setPolicyItemCondition(new RangerPolicyItemCondition("script", Collections.singletonList(script)));
+		ret.init();
+
+		return ret;
+	}
+
+	private static RangerScriptTemplateConditionEvaluator createTemplateEvaluator(String scriptTemplate, String expectedResult) {
+		RangerScriptTemplateConditionEvaluator ret = new RangerScriptTemplateConditionEvaluator();
+
+		ret.setConditionDef(new RangerPolicyConditionDef(1L, "template", RangerScriptTemplateConditionEvaluator.class.getName(), Collections.singletonMap("scriptTemplate", scriptTemplate)));
+		ret.setPolicyItemCondition(new RangerPolicyItemCondition("template", Collections.singletonList(expectedResult)));
+		ret.init();
+
+		return ret;
+	}
+
+	private static Map<String, String> createAttributes(String expiryDate, String level) {
+		Map<String, String> ret = new HashMap<>();
+
+		ret.put("expiry_date", expiryDate);
+		ret.put("level", level);
+
+		return ret;
+	}
+
+	private static RangerAccessRequest createRequest(String user, Map<String, String> tagAttributes) {
+		RangerAccessResource    resource = mock(RangerAccessResource.class);
+		RangerAccessRequestImpl request  = new RangerAccessRequestImpl(resource, "select", user, null);
+
+		request.setAccessTime(ACCESS_TIME);
+
+		if (tagAttributes != null) {
+			RangerTagForEval tag = new RangerTagForEval(new RangerTag("PII", tagAttributes), RangerPolicyResourceMatcher.MatchType.SELF);
+
+			request.getContext().put(RangerAccessRequestUtil.KEY_CONTEXT_TAGS, Collections.singleton(tag));
+			RangerAccessRequestUtil.setCurrentTagInContext(request.getContext(), tag);
+		}
+
+		return request;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.geo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestRangerGeolocationDatabase {
+	private File indexFile;
+
+	@Before
+	public void setUp() throws IOException {
+		indexFile = File.createTempFile("geo", ".idx");
+	}
+
+	@After
+	public void tearDown() {
+		indexFile.delete();
+	}
+
+	@Test
+	public void testFind() {
+		RangerGeolocationDatabase database = createDatabase();
+
+		assertEquals(3, database.getIndex().size());
+		assertEquals(2, database.getIndex().getLocationCount());
+
+		assertLocation(database, "1.0.0.0", "US", "CA");
+		assertLocation(database, "1.0.0.255", "US", "CA");
+		assertLocation(database, "10.1.2.3", "IN", "KA");
+		assertLocation(database, "20.0.0.0", "US", "CA");
+		assertNull(database.find("1.0.1.0"));
+		assertNull(database.find("0.255.255.255"));
+		assertNull(database.find("255.255.255.255"));
+		assertNull(database.find(""));
+
+		// attribute values of ranges in the same location are shared
+		assertSame(database.find("1.0.0.1").getLocationData(), database.find("20.0.0.1").getLocationData());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		RangerGeolocationDatabase database = createDatabase();
+
+		database.save(indexFile, 1234L);
+
+		RangerGeolocationDatabase loaded = RangerGeolocationDatabase.load(indexFile);
+
+		assertTrue(loaded.getIndex().isMapped());
+		assertEquals(1234L, loaded.getIndex().getSourceSignature());
+		assertEquals(database.getIndex().size(), loaded.getIndex().size());
+		assertArrayEquals(database.getMetadata().getLocationDataItemNames(), loaded.getMetadata().getLocationDataItemNames());
+
+		assertLocation(loaded, "1.0.0.128", "US", "CA");
+		assertLocation(loaded, "10.255.255.255", "IN", "KA");
+		assertNull(loaded.find("11.0.0.0"));
+		assertEquals("KA", loaded.getValue(loaded.find("10.0.0.1"), "STATE"));
+	}
+
+	@Test
+	public void testLoadInvalidFile() throws Exception {
+		createDatabase().save(indexFile, 0L);
+
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+
+		try {
+			RangerGeolocationDatabase.load(indexFile);
+
+			fail("load of a truncated index file should fail");
+		} catch (IOException excp) {
+			// expected
+		}
+	}
+
+	private RangerGeolocationDatabase createDatabase() {
+		RangerGeolocationDatabase ret = new RangerGeolocationDatabase();
+
+		ret.setMetadata(GeolocationMetadata.create(new String[] { "FROM_IP", "TO_IP", "COUNTRY", "STATE" }, 0));
+
+		// added out of order, with a duplicate
+		ret.add(RangerGeolocationData.create(new String[] { "20.0.0.0", "20.0.0.255", "US", "CA" }, 1, true));
+		ret.add(RangerGeolocationData.create(new String[] { "10.0.0.0", "10.255.255.255", "IN", "KA" }, 2, true));
+		ret.add(RangerGeolocationData.create(new String[] { "16777216", "16777471", "US", "CA" }, 3, false));
+		ret.add(RangerGeolocationData.create(new String[] { "1.0.0.0", "1.0.0.255", "US", "CA" }, 4, true));
+
+		ret.optimize();
+
+		return ret;
+	}
+
+	private void assertLocation(RangerGeolocationDatabase database, String ipAddress, String country, String state) {
+		RangerGeolocationData data = database.find(ipAddress);
+
+		assertNotNull(ipAddress, data);
+		assertEquals(country, database.getValue(data, "COUNTRY"));
+		assertEquals(state, database.getValue(data, "STATE"));
+	}
+}
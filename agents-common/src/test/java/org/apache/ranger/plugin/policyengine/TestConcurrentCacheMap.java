@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.policyengine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestConcurrentCacheMap {
+	private static final int MAX_SIZE = 16;
+
+	@Test
+	public void testGetPut() {
+		ConcurrentCacheMap<String, String> cache = new ConcurrentCacheMap<>(MAX_SIZE);
+
+		for (int i = 0; i < MAX_SIZE; i++) {
+			cache.put(String.valueOf(i), String.valueOf(i));
+		}
+
+		assertEquals(MAX_SIZE, cache.size());
+
+		for (int i = 0; i < MAX_SIZE; i++) {
+			assertEquals(String.valueOf(i), cache.get(String.valueOf(i)));
+		}
+
+		assertNull(cache.get("missing"));
+		assertNull(cache.get(null));
+
+		assertEquals(MAX_SIZE, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testEviction() {
+		ConcurrentCacheMap<String, String> cache = new ConcurrentCacheMap<>(MAX_SIZE);
+
+		for (int i = 0; i < MAX_SIZE * 4; i++) {
+			cache.put(String.valueOf(i), String.valueOf(i));
+		}
+
+		assertEquals(MAX_SIZE, cache.size());
+		assertEquals(MAX_SIZE * 3, cache.getEvictionCount());
+
+		// the most recent entry is never the least recently used one in a sample
+		assertEquals(String.valueOf(MAX_SIZE * 4 - 1), cache.get(String.valueOf(MAX_SIZE * 4 - 1)));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final ConcurrentCacheMap<Integer, Integer> cache = new ConcurrentCacheMap<>(MAX_SIZE);
+		List<Thread>                               threads = new ArrayList<>();
+
+		for (int t = 0; t < 8; t++) {
+			final int offset = t * 1000;
+
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						cache.put(offset + i, offset + i);
+
+						Integer value = cache.get(offset + i);
+
+						assertTrue(value == null || value == offset + i);
+					}
+				}
+			};
+
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(cache.size() <= MAX_SIZE);
+		assertEquals(8 * 1000, cache.getHitCount() + cache.getMissCount());
+	}
+}
@@ -58,6 +58,7 @@ import java.io.OutputStreamWriter;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -390,49 +391,48 @@ public class TestPolicyEngine {
 		runTestsFromResourceFiles(conditionsTestResourceFiles);
 	}
 
+	@Test
+	public void testPolicyEngine_hive_all_children() {
+		String[] hiveTestResourceFiles = { "/policyengine/test_policyengine_hive_all_children.json" };
+
+		runTestsFromResourceFiles(hiveTestResourceFiles);
+	}
+
 	private void runTestsFromResourceFiles(String[] resourceNames) {
 		for(String resourceName : resourceNames) {
 			InputStream inStream = this.getClass().getResourceAsStream(resourceName);
 			InputStreamReader reader   = new InputStreamReader(inStream);
 
-			runTests(reader, resourceName);
-		}
-	}
+			runTests(reader, resourceName, false, false);
 
-	private void runTests(InputStreamReader reader, String testName) {
-		PolicyEngineTestCase testCase = gsonBuilder.fromJson(reader, PolicyEngineTestCase.class);
+			// run the same tests with engines having compact trie nodes; test data is read again, as runTests() updates request contexts
+			inStream = this.getClass().getResourceAsStream(resourceName);
+			reader   = new InputStreamReader(inStream);
 
-		assertTrue("invalid input: " + testName, testCase != null && testCase.serviceDef != null && testCase.policies != null && testCase.tests != null);
+			runTests(reader, resourceName, true, false);
 
-		ServicePolicies servicePolicies = new ServicePolicies();
-		servicePolicies.setServiceName(testCase.serviceName);
-		servicePolicies.setServiceDef(testCase.serviceDef);
-		servicePolicies.setPolicies(testCase.policies);
-		servicePolicies.setSecurityZones(testCase.securityZones);
-		servicePolicies.setUserRoles(testCase.userRoles);
-		servicePolicies.setGroupRoles(testCase.groupRoles);
+			// and with engines having tries set up before use
+			inStream = this.getClass().getResourceAsStream(resourceName);
+			reader   = new InputStreamReader(inStream);
 
-		if (StringUtils.isNotBlank(testCase.auditMode)) {
-			servicePolicies.setAuditMode(testCase.auditMode);
+			runTests(reader, resourceName, false, true);
 		}
+	}
 
-		if (null != testCase.tagPolicyInfo) {
-			ServicePolicies.TagPolicies tagPolicies = new ServicePolicies.TagPolicies();
-			tagPolicies.setServiceName(testCase.tagPolicyInfo.serviceName);
-			tagPolicies.setServiceDef(testCase.tagPolicyInfo.serviceDef);
-			tagPolicies.setPolicies(testCase.tagPolicyInfo.tagPolicies);
+	private void runTests(InputStreamReader reader, String testName, boolean compactTrieNodes, boolean presetupTrie) {
+		PolicyEngineTestCase testCase = gsonBuilder.fromJson(reader, PolicyEngineTestCase.class);
 
-			if (StringUtils.isNotBlank(testCase.auditMode)) {
-				tagPolicies.setAuditMode(testCase.auditMode);
-			}
-			servicePolicies.setTagPolicies(tagPolicies);
-		}
+		assertTrue("invalid input: " + testName, testCase != null && testCase.serviceDef != null && testCase.policies != null && testCase.tests != null);
+
+		ServicePolicies servicePolicies = createServicePolicies(testCase);
 
 		RangerPolicyEngineOptions policyEngineOptions = new RangerPolicyEngineOptions();
 
 		policyEngineOptions.disableTagPolicyEvaluation = false;
 		policyEngineOptions.disableAccessEvaluationWithPolicyACLSummary = false;
 		policyEngineOptions.optimizeTrieForRetrieval = false;
+		policyEngineOptions.compactTrieNodes = compactTrieNodes;
+		policyEngineOptions.presetupTrie = presetupTrie;
 
 		boolean useForwardedIPAddress = RangerConfiguration.getInstance().getBoolean("ranger.plugin.hive.use.x-forwarded-for.ipaddress", false);
 		String trustedProxyAddressString = RangerConfiguration.getInstance().get("ranger.plugin.hive.trusted.proxy.ipaddresses");
@@ -467,6 +467,8 @@ public class TestPolicyEngine {
 			RangerPolicyEngine updatedPolicyEngineForResourceAccessInfo = policyEngineForResourceAccessInfo.cloneWithDelta(servicePolicies);
 			runTestCaseTests(updatedPolicyEngine, updatedPolicyEngineForResourceAccessInfo, testCase.serviceDef, testName, testCase.updatedTests);
 
+			// updated engines share trie nodes with the original engines; original engines must not see the updates
+			runTestCaseTests(policyEngine, policyEngineForResourceAccessInfo, testCase.serviceDef, testName, testCase.tests);
 		}
 	}
 
@@ -479,74 +481,7 @@ public class TestPolicyEngine {
 			if ((requestCount++ % 10) == 1) {
 				policyEngine.reorderPolicyEvaluators();
 			}
-			if (request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_TAGS) ||
-					request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES)) {
-				// Create a new AccessRequest
-				RangerAccessRequestImpl newRequest =
-						new RangerAccessRequestImpl(request.getResource(), request.getAccessType(),
-								request.getUser(), request.getUserGroups());
-
-				newRequest.setClientType(request.getClientType());
-				newRequest.setAccessTime(request.getAccessTime());
-				newRequest.setAction(request.getAction());
-				newRequest.setRemoteIPAddress(request.getRemoteIPAddress());
-				newRequest.setForwardedAddresses(request.getForwardedAddresses());
-				newRequest.setRequestData(request.getRequestData());
-				newRequest.setSessionId(request.getSessionId());
-
-				Map<String, Object> context = request.getContext();
-				String tagsJsonString = (String) context.get(RangerAccessRequestUtil.KEY_CONTEXT_TAGS);
-				context.remove(RangerAccessRequestUtil.KEY_CONTEXT_TAGS);
-
-				if(!StringUtils.isEmpty(tagsJsonString)) {
-					try {
-						Type setType = new TypeToken<Set<RangerTagForEval>>() {
-						}.getType();
-						Set<RangerTagForEval> tags = gsonBuilder.fromJson(tagsJsonString, setType);
-
-						context.put(RangerAccessRequestUtil.KEY_CONTEXT_TAGS, tags);
-					} catch (Exception e) {
-						System.err.println("TestPolicyEngine.runTests(): error parsing TAGS JSON string in file " + testName + ", tagsJsonString=" +
-								tagsJsonString + ", exception=" + e);
-					}
-				} else if (request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES)) {
-					String resourcesJsonString = (String) context.get(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES);
-					context.remove(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES);
-					if (!StringUtils.isEmpty(resourcesJsonString)) {
-						try {
-							/*
-							Reader stringReader = new StringReader(resourcesJsonString);
-							RangerRequestedResources resources = gsonBuilder.fromJson(stringReader, RangerRequestedResources.class);
-							*/
-
-							Type myType = new TypeToken<RangerRequestedResources>() {
-							}.getType();
-							RangerRequestedResources resources = gsonBuilder.fromJson(resourcesJsonString, myType);
-
-							context.put(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES, resources);
-						} catch (Exception e) {
-							System.err.println("TestPolicyEngine.runTests(): error parsing REQUESTED_RESOURCES string in file " + testName + ", resourcesJsonString=" +
-									resourcesJsonString + ", exception=" + e);
-						}
-					}
-				}
-				newRequest.setContext(context);
-
-				// accessResource.ServiceDef is set here, so that we can skip call to policyEngine.preProcess() which
-				// sets the serviceDef in the resource AND calls enrichers. We dont want enrichers to be called when
-				// context already contains tags -- This may change when we want enrichers to enrich request in the
-				// presence of tags!!!
-
-				// Safe cast
-				RangerAccessResourceImpl accessResource = (RangerAccessResourceImpl) request.getResource();
-				accessResource.setServiceDef(serviceDef);
-
-				request = newRequest;
-
-			} else
-			if (!request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES)) {
-				policyEngine.preProcess(request);
-			}
+			request = prepareRequest(policyEngine, serviceDef, testName, request);
 
 			RangerAccessResultProcessor auditHandler = new RangerDefaultAuditHandler();
 
@@ -557,6 +492,13 @@ public class TestPolicyEngine {
 				assertNotNull("result was null! - " + test.name, result);
 				assertEquals("isAllowed mismatched! - " + test.name, expected.getIsAllowed(), result.getIsAllowed());
 				assertEquals("isAudited mismatched! - " + test.name, expected.getIsAudited(), result.getIsAudited());
+
+				// when access is allowed on all tables of the database, it must be allowed on this table as well
+				RangerAccessRequest databaseRequest = getDatabaseRequest(request);
+
+				if (databaseRequest != null && policyEngine.isAccessAllowedForAllChildren(databaseRequest, "table")) {
+					assertTrue("isAllowedForAllChildren mismatched! - " + test.name, expected.getIsAllowed());
+				}
 			}
 
 			if(test.dataMaskResult != null) {
@@ -579,6 +521,12 @@ public class TestPolicyEngine {
 				assertEquals("policyId mismatched! - " + test.name, expected.getPolicyId(), result.getPolicyId());
 			}
 
+			if(test.isAllowedForAllChildren != null) {
+				boolean result = policyEngine.isAccessAllowedForAllChildren(request, test.childResourceName);
+
+				assertEquals("isAllowedForAllChildren mismatched! - " + test.name, test.isAllowedForAllChildren, result);
+			}
+
 			if(test.resourceAccessInfo != null) {
 
 				RangerResourceAccessInfo expected = new RangerResourceAccessInfo(test.resourceAccessInfo);
@@ -591,7 +539,196 @@ public class TestPolicyEngine {
 				assertEquals("deniedGroups mismatched! - " + test.name, expected.getDeniedGroups(), result.getDeniedGroups());
 			}
 		}
+	}
+
+	@Test
+	public void testPolicyEngine_batchEvaluation() {
+		String[] resourceFiles = { "/policyengine/test_policyengine_hdfs.json",
+		                           "/policyengine/test_policyengine_tag_hdfs.json",
+		                           "/policyengine/test_policyengine_hdfs_zones.json",
+		                           "/policyengine/test_policyengine_hive.json",
+		                           "/policyengine/test_policyengine_tag_hive.json",
+		                           "/policyengine/test_policyengine_hbase.json",
+		                           "/policyengine/test_policyengine_conditions.json",
+		                           "/policyengine/test_policyengine_with_roles.json" };
+
+		for (String resourceName : resourceFiles) {
+			InputStreamReader reader = new InputStreamReader(this.getClass().getResourceAsStream(resourceName));
+
+			runBatchTests(reader, resourceName);
+		}
+	}
+
+	// evaluating the access requests of a test file as one batch, which shares trie lookups across requests, should give the results of evaluating them one at a time
+	private void runBatchTests(InputStreamReader reader, String testName) {
+		PolicyEngineTestCase testCase = gsonBuilder.fromJson(reader, PolicyEngineTestCase.class);
+
+		assertTrue("invalid input: " + testName, testCase != null && testCase.serviceDef != null && testCase.policies != null && testCase.tests != null);
+
+		RangerPolicyEngineOptions policyEngineOptions = new RangerPolicyEngineOptions();
+
+		policyEngineOptions.disableTagPolicyEvaluation = false;
+		policyEngineOptions.disableAccessEvaluationWithPolicyACLSummary = false;
+		policyEngineOptions.optimizeTrieForRetrieval = false;
+
+		RangerPluginContext pluginContext = new RangerPluginContext("hive");
+		pluginContext.setClusterName("cl1");
+		pluginContext.setClusterType("on-prem");
+
+		RangerPolicyEngine policyEngine = new RangerPolicyEngineImpl(testName, createServicePolicies(testCase), policyEngineOptions, pluginContext);
+
+		policyEngine.setUseForwardedIPAddress(RangerConfiguration.getInstance().getBoolean("ranger.plugin.hive.use.x-forwarded-for.ipaddress", false));
+		policyEngine.setTrustedProxyAddresses(StringUtils.stripAll(StringUtils.split(RangerConfiguration.getInstance().get("ranger.plugin.hive.trusted.proxy.ipaddresses"), ';')));
+
+		List<RangerAccessRequest> requests = new ArrayList<>();
+		List<RangerAccessResult>  results  = new ArrayList<>();
+		List<TestData>            tests    = new ArrayList<>();
+
+		for (TestData test : testCase.tests) {
+			if (test.result == null) {
+				continue;
+			}
+
+			RangerAccessRequest request = prepareRequest(policyEngine, testCase.serviceDef, testName, test.request);
+
+			requests.add(request);
+			results.add(policyEngine.evaluatePolicies(request, RangerPolicy.POLICY_TYPE_ACCESS, null));
+			tests.add(test);
+		}
+
+		List<RangerAccessResult> batchResults = new ArrayList<>(policyEngine.evaluatePolicies(requests, RangerPolicy.POLICY_TYPE_ACCESS, null));
+
+		assertEquals("batch result count mismatched! - " + testName, tests.size(), batchResults.size());
+
+		for (int i = 0; i < tests.size(); i++) {
+			TestData           test        = tests.get(i);
+			RangerAccessResult result      = results.get(i);
+			RangerAccessResult batchResult = batchResults.get(i);
+
+			assertNotNull("batch result was null! - " + test.name, batchResult);
+			assertEquals("batch isAllowed mismatched! - " + test.name, result.getIsAllowed(), batchResult.getIsAllowed());
+			assertEquals("batch isAudited mismatched! - " + test.name, result.getIsAudited(), batchResult.getIsAudited());
+			assertEquals("batch policyId mismatched! - " + test.name, result.getPolicyId(), batchResult.getPolicyId());
+		}
+	}
+
+	private static ServicePolicies createServicePolicies(PolicyEngineTestCase testCase) {
+		ServicePolicies servicePolicies = new ServicePolicies();
+		servicePolicies.setServiceName(testCase.serviceName);
+		servicePolicies.setServiceDef(testCase.serviceDef);
+		servicePolicies.setPolicies(testCase.policies);
+		servicePolicies.setSecurityZones(testCase.securityZones);
+		servicePolicies.setUserRoles(testCase.userRoles);
+		servicePolicies.setGroupRoles(testCase.groupRoles);
+
+		if (StringUtils.isNotBlank(testCase.auditMode)) {
+			servicePolicies.setAuditMode(testCase.auditMode);
+		}
+
+		if (null != testCase.tagPolicyInfo) {
+			ServicePolicies.TagPolicies tagPolicies = new ServicePolicies.TagPolicies();
+			tagPolicies.setServiceName(testCase.tagPolicyInfo.serviceName);
+			tagPolicies.setServiceDef(testCase.tagPolicyInfo.serviceDef);
+			tagPolicies.setPolicies(testCase.tagPolicyInfo.tagPolicies);
+
+			if (StringUtils.isNotBlank(testCase.auditMode)) {
+				tagPolicies.setAuditMode(testCase.auditMode);
+			}
+			servicePolicies.setTagPolicies(tagPolicies);
+		}
+
+		return servicePolicies;
+	}
+
+	private RangerAccessRequest prepareRequest(RangerPolicyEngine policyEngine, RangerServiceDef serviceDef, String testName, RangerAccessRequest request) {
+		if (request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_TAGS) ||
+				request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES)) {
+			// Create a new AccessRequest
+			RangerAccessRequestImpl newRequest =
+					new RangerAccessRequestImpl(request.getResource(), request.getAccessType(),
+							request.getUser(), request.getUserGroups());
+
+			newRequest.setClientType(request.getClientType());
+			newRequest.setAccessTime(request.getAccessTime());
+			newRequest.setAction(request.getAction());
+			newRequest.setRemoteIPAddress(request.getRemoteIPAddress());
+			newRequest.setForwardedAddresses(request.getForwardedAddresses());
+			newRequest.setRequestData(request.getRequestData());
+			newRequest.setSessionId(request.getSessionId());
+
+			Map<String, Object> context = request.getContext();
+			String tagsJsonString = (String) context.get(RangerAccessRequestUtil.KEY_CONTEXT_TAGS);
+			context.remove(RangerAccessRequestUtil.KEY_CONTEXT_TAGS);
+
+			if(!StringUtils.isEmpty(tagsJsonString)) {
+				try {
+					Type setType = new TypeToken<Set<RangerTagForEval>>() {
+					}.getType();
+					Set<RangerTagForEval> tags = gsonBuilder.fromJson(tagsJsonString, setType);
+
+					context.put(RangerAccessRequestUtil.KEY_CONTEXT_TAGS, tags);
+				} catch (Exception e) {
+					System.err.println("TestPolicyEngine.runTests(): error parsing TAGS JSON string in file " + testName + ", tagsJsonString=" +
+							tagsJsonString + ", exception=" + e);
+				}
+			} else if (request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES)) {
+				String resourcesJsonString = (String) context.get(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES);
+				context.remove(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES);
+				if (!StringUtils.isEmpty(resourcesJsonString)) {
+					try {
+						/*
+						Reader stringReader = new StringReader(resourcesJsonString);
+						RangerRequestedResources resources = gsonBuilder.fromJson(stringReader, RangerRequestedResources.class);
+						*/
+
+						Type myType = new TypeToken<RangerRequestedResources>() {
+						}.getType();
+						RangerRequestedResources resources = gsonBuilder.fromJson(resourcesJsonString, myType);
+
+						context.put(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES, resources);
+					} catch (Exception e) {
+						System.err.println("TestPolicyEngine.runTests(): error parsing REQUESTED_RESOURCES string in file " + testName + ", resourcesJsonString=" +
+								resourcesJsonString + ", exception=" + e);
+					}
+				}
+			}
+			newRequest.setContext(context);
+
+			// accessResource.ServiceDef is set here, so that we can skip call to policyEngine.preProcess() which
+			// sets the serviceDef in the resource AND calls enrichers. We dont want enrichers to be called when
+			// context already contains tags -- This may change when we want enrichers to enrich request in the
+			// presence of tags!!!
+
+			// Safe cast
+			RangerAccessResourceImpl accessResource = (RangerAccessResourceImpl) request.getResource();
+			accessResource.setServiceDef(serviceDef);
+
+			request = newRequest;
+
+		} else
+		if (!request.getContext().containsKey(RangerAccessRequestUtil.KEY_CONTEXT_REQUESTED_RESOURCES)) {
+			policyEngine.preProcess(request);
+		}
+
+		return request;
+	}
+
+	private static RangerAccessRequest getDatabaseRequest(RangerAccessRequest request) {
+		RangerAccessResource resource = request.getResource();
+
+		if (resource.getKeys() == null || resource.getKeys().size() != 2 || !resource.exists("database") || !resource.exists("table")) {
+			return null;
+		}
+
+		Map<String, Object>      elements         = new HashMap<>();
+		RangerAccessResourceImpl databaseResource = new RangerAccessResourceImpl(elements);
+		RangerAccessRequestImpl  ret              = new RangerAccessRequestImpl(databaseResource, request.getAccessType(), request.getUser(), request.getUserGroups());
+
+		elements.put("database", resource.getValue("database"));
+		databaseResource.setServiceDef(resource.getServiceDef());
+		ret.setAccessTime(request.getAccessTime());
 
+		return ret;
 	}
 
 	static class PolicyEngineTestCase {
@@ -615,6 +752,8 @@ public class TestPolicyEngine {
 			public RangerAccessResult  dataMaskResult;
 			public RangerAccessResult rowFilterResult;
 			public RangerResourceAccessInfo resourceAccessInfo;
+			public String              childResourceName;
+			public Boolean             isAllowedForAllChildren;
 		}
 
 		class TagPolicyInfo {
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.policyengine;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItem;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItemAccess;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyResource;
+import org.apache.ranger.plugin.model.RangerPolicyDelta;
+import org.apache.ranger.plugin.model.RangerServiceDef;
+import org.apache.ranger.plugin.store.EmbeddedServiceDefsUtil;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestPolicyEngineRolesCache {
+	private static final String SERVICE_NAME = "hivedev";
+
+	private RangerServiceDef serviceDef;
+
+	@Before
+	public void setUp() throws Exception {
+		serviceDef = EmbeddedServiceDefsUtil.instance().getEmbeddedServiceDef(EmbeddedServiceDefsUtil.EMBEDDED_SERVICEDEF_HIVE_NAME);
+
+		assertNotNull(serviceDef);
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		RangerPolicyEngineImpl policyEngine = createPolicyEngine(createUserRoles("user1", "role1"), createGroupRoles("group1", "role2"));
+		ConcurrentCacheMap<?, Set<String>> rolesCache = policyEngine.getRolesCache();
+
+		Set<String> roles = policyEngine.getRolesFromUserAndGroups("user1", new HashSet<>(Arrays.asList("group1", "group2")));
+
+		assertEquals(new HashSet<>(Arrays.asList("role1", "role2")), roles);
+		assertEquals(0, rolesCache.getHitCount());
+		assertEquals(1, rolesCache.getMissCount());
+		assertEquals(1, rolesCache.size());
+
+		// same user and groups, in a different set: the cached roles are returned
+		assertSame(roles, policyEngine.getRolesFromUserAndGroups("user1", new HashSet<>(Arrays.asList("group2", "group1"))));
+		assertEquals(1, rolesCache.getHitCount());
+		assertEquals(1, rolesCache.getMissCount());
+
+		// a different user, or different groups, is a miss
+		assertEquals(Collections.singleton("role2"), policyEngine.getRolesFromUserAndGroups("user2", new HashSet<>(Arrays.asList("group1", "group2"))));
+		assertEquals(Collections.singleton("role1"), policyEngine.getRolesFromUserAndGroups("user1", Collections.singleton("group2")));
+		assertEquals(1, rolesCache.getHitCount());
+		assertEquals(3, rolesCache.getMissCount());
+		assertEquals(3, rolesCache.size());
+	}
+
+	@Test
+	public void testCallerGroupsAreCopied() {
+		RangerPolicyEngineImpl policyEngine = createPolicyEngine(createUserRoles("user1", "role1"), createGroupRoles("group1", "role2"));
+		Set<String>            groups       = new HashSet<>(Collections.singleton("group2"));
+
+		assertEquals(Collections.singleton("role1"), policyEngine.getRolesFromUserAndGroups("user1", groups));
+
+		// the caller modifying its groups after the lookup must not change the cached entry
+		groups.add("group1");
+
+		assertEquals(new HashSet<>(Arrays.asList("role1", "role2")), policyEngine.getRolesFromUserAndGroups("user1", groups));
+		assertEquals(Collections.singleton("role1"), policyEngine.getRolesFromUserAndGroups("user1", Collections.singleton("group2")));
+		assertEquals(1, policyEngine.getRolesCache().getHitCount());
+	}
+
+	@Test
+	public void testInvalidationOnRolesUpdate() {
+		RangerPolicyEngineImpl policyEngine = createPolicyEngine(createUserRoles("user1", "role1"), null);
+		Set<String>            groups       = Collections.singleton("group1");
+
+		assertEquals(Collections.singleton("role1"), policyEngine.getRolesFromUserAndGroups("user1", groups));
+		assertEquals(Collections.singleton("role1"), policyEngine.getRolesFromUserAndGroups("user1", groups));
+		assertEquals(1, policyEngine.getRolesCache().getHitCount());
+
+		// a policy delta that comes with updated roles: the new engine must not return roles cached by the old one
+		ServicePolicies servicePolicies = createServicePolicies(createUserRoles("user1", "role3"), createGroupRoles("group1", "role2"));
+
+		servicePolicies.setPolicyVersion(2L);
+		servicePolicies.setPolicyDeltas(Collections.singletonList(new RangerPolicyDelta(1L, RangerPolicyDelta.CHANGE_TYPE_POLICY_CREATE, createPolicy(1L))));
+
+		RangerPolicyEngineImpl updatedEngine = (RangerPolicyEngineImpl) policyEngine.cloneWithDelta(servicePolicies);
+
+		assertNotNull(updatedEngine);
+		assertNotSame(policyEngine.getRolesCache(), updatedEngine.getRolesCache());
+		assertEquals(0, updatedEngine.getRolesCache().size());
+		assertEquals(policyEngine.getRolesCache().getMaxSize(), updatedEngine.getRolesCache().getMaxSize());
+
+		assertEquals(new HashSet<>(Arrays.asList("role2", "role3")), updatedEngine.getRolesFromUserAndGroups("user1", groups));
+		assertEquals(0, updatedEngine.getRolesCache().getHitCount());
+		assertEquals(1, updatedEngine.getRolesCache().getMissCount());
+
+		// the old engine, still in use by in-flight requests, keeps its own roles until it is cleaned up
+		assertEquals(Collections.singleton("role1"), policyEngine.getRolesFromUserAndGroups("user1", groups));
+
+		policyEngine.cleanup();
+
+		assertEquals(0, policyEngine.getRolesCache().size());
+	}
+
+	private RangerPolicyEngineImpl createPolicyEngine(Map<String, Set<String>> userRoles, Map<String, Set<String>> groupRoles) {
+		RangerPluginContext pluginContext = new RangerPluginContext(serviceDef.getName());
+
+		pluginContext.setClusterName("cl1");
+		pluginContext.setClusterType("on-prem");
+
+		return new RangerPolicyEngineImpl("test-roles-cache", createServicePolicies(userRoles, groupRoles), new RangerPolicyEngineOptions(), pluginContext);
+	}
+
+	private ServicePolicies createServicePolicies(Map<String, Set<String>> userRoles, Map<String, Set<String>> groupRoles) {
+		ServicePolicies ret = new ServicePolicies();
+
+		ret.setServiceName(SERVICE_NAME);
+		ret.setPolicyVersion(1L);
+		ret.setServiceDef(serviceDef);
+		ret.setPolicies(new ArrayList<RangerPolicy>());
+		ret.setUserRoles(userRoles);
+		ret.setGroupRoles(groupRoles);
+
+		return ret;
+	}
+
+	private RangerPolicy createPolicy(Long id) {
+		Map<String, RangerPolicyResource> resources = new HashMap<>();
+
+		resources.put("database", new RangerPolicyResource("db1"));
+		resources.put("table", new RangerPolicyResource("*"));
+		resources.put("column", new RangerPolicyResource("*"));
+
+		RangerPolicyItem policyItem = new RangerPolicyItem(Collections.singletonList(new RangerPolicyItemAccess("select")), null, null, Collections.singletonList("role3"), null, false);
+		RangerPolicy     ret        = new RangerPolicy(SERVICE_NAME, "policy-" + id, RangerPolicy.POLICY_TYPE_ACCESS, null, null, resources, Collections.singletonList(policyItem), null, null, null, null);
+
+		ret.setId(id);
+		ret.setVersion(1L);
+		ret.setServiceType(serviceDef.getName());
+
+		return ret;
+	}
+
+	private static Map<String, Set<String>> createUserRoles(String user, String role) {
+		return Collections.singletonMap(user, Collections.singleton(role));
+	}
+
+	private static Map<String, Set<String>> createGroupRoles(String group, String role) {
+		return Collections.singletonMap(group, Collections.singleton(role));
+	}
+}
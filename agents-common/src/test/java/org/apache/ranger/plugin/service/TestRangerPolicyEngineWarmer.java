@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.service;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
+import org.apache.ranger.plugin.policyengine.RangerAccessResourceImpl;
+import org.apache.ranger.plugin.policyengine.RangerAccessResultProcessor;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngine;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestRangerPolicyEngineWarmer {
+	@Test
+	public void testSingleRequests() {
+		RangerPolicyEngineWarmer warmer = new RangerPolicyEngineWarmer(4, 1, 60 * 1000);
+		RangerPolicyEngine       engine = mock(RangerPolicyEngine.class);
+
+		for (int i = 0; i < 10; i++) {
+			warmer.recordRequest(createRequest("tbl" + i));
+		}
+
+		// the ring keeps the last 4 samples
+		assertEquals(4, warmer.warmUp(engine));
+
+		ArgumentCaptor<RangerAccessRequest> captor = ArgumentCaptor.forClass(RangerAccessRequest.class);
+
+		verify(engine, times(4)).preProcess(captor.capture());
+		verify(engine, times(4)).evaluatePolicies(any(RangerAccessRequest.class), eq(RangerPolicy.POLICY_TYPE_ACCESS), isNull(RangerAccessResultProcessor.class));
+
+		List<String> tables = new ArrayList<>();
+
+		for (RangerAccessRequest request : captor.getAllValues()) {
+			tables.add(request.getResource().getValue("table").toString());
+		}
+
+		Collections.sort(tables);
+
+		assertEquals(Arrays.asList("tbl6", "tbl7", "tbl8", "tbl9"), tables);
+	}
+
+	@Test
+	public void testBatchRequests() {
+		RangerPolicyEngineWarmer  warmer   = new RangerPolicyEngineWarmer(8, 1, 60 * 1000);
+		RangerPolicyEngine        engine   = mock(RangerPolicyEngine.class);
+		List<RangerAccessRequest> requests = new ArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			requests.add(createRequest("tbl" + i));
+		}
+
+		warmer.recordRequests(requests);
+
+		assertEquals(3, warmer.warmUp(engine));
+
+		verify(engine, times(3)).evaluatePolicies(any(RangerAccessRequest.class), eq(RangerPolicy.POLICY_TYPE_ACCESS), isNull(RangerAccessResultProcessor.class));
+	}
+
+	@Test
+	public void testReplayUsesCopies() {
+		RangerPolicyEngineWarmer warmer  = new RangerPolicyEngineWarmer(1, 1, 60 * 1000);
+		RangerPolicyEngine       engine  = mock(RangerPolicyEngine.class);
+		RangerAccessRequest      request = createRequest("tbl1");
+
+		warmer.recordRequest(request);
+
+		assertEquals(1, warmer.warmUp(engine));
+
+		ArgumentCaptor<RangerAccessRequest> captor = ArgumentCaptor.forClass(RangerAccessRequest.class);
+
+		verify(engine).evaluatePolicies(captor.capture(), eq(RangerPolicy.POLICY_TYPE_ACCESS), isNull(RangerAccessResultProcessor.class));
+
+		assertNotSame("caller's request must not be replayed", request, captor.getValue());
+		assertEquals("db1", captor.getValue().getResource().getValue("database"));
+	}
+
+	@Test
+	public void testSampleInterval() {
+		RangerPolicyEngineWarmer warmer = new RangerPolicyEngineWarmer(2000, 10, 60 * 1000);
+		RangerPolicyEngine       engine = mock(RangerPolicyEngine.class);
+
+		for (int i = 0; i < 10000; i++) {
+			warmer.recordRequest(createRequest("tbl" + i));
+		}
+
+		int count = warmer.warmUp(engine);
+
+		// about 1 in 10 requests is sampled
+		assertTrue("sampled " + count + " of 10000 requests", count > 700 && count < 1300);
+	}
+
+	private static RangerAccessRequest createRequest(String table) {
+		RangerAccessResourceImpl resource = new RangerAccessResourceImpl();
+
+		resource.setValue("database", "db1");
+		resource.setValue("table", table);
+
+		return new RangerAccessRequestImpl(resource, "select", "user1", Collections.singleton("group1"));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestDownloadScheduler {
+	@Test
+	public void testJitteredInterval() {
+		DownloadScheduler scheduler = new DownloadScheduler("test", new LinkedBlockingQueue<DownloadTrigger>(), 1000, 0.2, 10 * 1000, 0);
+		Set<Long>         delays    = new HashSet<>();
+
+		for (int i = 0; i < 100; i++) {
+			long delayMs = scheduler.getNextDelayMs(DownloadTrigger.Result.NOT_MODIFIED, 0, 10);
+
+			assertInRange(delayMs, 800, 1200);
+
+			delays.add(delayMs);
+		}
+
+		assertTrue("intervals should vary", delays.size() > 1);
+
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.UPDATED, 0, 10), 800, 1200);
+	}
+
+	@Test
+	public void testBackoffOnFailure() {
+		DownloadScheduler scheduler = new DownloadScheduler("test", new LinkedBlockingQueue<DownloadTrigger>(), 1000, 0.2, 10 * 1000, 0);
+
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.FAILED, 1, 10), 1600, 2400);
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.FAILED, 2, 10), 3200, 4800);
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.FAILED, 3, 10), 6400, 9600);
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.FAILED, 4, 10), 8000, 12000);
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.FAILED, 100, 10), 8000, 12000);
+	}
+
+	@Test
+	public void testLongPoll() {
+		DownloadScheduler scheduler = new DownloadScheduler("test", new LinkedBlockingQueue<DownloadTrigger>(), 1000, 0.2, 10 * 1000, 60 * 1000);
+
+		// changes, and requests held by the server, are followed by the next request right away
+		assertEquals(0, scheduler.getNextDelayMs(DownloadTrigger.Result.UPDATED, 0, 10));
+		assertEquals(0, scheduler.getNextDelayMs(DownloadTrigger.Result.NOT_MODIFIED, 0, 60 * 1000));
+
+		// server that doesn't hold requests is polled at intervals
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.NOT_MODIFIED, 0, 10), 800, 1200);
+		assertInRange(scheduler.getNextDelayMs(DownloadTrigger.Result.FAILED, 1, 10), 1600, 2400);
+	}
+
+	@Test
+	public void testTriggers() throws Exception {
+		BlockingQueue<DownloadTrigger> queue     = new LinkedBlockingQueue<>();
+		DownloadScheduler              scheduler = new DownloadScheduler("test", queue, 10, 0.2, 100, 0);
+
+		scheduler.start();
+
+		for (int i = 0; i < 5; i++) {
+			DownloadTrigger trigger = queue.poll(5, TimeUnit.SECONDS);
+
+			assertNotNull("download should be triggered", trigger);
+
+			trigger.signalCompletion(i % 2 == 0 ? DownloadTrigger.Result.NOT_MODIFIED : DownloadTrigger.Result.FAILED);
+		}
+
+		scheduler.stopScheduler();
+		scheduler.join(5 * 1000);
+
+		assertFalse(scheduler.isAlive());
+	}
+
+	private static void assertInRange(long value, long min, long max) {
+		assertTrue("expected value in [" + min + ", " + max + "]: " + value, value >= min && value <= max);
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class TestRangerBinaryJsonFormat {
+	private final Gson gson = RangerBinaryJsonFormat.registerTypeAdapters(new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z")).create();
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("policies", ".bin");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testServicePolicies() throws Exception {
+		ServicePolicies policies = loadServicePolicies("/policyengine/test_policydb_hive.json");
+
+		RangerBinaryJsonFormat.write(gson, policies, ServicePolicies.class, file);
+
+		ServicePolicies read = RangerBinaryJsonFormat.read(gson, file, ServicePolicies.class);
+
+		assertNotNull(read);
+		assertEquals(gson.toJson(policies), gson.toJson(read));
+	}
+
+	@Test
+	public void testInvalidFile() throws Exception {
+		ServicePolicies policies = loadServicePolicies("/policyengine/test_policydb_hive.json");
+
+		RangerBinaryJsonFormat.write(gson, policies, ServicePolicies.class, file);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(4);
+			raf.writeInt(RangerBinaryJsonFormat.FORMAT_VERSION + 1);
+		}
+
+		assertReadFails();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(10);
+		}
+
+		assertReadFails();
+	}
+
+	@Test
+	public void testMapKeys() throws Exception {
+		MapHolder holder = new MapHolder();
+
+		holder.longKeys.put(1L, "one");
+		holder.longKeys.put(-20L, "minus twenty");
+		holder.intKeys.put(3, Arrays.asList("a", "b"));
+		holder.enumKeys.put(TimeUnit.SECONDS, true);
+		holder.rawMap.put("key", "value");
+		holder.sortedMap.put("b", 2L);
+		holder.sortedMap.put("a", 1L);
+		holder.subclassMap.put(5L, TimeUnit.DAYS);
+
+		RangerBinaryJsonFormat.write(gson, holder, MapHolder.class, file);
+
+		MapHolder read = RangerBinaryJsonFormat.read(gson, file, MapHolder.class);
+
+		assertEquals("one", read.longKeys.get(1L));
+		assertEquals("minus twenty", read.longKeys.get(-20L));
+		assertEquals(Arrays.asList("a", "b"), read.intKeys.get(3));
+		assertEquals(Boolean.TRUE, read.enumKeys.get(TimeUnit.SECONDS));
+		assertEquals("value", read.rawMap.get("key"));
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<>(read.sortedMap.keySet()));
+		assertEquals(TimeUnit.DAYS, read.subclassMap.get(5L));
+		assertEquals(gson.toJson(holder), gson.toJson(read));
+	}
+
+	@Test
+	public void testUnsupportedMapKeys() {
+		Map<List<String>, String> map = new HashMap<>();
+
+		map.put(Arrays.asList("a", "b"), "value");
+
+		try {
+			RangerBinaryJsonFormat.write(gson, map, new TypeToken<Map<List<String>, String>>() {}.getType(), file);
+
+			fail("write of a map with array keys should fail");
+		} catch (IOException excp) {
+			// expected
+		}
+	}
+
+	private void assertReadFails() {
+		try {
+			RangerBinaryJsonFormat.read(gson, file, ServicePolicies.class);
+
+			fail("read of an invalid file should fail");
+		} catch (IOException excp) {
+			// expected
+		}
+	}
+
+	static class MapHolder {
+		Map<Long, String>             longKeys    = new HashMap<>();
+		Map<Integer, List<String>>    intKeys     = new HashMap<>();
+		Map<TimeUnit, Boolean>        enumKeys    = new EnumMap<>(TimeUnit.class);
+		@SuppressWarnings("rawtypes")
+		Map                           rawMap      = new HashMap();
+		SortedMap<String, Long>       sortedMap   = new TreeMap<>();
+		LongKeyMap<TimeUnit>          subclassMap = new LongKeyMap<>();
+	}
+
+	// key and value types are bound in the class hierarchy, not in the field type
+	static class LongKeyMap<V> extends HashMap<Long, V> {
+	}
+
+	private ServicePolicies loadServicePolicies(String resourceName) throws IOException {
+		try (InputStream inStream = this.getClass().getResourceAsStream(resourceName);
+			 Reader reader = new InputStreamReader(inStream, StandardCharsets.UTF_8)) {
+			JsonObject testCase = gson.fromJson(reader, JsonObject.class);
+
+			return gson.fromJson(testCase.get("servicePolicies"), ServicePolicies.class);
+		}
+	}
+}
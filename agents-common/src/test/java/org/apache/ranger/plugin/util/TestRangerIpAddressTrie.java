@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import org.apache.ranger.plugin.util.RangerIpAddressTrie.MatchResult;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRangerIpAddressTrie {
+    @Test
+    public void testIpv4() {
+        RangerIpAddressTrie trie = new RangerIpAddressTrie();
+
+        assertTrue(trie.add("10.0.0.0/8"));
+        assertTrue(trie.add("192.168.10.0/24"));
+        assertTrue(trie.add("172.16.1.5"));
+        assertTrue(trie.add("10.20.0.0/16")); // covered by 10.0.0.0/8
+
+        assertEquals(MatchResult.MATCHED, trie.match("10.1.2.3"));
+        assertEquals(MatchResult.MATCHED, trie.match("10.255.255.255"));
+        assertEquals(MatchResult.MATCHED, trie.match("192.168.10.200"));
+        assertEquals(MatchResult.MATCHED, trie.match("172.16.1.5"));
+
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("11.0.0.1"));
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("192.168.11.1"));
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("172.16.1.6"));
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("2001:db8::1"));
+    }
+
+    @Test
+    public void testIpv6() {
+        RangerIpAddressTrie trie = new RangerIpAddressTrie();
+
+        assertTrue(trie.add("2001:db8::/32"));
+        assertTrue(trie.add("fe80:0:0:0:0:0:0:1"));
+        assertTrue(trie.add("::1/128"));
+
+        assertEquals(MatchResult.MATCHED, trie.match("2001:db8::1"));
+        assertEquals(MatchResult.MATCHED, trie.match("2001:DB8:ffff:1:2:3:4:5"));
+        assertEquals(MatchResult.MATCHED, trie.match("fe80::1"));
+        assertEquals(MatchResult.MATCHED, trie.match("::1"));
+
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("2001:db9::1"));
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("fe80::2"));
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("::"));
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("10.1.2.3"));
+    }
+
+    @Test
+    public void testMatchAll() {
+        RangerIpAddressTrie trie = new RangerIpAddressTrie();
+
+        assertTrue(trie.add("0.0.0.0/0"));
+
+        assertEquals(MatchResult.MATCHED, trie.match("1.2.3.4"));
+        assertEquals(MatchResult.NOT_MATCHED, trie.match("::1"));
+    }
+
+    @Test
+    public void testInvalid() {
+        RangerIpAddressTrie trie = new RangerIpAddressTrie();
+
+        for (String invalid : new String[] { "1.2.3", "1.2.3.256", "1.2.03.4", "1.2.3.4/33", "1.2.3.4/", "1.*.3.4", "host.example.com",
+                                             "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", "1:::2", "12345::", "::ffff:1.2.3.4", "fe80::1%eth0", "" }) {
+            assertFalse(invalid, trie.add(invalid));
+            assertEquals(invalid, MatchResult.NOT_AN_ADDRESS, trie.match(invalid));
+        }
+
+        assertEquals(MatchResult.NOT_AN_ADDRESS, trie.match(null));
+        assertTrue(trie.isEmpty());
+    }
+}
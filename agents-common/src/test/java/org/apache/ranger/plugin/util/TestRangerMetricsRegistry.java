@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ranger.plugin.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestRangerMetricsRegistry {
+	@Test
+	public void testBucketBoundaries() {
+		for (long value : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE }) {
+			int bucket = RangerLatencyHistogram.getBucketIndex(value);
+
+			assertTrue("value=" + value, value <= RangerLatencyHistogram.getBucketUpperBound(bucket));
+			assertTrue("value=" + value, bucket == 0 || value > RangerLatencyHistogram.getBucketUpperBound(bucket - 1));
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		RangerLatencyHistogram histogram = new RangerLatencyHistogram("test");
+		List<Long>             values    = new ArrayList<>();
+		Random                 random    = new Random(1);
+
+		for (int i = 0; i < 100000; i++) {
+			long value = random.nextInt(10) == 0 ? 1000 + random.nextInt(100000) : 10 + random.nextInt(200);
+
+			histogram.record(value);
+			values.add(value);
+		}
+
+		values.sort(null);
+
+		RangerLatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+
+		assertEquals(values.size(), snapshot.getCount());
+		assertEquals(values.get(0).longValue(), snapshot.getMin());
+		assertEquals(values.get(values.size() - 1).longValue(), snapshot.getMax());
+
+		for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+			long expected = values.get((int) Math.ceil(values.size() * percentile / 100) - 1);
+			long actual   = snapshot.getPercentile(percentile);
+
+			assertTrue("p" + percentile + ": expected=" + expected + ", actual=" + actual, actual >= expected && actual <= expected + expected / 16 + 1);
+		}
+	}
+
+	@Test
+	public void testConcurrentRecord() throws Exception {
+		final RangerLatencyHistogram histogram = new RangerLatencyHistogram("test");
+		Thread[]                     threads   = new Thread[8];
+
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 1; j <= 10000; j++) {
+						histogram.record(j);
+					}
+				}
+			});
+
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		RangerLatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+
+		assertEquals(80000, snapshot.getCount());
+		assertEquals(8 * (10000L * 10001 / 2), snapshot.getSum());
+		assertEquals(10000, snapshot.getMax());
+		assertEquals(1, snapshot.getMin());
+	}
+
+	@Test
+	public void testRegistry() throws Exception {
+		RangerMetricsRegistry registry = new RangerMetricsRegistry();
+
+		assertSame(registry.getHistogram("test.latency"), registry.getHistogram("test.latency"));
+
+		RangerMetricsRegistry.Gauge gauge = new RangerMetricsRegistry.Gauge() {
+			@Override
+			public long getValue() {
+				return 42;
+			}
+		};
+
+		registry.getHistogram("test.latency").record(100);
+		registry.getCounter("test.errors").increment();
+		registry.registerGauge("test.gauge", gauge);
+
+		assertEquals(Long.valueOf(1), registry.getCounters().get("test.errors"));
+		assertEquals(1, registry.getHistogramSnapshots().get("test.latency").getCount());
+		assertEquals(Long.valueOf(42), registry.getGauges().get("test.gauge"));
+
+		File file = File.createTempFile("ranger-metrics", ".json");
+
+		try {
+			registry.writeSnapshot(file);
+
+			String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+			assertTrue(json, json.contains("\"test.latency\"") && json.contains("\"p999Micros\": 100") && json.contains("\"test.errors\": 1") && json.contains("\"test.gauge\": 42"));
+		} finally {
+			file.delete();
+		}
+
+		registry.reset();
+
+		assertEquals(0, registry.getHistogramSnapshots().get("test.latency").getCount());
+		assertEquals(Long.valueOf(0), registry.getCounters().get("test.errors"));
+
+		registry.unregisterGauge("test.gauge", gauge);
+
+		assertTrue(registry.getGauges().isEmpty());
+	}
+}
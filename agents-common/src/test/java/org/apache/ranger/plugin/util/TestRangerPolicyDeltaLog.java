@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerPolicyDelta;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class TestRangerPolicyDeltaLog {
+	private final Gson gson = new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z").create();
+
+	private File                 file;
+	private RangerPolicyDeltaLog deltaLog;
+	private ServicePolicies      snapshot;
+
+	@Before
+	public void setUp() throws IOException {
+		file     = File.createTempFile("policies_deltas", ".log");
+		deltaLog = new RangerPolicyDeltaLog(file, gson);
+		snapshot = loadServicePolicies("/policyengine/test_policydb_hive.json");
+
+		snapshot.setPolicyVersion(10L);
+
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testAppendAndReplay() throws Exception {
+		int  policyCount = snapshot.getPolicies().size();
+		Long deletedId   = snapshot.getPolicies().get(0).getId();
+
+		deltaLog.reset(10L);
+		deltaLog.append(Collections.singletonList(createDeltas(11L, RangerPolicyDelta.CHANGE_TYPE_POLICY_DELETE, deletedId)));
+		deltaLog.append(Arrays.asList(createDeltas(12L, RangerPolicyDelta.CHANGE_TYPE_POLICY_CREATE, 1001L), createDeltas(13L, RangerPolicyDelta.CHANGE_TYPE_POLICY_CREATE, 1002L)));
+
+		assertEquals(3, deltaLog.getRecordCount());
+
+		RangerPolicyDeltaLog replayLog = new RangerPolicyDeltaLog(file, gson);
+		ServicePolicies      policies  = replayLog.replay(snapshot);
+
+		assertEquals(Long.valueOf(13L), policies.getPolicyVersion());
+		assertEquals(policyCount + 1, policies.getPolicies().size());
+		assertEquals(3, replayLog.getRecordCount());
+		assertEquals(10L, replayLog.getBaseVersion());
+
+		for (RangerPolicy policy : policies.getPolicies()) {
+			assertFalse(deletedId.equals(policy.getId()));
+		}
+	}
+
+	@Test
+	public void testReplayIgnoresPartialRecord() throws Exception {
+		deltaLog.reset(10L);
+		deltaLog.append(Collections.singletonList(createDeltas(11L, RangerPolicyDelta.CHANGE_TYPE_POLICY_CREATE, 1001L)));
+
+		long validSize = file.length();
+
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write("1234abcd {\"serviceName\":".getBytes(StandardCharsets.UTF_8));
+		}
+
+		RangerPolicyDeltaLog replayLog = new RangerPolicyDeltaLog(file, gson);
+		ServicePolicies      policies  = replayLog.replay(snapshot);
+
+		assertEquals(Long.valueOf(11L), policies.getPolicyVersion());
+		assertEquals(1, replayLog.getRecordCount());
+		assertEquals(validSize, file.length());
+
+		replayLog.append(Collections.singletonList(createDeltas(12L, RangerPolicyDelta.CHANGE_TYPE_POLICY_CREATE, 1002L)));
+
+		assertEquals(Long.valueOf(12L), new RangerPolicyDeltaLog(file, gson).replay(snapshot).getPolicyVersion());
+	}
+
+	@Test
+	public void testReplayIgnoresLogOfOtherVersion() throws Exception {
+		deltaLog.reset(9L);
+		deltaLog.append(Collections.singletonList(createDeltas(10L, RangerPolicyDelta.CHANGE_TYPE_POLICY_CREATE, 1001L)));
+
+		RangerPolicyDeltaLog replayLog = new RangerPolicyDeltaLog(file, gson);
+
+		assertSame(snapshot, replayLog.replay(snapshot));
+		assertEquals(-1L, replayLog.getBaseVersion());
+		assertFalse(file.exists());
+	}
+
+	private ServicePolicies createDeltas(long policyVersion, int changeType, Long policyId) {
+		ServicePolicies ret    = ServicePolicies.copyHeader(snapshot);
+		RangerPolicy    policy = new RangerPolicy();
+
+		policy.setId(policyId);
+		policy.setName("policy-" + policyId);
+		policy.setService(snapshot.getServiceName());
+		policy.setServiceType(snapshot.getServiceDef().getName());
+
+		ret.setPolicyVersion(policyVersion);
+		ret.setPolicies(null);
+		ret.setPolicyDeltas(Collections.singletonList(new RangerPolicyDelta(policyVersion, changeType, policy)));
+
+		return ret;
+	}
+
+	private ServicePolicies loadServicePolicies(String resourceName) throws IOException {
+		try (InputStream inStream = this.getClass().getResourceAsStream(resourceName);
+			 Reader reader = new InputStreamReader(inStream, StandardCharsets.UTF_8)) {
+			JsonObject testCase = gson.fromJson(reader, JsonObject.class);
+
+			return gson.fromJson(testCase.get("servicePolicies"), ServicePolicies.class);
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestRangerRESTEndpointSelector {
+	private final List<MockAdmin> admins = new ArrayList<>();
+
+	@After
+	public void tearDown() {
+		for (MockAdmin admin : admins) {
+			admin.stop();
+		}
+	}
+
+	@Test
+	public void testParseUrls() {
+		assertEquals(Arrays.asList("http://host1:6080", "https://host2:6182"), RangerRESTEndpointSelector.parseUrls(" http://host1:6080/, https://host2:6182,,http://host1:6080"));
+		assertTrue(RangerRESTEndpointSelector.parseUrls(null).isEmpty());
+	}
+
+	@Test
+	public void testFailover() throws Exception {
+		MockAdmin                  admin1   = startAdmin("admin1", 0, 500);
+		MockAdmin                  admin2   = startAdmin("admin2", 0, 200);
+		RangerRESTEndpointSelector selector = new RangerRESTEndpointSelector(Arrays.asList(admin1.url, admin2.url), false, 95, 10, 1000, 60 * 1000);
+
+		assertEquals("admin2", selector.execute(new GetCall()).body);
+		assertEquals(1, admin1.requestCount.get());
+
+		// failed endpoint is tried only after healthy ones, during the backoff
+		assertEquals(admin2.url, selector.getPreferredUrl());
+		assertEquals("admin2", selector.execute(new GetCall()).body);
+		assertEquals(1, admin1.requestCount.get());
+		assertEquals(2, admin2.requestCount.get());
+
+		selector.cleanup();
+	}
+
+	@Test
+	public void testAllEndpointsFailed() throws Exception {
+		MockAdmin                  admin1   = startAdmin("admin1", 0, 503);
+		MockAdmin                  admin2   = startAdmin("admin2", 0, 500);
+		RangerRESTEndpointSelector selector = new RangerRESTEndpointSelector(Arrays.asList(admin1.url, admin2.url), true, 95, 10, 1000, 60 * 1000);
+
+		// response of the last endpoint to fail is returned
+		assertEquals(500, selector.execute(new GetCall()).status);
+		assertEquals(1, admin1.requestCount.get());
+		assertEquals(1, admin2.requestCount.get());
+
+		admin1.stop();
+		admin2.stop();
+
+		try {
+			selector.execute(new GetCall());
+
+			fail("expected exception, as no endpoint is reachable");
+		} catch (IOException excp) {
+			// expected
+		}
+
+		selector.cleanup();
+	}
+
+	@Test
+	public void testSelectsFastestEndpoint() throws Exception {
+		MockAdmin                  admin1   = startAdmin("admin1", 200, 200);
+		MockAdmin                  admin2   = startAdmin("admin2", 0, 200);
+		RangerRESTEndpointSelector selector = new RangerRESTEndpointSelector(Arrays.asList(admin1.url, admin2.url), false, 95, 10, 1000, 60 * 1000);
+
+		// every endpoint is measured first, in the configured order
+		assertEquals("admin1", selector.execute(new GetCall()).body);
+		assertEquals("admin2", selector.execute(new GetCall()).body);
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals("admin2", selector.execute(new GetCall()).body);
+		}
+
+		assertEquals(1, admin1.requestCount.get());
+		assertEquals(6, admin2.requestCount.get());
+
+		selector.cleanup();
+	}
+
+	@Test
+	public void testHedgedRequest() throws Exception {
+		MockAdmin                  admin1     = startAdmin("admin1", 3000, 200);
+		MockAdmin                  admin2     = startAdmin("admin2", 0, 200);
+		RangerRESTEndpointSelector selector   = new RangerRESTEndpointSelector(Arrays.asList(admin1.url, admin2.url), true, 95, 10, 100, 60 * 1000);
+		GetCall                    call       = new GetCall();
+		long                       hedgeCount = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_ADMIN_REQUEST_HEDGED).sum();
+		long                       startTime  = System.currentTimeMillis();
+
+		assertEquals("admin2", selector.execute(call).body);
+		assertTrue("hedged request should not wait for the slow endpoint", System.currentTimeMillis() - startTime < 2000);
+		assertEquals(hedgeCount + 1, RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_ADMIN_REQUEST_HEDGED).sum());
+
+		// the slower response is discarded when it arrives
+		for (int i = 0; i < 100 && call.discardCount.get() == 0; i++) {
+			Thread.sleep(50);
+		}
+
+		assertEquals(1, call.discardCount.get());
+		assertEquals(1, admin1.requestCount.get());
+		assertEquals(admin2.url, selector.getPreferredUrl());
+
+		selector.cleanup();
+	}
+
+	@Test
+	public void testRequestAfterCleanup() throws Exception {
+		MockAdmin                  admin1   = startAdmin("admin1", 0, 200);
+		MockAdmin                  admin2   = startAdmin("admin2", 0, 200);
+		RangerRESTEndpointSelector selector = new RangerRESTEndpointSelector(Arrays.asList(admin1.url, admin2.url), true, 95, 10, 100, 60 * 1000);
+
+		selector.execute(new GetCall());
+		selector.cleanup();
+
+		// hedged requests after cleanup() don't fail on the stopped executor
+		assertEquals(200, selector.execute(new GetCall()).status);
+
+		selector.cleanup();
+		selector.cleanup();
+	}
+
+	private MockAdmin startAdmin(String name, long delayMs, int status) throws IOException {
+		MockAdmin ret = new MockAdmin(name, delayMs, status);
+
+		admins.add(ret);
+
+		return ret;
+	}
+
+	private static class Response {
+		final int    status;
+		final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body   = body;
+		}
+	}
+
+	private static class GetCall extends RangerRESTEndpointSelector.Call<Response> {
+		final AtomicInteger discardCount = new AtomicInteger();
+
+		@Override
+		public Response call(String url) throws Exception {
+			HttpURLConnection conn = (HttpURLConnection) new URL(url + "/service/plugins/policies").openConnection();
+
+			conn.setConnectTimeout(1000);
+			conn.setReadTimeout(10 * 1000);
+
+			try {
+				int status = conn.getResponseCode();
+
+				try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+					byte[] buf = new byte[1024];
+					int    len = in == null ? 0 : Math.max(0, in.read(buf));
+
+					return new Response(status, new String(buf, 0, len, StandardCharsets.UTF_8));
+				}
+			} finally {
+				conn.disconnect();
+			}
+		}
+
+		@Override
+		public boolean isFailure(Response response) {
+			return response.status >= 500;
+		}
+
+		@Override
+		public void discard(Response response) {
+			discardCount.incrementAndGet();
+		}
+	}
+
+	private static class MockAdmin implements HttpHandler {
+		final String          url;
+		final AtomicInteger   requestCount = new AtomicInteger();
+		final String          name;
+		final long            delayMs;
+		final int             status;
+		final HttpServer      server;
+		final ExecutorService executor = Executors.newCachedThreadPool();
+		private boolean       isStopped;
+
+		MockAdmin(String name, long delayMs, int status) throws IOException {
+			this.name    = name;
+			this.delayMs = delayMs;
+			this.status  = status;
+			this.server  = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+			server.createContext("/", this);
+			server.setExecutor(executor);
+			server.start();
+
+			this.url = "http://127.0.0.1:" + server.getAddress().getPort();
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			requestCount.incrementAndGet();
+
+			try {
+				Thread.sleep(delayMs);
+			} catch (InterruptedException excp) {
+				Thread.currentThread().interrupt();
+			}
+
+			byte[] body = name.getBytes(StandardCharsets.UTF_8);
+
+			exchange.sendResponseHeaders(status, body.length);
+
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+
+		synchronized void stop() {
+			if (!isStopped) {
+				isStopped = true;
+
+				server.stop(0);
+				executor.shutdownNow();
+			}
+		}
+	}
+}
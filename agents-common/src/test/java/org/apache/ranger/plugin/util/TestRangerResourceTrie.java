@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerResourceDef;
+import org.apache.ranger.plugin.policyresourcematcher.RangerPolicyResourceEvaluator;
+import org.apache.ranger.plugin.policyresourcematcher.RangerPolicyResourceMatcher;
+import org.apache.ranger.plugin.resourcematcher.RangerResourceMatcher;
+import org.apache.ranger.plugin.util.RangerResourceTrie.EvaluatorList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestRangerResourceTrie {
+	@Test
+	public void testEvaluatorListIdsFollowUpdates() {
+		EvaluatorList<TestEvaluator> list = new EvaluatorList<>(Arrays.asList(new TestEvaluator(3), new TestEvaluator(1)));
+
+		assertTrue(list.containsId(3));
+		assertFalse(list.containsId(2));
+
+		list.addAll(Arrays.asList(new TestEvaluator(2), new TestEvaluator(5)));
+		assertTrue(list.containsId(2));
+
+		list.add(0, new TestEvaluator(7));
+		assertTrue(list.containsId(7));
+
+		list.set(0, new TestEvaluator(8));
+		assertTrue(list.containsId(8));
+		assertFalse(list.containsId(7));
+
+		list.sort(Comparator.comparingLong(TestEvaluator::getId));
+		assertTrue(list.containsId(8));
+
+		list.removeIf(e -> e.getId() == 8);
+		assertFalse(list.containsId(8));
+
+		list.retainAll(Collections.singletonList(list.get(0)));
+		assertTrue(list.containsId(1));
+		assertFalse(list.containsId(2));
+		assertFalse(list.containsId(5));
+
+		list.replaceAll(e -> new TestEvaluator(e.getId() + 10));
+		assertTrue(list.containsId(11));
+		assertFalse(list.containsId(1));
+
+		try {
+			list.subList(0, 1).set(0, new TestEvaluator(20));
+
+			fail("sub-list of EvaluatorList must be read-only");
+		} catch (UnsupportedOperationException excp) {
+			// expected
+		}
+
+		list.clear();
+		assertFalse(list.containsId(11));
+	}
+
+	@Test
+	public void testMergedEvaluatorsAreNotCopiedPerLookup() {
+		RangerResourceDef   resourceDef = new RangerResourceDef();
+		List<TestEvaluator> evaluators  = new ArrayList<>();
+
+		resourceDef.setName("database");
+		resourceDef.setLevel(10);
+
+		// more wildcard-evaluators than max.merged.list.size (64), so that db1 keeps its evaluator apart from them
+		for (int i = 0; i < 70; i++) {
+			evaluators.add(new TestEvaluator(i * 2, "db*"));
+		}
+
+		evaluators.add(new TestEvaluator(11, "db1"));
+
+		Comparator<TestEvaluator>          comparator = Comparator.comparingLong(TestEvaluator::getId);
+		RangerResourceTrie<TestEvaluator>  trie       = new RangerResourceTrie<>(resourceDef, evaluators, comparator, false, false, true);
+		List<TestEvaluator>                result     = trie.getEvaluatorsForResource("db1");
+
+		assertTrue(result instanceof RangerResourceTrie.MergedEvaluatorList);
+		assertSame("lookups must return the same list, without merging or sorting IDs again", result, trie.getEvaluatorsForResource("db1"));
+		assertEquals(71, result.size());
+
+		RangerResourceTrie.MergedEvaluatorList<TestEvaluator> merged = (RangerResourceTrie.MergedEvaluatorList<TestEvaluator>) result;
+
+		assertTrue(merged.containsId(11));
+		assertTrue(merged.containsId(138));
+		assertFalse(merged.containsId(13));
+
+		long prevId = -1;
+
+		for (TestEvaluator evaluator : result) {
+			assertTrue("merged evaluators must be in comparator order", evaluator.getId() > prevId);
+
+			prevId = evaluator.getId();
+		}
+
+		assertEquals(11, result.get(6).getId());
+		assertEquals(70, trie.getEvaluatorsForResource("db2").size());
+	}
+
+	@Test
+	public void testCopySharesUntouchedNodes() {
+		RangerResourceDef   resourceDef = new RangerResourceDef();
+		List<TestEvaluator> evaluators  = new ArrayList<>();
+
+		resourceDef.setName("database");
+		resourceDef.setLevel(10);
+
+		evaluators.add(new TestEvaluator(1, "db1"));
+		evaluators.add(new TestEvaluator(2, "db2"));
+		evaluators.add(new TestEvaluator(3, "db*"));
+		evaluators.add(new TestEvaluator(4, "hr1"));
+		evaluators.add(new TestEvaluator(5, "hr2"));
+
+		Comparator<TestEvaluator>         comparator = Comparator.comparingLong(TestEvaluator::getId);
+		RangerResourceTrie<TestEvaluator> trie       = new RangerResourceTrie<>(resourceDef, evaluators, comparator, false, false, false);
+
+		// nodes are set up on lookup: hr and hr1 are set up before the copy; db, db1 and db2 aren't
+		List<TestEvaluator> hr1Evaluators = trie.getEvaluatorsForResource("hr1");
+
+		RangerResourceTrie<TestEvaluator> copy = new RangerResourceTrie<>(trie);
+
+		copy.add(new RangerPolicy.RangerPolicyResource("db3"), new TestEvaluator(6, "db3"));
+		copy.add(new RangerPolicy.RangerPolicyResource("hr3"), new TestEvaluator(7, "hr3"));
+		copy.wrapUpUpdate();
+
+		// nodes untouched by the update are shared, whether or not they, or the node copied from their parent, were set up
+		assertSame(hr1Evaluators, copy.getEvaluatorsForResource("hr1"));
+		assertSame(trie.getEvaluatorsForResource("hr2"), copy.getEvaluatorsForResource("hr2"));
+		assertSame(trie.getEvaluatorsForResource("db1"), copy.getEvaluatorsForResource("db1"));
+		assertSame(copy.getEvaluatorsForResource("db2"), trie.getEvaluatorsForResource("db2"));
+		assertEquals(Arrays.asList(2L, 3L), getIds(copy.getEvaluatorsForResource("db2")));
+		assertEquals(Arrays.asList(3L, 6L), getIds(copy.getEvaluatorsForResource("db3")));
+		assertEquals(Collections.singletonList(3L), getIds(trie.getEvaluatorsForResource("db3")));
+
+		// a change in wildcard-evaluators of a node is seen by its subtree, so the subtree is copied; the original trie is unchanged
+		RangerResourceTrie<TestEvaluator> copy2 = new RangerResourceTrie<>(copy);
+
+		copy2.add(new RangerPolicy.RangerPolicyResource("hr*"), new TestEvaluator(8, "hr*"));
+		copy2.wrapUpUpdate();
+
+		assertEquals(Arrays.asList(4L, 8L), getIds(copy2.getEvaluatorsForResource("hr1")));
+		assertEquals(Collections.singletonList(4L), getIds(copy.getEvaluatorsForResource("hr1")));
+		assertSame(hr1Evaluators, copy.getEvaluatorsForResource("hr1"));
+		assertSame(copy.getEvaluatorsForResource("db1"), copy2.getEvaluatorsForResource("db1"));
+	}
+
+	private static List<Long> getIds(List<TestEvaluator> evaluators) {
+		List<Long> ret = new ArrayList<>();
+
+		if (evaluators != null) {
+			for (TestEvaluator evaluator : evaluators) {
+				ret.add(evaluator.getId());
+			}
+		}
+
+		return ret;
+	}
+
+	static class TestEvaluator implements RangerPolicyResourceEvaluator {
+		private final long                                           id;
+		private final Map<String, RangerPolicy.RangerPolicyResource> policyResource;
+
+		TestEvaluator(long id) {
+			this(id, null);
+		}
+
+		TestEvaluator(long id, String database) {
+			this.id             = id;
+			this.policyResource = database != null ? Collections.singletonMap("database", new RangerPolicy.RangerPolicyResource(database)) : null;
+		}
+
+		@Override
+		public long getId() {
+			return id;
+		}
+
+		@Override
+		public RangerPolicyResourceMatcher getPolicyResourceMatcher() {
+			return null;
+		}
+
+		@Override
+		public Map<String, RangerPolicy.RangerPolicyResource> getPolicyResource() {
+			return policyResource;
+		}
+
+		@Override
+		public RangerResourceMatcher getResourceMatcher(String resourceName) {
+			return null;
+		}
+
+		@Override
+		public Integer getLeafResourceLevel() {
+			return 10;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.plugin.util;
+
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestRangerUserGroupCache {
+	@Test
+	public void testCachedLookup() {
+		TestGroupsProvider   provider = new TestGroupsProvider();
+		RangerUserGroupCache cache    = new RangerUserGroupCache(provider, 60 * 1000, 60 * 1000, 60 * 1000, 100);
+
+		provider.groups.put("user1", new HashSet<>(Arrays.asList("group1", "group2")));
+
+		assertEquals(new HashSet<>(Arrays.asList("group1", "group2")), cache.getGroups("user1"));
+		assertEquals(new HashSet<>(Arrays.asList("group1", "group2")), cache.getGroups("user1"));
+		assertEquals(1, provider.lookupCount.get());
+
+		// users with no groups are cached as well
+		assertEquals(Collections.emptySet(), cache.getGroups("user2"));
+		assertEquals(Collections.emptySet(), cache.getGroups("user2"));
+		assertEquals(2, provider.lookupCount.get());
+
+		cache.invalidate("user1");
+
+		cache.getGroups("user1");
+		assertEquals(3, provider.lookupCount.get());
+
+		cache.cleanup();
+	}
+
+	@Test
+	public void testExpiryAndRefresh() throws Exception {
+		TestGroupsProvider   provider = new TestGroupsProvider();
+		RangerUserGroupCache cache    = new RangerUserGroupCache(provider, 200, 50, 200, 100);
+
+		provider.groups.put("user1", Collections.singleton("group1"));
+
+		assertEquals(Collections.singleton("group1"), cache.getGroups("user1"));
+
+		provider.groups.put("user1", Collections.singleton("group2"));
+
+		Thread.sleep(100);
+
+		// older than refreshAfterMs: cached groups are returned, and reloaded in the background
+		assertEquals(Collections.singleton("group1"), cache.getGroups("user1"));
+
+		for (int i = 0; i < 100 && provider.lookupCount.get() < 2; i++) {
+			Thread.sleep(10);
+		}
+
+		for (int i = 0; i < 100 && !cache.getGroups("user1").contains("group2"); i++) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(Collections.singleton("group2"), cache.getGroups("user1"));
+
+		provider.groups.put("user1", Collections.singleton("group3"));
+
+		Thread.sleep(250);
+
+		// expired: groups are loaded again by the caller
+		assertEquals(Collections.singleton("group3"), cache.getGroups("user1"));
+
+		cache.cleanup();
+	}
+
+	@Test
+	public void testFailedLookup() throws Exception {
+		TestGroupsProvider   provider = new TestGroupsProvider();
+		RangerUserGroupCache cache    = new RangerUserGroupCache(provider, 50, 50, 60 * 1000, 100);
+
+		provider.groups.put("user1", Collections.singleton("group1"));
+
+		assertEquals(Collections.singleton("group1"), cache.getGroups("user1"));
+
+		provider.isFailing = true;
+
+		Thread.sleep(100);
+
+		// failed reload keeps the groups loaded earlier, and isn't retried until negativeTtlMs
+		assertEquals(Collections.singleton("group1"), cache.getGroups("user1"));
+		assertEquals(Collections.singleton("group1"), cache.getGroups("user1"));
+		assertEquals(2, provider.lookupCount.get());
+
+		assertTrue(cache.getGroups("user2").isEmpty());
+		assertTrue(cache.getGroups("user2").isEmpty());
+		assertEquals(3, provider.lookupCount.get());
+
+		cache.cleanup();
+	}
+
+	@Test
+	public void testUgiLookup() {
+		TestGroupsProvider   provider = new TestGroupsProvider();
+		RangerUserGroupCache cache    = new RangerUserGroupCache(provider, 60 * 1000, 60 * 1000, 60 * 1000, 100);
+
+		provider.groups.put("ugiuser1", Collections.singleton("group1"));
+
+		UserGroupInformation ugi = UserGroupInformation.createUserForTesting("ugiuser1", new String[] { "group2" });
+
+		// for a user not in cache, groups are looked up via the UGI
+		assertEquals(Collections.singleton("group2"), cache.getGroups(ugi));
+		assertEquals(0, provider.lookupCount.get());
+
+		// the entry is keyed by the short user name, and is shared with lookups by user name
+		assertEquals(Collections.singleton("group2"), cache.getGroups(UserGroupInformation.createRemoteUser("ugiuser1")));
+		assertEquals(Collections.singleton("group2"), cache.getGroups("ugiuser1"));
+		assertEquals(0, provider.lookupCount.get());
+		assertEquals(1, cache.size());
+
+		cache.invalidate("ugiuser1");
+
+		assertEquals(0, cache.size());
+		assertEquals(Collections.singleton("group1"), cache.getGroups("ugiuser1"));
+		assertEquals(Collections.singleton("group1"), cache.getGroups(ugi));
+		assertEquals(1, provider.lookupCount.get());
+
+		cache.cleanup();
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		assertNull(RangerUserGroupCache.create(RangerConfiguration.getInstance(), "ranger.plugin.usergroupcachetest"));
+	}
+
+	private static class TestGroupsProvider implements RangerUserGroupCache.GroupsProvider {
+		final Map<String, Set<String>> groups      = new ConcurrentHashMap<>();
+		final AtomicInteger            lookupCount = new AtomicInteger();
+		volatile boolean               isFailing;
+
+		@Override
+		public Set<String> getGroups(String user) throws Exception {
+			lookupCount.incrementAndGet();
+
+			if (isFailing) {
+				throw new Exception("group lookup failed for " + user);
+			}
+
+			return groups.get(user);
+		}
+	}
+}
@@ -28,6 +28,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
@@ -71,6 +79,7 @@ import org.apache.ranger.plugin.model.RangerServiceDef.RangerDataMaskTypeDef;
 import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
 import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
 import org.apache.ranger.plugin.policyengine.RangerAccessResult;
+import org.apache.ranger.plugin.policyengine.RangerAccessResultProcessor;
 import org.apache.ranger.plugin.policyengine.RangerPolicyEngine;
 import org.apache.ranger.plugin.policyengine.RangerResourceACLs;
 import org.apache.ranger.plugin.policyevaluator.RangerPolicyEvaluator;
@@ -584,7 +593,7 @@ public class RangerHiveAuthorizer extends RangerHiveAuthorizerBase {
 		try {
 			HiveAuthzSessionContext sessionContext = getHiveAuthzSessionContext();
 			String                  user           = ugi.getShortUserName();
-			Set<String>             groups         = Sets.newHashSet(ugi.getGroupNames());
+			Set<String>             groups         = hivePlugin.getUserGroups(ugi);
 
 			if(LOG.isDebugEnabled()) {
 				LOG.debug(toString(hiveOpType, inputHObjs, outputHObjs, context, sessionContext));
@@ -749,7 +758,7 @@ public class RangerHiveAuthorizer extends RangerHiveAuthorizerBase {
 						colRequests.add(colRequest);
 					}
 
-					Collection<RangerAccessResult> colResults = hivePlugin.isAccessAllowed(colRequests, auditHandler);
+					Collection<RangerAccessResult> colResults = hivePlugin.isAccessAllowedForColumns(colRequests, auditHandler);
 
 					if(colResults != null) {
 						for(RangerAccessResult colResult : colResults) {
@@ -865,7 +874,7 @@ public class RangerHiveAuthorizer extends RangerHiveAuthorizerBase {
 			UserGroupInformation ugi = getCurrentUserGroupInfo(); // we know this can't be null since we checked it above!
 			HiveAuthzSessionContext sessionContext = getHiveAuthzSessionContext();
 			String user = ugi.getShortUserName();
-			Set<String> groups = Sets.newHashSet(ugi.getGroupNames());
+			Set<String> groups = hivePlugin.getUserGroups(ugi);
 			if (LOG.isDebugEnabled()) {
 				LOG.debug(String.format("filterListCmdObjects: user[%s], groups%s", user, groups));
 			}
@@ -873,7 +882,19 @@ public class RangerHiveAuthorizer extends RangerHiveAuthorizerBase {
 			if (ret == null) { // if we got any items to filter then we can't return back a null.  We must return back a list even if its empty.
 				ret = new ArrayList<HivePrivilegeObject>(objs.size());
 			}
+
+			// objects are evaluated in bulk: tables of databases where the user has access to all tables are allowed
+			// without evaluating each table, with one audit event per database, for table '*'; rest of the objects are
+			// evaluated, and audited, one by one - in chunks, in parallel, when evaluation threads are configured
+			boolean[]                 isAllowed          = new boolean[objs.size()];
+			List<RangerAccessRequest> requests           = new ArrayList<>(objs.size());
+			List<Integer>             requestObjIndexes  = new ArrayList<>(objs.size());
+			Map<String, Boolean>      isAllTablesAllowed = new HashMap<>();
+			int                       objIndex           = -1;
+
 			for (HivePrivilegeObject privilegeObject : objs) {
+				objIndex++;
+
 				if (LOG.isDebugEnabled()) {
 					HivePrivObjectActionType actionType = privilegeObject.getActionType();
 					HivePrivilegeObjectType objectType = privilegeObject.getType();
@@ -887,29 +908,85 @@ public class RangerHiveAuthorizer extends RangerHiveAuthorizerBase {
 					final String format = "filterListCmdObjects: actionType[%s], objectType[%s], objectName[%s], dbName[%s], columns[%s], partitionKeys[%s]; context: commandString[%s], ipAddress[%s]";
 					LOG.debug(String.format(format, actionType, objectType, objectName, dbName, columns, partitionKeys, commandString, ipAddress));
 				}
-				
+
+				if (privilegeObject.getType() == HivePrivilegeObjectType.TABLE_OR_VIEW && privilegeObject.getDbname() != null) {
+					String  dbName       = privilegeObject.getDbname();
+					Boolean isAllAllowed = isAllTablesAllowed.get(dbName);
+
+					if (isAllAllowed == null) {
+						RangerHiveResource dbResource = new RangerHiveResource(HiveObjectType.DATABASE, dbName);
+
+						dbResource.setServiceDef(hivePlugin.getServiceDef());
+
+						isAllAllowed = hivePlugin.isAccessAllowedForAllChildren(new RangerHiveAccessRequest(dbResource, user, groups, context, sessionContext), RangerHiveResource.KEY_TABLE);
+
+						if (isAllAllowed) { // evaluated, and audited, the regular way, for all tables of the database
+							RangerHiveResource allTablesResource = new RangerHiveResource(HiveObjectType.TABLE, dbName, "*");
+
+							allTablesResource.setServiceDef(hivePlugin.getServiceDef());
+
+							RangerAccessResult result = hivePlugin.isAccessAllowed(new RangerHiveAccessRequest(allTablesResource, user, groups, context, sessionContext), hivePlugin.getResultProcessor());
+
+							isAllAllowed = result != null && result.getIsAllowed();
+						}
+
+						isAllTablesAllowed.put(dbName, isAllAllowed);
+
+						if (LOG.isDebugEnabled()) {
+							LOG.debug("filterListCmdObjects: database[" + dbName + "], isAccessAllowedForAllTables=" + isAllAllowed);
+						}
+					}
+
+					if (isAllAllowed) {
+						isAllowed[objIndex] = true;
+
+						continue;
+					}
+				}
+
 				RangerHiveResource resource = createHiveResource(privilegeObject);
 				if (resource == null) {
 					LOG.error("filterListCmdObjects: RangerHiveResource returned by createHiveResource is null");
 				} else {
-					RangerHiveAccessRequest request = new RangerHiveAccessRequest(resource, user, groups, context, sessionContext);
-					RangerAccessResult result = hivePlugin.isAccessAllowed(request);
+					requests.add(new RangerHiveAccessRequest(resource, user, groups, context, sessionContext));
+					requestObjIndexes.add(objIndex);
+				}
+			}
+
+			List<RangerAccessResult> results = requests.isEmpty() ? Collections.<RangerAccessResult>emptyList() : hivePlugin.isAccessAllowedInChunks(requests, hivePlugin.getResultProcessor());
+
+			if (results == null) {
+				LOG.error("filterListCmdObjects: Internal error: null RangerAccessResult object received back from isAccessAllowed()!");
+			} else {
+				for (int i = 0; i < results.size(); i++) {
+					RangerAccessResult result = results.get(i);
+
 					if (result == null) {
 						LOG.error("filterListCmdObjects: Internal error: null RangerAccessResult object received back from isAccessAllowed()!");
 					} else if (!result.getIsAllowed()) {
-						if (!LOG.isDebugEnabled()) {
-							String path = resource.getAsString();
-							LOG.debug(String.format("filterListCmdObjects: Permission denied: user [%s] does not have [%s] privilege on [%s]. resource[%s], request[%s], result[%s]",
-									user, request.getHiveAccessType().name(), path, resource, request, result));
+						if (LOG.isDebugEnabled()) {
+							RangerAccessRequest request = requests.get(i);
+
+							LOG.debug(String.format("filterListCmdObjects: Permission denied: user [%s] does not have [%s] privilege on [%s]. request[%s], result[%s]",
+									user, ((RangerHiveAccessRequest) request).getHiveAccessType().name(), request.getResource().getAsString(), request, result));
 						}
 					} else {
 						if (LOG.isDebugEnabled()) {
-							LOG.debug(String.format("filterListCmdObjects: access allowed. resource[%s], request[%s], result[%s]", resource, request, result));
+							LOG.debug(String.format("filterListCmdObjects: access allowed. request[%s], result[%s]", requests.get(i), result));
 						}
-						ret.add(privilegeObject);
+
+						isAllowed[requestObjIndexes.get(i)] = true;
 					}
 				}
 			}
+
+			objIndex = 0;
+
+			for (HivePrivilegeObject privilegeObject : objs) {
+				if (isAllowed[objIndex++]) {
+					ret.add(privilegeObject);
+				}
+			}
 		}
 
 		RangerPerfTracer.log(perf);
@@ -1055,7 +1132,7 @@ public class RangerHiveAuthorizer extends RangerHiveAuthorizerBase {
 		try {
 			HiveAuthzSessionContext sessionContext = getHiveAuthzSessionContext();
 			String                  user           = ugi.getShortUserName();
-			Set<String>             groups         = Sets.newHashSet(ugi.getGroupNames());
+			Set<String>             groups         = hivePlugin.getUserGroups(ugi);
 			HiveObjectType          objectType     = HiveObjectType.TABLE;
 			RangerHiveResource      resource       = new RangerHiveResource(objectType, databaseName, tableOrViewName);
 			RangerHiveAccessRequest request        = new RangerHiveAccessRequest(resource, user, groups, objectType.name(), HiveAccessType.SELECT, context, sessionContext);
@@ -1095,7 +1172,7 @@ public class RangerHiveAuthorizer extends RangerHiveAuthorizerBase {
 		try {
 			HiveAuthzSessionContext sessionContext = getHiveAuthzSessionContext();
 			String                  user           = ugi.getShortUserName();
-			Set<String>             groups         = Sets.newHashSet(ugi.getGroupNames());
+			Set<String>             groups         = hivePlugin.getUserGroups(ugi);
 			HiveObjectType          objectType     = HiveObjectType.COLUMN;
 			RangerHiveResource      resource       = new RangerHiveResource(objectType, databaseName, tableOrViewName, columnName);
 			RangerHiveAccessRequest request        = new RangerHiveAccessRequest(resource, user, groups, objectType.name(), HiveAccessType.SELECT, context, sessionContext);
@@ -2530,6 +2607,8 @@ class HiveObj {
 }
 
 class RangerHivePlugin extends RangerBasePlugin {
+	private static final Log LOG = LogFactory.getLog(RangerHivePlugin.class);
+
 	public static boolean UpdateXaPoliciesOnGrantRevoke = RangerHadoopConstants.HIVE_UPDATE_RANGER_POLICIES_ON_GRANT_REVOKE_DEFAULT_VALUE;
 	public static boolean BlockUpdateIfRowfilterColumnMaskSpecified = RangerHadoopConstants.HIVE_BLOCK_UPDATE_IF_ROWFILTER_COLUMNMASK_SPECIFIED_DEFAULT_VALUE;
 	public static String DescribeShowTableAuth = RangerHadoopConstants.HIVE_DESCRIBE_TABLE_SHOW_COLUMNS_AUTH_OPTION_PROP_DEFAULT_VALUE;
@@ -2539,6 +2618,18 @@ class RangerHivePlugin extends RangerBasePlugin {
 	private static String FILESYSTEM_SCHEMES_SEPARATOR_CHAR = ",";
 	private String[] fsScheme = null;
 
+	private static String RANGER_PLUGIN_HIVE_EVALUATION_THREADS = "ranger.plugin.hive.policyengine.evaluation.threads";
+	private static int RANGER_PLUGIN_HIVE_EVALUATION_THREADS_DEFAULT = 1;
+	private static String RANGER_PLUGIN_HIVE_EVALUATION_CHUNK_SIZE = "ranger.plugin.hive.policyengine.evaluation.chunk.size";
+	private static int RANGER_PLUGIN_HIVE_EVALUATION_CHUNK_SIZE_DEFAULT = 500;
+	private static String RANGER_PLUGIN_HIVE_COLUMN_EVALUATION_PARALLEL = "ranger.plugin.hive.policyengine.column.evaluation.parallel";
+	private static String RANGER_PLUGIN_HIVE_COLUMN_EVALUATION_CHUNK_SIZE = "ranger.plugin.hive.policyengine.column.evaluation.chunk.size";
+	private static int RANGER_PLUGIN_HIVE_COLUMN_EVALUATION_CHUNK_SIZE_DEFAULT = 100;
+	private ThreadPoolExecutor evaluationExecutor = null;
+	private int evaluationChunkSize = RANGER_PLUGIN_HIVE_EVALUATION_CHUNK_SIZE_DEFAULT;
+	private boolean isParallelColumnEvaluationEnabled = false;
+	private int columnEvaluationChunkSize = RANGER_PLUGIN_HIVE_COLUMN_EVALUATION_CHUNK_SIZE_DEFAULT;
+
 	public RangerHivePlugin(String appType) {
 		super("hive", appType);
 	}
@@ -2559,6 +2650,235 @@ class RangerHivePlugin extends RangerBasePlugin {
 				fsScheme[i] = fsScheme[i].trim();
 			}
 		}
+
+		initEvaluation(RangerConfiguration.getInstance().getInt(RANGER_PLUGIN_HIVE_EVALUATION_THREADS, RANGER_PLUGIN_HIVE_EVALUATION_THREADS_DEFAULT),
+		               RangerConfiguration.getInstance().getInt(RANGER_PLUGIN_HIVE_EVALUATION_CHUNK_SIZE, RANGER_PLUGIN_HIVE_EVALUATION_CHUNK_SIZE_DEFAULT),
+		               RangerConfiguration.getInstance().getBoolean(RANGER_PLUGIN_HIVE_COLUMN_EVALUATION_PARALLEL, false),
+		               RangerConfiguration.getInstance().getInt(RANGER_PLUGIN_HIVE_COLUMN_EVALUATION_CHUNK_SIZE, RANGER_PLUGIN_HIVE_COLUMN_EVALUATION_CHUNK_SIZE_DEFAULT));
+	}
+
+	void initEvaluation(int evaluationThreads, int evaluationChunkSize, boolean isParallelColumnEvaluationEnabled, int columnEvaluationChunkSize) {
+		this.evaluationChunkSize = Math.max(1, evaluationChunkSize);
+		this.isParallelColumnEvaluationEnabled = isParallelColumnEvaluationEnabled;
+		this.columnEvaluationChunkSize = Math.max(1, columnEvaluationChunkSize);
+
+		if (evaluationThreads > 1) {
+			final AtomicInteger threadCount = new AtomicInteger();
+
+			// callers evaluate a chunk themselves when all threads are busy and the queue is full
+			evaluationExecutor = new ThreadPoolExecutor(evaluationThreads, evaluationThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(evaluationThreads * 4), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread ret = new Thread(r, "RangerHivePlugin-evaluator-" + threadCount.incrementAndGet());
+
+					ret.setDaemon(true);
+
+					return ret;
+				}
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+
+			evaluationExecutor.allowCoreThreadTimeOut(true);
+		}
+
+		LOG.info("RangerHivePlugin: evaluationThreads=" + evaluationThreads + ", evaluationChunkSize=" + this.evaluationChunkSize + ", isParallelColumnEvaluationEnabled=" + this.isParallelColumnEvaluationEnabled + ", columnEvaluationChunkSize=" + this.columnEvaluationChunkSize);
+	}
+
+	@Override
+	public void cleanup() {
+		if (evaluationExecutor != null) {
+			evaluationExecutor.shutdownNow();
+		}
+
+		super.cleanup();
+	}
+
+	/**
+	 * Evaluates requests in chunks of evaluationChunkSize, in parallel: the first chunk in the calling thread, the rest in
+	 * the evaluation thread pool.
+	 *
+	 * A chunk whose evaluation failed in the pool is evaluated again in the calling thread, one request at a time. Results
+	 * of a chunk are sent to resultProcessor after the whole chunk is evaluated, so a failed chunk was not audited. When
+	 * the calling thread is interrupted while waiting for a chunk, it still waits for the chunk, and keeps the interrupt
+	 * status; the chunk would otherwise be audited without its results being used.
+	 *
+	 * @return results in the order of requests; null if the policy engine is not yet initialized
+	 */
+	public List<RangerAccessResult> isAccessAllowedInChunks(List<RangerAccessRequest> requests, RangerAccessResultProcessor resultProcessor) {
+		return isAccessAllowedInChunks(requests, evaluationChunkSize, null, resultProcessor);
+	}
+
+	/**
+	 * Evaluates requests for columns of a table. When parallel column evaluation is enabled, columns are evaluated in
+	 * chunks of columnEvaluationChunkSize in the evaluation thread pool; chunks that follow a chunk with a deny are not
+	 * evaluated, as their results don't change the outcome.
+	 *
+	 * Results are sent to resultProcessor together, in the order of requests, as RangerHiveAuditHandler aggregates audit
+	 * events of columns by policy id, and logs only the first denied column when access to a column is denied.
+	 *
+	 * @return results in the order of requests, up to the chunk having the first deny; null if the policy engine is not
+	 *         yet initialized
+	 */
+	public Collection<RangerAccessResult> isAccessAllowedForColumns(List<RangerAccessRequest> requests, RangerAccessResultProcessor resultProcessor) {
+		if (!isParallelColumnEvaluationEnabled || evaluationExecutor == null || requests.size() <= columnEvaluationChunkSize) {
+			return isAccessAllowed(requests, resultProcessor);
+		}
+
+		// with an audit handler, stop only at an audited deny: the audit event for a denied column is the first audited one
+		List<RangerAccessResult> ret = isAccessAllowedInChunks(requests, columnEvaluationChunkSize, new DenyTracker(resultProcessor != null), null);
+
+		if (ret != null && resultProcessor != null) {
+			resultProcessor.processResults(ret);
+		}
+
+		return ret;
+	}
+
+	private List<RangerAccessResult> isAccessAllowedInChunks(List<RangerAccessRequest> requests, int chunkSize, final DenyTracker denyTracker, final RangerAccessResultProcessor resultProcessor) {
+		ThreadPoolExecutor executor = this.evaluationExecutor;
+
+		if (executor == null || requests.size() <= chunkSize) {
+			Collection<RangerAccessResult> results = isAccessAllowed(requests, resultProcessor);
+
+			return results == null ? null : new ArrayList<>(results);
+		}
+
+		List<List<RangerAccessRequest>>              chunks  = new ArrayList<>();
+		List<Future<Collection<RangerAccessResult>>> futures = new ArrayList<>();
+
+		for (int from = 0; from < requests.size(); from += chunkSize) {
+			chunks.add(requests.subList(from, Math.min(from + chunkSize, requests.size())));
+		}
+
+		for (int i = 1; i < chunks.size(); i++) {
+			final List<RangerAccessRequest> chunk      = chunks.get(i);
+			final int                       chunkIndex = i;
+
+			futures.add(executor.submit(new Callable<Collection<RangerAccessResult>>() {
+				@Override
+				public Collection<RangerAccessResult> call() {
+					return evaluateChunk(chunk, chunkIndex, denyTracker, resultProcessor);
+				}
+			}));
+		}
+
+		List<RangerAccessResult> ret = new ArrayList<>(requests.size());
+
+		for (int i = 0; i < chunks.size(); i++) {
+			if (denyTracker != null && i > denyTracker.firstDeniedChunk.get()) { // results of the rest of the chunks are not needed
+				cancel(futures, i - 1);
+
+				break;
+			}
+
+			Collection<RangerAccessResult> results = null;
+
+			if (i == 0) {
+				results = evaluateChunk(chunks.get(i), i, denyTracker, resultProcessor);
+			} else {
+				try {
+					results = getUninterruptibly(futures.get(i - 1));
+				} catch (ExecutionException excp) {
+					LOG.error("isAccessAllowedInChunks(): evaluation of chunk " + i + " of " + chunks.size() + " failed; evaluating its requests one at a time", excp.getCause());
+
+					results = evaluateChunkSequentially(chunks.get(i), i, denyTracker, resultProcessor);
+				}
+			}
+
+			if (results == null) { // policy engine is not yet initialized
+				cancel(futures, i);
+
+				return null;
+			}
+
+			ret.addAll(results);
+		}
+
+		return ret;
+	}
+
+	private static Collection<RangerAccessResult> getUninterruptibly(Future<Collection<RangerAccessResult>> future) throws ExecutionException {
+		boolean isInterrupted = false;
+
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException excp) {
+					isInterrupted = true;
+				}
+			}
+		} finally {
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private Collection<RangerAccessResult> evaluateChunkSequentially(List<RangerAccessRequest> chunk, int chunkIndex, DenyTracker denyTracker, RangerAccessResultProcessor resultProcessor) {
+		List<RangerAccessResult> ret = new ArrayList<>(chunk.size());
+
+		for (RangerAccessRequest request : chunk) {
+			RangerAccessResult result = isAccessAllowed(request, resultProcessor);
+
+			if (result == null) {
+				return null;
+			}
+
+			ret.add(result);
+		}
+
+		if (denyTracker != null) {
+			denyTracker.onChunkEvaluated(chunkIndex, ret);
+		}
+
+		return ret;
+	}
+
+	private static void cancel(List<Future<Collection<RangerAccessResult>>> futures, int fromIndex) {
+		for (int i = Math.max(0, fromIndex); i < futures.size(); i++) {
+			futures.get(i).cancel(false);
+		}
+	}
+
+	private Collection<RangerAccessResult> evaluateChunk(List<RangerAccessRequest> chunk, int chunkIndex, DenyTracker denyTracker, RangerAccessResultProcessor resultProcessor) {
+		if (denyTracker != null && chunkIndex > denyTracker.firstDeniedChunk.get()) { // a preceding chunk has a deny
+			return Collections.emptyList();
+		}
+
+		Collection<RangerAccessResult> ret = isAccessAllowed(chunk, resultProcessor);
+
+		if (denyTracker != null && ret != null) {
+			denyTracker.onChunkEvaluated(chunkIndex, ret);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Tracks the first chunk, in the order of requests, that has a deny. Chunks after it are skipped; chunks before it are
+	 * always evaluated, as firstDeniedChunk only decreases - so the first deny in the order of requests is never missed.
+	 */
+	private static class DenyTracker {
+		final AtomicInteger firstDeniedChunk = new AtomicInteger(Integer.MAX_VALUE);
+		final boolean       auditedDenyOnly;
+
+		DenyTracker(boolean auditedDenyOnly) {
+			this.auditedDenyOnly = auditedDenyOnly;
+		}
+
+		void onChunkEvaluated(int chunkIndex, Collection<RangerAccessResult> results) {
+			for (RangerAccessResult result : results) {
+				if (result != null && !result.getIsAllowed() && (!auditedDenyOnly || result.getIsAudited())) {
+					int current = firstDeniedChunk.get();
+
+					while (chunkIndex < current && !firstDeniedChunk.compareAndSet(current, chunkIndex)) {
+						current = firstDeniedChunk.get();
+					}
+
+					break;
+				}
+			}
+		}
 	}
 
 	public String[] getFSScheme() {
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.authorization.hive.authorizer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+import org.apache.ranger.plugin.contextenricher.RangerTagForEval;
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.policyengine.RangerAccessResult;
+import org.apache.ranger.plugin.policyengine.RangerAccessResultProcessor;
+import org.apache.ranger.plugin.service.RangerBasePlugin;
+import org.apache.ranger.plugin.util.RangerAccessRequestUtil;
+import org.apache.ranger.plugin.util.RangerMetricsRegistry;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of access results computed for metastore pre-events.
+ *
+ * Results are kept in a generation that is tied to RangerBasePlugin.getAuthContextVersion(); once the policy-engine
+ * is replaced or tags are refreshed, the next lookup atomically switches to a new, empty generation. Cached results
+ * are still sent to the result-processor, so audit logging follows the audit flag of the policy that decided the access.
+ *
+ * The cache is bypassed while the policy-engine has policies whose result can depend on the context of a request - like
+ * the time of access - and results that depend on tags with validity periods are not cached.
+ */
+class RangerHiveMetastoreAccessResultCache {
+    private static final Log LOG = LogFactory.getLog(RangerHiveMetastoreAccessResultCache.class);
+
+    public static final String PROP_CACHE_ENABLED   = "ranger.plugin.hive.metastore.access.result.cache.enabled";
+    public static final String PROP_CACHE_MAX_SIZE  = "ranger.plugin.hive.metastore.access.result.cache.size";
+    public static final String PROP_CACHE_EXPIRY_MS = "ranger.plugin.hive.metastore.access.result.cache.expiryMs";
+
+    private static final boolean DEFAULT_CACHE_ENABLED   = true;
+    private static final int     DEFAULT_CACHE_MAX_SIZE  = 10 * 1024;
+    private static final long    DEFAULT_CACHE_EXPIRY_MS = 30 * 1000;
+
+    private final RangerBasePlugin            plugin;
+    private final int                         maxSize;
+    private final long                        expiryMs;
+    private final AtomicReference<Generation> generation;
+    private final LongAdder                   hitCount    = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_METASTORE_RESULT_CACHE_HIT);
+    private final LongAdder                   missCount   = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_METASTORE_RESULT_CACHE_MISS);
+    private final LongAdder                   bypassCount = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_METASTORE_RESULT_CACHE_BYPASS);
+
+    RangerHiveMetastoreAccessResultCache(RangerBasePlugin plugin, int maxSize, long expiryMs) {
+        this.plugin     = plugin;
+        this.maxSize    = maxSize;
+        this.expiryMs   = expiryMs;
+        this.generation = new AtomicReference<>(new Generation(plugin.getAuthContextVersion()));
+    }
+
+    static RangerHiveMetastoreAccessResultCache create(RangerBasePlugin plugin) {
+        RangerConfiguration config   = RangerConfiguration.getInstance();
+        boolean             enabled  = config.getBoolean(PROP_CACHE_ENABLED, DEFAULT_CACHE_ENABLED);
+        int                 maxSize  = config.getInt(PROP_CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE);
+        long                expiryMs = config.getLong(PROP_CACHE_EXPIRY_MS, DEFAULT_CACHE_EXPIRY_MS);
+
+        RangerHiveMetastoreAccessResultCache ret = null;
+
+        if (enabled && maxSize > 0 && expiryMs > 0) {
+            ret = new RangerHiveMetastoreAccessResultCache(plugin, maxSize, expiryMs);
+        }
+
+        LOG.info("RangerHiveMetastoreAccessResultCache: enabled=" + (ret != null) + ", size=" + maxSize + ", expiryMs=" + expiryMs);
+
+        return ret;
+    }
+
+    RangerAccessResult isAccessAllowed(RangerHiveAccessRequest request, RangerAccessResultProcessor resultProcessor) {
+        if (plugin.hasContextSensitivePolicies()) {
+            bypassCount.increment();
+
+            return plugin.isAccessAllowed(request, resultProcessor);
+        }
+
+        // the generation must be looked up before evaluation, so that a result computed with an older
+        // policy-engine is never added to the generation of a newer one
+        Generation         generation = getGeneration();
+        CacheKey           key        = new CacheKey(request);
+        CachedResult       cached     = generation.results.getIfPresent(key);
+        RangerAccessResult ret;
+
+        if (cached != null) {
+            hitCount.increment();
+
+            ret = cached.toAccessResult(request);
+
+            if (resultProcessor != null) {
+                resultProcessor.processResult(ret);
+            }
+        } else {
+            missCount.increment();
+
+            ret = plugin.isAccessAllowed(request, resultProcessor);
+
+            if (ret != null && ret.getIsAccessDetermined() && ret.getIsAuditedDetermined() && !hasTimeBoundTags(request)) {
+                generation.results.put(key, new CachedResult(ret));
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("RangerHiveMetastoreAccessResultCache.isAccessAllowed(" + key + "): cached=" + (cached != null) + ", hitCount=" + hitCount.sum() + ", missCount=" + missCount.sum());
+        }
+
+        return ret;
+    }
+
+    long getHitCount() { return hitCount.sum(); }
+
+    long getMissCount() { return missCount.sum(); }
+
+    long getBypassCount() { return bypassCount.sum(); }
+
+    long size() { return generation.get().results.size(); }
+
+    private Generation getGeneration() {
+        long       version = plugin.getAuthContextVersion();
+        Generation ret     = generation.get();
+
+        while (ret.version < version) {
+            Generation newGeneration = new Generation(version);
+
+            if (generation.compareAndSet(ret, newGeneration)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("RangerHiveMetastoreAccessResultCache: auth-context changed from version " + ret.version + " to " + version + ". Discarded " + ret.results.size() + " cached results");
+                }
+
+                ret = newGeneration;
+            } else {
+                ret = generation.get();
+            }
+        }
+
+        return ret;
+    }
+
+    private static boolean hasTimeBoundTags(RangerHiveAccessRequest request) {
+        Set<RangerTagForEval> tags = RangerAccessRequestUtil.getRequestTagsFromContext(request.getContext());
+
+        if (tags != null) {
+            for (RangerTagForEval tag : tags) {
+                if (CollectionUtils.isNotEmpty(tag.getValidityPeriods())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private final class Generation {
+        final long                            version;
+        final Cache<CacheKey, CachedResult> results;
+
+        Generation(long version) {
+            this.version = version;
+            this.results = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS).build();
+        }
+    }
+
+    private static final class CacheKey {
+        private final String         user;
+        private final Set<String>    userGroups;
+        private final HiveObjectType objectType;
+        private final String         database;
+        private final String         table;
+        private final String         column;
+        private final String         ownerUser;
+        private final HiveAccessType accessType;
+        private final String         ipAddress;
+        private final int            hashCode;
+
+        CacheKey(RangerHiveAccessRequest request) {
+            RangerHiveResource resource = (RangerHiveResource) request.getResource();
+
+            this.user       = request.getUser();
+            this.userGroups = request.getUserGroups();
+            this.objectType = resource.getObjectType();
+            this.database   = resource.getDatabase();
+            this.table      = resource.getTable();
+            this.column     = resource.getColumn();
+            this.ownerUser  = resource.getOwnerUser();
+            this.accessType = request.getHiveAccessType();
+            this.ipAddress  = request.getRemoteIPAddress() != null ? request.getRemoteIPAddress() : request.getClientIPAddress();
+            this.hashCode   = Objects.hash(user, userGroups, objectType, database, table, column, ownerUser, accessType, ipAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+
+            CacheKey other = (CacheKey) obj;
+
+            return hashCode == other.hashCode &&
+                   accessType == other.accessType &&
+                   objectType == other.objectType &&
+                   Objects.equals(user, other.user) &&
+                   Objects.equals(database, other.database) &&
+                   Objects.equals(table, other.table) &&
+                   Objects.equals(column, other.column) &&
+                   Objects.equals(ownerUser, other.ownerUser) &&
+                   Objects.equals(ipAddress, other.ipAddress) &&
+                   Objects.equals(userGroups, other.userGroups);
+        }
+
+        @Override
+        public String toString() {
+            return "{user=" + user + ", userGroups=" + userGroups + ", objectType=" + objectType + ", database=" + database + ", table=" + table + ", column=" + column + ", ownerUser=" + ownerUser + ", accessType=" + accessType + ", ipAddress=" + ipAddress + "}";
+        }
+    }
+
+    private static final class CachedResult {
+        private final RangerAccessResult    result;
+        private final Set<RangerTagForEval> tags;
+        private final String                clientIPAddress;
+        private final String                clusterName;
+        private final String                clusterType;
+
+        CachedResult(RangerAccessResult result) {
+            RangerHiveAccessRequest request = (RangerHiveAccessRequest) result.getAccessRequest();
+
+            // keep a copy detached from the original request, to avoid holding on to its context
+            this.result = new RangerAccessResult(RangerPolicy.POLICY_TYPE_ACCESS, result.getServiceName(), result.getServiceDef(), null);
+
+            this.result.setAccessResultFrom(result);
+            this.result.setAuditResultFrom(result);
+
+            this.tags            = RangerAccessRequestUtil.getRequestTagsFromContext(request.getContext());
+            this.clientIPAddress = request.getClientIPAddress();
+            this.clusterName     = request.getClusterName();
+            this.clusterType     = request.getClusterType();
+        }
+
+        RangerAccessResult toAccessResult(RangerHiveAccessRequest request) {
+            // populate the request as RangerPolicyEngine.preProcess() would have, so that audit events look the same
+            request.setClientIPAddress(clientIPAddress);
+            request.setClusterName(clusterName);
+            request.setClusterType(clusterType);
+
+            RangerAccessRequestUtil.setCurrentUserInContext(request.getContext(), request.getUser());
+            RangerAccessRequestUtil.setRequestTagsInContext(request.getContext(), tags);
+
+            RangerAccessResult ret = new RangerAccessResult(RangerPolicy.POLICY_TYPE_ACCESS, result.getServiceName(), result.getServiceDef(), request);
+
+            ret.setAccessResultFrom(result);
+            ret.setAuditResultFrom(result);
+
+            return ret;
+        }
+    }
+}
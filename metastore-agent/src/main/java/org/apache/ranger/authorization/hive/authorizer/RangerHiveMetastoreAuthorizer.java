@@ -43,6 +43,7 @@ public class RangerHiveMetastoreAuthorizer extends MetaStorePreEventListener {
     private static final Log LOG = LogFactory.getLog(RangerHiveMetastoreAuthorizer.class);
 
     private static volatile RangerHivePlugin hivePlugin = null;
+    private static volatile RangerHiveMetastoreAccessResultCache accessResultCache = null;
 
     private String appType = "auth-hive-metastore";
 
@@ -84,6 +85,7 @@ public class RangerHiveMetastoreAuthorizer extends MetaStorePreEventListener {
                     }
                     plugin = new RangerHivePlugin(appType);
                     plugin.init();
+                    accessResultCache = RangerHiveMetastoreAccessResultCache.create(plugin);
                     hivePlugin = plugin;
                 }
             }
@@ -212,11 +214,16 @@ public class RangerHiveMetastoreAuthorizer extends MetaStorePreEventListener {
             if (resource != null) {
                 LOG.debug("Determined resource " + resource);
                 resource.setServiceDef(hivePlugin.getServiceDef());
-                request = new RangerHiveAccessRequest(resource, user, null,
+                request = new RangerHiveAccessRequest(resource, user, hivePlugin.getUserGroups(user),
                         hoptName, hact, authzContext, sessionContext);
                 LOG.debug("RangerHiveAccessRequest " + request);
                 RangerAccessRequestUtil.setRequestedResourcesInContext(request.getContext(), requestedResources);
-                result = hivePlugin.isAccessAllowed(request, auditHandler);
+                RangerHiveMetastoreAccessResultCache resultCache = accessResultCache;
+                if (resultCache != null) {
+                    result = resultCache.isAccessAllowed(request, auditHandler);
+                } else {
+                    result = hivePlugin.isAccessAllowed(request, auditHandler);
+                }
                 LOG.debug("RangerHiveAccessResult " + result);
             }
         } catch (Exception e) {
@@ -30,6 +30,8 @@ import org.apache.hadoop.hive.ql.security.authorization.plugin.HiveAuthzSessionC
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.shims.Utils;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.ranger.authorization.hive.authorizer.RangerHiveMetastorePrivilegeQueue.OperationType;
+import org.apache.ranger.authorization.hive.authorizer.RangerHiveMetastorePrivilegeQueue.PrivilegeOperation;
 import org.apache.ranger.plugin.util.AlterRequest;
 import org.apache.ranger.plugin.util.GrantRevokeRequest;
 
@@ -45,7 +47,8 @@ import java.util.Map;
 public class RangerHiveMetastorePrivilegeHandler extends MetaStoreEventListener {
     private static final Log LOG = LogFactory.getLog(RangerHiveMetastorePrivilegeHandler.class);
 
-    private static volatile RangerHivePlugin hivePlugin = null;
+    private static volatile RangerHivePlugin                  hivePlugin     = null;
+    private static volatile RangerHiveMetastorePrivilegeQueue privilegeQueue = null;
 
     private HiveAuthzSessionContext.CLIENT_TYPE ctype = null;
 
@@ -87,6 +90,7 @@ public class RangerHiveMetastorePrivilegeHandler extends MetaStoreEventListener
 
                     plugin = new RangerHivePlugin(appType);
                     plugin.init();
+                    privilegeQueue = RangerHiveMetastorePrivilegeQueue.create(plugin);
                     hivePlugin = plugin;
                 }
             }
@@ -216,23 +220,11 @@ public class RangerHiveMetastorePrivilegeHandler extends MetaStoreEventListener
 //        if (table.getTableType().equals(TableType.INDEX_TABLE.toString())) return;
         GrantRevokeRequest request1 = createGrantRevokeRequest(table.getDbName(),
                 table.getTableName(), null);
-        RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
-        try {
-            hivePlugin.grantAccess(request1, auditHandler);
-            try {
-                // For index privileges
-                GrantRevokeRequest request2 = createGrantRevokeRequest(table.getDbName(),
-                        table.getTableName(), "*");
-                hivePlugin.grantAccess(request2, auditHandler);
-            } catch (Exception e) {
-                hivePlugin.removeAccess(request1, auditHandler);
-            }
-        } catch (Exception e) {
-            // Just a warning
-            LOG.warn("Column privilege grant failed.");
-        } finally {
-            auditHandler.flushAudit();
-        }
+        // For index privileges
+        GrantRevokeRequest request2 = createGrantRevokeRequest(table.getDbName(),
+                table.getTableName(), "*");
+        submit(new PrivilegeOperation(OperationType.CREATE_TABLE, table.getDbName(),
+                table.getTableName(), request1, request2));
     }
 
     public void onDropTable(DropTableEvent tableEvent) throws MetaException {
@@ -240,23 +232,11 @@ public class RangerHiveMetastorePrivilegeHandler extends MetaStoreEventListener
         Table table = tableEvent.getTable();
         GrantRevokeRequest request1 = createGrantRevokeRequest(table.getDbName(),
                 table.getTableName(), null);
-        RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
-        try {
-            hivePlugin.removeAccess(request1, auditHandler);
-            try {
-                // For index privileges
-                GrantRevokeRequest request2 = createGrantRevokeRequest(table.getDbName(),
-                        table.getTableName(), "*");
-                hivePlugin.removeAccess(request2, auditHandler);
-            } catch (Exception e) {
-                hivePlugin.grantAccess(request1, auditHandler);
-            }
-        } catch (Exception e) {
-            // Just a warning
-            LOG.warn("Column privilege drop failed.");
-        } finally {
-            auditHandler.flushAudit();
-        }
+        // For index privileges
+        GrantRevokeRequest request2 = createGrantRevokeRequest(table.getDbName(),
+                table.getTableName(), "*");
+        submit(new PrivilegeOperation(OperationType.DROP_TABLE, table.getDbName(),
+                table.getTableName(), request1, request2));
     }
 
     public void onAlterTable(AlterTableEvent tableEvent) throws MetaException {
@@ -271,18 +251,10 @@ public class RangerHiveMetastorePrivilegeHandler extends MetaStoreEventListener
         // revoke the old privileges followed by granting the new ones
         AlterRequest request1 = getHiveAlterRequest(oldDbName, oldTableName, null,
                 newDbName, newTableName, null);
-        RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
-        try {
-            hivePlugin.alterAccess(request1, auditHandler);
-            AlterRequest request2 = getHiveAlterRequest(oldDbName, oldTableName, "*",
-                    newDbName, newTableName, "*");
-            hivePlugin.alterAccess(request2, auditHandler);
-        } catch (Exception e) {
-            // Just a warning
-            LOG.warn("Column/Index privilege alter failed.");
-        } finally {
-            auditHandler.flushAudit();
-        }
+        AlterRequest request2 = getHiveAlterRequest(oldDbName, oldTableName, "*",
+                newDbName, newTableName, "*");
+        submit(new PrivilegeOperation(OperationType.ALTER_TABLE, oldDbName, oldTableName,
+                request1, request2));
     }
 
     public void onAddPartition(AddPartitionEvent partitionEvent) throws MetaException {
@@ -298,30 +270,16 @@ public class RangerHiveMetastorePrivilegeHandler extends MetaStoreEventListener
         LOG.info("onCreateDatabase(dbEvent): " + dbEvent);
         GrantRevokeRequest request = createGrantRevokeRequest(dbEvent.getDatabase().getName(),
                 null, null);
-        RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
-        try {
-            hivePlugin.grantAccess(request, auditHandler);
-        } catch (Exception e) {
-            // Just a warning
-            LOG.warn("Database creation failed.");
-        } finally {
-            auditHandler.flushAudit();
-        }
+        submit(new PrivilegeOperation(OperationType.CREATE_DATABASE, dbEvent.getDatabase().getName(),
+                null, request));
     }
 
     public void onDropDatabase(DropDatabaseEvent dbEvent) throws MetaException {
         LOG.info("onDropDatabase(dbEvent): " + dbEvent);
         GrantRevokeRequest request = createGrantRevokeRequest(dbEvent.getDatabase().getName(),
                 null, null);
-        RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
-        try {
-            hivePlugin.removeAccess(request, auditHandler);
-        } catch (Exception e) {
-            // Just a warning
-            LOG.warn("Database drop failed.");
-        } finally {
-            auditHandler.flushAudit();
-        }
+        submit(new PrivilegeOperation(OperationType.DROP_DATABASE, dbEvent.getDatabase().getName(),
+                null, request));
     }
 
     public void onLoadPartitionDone(LoadPartitionDoneEvent partSetDoneEvent) throws MetaException {
@@ -385,14 +343,26 @@ public class RangerHiveMetastorePrivilegeHandler extends MetaStoreEventListener
         LOG.info("onInsert(insertEvent): " + insertEvent);
         GrantRevokeRequest request = createGrantRevokeRequest(insertEvent.getTableObj().getDbName(),
                 insertEvent.getTableObj().getTableName(), null);
-        RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
-        try {
-            hivePlugin.grantAccess(request, auditHandler);
-        } catch (Exception e) {
-            // Just a warning
-            LOG.warn("Insertion failed.");
-        } finally {
-            auditHandler.flushAudit();
+        submit(new PrivilegeOperation(OperationType.INSERT, insertEvent.getTableObj().getDbName(),
+                insertEvent.getTableObj().getTableName(), request));
+    }
+
+    /**
+     * Requests are created on the metastore thread, as they capture the current SessionState;
+     * sending them to Ranger Admin is left to the privilege queue, when enabled.
+     */
+    private void submit(PrivilegeOperation operation) {
+        RangerHiveMetastorePrivilegeQueue queue = privilegeQueue;
+
+        if (queue != null) {
+            queue.enqueue(operation);
+        } else {
+            RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
+            try {
+                RangerHiveMetastorePrivilegeQueue.execute(hivePlugin, operation, auditHandler);
+            } finally {
+                auditHandler.flushAudit();
+            }
         }
     }
 }
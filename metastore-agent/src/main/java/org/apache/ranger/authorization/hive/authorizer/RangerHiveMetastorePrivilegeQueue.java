@@ -0,0 +1,842 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.authorization.hive.authorizer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ranger.authorization.hadoop.config.RangerConfiguration;
+import org.apache.ranger.plugin.policyengine.CacheMap;
+import org.apache.ranger.plugin.service.RangerBasePlugin;
+import org.apache.ranger.plugin.util.AlterRequest;
+import org.apache.ranger.plugin.util.GrantRevokeRequest;
+import org.apache.ranger.plugin.util.RangerLatencyHistogram;
+import org.apache.ranger.plugin.util.RangerMetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the privilege updates triggered by metastore events to Ranger Admin, asynchronously to the metastore thread.
+ *
+ * Operations wait in the queue for a short window, during which duplicate operations on the same resource by the same
+ * grantor are merged into one. Repeated grants on INSERT for a table already granted are dropped, until policies change.
+ *
+ * Pending operations are recorded in a write-ahead file, and replayed when the queue is restarted. enqueue() returns
+ * only after the record of the operation is written and synced to disk. Concurrent callers share a write: the caller
+ * that gets to write first writes, and syncs, the records of all callers waiting at that time (group commit). Records
+ * that could not be written stay buffered, and are written along with the next ones.
+ */
+class RangerHiveMetastorePrivilegeQueue extends Thread {
+    private static final Log LOG = LogFactory.getLog(RangerHiveMetastorePrivilegeQueue.class);
+
+    public static final String PROP_QUEUE_ENABLED       = "ranger.plugin.hive.metastore.privilege.queue.enabled";
+    public static final String PROP_COALESCE_WINDOW_MS  = "ranger.plugin.hive.metastore.privilege.queue.coalesce.windowMs";
+    public static final String PROP_BATCH_SIZE          = "ranger.plugin.hive.metastore.privilege.queue.batch.size";
+    public static final String PROP_WAL_DIR             = "ranger.plugin.hive.metastore.privilege.queue.wal.dir";
+    public static final String PROP_INSERT_CACHE_SIZE   = "ranger.plugin.hive.metastore.privilege.queue.insert.cache.size";
+    public static final String PROP_STOP_TIMEOUT_MS     = "ranger.plugin.hive.metastore.privilege.queue.stop.timeoutMs";
+    public static final String PROP_POLICY_CACHE_DIR    = "ranger.plugin.hive.policy.cache.dir";
+
+    private static final boolean DEFAULT_QUEUE_ENABLED      = true;
+    private static final long    DEFAULT_COALESCE_WINDOW_MS = 1000;
+    private static final int     DEFAULT_BATCH_SIZE         = 100;
+    private static final int     DEFAULT_INSERT_CACHE_SIZE  = 10 * 1024;
+    private static final long    DEFAULT_STOP_TIMEOUT_MS    = 5 * 1000;
+    private static final long    STATUS_LOG_INTERVAL_MS     = 60 * 1000;
+    private static final int     WAL_COMPACT_THRESHOLD      = 10 * 1000;
+    private static final char    WAL_RECORD_ADD             = '+';
+    private static final char    WAL_RECORD_DONE            = '-';
+
+    enum OperationType { CREATE_TABLE, DROP_TABLE, ALTER_TABLE, CREATE_DATABASE, DROP_DATABASE, INSERT }
+
+    static class PrivilegeOperation {
+        private long                     id;
+        private long                     enqueueTime;
+        private OperationType            type;
+        private String                   database;
+        private String                   table;
+        private List<GrantRevokeRequest> grantRevokeRequests;
+        private List<AlterRequest>       alterRequests;
+
+        PrivilegeOperation() {
+        }
+
+        PrivilegeOperation(OperationType type, String database, String table, GrantRevokeRequest... requests) {
+            this.type                = type;
+            this.database            = database;
+            this.table               = table;
+            this.grantRevokeRequests = new ArrayList<>(Arrays.asList(requests));
+        }
+
+        PrivilegeOperation(OperationType type, String database, String table, AlterRequest... requests) {
+            this.type          = type;
+            this.database      = database;
+            this.table         = table;
+            this.alterRequests = new ArrayList<>(Arrays.asList(requests));
+        }
+
+        OperationType getType() { return type; }
+
+        String getResourceKey() {
+            return table == null ? database : (database + "." + table);
+        }
+
+        String getPrincipalKey() {
+            GrantRevokeRequest request = grantRevokeRequests.get(0);
+
+            return request.getGrantor() + ":" + request.getUsers();
+        }
+
+        boolean canCoalesce(PrivilegeOperation other) {
+            boolean ret = type != OperationType.ALTER_TABLE && type == other.type && StringUtils.equals(getResourceKey(), other.getResourceKey());
+
+            if (ret) {
+                ret = grantRevokeRequests.size() == other.grantRevokeRequests.size();
+
+                for (int i = 0; ret && i < grantRevokeRequests.size(); i++) {
+                    GrantRevokeRequest request      = grantRevokeRequests.get(i);
+                    GrantRevokeRequest otherRequest = other.grantRevokeRequests.get(i);
+
+                    ret = StringUtils.equals(request.getGrantor(), otherRequest.getGrantor()) &&
+                          Objects.equals(request.getResources(), otherRequest.getResources()) &&
+                          Objects.equals(request.getAccessTypes(), otherRequest.getAccessTypes());
+                }
+            }
+
+            return ret;
+        }
+
+        void coalesce(PrivilegeOperation other) {
+            for (int i = 0; i < grantRevokeRequests.size(); i++) {
+                grantRevokeRequests.get(i).getUsers().addAll(other.grantRevokeRequests.get(i).getUsers());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "PrivilegeOperation={id=" + id + ", type=" + type + ", resource=" + getResourceKey() + "}";
+        }
+    }
+
+    private final RangerBasePlugin plugin;
+    private final long             coalesceWindowMs;
+    private final int              batchSize;
+    private final File             walFile;
+    private final long             stopTimeoutMs;
+    private final Gson             gson;
+    private final Object           walLock = new Object(); // held while writing to walFile
+
+    private final LinkedHashMap<Long, PrivilegeOperation> pendingOperations     = new LinkedHashMap<>();
+    private final Map<String, PrivilegeOperation>         lastPendingOperations = new HashMap<>();
+    private final Map<String, Set<String>>                grantedInserts;
+    private final List<String>                            walBuffer             = new ArrayList<>(); // records yet to be written to walFile
+
+    private          long             nextOperationId       = 1;
+    private          long             grantedInsertsVersion = -1;   // auth-context version of the policies grantedInserts was built with
+    private          long             walAppendedSeq        = 0;    // number of records appended to walBuffer, ever
+    private volatile long             walWrittenSeq         = 0;    // number of records appended to walBuffer, ever, that are written to walFile
+    private          FileOutputStream walStream             = null; // used with walLock held
+    private          Writer           walWriter             = null; // used with walLock held
+    private          int              walRecordCount        = 0;    // used with walLock held
+    private volatile boolean          isStopped             = false;
+    private          long             lastStatusLogTime     = System.currentTimeMillis();
+
+    // metrics
+    private final LongAdder              enqueuedCount  = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_PRIVILEGE_QUEUE_ENQUEUED);
+    private final LongAdder              coalescedCount = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_PRIVILEGE_QUEUE_COALESCED);
+    private final LongAdder              dedupedCount   = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_PRIVILEGE_QUEUE_DEDUPED);
+    private final LongAdder              sentCount      = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_PRIVILEGE_QUEUE_SENT);
+    private final LongAdder              failedCount    = RangerMetricsRegistry.getInstance().getCounter(RangerMetricsRegistry.COUNTER_PRIVILEGE_QUEUE_FAILED);
+    private final RangerLatencyHistogram latency        = RangerMetricsRegistry.getInstance().getHistogram(RangerMetricsRegistry.METRIC_PRIVILEGE_QUEUE_LATENCY);
+    private final RangerMetricsRegistry.Gauge queueDepthGauge = new RangerMetricsRegistry.Gauge() {
+        @Override
+        public long getValue() {
+            return getQueueDepth();
+        }
+    };
+
+    RangerHiveMetastorePrivilegeQueue(RangerBasePlugin plugin, long coalesceWindowMs, int batchSize, int insertCacheSize, File walFile) {
+        this(plugin, coalesceWindowMs, batchSize, insertCacheSize, walFile, DEFAULT_STOP_TIMEOUT_MS);
+    }
+
+    RangerHiveMetastorePrivilegeQueue(RangerBasePlugin plugin, long coalesceWindowMs, int batchSize, int insertCacheSize, File walFile, long stopTimeoutMs) {
+        super("RangerHiveMetastorePrivilegeQueue");
+
+        this.plugin           = plugin;
+        this.coalesceWindowMs = coalesceWindowMs;
+        this.batchSize        = batchSize;
+        this.walFile          = walFile;
+        this.stopTimeoutMs    = stopTimeoutMs;
+        this.gson             = new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z").create();
+        this.grantedInserts   = Collections.synchronizedMap(new CacheMap<String, Set<String>>(insertCacheSize));
+
+        setDaemon(true);
+    }
+
+    static RangerHiveMetastorePrivilegeQueue create(RangerBasePlugin plugin) {
+        RangerConfiguration config = RangerConfiguration.getInstance();
+
+        RangerHiveMetastorePrivilegeQueue ret = null;
+
+        if (config.getBoolean(PROP_QUEUE_ENABLED, DEFAULT_QUEUE_ENABLED)) {
+            long   coalesceWindowMs = config.getLong(PROP_COALESCE_WINDOW_MS, DEFAULT_COALESCE_WINDOW_MS);
+            int    batchSize        = config.getInt(PROP_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+            int    insertCacheSize  = config.getInt(PROP_INSERT_CACHE_SIZE, DEFAULT_INSERT_CACHE_SIZE);
+            long   stopTimeoutMs    = config.getLong(PROP_STOP_TIMEOUT_MS, DEFAULT_STOP_TIMEOUT_MS);
+            String walDir           = config.get(PROP_WAL_DIR, config.get(PROP_POLICY_CACHE_DIR));
+            File   walFile          = null;
+
+            if (StringUtils.isNotBlank(walDir)) {
+                String walFileName = String.format("%s_%s_privileges.wal", plugin.getAppId(), plugin.getServiceName());
+
+                walFileName = walFileName.replace(File.separatorChar, '_');
+                walFileName = walFileName.replace(File.pathSeparatorChar, '_');
+
+                walFile = new File(walDir + File.separator + walFileName);
+            } else {
+                LOG.warn("RangerHiveMetastorePrivilegeQueue: " + PROP_WAL_DIR + " is not set. Pending privilege updates will be lost on restart");
+            }
+
+            ret = new RangerHiveMetastorePrivilegeQueue(plugin, coalesceWindowMs, Math.max(batchSize, 1), Math.max(insertCacheSize, 1), walFile, Math.max(stopTimeoutMs, 0));
+
+            final RangerHiveMetastorePrivilegeQueue queue = ret;
+
+            queue.recover();
+            queue.start();
+
+            RangerMetricsRegistry.getInstance().registerGauge(RangerMetricsRegistry.GAUGE_PRIVILEGE_QUEUE_DEPTH, queue.queueDepthGauge);
+
+            // the metastore has no shutdown callback for event listeners
+            Runtime.getRuntime().addShutdownHook(new Thread("RangerHiveMetastorePrivilegeQueue-shutdown") {
+                @Override
+                public void run() {
+                    queue.stopQueue();
+                }
+            });
+
+            LOG.info("RangerHiveMetastorePrivilegeQueue: coalesceWindowMs=" + coalesceWindowMs + ", batchSize=" + batchSize + ", stopTimeoutMs=" + stopTimeoutMs + ", walFile=" + walFile);
+        }
+
+        return ret;
+    }
+
+    void enqueue(PrivilegeOperation operation) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("==> RangerHiveMetastorePrivilegeQueue.enqueue(" + operation + ")");
+        }
+
+        String resourceKey = operation.getResourceKey();
+
+        switch (operation.getType()) {
+            case INSERT: {
+                Set<String> principals;
+
+                synchronized (grantedInserts) {
+                    long authContextVersion = plugin.getAuthContextVersion();
+
+                    // once policies change, an INSERT granted earlier might have been revoked
+                    if (grantedInsertsVersion != authContextVersion) {
+                        grantedInserts.clear();
+
+                        grantedInsertsVersion = authContextVersion;
+                    }
+
+                    principals = grantedInserts.get(resourceKey);
+
+                    if (principals == null) {
+                        principals = new HashSet<>();
+
+                        grantedInserts.put(resourceKey, principals);
+                    }
+                }
+
+                synchronized (principals) {
+                    if (!principals.add(operation.getPrincipalKey())) {
+                        dedupedCount.increment();
+
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("<== RangerHiveMetastorePrivilegeQueue.enqueue(" + operation + "): already granted");
+                        }
+
+                        return;
+                    }
+                }
+            }
+            break;
+
+            case DROP_TABLE:
+            case ALTER_TABLE:
+                grantedInserts.remove(resourceKey);
+            break;
+
+            case DROP_DATABASE:
+                synchronized (grantedInserts) {
+                    String prefix = resourceKey + ".";
+
+                    for (Iterator<String> iter = grantedInserts.keySet().iterator(); iter.hasNext(); ) {
+                        if (iter.next().startsWith(prefix)) {
+                            iter.remove();
+                        }
+                    }
+                }
+            break;
+
+            default:
+            break;
+        }
+
+        enqueuedCount.increment();
+
+        final long walSeq;
+
+        synchronized (this) {
+            PrivilegeOperation lastOperation = lastPendingOperations.get(resourceKey);
+
+            if (lastOperation != null && lastOperation.canCoalesce(operation)) {
+                lastOperation.coalesce(operation);
+
+                coalescedCount.increment();
+
+                walSeq = appendWal(WAL_RECORD_ADD + gson.toJson(lastOperation));
+            } else {
+                operation.id          = nextOperationId++;
+                operation.enqueueTime = System.currentTimeMillis();
+
+                addPendingOperation(operation);
+
+                walSeq = appendWal(WAL_RECORD_ADD + gson.toJson(operation));
+            }
+
+            notifyAll();
+        }
+
+        syncWal(walSeq);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("<== RangerHiveMetastorePrivilegeQueue.enqueue(" + operation + ")");
+        }
+    }
+
+    /**
+     * Stops the queue thread, waiting at most stopTimeoutMs for it to exit, and writes pending write-ahead records;
+     * operations still pending are sent after restart. An operation being sent when the wait times out is sent again
+     * after restart.
+     */
+    void stopQueue() {
+        synchronized (this) {
+            if (isStopped) {
+                return;
+            }
+
+            isStopped = true;
+        }
+
+        RangerMetricsRegistry.getInstance().unregisterGauge(RangerMetricsRegistry.GAUGE_PRIVILEGE_QUEUE_DEPTH, queueDepthGauge);
+
+        super.interrupt();
+
+        try {
+            super.join(stopTimeoutMs);
+        } catch (InterruptedException excp) {
+            LOG.warn("RangerHiveMetastorePrivilegeQueue: interrupted while waiting for thread to exit", excp);
+
+            Thread.currentThread().interrupt();
+        }
+
+        if (super.isAlive()) {
+            LOG.warn("RangerHiveMetastorePrivilegeQueue: thread did not exit in " + stopTimeoutMs + "ms");
+        }
+
+        synchronized (walLock) {
+            writeWal();
+            closeWal();
+        }
+    }
+
+    synchronized int getQueueDepth() { return pendingOperations.size(); }
+
+    long getEnqueuedCount() { return enqueuedCount.sum(); }
+
+    long getCoalescedCount() { return coalescedCount.sum(); }
+
+    long getDedupedCount() { return dedupedCount.sum(); }
+
+    long getSentCount() { return sentCount.sum(); }
+
+    long getFailedCount() { return failedCount.sum(); }
+
+    @Override
+    public void run() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("==> RangerHiveMetastorePrivilegeQueue.run()");
+        }
+
+        while (!isStopped) {
+            try {
+                List<PrivilegeOperation> batch = takeBatch();
+
+                // records of operations are written before they are sent - here, only if enqueue() failed to write them
+                syncWal(Long.MAX_VALUE);
+
+                processBatch(batch);
+
+                logStatusIfRequired();
+            } catch (InterruptedException excp) {
+                LOG.info("RangerHiveMetastorePrivilegeQueue.run(): interrupted! Exiting thread", excp);
+                break;
+            } catch (Throwable excp) {
+                LOG.error("RangerHiveMetastorePrivilegeQueue.run(): unexpected error, ignoring..", excp);
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("<== RangerHiveMetastorePrivilegeQueue.run()");
+        }
+    }
+
+    /**
+     * Executes the privilege updates for the given operation, the same way they are done synchronously
+     *
+     * @return true if all updates were sent successfully to Ranger Admin
+     */
+    static boolean execute(RangerBasePlugin plugin, PrivilegeOperation operation, RangerHiveAuditHandler auditHandler) {
+        boolean ret = false;
+
+        try {
+            switch (operation.getType()) {
+                case CREATE_TABLE: {
+                    GrantRevokeRequest request1 = operation.grantRevokeRequests.get(0);
+                    GrantRevokeRequest request2 = operation.grantRevokeRequests.get(1);
+
+                    plugin.grantAccess(request1, auditHandler);
+                    try {
+                        // For index privileges
+                        plugin.grantAccess(request2, auditHandler);
+                        ret = true;
+                    } catch (Exception e) {
+                        plugin.removeAccess(request1, auditHandler);
+                    }
+                }
+                break;
+
+                case DROP_TABLE: {
+                    GrantRevokeRequest request1 = operation.grantRevokeRequests.get(0);
+                    GrantRevokeRequest request2 = operation.grantRevokeRequests.get(1);
+
+                    plugin.removeAccess(request1, auditHandler);
+                    try {
+                        // For index privileges
+                        plugin.removeAccess(request2, auditHandler);
+                        ret = true;
+                    } catch (Exception e) {
+                        plugin.grantAccess(request1, auditHandler);
+                    }
+                }
+                break;
+
+                case ALTER_TABLE:
+                    for (AlterRequest request : operation.alterRequests) {
+                        plugin.alterAccess(request, auditHandler);
+                    }
+                    ret = true;
+                break;
+
+                case CREATE_DATABASE:
+                case INSERT:
+                    plugin.grantAccess(operation.grantRevokeRequests.get(0), auditHandler);
+                    ret = true;
+                break;
+
+                case DROP_DATABASE:
+                    plugin.removeAccess(operation.grantRevokeRequests.get(0), auditHandler);
+                    ret = true;
+                break;
+            }
+        } catch (Exception e) {
+            // Just a warning
+            LOG.warn("Privilege update failed for " + operation, e);
+        }
+
+        return ret;
+    }
+
+    // returns at least one operation
+    private synchronized List<PrivilegeOperation> takeBatch() throws InterruptedException {
+        List<PrivilegeOperation> ret = new ArrayList<>();
+
+        while (ret.isEmpty()) {
+            while (pendingOperations.isEmpty()) {
+                wait();
+            }
+
+            // give the first operation the full window to collect duplicates
+            PrivilegeOperation first   = pendingOperations.values().iterator().next();
+            long               waitFor = first.enqueueTime + coalesceWindowMs - System.currentTimeMillis();
+
+            if (waitFor > 0) {
+                wait(waitFor);
+            }
+
+            collectBatch(ret);
+        }
+
+        return ret;
+    }
+
+    // called with the lock held
+    private void collectBatch(List<PrivilegeOperation> ret) {
+        long readyTime = System.currentTimeMillis() - coalesceWindowMs;
+
+        for (Iterator<PrivilegeOperation> iter = pendingOperations.values().iterator(); iter.hasNext() && ret.size() < batchSize; ) {
+            PrivilegeOperation operation = iter.next();
+
+            if (operation.enqueueTime > readyTime) {
+                break;
+            }
+
+            iter.remove();
+
+            // operations taken off the queue can't be coalesced anymore
+            lastPendingOperations.remove(operation.getResourceKey(), operation);
+
+            if (operation.alterRequests != null) {
+                for (AlterRequest request : operation.alterRequests) {
+                    lastPendingOperations.remove(getResourceKey(request.getNewResources()), operation);
+                }
+            }
+
+            ret.add(operation);
+        }
+    }
+
+    private void processBatch(List<PrivilegeOperation> batch) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("==> RangerHiveMetastorePrivilegeQueue.processBatch(size=" + batch.size() + ")");
+        }
+
+        RangerHiveAuditHandler auditHandler = new RangerHiveAuditHandler();
+        long                   batchLatency = 0;
+        int                    successCount = 0;
+        int                    failureCount = 0;
+
+        try {
+            for (PrivilegeOperation operation : batch) {
+                boolean isSuccess = execute(plugin, operation, auditHandler);
+
+                if (isSuccess) {
+                    successCount++;
+                } else {
+                    failureCount++;
+                }
+
+                if (!isSuccess && operation.getType() == OperationType.INSERT) {
+                    // let a later INSERT try again
+                    Set<String> principals = grantedInserts.get(operation.getResourceKey());
+
+                    if (principals != null) {
+                        synchronized (principals) {
+                            principals.remove(operation.getPrincipalKey());
+                        }
+                    }
+                }
+
+                long latencyMs = System.currentTimeMillis() - operation.enqueueTime;
+
+                batchLatency += latencyMs;
+
+                latency.record(latencyMs * 1000);
+
+                synchronized (this) {
+                    appendWal(WAL_RECORD_DONE + Long.toString(operation.id));
+                }
+            }
+        } finally {
+            auditHandler.flushAudit();
+
+            sentCount.add(successCount);
+            failedCount.add(failureCount);
+        }
+
+        synchronized (walLock) {
+            writeWal();
+
+            if (walRecordCount > WAL_COMPACT_THRESHOLD) {
+                compactWal();
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("<== RangerHiveMetastorePrivilegeQueue.processBatch(size=" + batch.size() + "): successCount=" + successCount + ", avgLatencyMs=" + (batchLatency / batch.size()));
+        }
+    }
+
+    private void addPendingOperation(PrivilegeOperation operation) {
+        pendingOperations.put(operation.id, operation);
+        lastPendingOperations.put(operation.getResourceKey(), operation);
+
+        if (operation.alterRequests != null) {
+            // no later operation on the renamed resource should be merged into an earlier one
+            for (AlterRequest request : operation.alterRequests) {
+                lastPendingOperations.put(getResourceKey(request.getNewResources()), operation);
+            }
+        }
+    }
+
+    private static String getResourceKey(Map<String, List<String>> resources) {
+        List<String> databases = resources != null ? resources.get(RangerHiveResource.KEY_DATABASE) : null;
+        List<String> tables    = resources != null ? resources.get(RangerHiveResource.KEY_TABLE) : null;
+        String       database  = databases != null && !databases.isEmpty() ? databases.get(0) : null;
+        String       table     = tables != null && !tables.isEmpty() ? tables.get(0) : null;
+
+        return table == null ? database : (database + "." + table);
+    }
+
+    /*
+     * Loads operations that were pending when the queue was last stopped. The write-ahead file has one record per line:
+     *   +<operation as JSON> : operation added or updated
+     *   -<operation id>      : operation completed
+     *
+     * Must be called before the queue is started.
+     */
+    synchronized void recover() {
+        if (walFile == null || !walFile.isFile()) {
+            return;
+        }
+
+        LinkedHashMap<Long, PrivilegeOperation> operations = new LinkedHashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(walFile))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    if (line.charAt(0) == WAL_RECORD_ADD) {
+                        PrivilegeOperation operation = gson.fromJson(line.substring(1), PrivilegeOperation.class);
+
+                        operations.put(operation.id, operation);
+                    } else if (line.charAt(0) == WAL_RECORD_DONE) {
+                        operations.remove(Long.parseLong(line.substring(1)));
+                    }
+                } catch (Exception excp) {
+                    // most likely a partially written last record
+                    LOG.warn("RangerHiveMetastorePrivilegeQueue.recover(): ignoring invalid record in " + walFile.getAbsolutePath() + ": " + line, excp);
+                }
+            }
+        } catch (IOException excp) {
+            LOG.error("RangerHiveMetastorePrivilegeQueue.recover(): failed to read " + walFile.getAbsolutePath(), excp);
+        }
+
+        for (PrivilegeOperation operation : operations.values()) {
+            nextOperationId = Math.max(nextOperationId, operation.id + 1);
+
+            addPendingOperation(operation);
+        }
+
+        if (!operations.isEmpty()) {
+            LOG.info("RangerHiveMetastorePrivilegeQueue.recover(): found " + operations.size() + " pending privilege updates in " + walFile.getAbsolutePath());
+        }
+
+        synchronized (walLock) {
+            compactWal();
+        }
+    }
+
+    // called with the lock held; returns the sequence number of the record, to pass to syncWal()
+    private long appendWal(String record) {
+        if (walFile != null) {
+            walBuffer.add(record);
+
+            walAppendedSeq++;
+        }
+
+        return walAppendedSeq;
+    }
+
+    // returns after records up to walSeq are written, or writing them failed; writes all records buffered by then
+    private void syncWal(long walSeq) {
+        if (walFile == null || walWrittenSeq >= walSeq) {
+            return;
+        }
+
+        synchronized (walLock) {
+            if (walWrittenSeq < walSeq) { // else written by another thread while this one waited for walLock
+                writeWal();
+            }
+        }
+    }
+
+    /*
+     * Writes, and syncs to disk, the records in walBuffer; called with walLock held. Records are removed from walBuffer
+     * only after they are written, so that records that fail to write are written along with the next ones - a record
+     * written twice is replayed the same as if written once.
+     */
+    private void writeWal() {
+        final List<String> records;
+        final long         lastSeq;
+
+        synchronized (this) {
+            if (walBuffer.isEmpty()) {
+                return;
+            }
+
+            records = new ArrayList<>(walBuffer);
+            lastSeq = walAppendedSeq;
+        }
+
+        try {
+            if (walWriter == null) {
+                File walDir = walFile.getParentFile();
+
+                if (walDir != null && !walDir.exists()) {
+                    walDir.mkdirs();
+                }
+
+                boolean isPartialRecordPossible = walFile.length() > 0; // an earlier write could have failed in the middle of a record
+
+                walStream = new FileOutputStream(walFile, true);
+                walWriter = new BufferedWriter(new OutputStreamWriter(walStream));
+
+                if (isPartialRecordPossible) {
+                    walWriter.write('\n');
+                }
+            }
+
+            for (String record : records) {
+                walWriter.write(record);
+                walWriter.write('\n');
+            }
+
+            walWriter.flush();
+            walStream.getFD().sync();
+
+            synchronized (this) {
+                walBuffer.subList(0, records.size()).clear(); // only threads holding walLock remove records
+            }
+
+            walWrittenSeq   = lastSeq;
+            walRecordCount += records.size();
+        } catch (IOException excp) {
+            LOG.error("RangerHiveMetastorePrivilegeQueue: failed to write to " + walFile.getAbsolutePath() + "; " + records.size() + " records will be written with the next ones", excp);
+
+            closeWal();
+        }
+    }
+
+    // rewrites the write-ahead file with only the pending operations; called with walLock held, by the queue thread or before it starts
+    private void compactWal() {
+        if (walFile == null) {
+            return;
+        }
+
+        final List<String> records = new ArrayList<>();
+        final int          bufferedCount;
+        final long         lastSeq;
+
+        synchronized (this) {
+            for (PrivilegeOperation operation : pendingOperations.values()) {
+                records.add(WAL_RECORD_ADD + gson.toJson(operation));
+            }
+
+            // records not yet written are covered by the pending operations
+            bufferedCount = walBuffer.size();
+            lastSeq       = walAppendedSeq;
+        }
+
+        closeWal();
+
+        File tmpFile = new File(walFile.getAbsolutePath() + ".tmp");
+
+        try (FileOutputStream stream = new FileOutputStream(tmpFile)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream));
+
+            for (String record : records) {
+                writer.write(record);
+                writer.write('\n');
+            }
+
+            writer.flush();
+            stream.getFD().sync();
+        } catch (IOException excp) {
+            LOG.error("RangerHiveMetastorePrivilegeQueue: failed to write " + tmpFile.getAbsolutePath(), excp);
+
+            return;
+        }
+
+        if (tmpFile.renameTo(walFile)) {
+            synchronized (this) {
+                walBuffer.subList(0, bufferedCount).clear();
+            }
+
+            walWrittenSeq  = Math.max(walWrittenSeq, lastSeq);
+            walRecordCount = records.size();
+        } else {
+            LOG.error("RangerHiveMetastorePrivilegeQueue: failed to rename " + tmpFile.getAbsolutePath() + " to " + walFile.getAbsolutePath());
+        }
+    }
+
+    // called with walLock held
+    private void closeWal() {
+        if (walWriter != null) {
+            try {
+                walWriter.close();
+            } catch (IOException excp) {
+                LOG.error("RangerHiveMetastorePrivilegeQueue: error while closing " + walFile.getAbsolutePath(), excp);
+            }
+
+            walWriter = null;
+            walStream = null;
+        }
+    }
+
+    private void logStatusIfRequired() {
+        long currTime = System.currentTimeMillis();
+
+        if ((currTime - lastStatusLogTime) > STATUS_LOG_INTERVAL_MS) {
+            lastStatusLogTime = currTime;
+
+            LOG.info("RangerHiveMetastorePrivilegeQueue status: queueDepth=" + getQueueDepth()
+                    + ", enqueued=" + enqueuedCount.sum() + ", coalesced=" + coalescedCount.sum() + ", deduped=" + dedupedCount.sum()
+                    + ", sent=" + sentCount.sum() + ", failed=" + failedCount.sum() + ", latency=" + latency);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.authorization.hive.authorizer;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerServiceDef;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessResult;
+import org.apache.ranger.plugin.policyengine.RangerAccessResultProcessor;
+import org.apache.ranger.plugin.service.RangerBasePlugin;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRangerHiveMetastoreAccessResultCache {
+    @Test
+    public void testHitAndMiss() {
+        TestPlugin                           plugin    = new TestPlugin();
+        RangerHiveMetastoreAccessResultCache cache     = new RangerHiveMetastoreAccessResultCache(plugin, 100, 60 * 1000);
+        CountingProcessor                    processor = new CountingProcessor();
+
+        assertTrue(cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, null), processor).getIsAllowed());
+        assertTrue(cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, null), processor).getIsAllowed());
+        assertEquals(1, plugin.evalCount.get());
+
+        // cached results are still sent to the result processor, for audit
+        assertEquals(2, processor.count.get());
+
+        // requests that differ in column or resource owner are evaluated
+        cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", "col1", null), processor);
+        cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, "owner1"), processor);
+        cache.isAccessAllowed(createRequest("user2", "db1", "tbl1", null, null), processor);
+        assertEquals(4, plugin.evalCount.get());
+
+        cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, "owner1"), processor);
+        assertEquals(4, plugin.evalCount.get());
+    }
+
+    @Test
+    public void testInvalidationOnContextChange() {
+        TestPlugin                           plugin = new TestPlugin();
+        RangerHiveMetastoreAccessResultCache cache  = new RangerHiveMetastoreAccessResultCache(plugin, 100, 60 * 1000);
+
+        assertTrue(cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, null), null).getIsAllowed());
+
+        plugin.isAllowed = false;
+        plugin.contextChanged();
+
+        assertFalse(cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, null), null).getIsAllowed());
+        assertEquals(2, plugin.evalCount.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBypassForContextSensitivePolicies() {
+        TestPlugin                           plugin = new TestPlugin();
+        RangerHiveMetastoreAccessResultCache cache  = new RangerHiveMetastoreAccessResultCache(plugin, 100, 60 * 1000);
+        long                                 bypass = cache.getBypassCount();
+
+        plugin.hasContextSensitivePolicies = true;
+
+        cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, null), null);
+        cache.isAccessAllowed(createRequest("user1", "db1", "tbl1", null, null), null);
+
+        assertEquals(2, plugin.evalCount.get());
+        assertEquals(0, cache.size());
+        assertEquals(bypass + 2, cache.getBypassCount());
+    }
+
+    private static RangerHiveAccessRequest createRequest(String user, String database, String table, String column, String ownerUser) {
+        RangerHiveResource resource = column != null ? new RangerHiveResource(HiveObjectType.COLUMN, database, table, column) : new RangerHiveResource(HiveObjectType.TABLE, database, table);
+
+        resource.setOwnerUser(ownerUser);
+
+        return new RangerHiveAccessRequest(resource, user, Collections.singleton("group1"), "QUERY", HiveAccessType.SELECT, null, null);
+    }
+
+    private static class TestPlugin extends RangerBasePlugin {
+        final AtomicInteger evalCount = new AtomicInteger();
+        volatile boolean    isAllowed = true;
+        volatile boolean    hasContextSensitivePolicies;
+
+        TestPlugin() {
+            super("hive", "test");
+        }
+
+        @Override
+        public boolean hasContextSensitivePolicies() {
+            return hasContextSensitivePolicies;
+        }
+
+        @Override
+        public RangerAccessResult isAccessAllowed(RangerAccessRequest request, RangerAccessResultProcessor resultProcessor) {
+            RangerAccessResult ret = new RangerAccessResult(RangerPolicy.POLICY_TYPE_ACCESS, "test", new RangerServiceDef(), request);
+
+            evalCount.incrementAndGet();
+
+            ret.setIsAllowed(isAllowed);
+            ret.setIsAccessDetermined(true);
+            ret.setIsAudited(true);
+
+            if (resultProcessor != null) {
+                resultProcessor.processResult(ret);
+            }
+
+            return ret;
+        }
+    }
+
+    private static class CountingProcessor implements RangerAccessResultProcessor {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void processResult(RangerAccessResult result) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void processResults(Collection<RangerAccessResult> results) {
+            count.addAndGet(results.size());
+        }
+    }
+}
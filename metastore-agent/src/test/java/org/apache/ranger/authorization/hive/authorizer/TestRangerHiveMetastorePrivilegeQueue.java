@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.authorization.hive.authorizer;
+
+import org.apache.ranger.authorization.hive.authorizer.RangerHiveMetastorePrivilegeQueue.OperationType;
+import org.apache.ranger.authorization.hive.authorizer.RangerHiveMetastorePrivilegeQueue.PrivilegeOperation;
+import org.apache.ranger.plugin.policyengine.RangerAccessResultProcessor;
+import org.apache.ranger.plugin.service.RangerBasePlugin;
+import org.apache.ranger.plugin.util.AlterRequest;
+import org.apache.ranger.plugin.util.GrantRevokeRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRangerHiveMetastorePrivilegeQueue {
+    private File walFile;
+
+    @Before
+    public void setUp() throws IOException {
+        walFile = File.createTempFile("privileges", ".wal");
+
+        walFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        walFile.delete();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        TestPlugin                        plugin = new TestPlugin();
+        RangerHiveMetastorePrivilegeQueue queue  = new RangerHiveMetastorePrivilegeQueue(plugin, 500, 100, 100, null);
+
+        queue.start();
+
+        queue.enqueue(createOperation(OperationType.CREATE_DATABASE, "db1", null, "user1"));
+        queue.enqueue(createOperation(OperationType.CREATE_DATABASE, "db1", null, "user2"));
+        queue.enqueue(createOperation(OperationType.CREATE_DATABASE, "db2", null, "user1"));
+
+        plugin.waitForRequests(2);
+        queue.stopQueue();
+
+        assertEquals(2, plugin.grants.size());
+        assertEquals(new HashSet<>(Arrays.asList("user1", "user2")), plugin.grants.get(0).getUsers());
+        assertEquals(Collections.singleton("user1"), plugin.grants.get(1).getUsers());
+    }
+
+    @Test
+    public void testDedupInsert() throws Exception {
+        TestPlugin                        plugin  = new TestPlugin();
+        RangerHiveMetastorePrivilegeQueue queue   = new RangerHiveMetastorePrivilegeQueue(plugin, 10, 100, 100, null);
+        long                              deduped = queue.getDedupedCount();
+
+        queue.start();
+
+        queue.enqueue(createOperation(OperationType.INSERT, "db1", "tbl1", "user1"));
+        plugin.waitForRequests(1);
+
+        queue.enqueue(createOperation(OperationType.INSERT, "db1", "tbl1", "user1"));
+        assertEquals(deduped + 1, queue.getDedupedCount());
+
+        // after a policy change the grant might have been revoked, so it is sent again
+        plugin.contextChanged();
+
+        queue.enqueue(createOperation(OperationType.INSERT, "db1", "tbl1", "user1"));
+        plugin.waitForRequests(2);
+
+        queue.stopQueue();
+
+        assertEquals(2, plugin.grants.size());
+        assertEquals(deduped + 1, queue.getDedupedCount());
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        TestPlugin                        plugin = new TestPlugin();
+        RangerHiveMetastorePrivilegeQueue queue  = new RangerHiveMetastorePrivilegeQueue(plugin, 10, 100, 100, walFile);
+
+        // not started: operations stay pending; enqueue() returns after the record is written to the write-ahead file
+        queue.enqueue(createOperation(OperationType.CREATE_DATABASE, "db1", null, "user1"));
+        assertEquals(1, readWal().size());
+
+        queue.enqueue(createOperation(OperationType.DROP_DATABASE, "db2", null, "user1"));
+        assertEquals(2, readWal().size());
+
+        queue.stopQueue();
+
+        assertEquals(0, plugin.grants.size());
+        assertEquals(2, readWal().size());
+
+        // a partially written last record is ignored
+        try (Writer writer = new FileWriter(walFile, true)) {
+            writer.write("+{\"id\":3,\"type\":\"CREA");
+        }
+
+        TestPlugin                        plugin2 = new TestPlugin();
+        RangerHiveMetastorePrivilegeQueue queue2  = new RangerHiveMetastorePrivilegeQueue(plugin2, 10, 100, 100, walFile);
+
+        queue2.recover();
+
+        assertEquals(2, queue2.getQueueDepth());
+        assertEquals("recovery should truncate the write-ahead file to pending operations", 2, readWal().size());
+
+        queue2.start();
+        plugin2.waitForRequests(2);
+        queue2.stopQueue();
+
+        assertEquals(1, plugin2.grants.size());
+        assertEquals(1, plugin2.revokes.size());
+
+        // completed operations are not replayed again
+        TestPlugin                        plugin3 = new TestPlugin();
+        RangerHiveMetastorePrivilegeQueue queue3  = new RangerHiveMetastorePrivilegeQueue(plugin3, 10, 100, 100, walFile);
+
+        queue3.recover();
+
+        assertEquals(0, queue3.getQueueDepth());
+        assertTrue(readWal().isEmpty());
+    }
+
+    @Test
+    public void testWalWriteFailure() throws Exception {
+        TestPlugin                        plugin = new TestPlugin();
+        RangerHiveMetastorePrivilegeQueue queue  = new RangerHiveMetastorePrivilegeQueue(plugin, 10, 100, 100, walFile);
+
+        // a directory in place of the write-ahead file fails the write
+        assertTrue(walFile.mkdir());
+
+        queue.enqueue(createOperation(OperationType.CREATE_DATABASE, "db1", null, "user1"));
+
+        assertTrue(walFile.delete());
+
+        // the record that failed to write is written along with the next one
+        queue.enqueue(createOperation(OperationType.CREATE_DATABASE, "db2", null, "user1"));
+
+        assertEquals(2, readWal().size());
+
+        queue.stopQueue();
+    }
+
+    @Test
+    public void testStopTimeout() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        TestPlugin plugin = new TestPlugin() {
+            @Override
+            public void grantAccess(GrantRevokeRequest request, RangerAccessResultProcessor resultProcessor) {
+                started.countDown();
+
+                // ignores interrupts, like a call blocked on a socket
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException excp) {
+                        // continue waiting
+                    }
+                }
+
+                super.grantAccess(request, resultProcessor);
+            }
+        };
+
+        RangerHiveMetastorePrivilegeQueue queue = new RangerHiveMetastorePrivilegeQueue(plugin, 10, 100, 100, walFile, 200);
+
+        queue.start();
+        queue.enqueue(createOperation(OperationType.CREATE_DATABASE, "db1", null, "user1"));
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        long startTime = System.currentTimeMillis();
+
+        queue.stopQueue();
+
+        assertTrue("stopQueue() should not wait for the queue thread beyond the timeout", System.currentTimeMillis() - startTime < 5000);
+
+        // the operation being sent is still recorded as pending, and is sent again after restart
+        assertEquals(1, readWal().size());
+
+        release.countDown();
+        queue.join(5000);
+
+        assertEquals(1, plugin.grants.size());
+    }
+
+    private List<String> readWal() throws IOException {
+        List<String> ret = new ArrayList<>();
+
+        for (String line : Files.readAllLines(walFile.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                ret.add(line);
+            }
+        }
+
+        return ret;
+    }
+
+    private static PrivilegeOperation createOperation(OperationType type, String database, String table, String user) {
+        GrantRevokeRequest  request  = new GrantRevokeRequest();
+        Map<String, String> resource = new HashMap<>();
+
+        resource.put(RangerHiveResource.KEY_DATABASE, database);
+
+        if (table != null) {
+            resource.put(RangerHiveResource.KEY_TABLE, table);
+        }
+
+        request.setGrantor("hive");
+        request.setResource(resource);
+        request.setUsers(new HashSet<>(Collections.singleton(user)));
+        request.setAccessTypes(new HashSet<>(Collections.singleton(HiveAccessType.ALL.name())));
+
+        return new PrivilegeOperation(type, database, table, request);
+    }
+
+    private static class TestPlugin extends RangerBasePlugin {
+        final List<GrantRevokeRequest> grants  = Collections.synchronizedList(new ArrayList<GrantRevokeRequest>());
+        final List<GrantRevokeRequest> revokes = Collections.synchronizedList(new ArrayList<GrantRevokeRequest>());
+
+        TestPlugin() {
+            super("hive", "test");
+        }
+
+        @Override
+        public void grantAccess(GrantRevokeRequest request, RangerAccessResultProcessor resultProcessor) {
+            grants.add(request);
+        }
+
+        @Override
+        public void removeAccess(GrantRevokeRequest request, RangerAccessResultProcessor resultProcessor) {
+            revokes.add(request);
+        }
+
+        @Override
+        public void alterAccess(AlterRequest request, RangerAccessResultProcessor resultProcessor) {
+        }
+
+        void waitForRequests(int count) throws InterruptedException {
+            for (int i = 0; i < 200 && (grants.size() + revokes.size()) < count; i++) {
+                Thread.sleep(25);
+            }
+
+            assertEquals(count, grants.size() + revokes.size());
+        }
+    }
+}
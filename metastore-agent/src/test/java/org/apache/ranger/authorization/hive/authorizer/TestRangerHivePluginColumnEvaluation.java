@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.authorization.hive.authorizer;
+
+import org.apache.ranger.audit.model.AuthzAuditEvent;
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerServiceDef;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessResult;
+import org.apache.ranger.plugin.policyengine.RangerAccessResultProcessor;
+import org.apache.ranger.plugin.store.EmbeddedServiceDefsUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestRangerHivePluginColumnEvaluation {
+    private static final int COLUMN_COUNT = 40;
+    private static final int CHUNK_SIZE   = 3;
+
+    private RangerServiceDef serviceDef;
+    private TestPlugin       parallelPlugin;
+    private TestPlugin       sequentialPlugin;
+
+    @Before
+    public void setUp() throws Exception {
+        serviceDef       = EmbeddedServiceDefsUtil.instance().getEmbeddedServiceDef(EmbeddedServiceDefsUtil.EMBEDDED_SERVICEDEF_HIVE_NAME);
+        parallelPlugin   = new TestPlugin();
+        sequentialPlugin = new TestPlugin();
+
+        parallelPlugin.initEvaluation(4, 500, true, CHUNK_SIZE);
+        sequentialPlugin.initEvaluation(1, 500, false, CHUNK_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        parallelPlugin.cleanup();
+        sequentialPlugin.cleanup();
+    }
+
+    @Test
+    public void testAllAllowed() {
+        List<RangerAccessRequest> requests = createRequests();
+
+        assertNull(getFirstDeniedColumn(sequentialPlugin.isAccessAllowedForColumns(requests, new RangerHiveAuditHandler())));
+
+        assertSameAsSequential(requests);
+    }
+
+    @Test
+    public void testDenied() {
+        List<RangerAccessRequest> requests = createRequests();
+
+        for (TestPlugin plugin : Arrays.asList(parallelPlugin, sequentialPlugin)) {
+            plugin.deniedColumns.addAll(Arrays.asList("col22", "col31"));
+        }
+
+        assertEquals("col22", getFirstDeniedColumn(sequentialPlugin.isAccessAllowedForColumns(requests, new RangerHiveAuditHandler())));
+
+        assertSameAsSequential(requests);
+    }
+
+    @Test
+    public void testUnauditedDenyBeforeAuditedDeny() {
+        List<RangerAccessRequest> requests = createRequests();
+
+        // the first denied column is not audited: the audit event is of the first audited deny, in a later chunk
+        for (TestPlugin plugin : Arrays.asList(parallelPlugin, sequentialPlugin)) {
+            plugin.unauditedDeniedColumns.add("col4");
+            plugin.deniedColumns.addAll(Arrays.asList("col17", "col35"));
+        }
+
+        assertEquals("col4", getFirstDeniedColumn(sequentialPlugin.isAccessAllowedForColumns(requests, new RangerHiveAuditHandler())));
+
+        assertSameAsSequential(requests);
+    }
+
+    @Test
+    public void testDeniedInFirstChunk() {
+        List<RangerAccessRequest> requests = createRequests();
+
+        for (TestPlugin plugin : Arrays.asList(parallelPlugin, sequentialPlugin)) {
+            plugin.deniedColumns.addAll(Arrays.asList("col1", "col38"));
+        }
+
+        assertSameAsSequential(requests);
+    }
+
+    @Test
+    public void testFailedChunkEvaluatedSequentially() {
+        List<RangerAccessRequest> requests      = createRequests();
+        TestPlugin                failingPlugin = new TestPlugin();
+
+        failingPlugin.initEvaluation(4, CHUNK_SIZE, false, CHUNK_SIZE);
+
+        try {
+            // every chunk evaluated in the pool fails; the caller evaluates those chunks again, one request at a time
+            failingPlugin.isFailingInPool = true;
+
+            for (TestPlugin plugin : Arrays.asList(failingPlugin, sequentialPlugin)) {
+                plugin.deniedColumns.add("col22");
+            }
+
+            List<RangerAccessResult> results = failingPlugin.isAccessAllowedInChunks(requests, null);
+
+            assertNotNull(results);
+            assertEquals(COLUMN_COUNT, results.size());
+
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                assertEquals("col" + i, ((RangerHiveResource) results.get(i).getAccessRequest().getResource()).getColumn());
+            }
+
+            assertEquals("col22", getFirstDeniedColumn(results));
+        } finally {
+            failingPlugin.cleanup();
+        }
+    }
+
+    private void assertSameAsSequential(List<RangerAccessRequest> requests) {
+        // repeated, as chunks complete in a different order on each run
+        for (int i = 0; i < 20; i++) {
+            RangerHiveAuditHandler sequentialAuditHandler = new RangerHiveAuditHandler();
+            RangerHiveAuditHandler parallelAuditHandler   = new RangerHiveAuditHandler();
+
+            Collection<RangerAccessResult> sequentialResults = sequentialPlugin.isAccessAllowedForColumns(requests, sequentialAuditHandler);
+            Collection<RangerAccessResult> parallelResults   = parallelPlugin.isAccessAllowedForColumns(requests, parallelAuditHandler);
+
+            assertNotNull(parallelResults);
+            assertEquals("first denied column", getFirstDeniedColumn(sequentialResults), getFirstDeniedColumn(parallelResults));
+            assertEquals("audit events", describe(sequentialAuditHandler.auditEvents), describe(parallelAuditHandler.auditEvents));
+            assertEquals("audit events", describe(sequentialAuditHandler.createAuditEvents(sequentialResults)), describe(parallelAuditHandler.createAuditEvents(parallelResults)));
+
+            // without an audit handler, evaluation stops at the first deny, audited or not
+            assertEquals("first denied column", getFirstDeniedColumn(sequentialPlugin.isAccessAllowedForColumns(requests, null)), getFirstDeniedColumn(parallelPlugin.isAccessAllowedForColumns(requests, null)));
+        }
+    }
+
+    private List<RangerAccessRequest> createRequests() {
+        List<RangerAccessRequest> ret = new ArrayList<>();
+
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            RangerHiveResource resource = new RangerHiveResource(HiveObjectType.COLUMN, "db1", "tbl1", "col" + i);
+
+            resource.setServiceDef(serviceDef);
+
+            ret.add(new RangerHiveAccessRequest(resource, "user1", Collections.singleton("group1"), "QUERY", HiveAccessType.SELECT, null, null));
+        }
+
+        return ret;
+    }
+
+    // the first denied column, as the caller of isAccessAllowedForColumns() finds it
+    private static String getFirstDeniedColumn(Collection<RangerAccessResult> results) {
+        if (results != null) {
+            for (RangerAccessResult result : results) {
+                if (!result.getIsAllowed()) {
+                    return ((RangerHiveResource) result.getAccessRequest().getResource()).getColumn();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static List<String> describe(Collection<AuthzAuditEvent> auditEvents) {
+        List<String> ret = new ArrayList<>();
+
+        if (auditEvents != null) {
+            for (AuthzAuditEvent auditEvent : auditEvents) {
+                ret.add("policyId=" + auditEvent.getPolicyId() + ", accessResult=" + auditEvent.getAccessResult() + ", accessType=" + auditEvent.getAccessType() + ", resourcePath=" + auditEvent.getResourcePath());
+            }
+        }
+
+        Collections.sort(ret);
+
+        return ret;
+    }
+
+    private class TestPlugin extends RangerHivePlugin {
+        final Set<String> deniedColumns          = new HashSet<>();
+        final Set<String> unauditedDeniedColumns = new HashSet<>();
+        boolean           isFailingInPool        = false;
+
+        TestPlugin() {
+            super("test");
+        }
+
+        @Override
+        public RangerAccessResult isAccessAllowed(RangerAccessRequest request, RangerAccessResultProcessor resultProcessor) {
+            return isAccessAllowed(Collections.singletonList(request), resultProcessor).iterator().next();
+        }
+
+        @Override
+        public Collection<RangerAccessResult> isAccessAllowed(Collection<RangerAccessRequest> requests, RangerAccessResultProcessor resultProcessor) {
+            if (isFailingInPool && Thread.currentThread().getName().startsWith("RangerHivePlugin-evaluator-")) {
+                throw new IllegalStateException("evaluation failed");
+            }
+
+            List<RangerAccessResult> ret = new ArrayList<>(requests.size());
+
+            for (RangerAccessRequest request : requests) {
+                RangerAccessResult result = new RangerAccessResult(RangerPolicy.POLICY_TYPE_ACCESS, "hivedev", serviceDef, request);
+                String             column = ((RangerHiveResource) request.getResource()).getColumn();
+                int                index  = Integer.parseInt(column.substring("col".length()));
+
+                if (deniedColumns.contains(column)) {
+                    result.setIsAllowed(false);
+                    result.setIsAudited(true);
+                    result.setPolicyId(10);
+                } else if (unauditedDeniedColumns.contains(column)) {
+                    result.setIsAllowed(false);
+                    result.setIsAudited(false);
+                    result.setPolicyId(11);
+                } else { // allowed by one of two policies, so that audit events aggregate columns of each policy
+                    result.setIsAllowed(true);
+                    result.setIsAudited(true);
+                    result.setPolicyId(index % 2 + 1);
+                }
+
+                result.setIsAccessDetermined(true);
+
+                ret.add(result);
+            }
+
+            if (resultProcessor != null) {
+                resultProcessor.processResults(ret);
+            }
+
+            return ret;
+        }
+    }
+}
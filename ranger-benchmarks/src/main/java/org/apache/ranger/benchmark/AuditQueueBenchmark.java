@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ranger.benchmark;
+
+import org.apache.ranger.audit.destination.AuditDestination;
+import org.apache.ranger.audit.model.AuditEventBase;
+import org.apache.ranger.audit.model.AuthzAuditEvent;
+import org.apache.ranger.audit.queue.AuditBatchQueue;
+import org.apache.ranger.audit.queue.AuditFileSpool;
+import org.apache.ranger.audit.queue.AuditQueue;
+import org.apache.ranger.audit.queue.AuditSummaryQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Audit event handling on the request path:
+ *
+ *   log       : AuditBatchQueue/AuditSummaryQueue.log() from 4 threads, with a destination that only counts the events;
+ *               so this measures the queue, not the destination. consumerThreads applies to AuditBatchQueue only.
+ *               The queue is drained after each iteration; an iteration fails if the queue filled up, as it would
+ *               then measure rejecting events instead of enqueueing them
+ *   stashLogs : AuditFileSpool.stashLogs() of a batch of BATCH_SIZE events, i.e. the cost of spooling to local disk
+ *               while a destination is down
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AuditQueueBenchmark {
+	private static final int    BATCH_SIZE  = 100;
+	private static final int    QUEUE_SIZE  = 1024 * 1024;
+	private static final String PROP_PREFIX = "xasecure.audit.destination.benchmark";
+
+	@Benchmark
+	@Threads(4)
+	public boolean log(QueueState state, RequestCursor cursor) {
+		boolean ret = state.queue.log(state.events.get(cursor.next()));
+
+		if (ret) {
+			state.loggedCount.increment();
+		} else {
+			state.rejectedCount.increment();
+		}
+
+		return ret;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public void stashLogs(SpoolState state) {
+		state.spool.stashLogs(state.batch);
+	}
+
+	@State(Scope.Benchmark)
+	public static class QueueState {
+		@Param({ "batch", "summary" })
+		public String queueType;
+
+		@Param({ "1", "4" })
+		public int consumerThreads;
+
+		final LongAdder loggedCount   = new LongAdder();
+		final LongAdder rejectedCount = new LongAdder();
+
+		AuditQueue           queue;
+		CountingDestination  destination;
+		List<AuditEventBase> events;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Properties props      = new Properties();
+			String     propPrefix = PROP_PREFIX + "." + queueType;
+
+			// send often, so that the consumer keeps up with 4 producers and the queue doesn't fill up
+			props.setProperty(propPrefix + "." + AuditQueue.PROP_QUEUE_SIZE, Integer.toString(QUEUE_SIZE));
+			props.setProperty(propPrefix + "." + AuditQueue.PROP_BATCH_SIZE, Integer.toString(10 * BATCH_SIZE));
+			props.setProperty(propPrefix + "." + AuditQueue.PROP_BATCH_INTERVAL, "100");
+			props.setProperty(propPrefix + "." + AuditSummaryQueue.PROP_SUMMARY_INTERVAL, "100");
+			props.setProperty(propPrefix + "." + AuditBatchQueue.PROP_CONSUMER_THREADS, Integer.toString(consumerThreads));
+
+			destination = new CountingDestination();
+			queue       = "summary".equals(queueType) ? new AuditSummaryQueue(destination) : new AuditBatchQueue(destination);
+			events      = createEvents(RequestCursor.POOL_SIZE);
+
+			queue.init(props, propPrefix);
+			queue.start();
+		}
+
+		@TearDown(Level.Iteration)
+		public void drain() throws InterruptedException {
+			long logged   = loggedCount.sum();
+			long deadline = System.currentTimeMillis() + 60 * 1000;
+
+			while (destination.eventCount.get() < logged && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			if (rejectedCount.sum() > 0) {
+				throw new IllegalStateException(rejectedCount.sum() + " events were rejected by the full queue: the results don't measure enqueueing");
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			queue.stop();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class SpoolState {
+		AuditFileSpool             spool;
+		Collection<AuditEventBase> batch;
+		File                       spoolDir;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			Properties props = new Properties();
+
+			spoolDir = Files.createTempDirectory("ranger-benchmark-spool").toFile();
+
+			props.setProperty(PROP_PREFIX + "." + AuditFileSpool.PROP_FILE_SPOOL_LOCAL_DIR, spoolDir.getAbsolutePath());
+
+			AuditBatchQueue queue = new AuditBatchQueue(new CountingDestination());
+
+			spool = new AuditFileSpool(queue, queue.getConsumer());
+			batch = createEvents(BATCH_SIZE);
+
+			spool.init(props, PROP_PREFIX);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			spool.stop();
+
+			File[] files = spoolDir.listFiles();
+
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+
+			spoolDir.delete();
+		}
+	}
+
+	static List<AuditEventBase> createEvents(int count) {
+		List<AuditEventBase> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			String          table = HivePolicyGenerator.getDbName(i % 10) + "/" + HivePolicyGenerator.getTableName(i % HivePolicyGenerator.TABLES_PER_DB);
+			AuthzAuditEvent event = new AuthzAuditEvent(3, HivePolicyGenerator.SERVICE_NAME, HivePolicyGenerator.getUserName(i % 100), new Date(),
+			                                            "select", table, "@table", "select", (short) 1, "hiveMetastore", i % 1000,
+			                                            null, "ranger-acl", "session-" + (i % 16), "HIVECLI", "10.0.0." + (i % 250), null, "cl1");
+
+			event.setEventCount(1);
+
+			ret.add(event);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Destination that only counts the events it receives; a summarized event counts as the events it summarizes.
+	 */
+	static class CountingDestination extends AuditDestination {
+		final AtomicLong eventCount = new AtomicLong();
+
+		CountingDestination() {
+			setName("counting");
+		}
+
+		@Override
+		public boolean log(Collection<AuditEventBase> events) {
+			long count = 0;
+
+			for (AuditEventBase event : events) {
+				count += event instanceof AuthzAuditEvent ? ((AuthzAuditEvent) event).getEventCount() : 1;
+			}
+
+			eventCount.addAndGet(count);
+
+			return true;
+		}
+	}
+}
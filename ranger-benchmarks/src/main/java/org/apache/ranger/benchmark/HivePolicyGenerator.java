@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.benchmark;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItem;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItemAccess;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyResource;
+import org.apache.ranger.plugin.model.RangerServiceDef;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerAccessTypeDef;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerResourceDef;
+import org.apache.ranger.plugin.model.RangerServiceResource;
+import org.apache.ranger.plugin.model.RangerTag;
+import org.apache.ranger.plugin.model.RangerTagDef;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
+import org.apache.ranger.plugin.policyengine.RangerAccessResourceImpl;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.apache.ranger.plugin.util.ServiceTags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a synthetic Hive service - service-def, resource/tag/zone policies, tagged resources and access requests -
+ * at a given scale. Generation is deterministic, so that runs of a benchmark are comparable.
+ *
+ * Shape of the generated data, for policyCount policies:
+ *   databases         : policyCount / 100 (at least 10), each with TABLES_PER_DB tables of COLUMNS_PER_TABLE columns
+ *   resource policies : policyCount, on a database and an exact, wildcard or '*' table/column
+ *   zones             : zoneCount, each owning every (zoneCount + 1)th database and the policies on them
+ *   tag policies      : policyCount / 10, on TAG_TYPE_COUNT tag types
+ *   tagged resources  : every TAGGED_TABLE_INTERVALth table, with 1 or 2 tags
+ */
+public class HivePolicyGenerator {
+	public static final String SERVICE_NAME     = "benchmark_hive";
+	public static final String TAG_SERVICE_NAME = "benchmark_tag";
+
+	public static final int TABLES_PER_DB         = 50;
+	public static final int COLUMNS_PER_TABLE     = 20;
+	public static final int USER_COUNT            = 1000;
+	public static final int GROUP_COUNT           = 200;
+	public static final int GROUPS_PER_USER       = 5;
+	public static final int TAG_TYPE_COUNT        = 100;
+	public static final int TAGGED_TABLE_INTERVAL = 7;
+
+	private static final String   MATCHER_DEFAULT = "org.apache.ranger.plugin.resourcematcher.RangerDefaultResourceMatcher";
+	private static final String[] ACCESS_TYPES    = { "select", "update", "create", "drop", "alter", "index", "lock" };
+
+	private final int    policyCount;
+	private final int    zoneCount;
+	private final int    dbCount;
+	private final Random random = new Random(20200101L);
+
+	public HivePolicyGenerator(int policyCount, int zoneCount) {
+		this.policyCount = policyCount;
+		this.zoneCount   = zoneCount;
+		this.dbCount     = Math.max(10, policyCount / 100);
+	}
+
+	public int getDbCount() {
+		return dbCount;
+	}
+
+	public static RangerServiceDef createHiveServiceDef() {
+		RangerServiceDef ret = new RangerServiceDef();
+
+		ret.setId(3L);
+		ret.setName("hive");
+		ret.setResources(Arrays.asList(createResourceDef(1L, "database", 10, null, true),
+		                               createResourceDef(2L, "table", 20, "database", true),
+		                               createResourceDef(3L, "udf", 20, "database", true),
+		                               createResourceDef(4L, "column", 30, "table", true)));
+
+		List<RangerAccessTypeDef> accessTypes = new ArrayList<>();
+
+		for (int i = 0; i < ACCESS_TYPES.length; i++) {
+			accessTypes.add(new RangerAccessTypeDef((long) (i + 1), ACCESS_TYPES[i], ACCESS_TYPES[i], null, null));
+		}
+
+		accessTypes.add(new RangerAccessTypeDef((long) (ACCESS_TYPES.length + 1), "all", "all", null, Arrays.asList(ACCESS_TYPES)));
+
+		ret.setAccessTypes(accessTypes);
+
+		return ret;
+	}
+
+	public static RangerServiceDef createTagServiceDef() {
+		RangerServiceDef ret = new RangerServiceDef();
+
+		ret.setId(100L);
+		ret.setName("tag");
+		ret.setResources(Collections.singletonList(createResourceDef(1L, "tag", 1, null, false)));
+
+		List<RangerAccessTypeDef> accessTypes = new ArrayList<>();
+
+		for (int i = 0; i < ACCESS_TYPES.length; i++) {
+			accessTypes.add(new RangerAccessTypeDef((long) (i + 1), "hive:" + ACCESS_TYPES[i], "hive:" + ACCESS_TYPES[i], null, null));
+		}
+
+		ret.setAccessTypes(accessTypes);
+
+		return ret;
+	}
+
+	public ServicePolicies createServicePolicies() {
+		ServicePolicies                               ret        = new ServicePolicies();
+		List<RangerPolicy>                            policies   = new ArrayList<>();
+		Map<String, ServicePolicies.SecurityZoneInfo> zones      = new HashMap<>();
+		RangerServiceDef                              serviceDef = createHiveServiceDef();
+
+		for (int i = 0; i < zoneCount; i++) {
+			ServicePolicies.SecurityZoneInfo zone      = new ServicePolicies.SecurityZoneInfo();
+			List<String>                     databases = new ArrayList<>();
+
+			for (int db = i + 1; db < dbCount; db += zoneCount + 1) {
+				databases.add(getDbName(db));
+			}
+
+			HashMap<String, List<String>> zoneResource = new HashMap<>();
+
+			zoneResource.put("database", databases);
+
+			zone.setZoneName("zone_" + i);
+			zone.setResources(new ArrayList<>(Collections.singletonList(zoneResource)));
+			zone.setPolicies(new ArrayList<RangerPolicy>());
+			zone.setContainsAssociatedTagService(Boolean.TRUE);
+
+			zones.put(zone.getZoneName(), zone);
+		}
+
+		for (int i = 0; i < policyCount; i++) {
+			int                               db        = i % dbCount;
+			String                            zoneName  = getZoneName(db);
+			Map<String, RangerPolicyResource> resources = new HashMap<>();
+
+			resources.put("database", new RangerPolicyResource(getDbName(db)));
+
+			switch (i % 4) {
+				case 0: // table-level, exact
+					resources.put("table", new RangerPolicyResource(getTableName(random.nextInt(TABLES_PER_DB))));
+					resources.put("column", new RangerPolicyResource("*"));
+				break;
+
+				case 1: // table-level, wildcard
+					resources.put("table", new RangerPolicyResource("tbl_" + random.nextInt(10) + "*"));
+					resources.put("column", new RangerPolicyResource("*"));
+				break;
+
+				case 2: // column-level
+					resources.put("table", new RangerPolicyResource(getTableName(random.nextInt(TABLES_PER_DB))));
+					resources.put("column", new RangerPolicyResource(Arrays.asList(getColumnName(random.nextInt(COLUMNS_PER_TABLE)), getColumnName(random.nextInt(COLUMNS_PER_TABLE))), false, false));
+				break;
+
+				default: // database-level
+					resources.put("table", new RangerPolicyResource("*"));
+					resources.put("column", new RangerPolicyResource("*"));
+				break;
+			}
+
+			RangerPolicy policy = createPolicy(i + 1, SERVICE_NAME, "policy_" + i, resources, "");
+
+			if (zoneName != null) {
+				policy.setZoneName(zoneName);
+
+				zones.get(zoneName).getPolicies().add(policy);
+			} else {
+				policies.add(policy);
+			}
+		}
+
+		ret.setServiceName(SERVICE_NAME);
+		ret.setServiceId(1L);
+		ret.setPolicyVersion(1L);
+		ret.setServiceDef(serviceDef);
+		ret.setPolicies(policies);
+		ret.setSecurityZones(zones);
+		ret.setTagPolicies(createTagPolicies());
+
+		return ret;
+	}
+
+	public ServiceTags createServiceTags() {
+		ServiceTags                 ret              = new ServiceTags();
+		Map<Long, RangerTagDef>     tagDefs          = new HashMap<>();
+		Map<Long, RangerTag>        tags             = new HashMap<>();
+		List<RangerServiceResource> serviceResources = new ArrayList<>();
+		Map<Long, List<Long>>       resourceToTagIds = new HashMap<>();
+
+		for (int i = 0; i < TAG_TYPE_COUNT; i++) {
+			RangerTagDef tagDef = new RangerTagDef(getTagType(i));
+			RangerTag    tag    = new RangerTag(getTagType(i), Collections.<String, String>emptyMap());
+
+			tagDef.setId((long) i);
+			tag.setId((long) i);
+
+			tagDefs.put(tagDef.getId(), tagDef);
+			tags.put(tag.getId(), tag);
+		}
+
+		long resourceId = 0;
+
+		for (int db = 0; db < dbCount; db++) {
+			for (int tbl = db % TAGGED_TABLE_INTERVAL; tbl < TABLES_PER_DB; tbl += TAGGED_TABLE_INTERVAL) {
+				Map<String, RangerPolicyResource> elements = new HashMap<>();
+
+				elements.put("database", new RangerPolicyResource(getDbName(db)));
+				elements.put("table", new RangerPolicyResource(getTableName(tbl)));
+
+				RangerServiceResource serviceResource = new RangerServiceResource(SERVICE_NAME, elements);
+				List<Long>            tagIds          = new ArrayList<>();
+
+				serviceResource.setId(resourceId);
+
+				tagIds.add((long) random.nextInt(TAG_TYPE_COUNT));
+
+				if (random.nextBoolean()) {
+					tagIds.add((long) random.nextInt(TAG_TYPE_COUNT));
+				}
+
+				serviceResources.add(serviceResource);
+				resourceToTagIds.put(resourceId, tagIds);
+
+				resourceId++;
+			}
+		}
+
+		ret.setServiceName(SERVICE_NAME);
+		ret.setTagVersion(1L);
+		ret.setTagDefinitions(tagDefs);
+		ret.setTags(tags);
+		ret.setServiceResources(serviceResources);
+		ret.setResourceToTagIds(resourceToTagIds);
+
+		return ret;
+	}
+
+	/**
+	 * @return access requests for random columns, by random users; the requests are not pre-processed
+	 */
+	public List<RangerAccessRequestImpl> createRequests(int count) {
+		List<RangerAccessRequestImpl> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			ret.add(createRequest(getDbName(random.nextInt(dbCount)), getTableName(random.nextInt(TABLES_PER_DB)), getColumnName(random.nextInt(COLUMNS_PER_TABLE))));
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @return count batches of requests, each with one request per column of a table - like Hive sends for a query -
+	 *         all by the same user for the same access type
+	 */
+	public List<List<RangerAccessRequestImpl>> createTableRequests(int count) {
+		List<List<RangerAccessRequestImpl>> ret = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			String                        database = getDbName(random.nextInt(dbCount));
+			String                        table    = getTableName(random.nextInt(TABLES_PER_DB));
+			int                           user     = random.nextInt(USER_COUNT);
+			String                        access   = ACCESS_TYPES[random.nextInt(2)];
+			List<RangerAccessRequestImpl> batch    = new ArrayList<>(COLUMNS_PER_TABLE);
+
+			for (int j = 0; j < COLUMNS_PER_TABLE; j++) {
+				RangerAccessRequestImpl request = createRequest(database, table, getColumnName(j));
+
+				request.setUser(getUserName(user));
+				request.setUserGroups(getUserGroups(user));
+				request.setAccessType(access);
+
+				batch.add(request);
+			}
+
+			ret.add(batch);
+		}
+
+		return ret;
+	}
+
+	public RangerAccessRequestImpl createRequest(String database, String table, String column) {
+		RangerAccessResourceImpl resource = new RangerAccessResourceImpl();
+
+		resource.setValue("database", database);
+		resource.setValue("table", table);
+
+		if (column != null) {
+			resource.setValue("column", column);
+		}
+
+		int user = random.nextInt(USER_COUNT);
+
+		RangerAccessRequestImpl ret = new RangerAccessRequestImpl(resource, ACCESS_TYPES[random.nextInt(2)], getUserName(user), getUserGroups(user));
+
+		ret.setClusterName("cl1");
+
+		return ret;
+	}
+
+	public static Set<String> getUserGroups(int user) {
+		Set<String> ret = new HashSet<>();
+
+		for (int i = 0; i < GROUPS_PER_USER; i++) {
+			ret.add(getGroupName((user * 31 + i * 7) % GROUP_COUNT));
+		}
+
+		return ret;
+	}
+
+	public static String getDbName(int idx)     { return "db_" + idx; }
+	public static String getTableName(int idx)  { return "tbl_" + idx; }
+	public static String getColumnName(int idx) { return "col_" + idx; }
+	public static String getUserName(int idx)   { return "user_" + idx; }
+	public static String getGroupName(int idx)  { return "group_" + idx; }
+	public static String getTagType(int idx)    { return "TAG_" + idx; }
+
+	private String getZoneName(int db) {
+		int zone = db % (zoneCount + 1);
+
+		return zone == 0 ? null : "zone_" + (zone - 1);
+	}
+
+	private ServicePolicies.TagPolicies createTagPolicies() {
+		ServicePolicies.TagPolicies ret      = new ServicePolicies.TagPolicies();
+		List<RangerPolicy>          policies = new ArrayList<>();
+
+		for (int i = 0; i < Math.max(1, policyCount / 10); i++) {
+			Map<String, RangerPolicyResource> resources = new HashMap<>();
+
+			resources.put("tag", new RangerPolicyResource(getTagType(i % TAG_TYPE_COUNT)));
+
+			policies.add(createPolicy(policyCount + i + 1, TAG_SERVICE_NAME, "tag_policy_" + i, resources, "hive:"));
+		}
+
+		ret.setServiceName(TAG_SERVICE_NAME);
+		ret.setServiceId(2L);
+		ret.setPolicyVersion(1L);
+		ret.setServiceDef(createTagServiceDef());
+		ret.setPolicies(policies);
+
+		return ret;
+	}
+
+	private RangerPolicy createPolicy(long id, String serviceName, String name, Map<String, RangerPolicyResource> resources, String accessTypePrefix) {
+		RangerPolicy                 ret      = new RangerPolicy();
+		RangerPolicyItem             allow    = new RangerPolicyItem();
+		List<RangerPolicyItemAccess> accesses = new ArrayList<>();
+
+		accesses.add(new RangerPolicyItemAccess(accessTypePrefix + ACCESS_TYPES[random.nextInt(2)], Boolean.TRUE));
+		accesses.add(new RangerPolicyItemAccess(accessTypePrefix + ACCESS_TYPES[2 + random.nextInt(ACCESS_TYPES.length - 2)], Boolean.TRUE));
+
+		allow.setAccesses(accesses);
+		allow.setUsers(new ArrayList<>(Arrays.asList(getUserName(random.nextInt(USER_COUNT)), getUserName(random.nextInt(USER_COUNT)))));
+		allow.setGroups(new ArrayList<>(Collections.singletonList(getGroupName(random.nextInt(GROUP_COUNT)))));
+
+		ret.setId(id);
+		ret.setService(serviceName);
+		ret.setName(name);
+		ret.setIsEnabled(Boolean.TRUE);
+		ret.setIsAuditEnabled(Boolean.TRUE);
+		ret.setResources(resources);
+		ret.setPolicyItems(new ArrayList<>(Collections.singletonList(allow)));
+
+		if (random.nextInt(10) == 0) { // some policies deny access to a group
+			RangerPolicyItem deny = new RangerPolicyItem();
+
+			deny.setAccesses(new ArrayList<>(Collections.singletonList(new RangerPolicyItemAccess(accessTypePrefix + ACCESS_TYPES[0], Boolean.TRUE))));
+			deny.setGroups(new ArrayList<>(Collections.singletonList(getGroupName(random.nextInt(GROUP_COUNT)))));
+
+			ret.setDenyPolicyItems(new ArrayList<>(Collections.singletonList(deny)));
+		}
+
+		return ret;
+	}
+
+	private static RangerResourceDef createResourceDef(Long itemId, String name, int level, String parent, boolean ignoreCase) {
+		RangerResourceDef   ret            = new RangerResourceDef();
+		Map<String, String> matcherOptions = new HashMap<>();
+
+		matcherOptions.put("wildCard", "true");
+		matcherOptions.put("ignoreCase", Boolean.toString(ignoreCase));
+
+		ret.setItemId(itemId);
+		ret.setName(name);
+		ret.setLevel(level);
+		ret.setParent(parent);
+		ret.setMandatory(Boolean.TRUE);
+		ret.setMatcher(MATCHER_DEFAULT);
+		ret.setMatcherOptions(matcherOptions);
+
+		return ret;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.benchmark;
+
+import org.apache.ranger.plugin.contextenricher.RangerTagEnricher;
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
+import org.apache.ranger.plugin.policyengine.RangerAccessResult;
+import org.apache.ranger.plugin.policyengine.RangerPluginContext;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngine;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngineImpl;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngineOptions;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access evaluation by RangerPolicyEngineImpl, on resource, zone and tag policies, for 1k, 10k and 100k policies.
+ *
+ * evaluatePolicies         : evaluation of a pre-processed request - trie lookup, policy evaluation, tag policies
+ * preProcessAndEvaluate    : as a plugin does per call - create the request, pre-process (roles, enrichers), evaluate
+ * evaluateTableColumns     : evaluation of the requests for all columns of a table, one request at a time
+ * evaluateTableColumnsBatch: evaluation of the same requests as one batch
+ * createPolicyEngine       : time to build a policy engine from downloaded policies (single shot)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PolicyEngineBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int policyCount;
+
+	@Param({ "4" })
+	public int zoneCount;
+
+	private ServicePolicies               servicePolicies;
+	private RangerPolicyEngineOptions     options;
+	private RangerPolicyEngine            policyEngine;
+	private RangerTagEnricher             tagEnricher;
+	private List<RangerAccessRequestImpl> requests;
+	private HivePolicyGenerator           generator;
+
+	private List<List<RangerAccessRequestImpl>> tableRequests;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		generator       = new HivePolicyGenerator(policyCount, zoneCount);
+		servicePolicies = generator.createServicePolicies();
+		options         = new RangerPolicyEngineOptions();
+		policyEngine    = new RangerPolicyEngineImpl("benchmark", servicePolicies, options, new RangerPluginContext("hive"));
+		tagEnricher     = createTagEnricher(generator);
+		requests        = generator.createRequests(RequestCursor.POOL_SIZE);
+
+		for (RangerAccessRequestImpl request : requests) {
+			policyEngine.preProcess(request);
+			tagEnricher.enrich(request);
+		}
+
+		tableRequests = generator.createTableRequests(RequestCursor.POOL_SIZE);
+
+		for (List<RangerAccessRequestImpl> batch : tableRequests) {
+			for (RangerAccessRequestImpl request : batch) {
+				policyEngine.preProcess(request);
+				tagEnricher.enrich(request);
+			}
+		}
+	}
+
+	@Benchmark
+	public RangerAccessResult evaluatePolicies(RequestCursor cursor) {
+		return policyEngine.evaluatePolicies(requests.get(cursor.next()), RangerPolicy.POLICY_TYPE_ACCESS, null);
+	}
+
+	@Benchmark
+	public RangerAccessResult preProcessAndEvaluate(RequestCursor cursor) {
+		RangerAccessRequestImpl template = requests.get(cursor.next());
+		RangerAccessRequestImpl request  = new RangerAccessRequestImpl(template.getResource(), template.getAccessType(), template.getUser(), template.getUserGroups());
+
+		policyEngine.preProcess(request);
+		tagEnricher.enrich(request);
+
+		return policyEngine.evaluatePolicies(request, RangerPolicy.POLICY_TYPE_ACCESS, null);
+	}
+
+	@Benchmark
+	public void evaluateTableColumns(RequestCursor cursor, Blackhole blackhole) {
+		for (RangerAccessRequestImpl request : tableRequests.get(cursor.next())) {
+			blackhole.consume(policyEngine.evaluatePolicies(request, RangerPolicy.POLICY_TYPE_ACCESS, null));
+		}
+	}
+
+	@Benchmark
+	public Collection<RangerAccessResult> evaluateTableColumnsBatch(RequestCursor cursor) {
+		return policyEngine.evaluatePolicies(new ArrayList<RangerAccessRequest>(tableRequests.get(cursor.next())), RangerPolicy.POLICY_TYPE_ACCESS, null);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2)
+	@Measurement(iterations = 5)
+	public RangerPolicyEngine createPolicyEngine() {
+		return new RangerPolicyEngineImpl("benchmark", servicePolicies, options, new RangerPluginContext("hive"));
+	}
+
+	static RangerTagEnricher createTagEnricher(HivePolicyGenerator generator) {
+		RangerTagEnricher ret = new RangerTagEnricher();
+
+		ret.setServiceName(HivePolicyGenerator.SERVICE_NAME);
+		ret.setServiceDef(HivePolicyGenerator.createHiveServiceDef());
+		ret.setServiceTags(generator.createServiceTags());
+
+		return ret;
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ranger.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks in this module with the GC profiler, so that along with throughput and latency percentiles,
+ * the results include bytes allocated per operation (gc.alloc.rate.norm).
+ *
+ * The module is built only with the benchmarks profile: mvn -Pbenchmarks package
+ *
+ * Usage: java -jar ranger-benchmarks/target/benchmarks.jar [JMH options] [benchmark regex]
+ *   for example: java -jar benchmarks.jar PolicyEngineBenchmark -p policyCount=10000 -rf json -rff results.json
+ */
+public class RangerBenchmarks {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+		                                      .addProfiler(GCProfiler.class)
+		                                      .build();
+
+		new Runner(options).run();
+	}
+}
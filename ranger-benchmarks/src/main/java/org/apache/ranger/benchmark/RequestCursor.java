@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ranger.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Position in a pool of POOL_SIZE pre-built inputs, per benchmark thread; so that consecutive calls of a benchmark
+ * look up different resources, instead of hitting the same cache lines every time.
+ */
+@State(Scope.Thread)
+public class RequestCursor {
+	public static final int POOL_SIZE = 4096; // power of 2
+
+	private int next;
+
+	public int next() {
+		next = (next + 1) & (POOL_SIZE - 1);
+
+		return next;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ranger.benchmark;
+
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyResource;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerResourceDef;
+import org.apache.ranger.plugin.resourcematcher.RangerDefaultResourceMatcher;
+import org.apache.ranger.plugin.resourcematcher.RangerPathResourceMatcher;
+import org.apache.ranger.plugin.resourcematcher.RangerResourceMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of a resource value by RangerDefaultResourceMatcher and RangerPathResourceMatcher, for different kinds of
+ * policy values:
+ *
+ *   exact    : a single name, like tbl_12
+ *   wildcard : a single name with wildcard, like tbl_1*
+ *   values   : VALUE_COUNT names, with and without wildcard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResourceMatcherBenchmark {
+	private static final int VALUE_COUNT = 10;
+
+	@Param({ "exact", "wildcard", "values" })
+	public String policyValues;
+
+	private RangerResourceMatcher defaultMatcher;
+	private RangerResourceMatcher pathMatcher;
+	private String[]              names;
+	private String[]              paths;
+	private Map<String, Object>   evalContext;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		List<String> nameValues = new ArrayList<>();
+		List<String> pathValues = new ArrayList<>();
+
+		switch (policyValues) {
+			case "exact":
+				nameValues.add("tbl_12");
+				pathValues.add("/data/warehouse/db_1/tbl_12");
+			break;
+
+			case "wildcard":
+				nameValues.add("tbl_1*");
+				pathValues.add("/data/warehouse/db_1/tbl_1*");
+			break;
+
+			default:
+				for (int i = 0; i < VALUE_COUNT; i++) {
+					nameValues.add(i % 2 == 0 ? ("tbl_" + i) : ("tbl_" + i + "*"));
+					pathValues.add(i % 2 == 0 ? ("/data/warehouse/db_" + i) : ("/data/warehouse/db_" + i + "/tbl_*"));
+				}
+			break;
+		}
+
+		defaultMatcher = createMatcher(new RangerDefaultResourceMatcher(), "table", Collections.<String, String>emptyMap(), new RangerPolicyResource(nameValues, false, false));
+		pathMatcher    = createMatcher(new RangerPathResourceMatcher(), "path", Collections.singletonMap(RangerPathResourceMatcher.OPTION_PATH_SEPARATOR, "/"), new RangerPolicyResource(pathValues, false, true));
+		evalContext    = new HashMap<>();
+
+		Random random = new Random(1);
+
+		names = new String[RequestCursor.POOL_SIZE];
+		paths = new String[RequestCursor.POOL_SIZE];
+
+		for (int i = 0; i < RequestCursor.POOL_SIZE; i++) {
+			names[i] = HivePolicyGenerator.getTableName(random.nextInt(HivePolicyGenerator.TABLES_PER_DB));
+			paths[i] = "/data/warehouse/db_" + random.nextInt(VALUE_COUNT) + "/" + names[i] + "/part-" + random.nextInt(100);
+		}
+	}
+
+	@Benchmark
+	public boolean matchName(RequestCursor cursor) {
+		return defaultMatcher.isMatch(names[cursor.next()], evalContext);
+	}
+
+	@Benchmark
+	public boolean matchPath(RequestCursor cursor) {
+		return pathMatcher.isMatch(paths[cursor.next()], evalContext);
+	}
+
+	private static RangerResourceMatcher createMatcher(RangerDefaultResourceMatcher matcher, String resourceName, Map<String, String> options, RangerPolicyResource policyResource) {
+		RangerResourceDef   resourceDef    = new RangerResourceDef();
+		Map<String, String> matcherOptions = new HashMap<>(options);
+
+		matcherOptions.put("wildCard", "true");
+		matcherOptions.put("ignoreCase", "true");
+
+		resourceDef.setName(resourceName);
+		resourceDef.setMatcher(matcher.getClass().getName());
+		resourceDef.setMatcherOptions(matcherOptions);
+
+		matcher.setResourceDef(resourceDef);
+		matcher.setPolicyResource(policyResource);
+		matcher.init();
+
+		return matcher;
+	}
+}
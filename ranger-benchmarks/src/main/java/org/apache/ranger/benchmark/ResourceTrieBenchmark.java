@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ranger.benchmark;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerServiceDef;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerResourceDef;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngineOptions;
+import org.apache.ranger.plugin.policyevaluator.RangerOptimizedPolicyEvaluator;
+import org.apache.ranger.plugin.policyevaluator.RangerPolicyEvaluator;
+import org.apache.ranger.plugin.util.RangerResourceTrie;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of policy evaluators in RangerResourceTrie, for database and table names - exact names, names matching
+ * wildcard policies and names not in any policy. Tries are built with HashMap or compact (array) child nodes; heap
+ * retained by the tries in each form is measured by ResourceTrieHeapUsage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResourceTrieBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int policyCount;
+
+	@Param({ "false", "true" })
+	public boolean presetupTrie;
+
+	@Param({ "false", "true" })
+	public boolean compactTrieNodes;
+
+	private RangerResourceTrie<RangerPolicyEvaluator> databaseTrie;
+	private RangerResourceTrie<RangerPolicyEvaluator> tableTrie;
+	private String[]                                  databaseNames;
+	private String[]                                  tableNames;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		HivePolicyGenerator         generator       = new HivePolicyGenerator(policyCount, 0);
+		ServicePolicies             servicePolicies = generator.createServicePolicies();
+		RangerServiceDef            serviceDef      = servicePolicies.getServiceDef();
+		RangerPolicyEngineOptions   options         = new RangerPolicyEngineOptions();
+		List<RangerPolicyEvaluator> evaluators      = new ArrayList<>();
+
+		options.presetupTrie      = presetupTrie;
+		options.compactTrieNodes = compactTrieNodes;
+
+		for (RangerPolicy policy : servicePolicies.getPolicies()) {
+			RangerOptimizedPolicyEvaluator evaluator = new RangerOptimizedPolicyEvaluator();
+
+			evaluator.init(policy, serviceDef, options);
+
+			evaluators.add(evaluator);
+		}
+
+		databaseTrie = createTrie(serviceDef, "database", evaluators, options);
+		tableTrie    = createTrie(serviceDef, "table", evaluators, options);
+
+		Random random = new Random(1);
+
+		databaseNames = new String[RequestCursor.POOL_SIZE];
+		tableNames    = new String[RequestCursor.POOL_SIZE];
+
+		for (int i = 0; i < RequestCursor.POOL_SIZE; i++) {
+			databaseNames[i] = HivePolicyGenerator.getDbName(random.nextInt(generator.getDbCount() + 10)); // some names are not in any policy
+			tableNames[i]    = HivePolicyGenerator.getTableName(random.nextInt(HivePolicyGenerator.TABLES_PER_DB * 2));
+		}
+	}
+
+	@Benchmark
+	public List<RangerPolicyEvaluator> lookupDatabase(RequestCursor cursor) {
+		return databaseTrie.getEvaluatorsForResource(databaseNames[cursor.next()]);
+	}
+
+	@Benchmark
+	public List<RangerPolicyEvaluator> lookupTable(RequestCursor cursor) {
+		return tableTrie.getEvaluatorsForResource(tableNames[cursor.next()]);
+	}
+
+	private static RangerResourceTrie<RangerPolicyEvaluator> createTrie(RangerServiceDef serviceDef, String resourceName, List<RangerPolicyEvaluator> evaluators, RangerPolicyEngineOptions options) {
+		for (RangerResourceDef resourceDef : serviceDef.getResources()) {
+			if (resourceDef.getName().equals(resourceName)) {
+				return new RangerResourceTrie<>(resourceDef, evaluators, null, options.optimizeTrieForRetrieval, options.compactTrieNodes, options.presetupTrie);
+			}
+		}
+
+		throw new IllegalArgumentException(resourceName + ": resource not found in service-def " + serviceDef.getName());
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ranger.benchmark;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerServiceDef;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerResourceDef;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngineOptions;
+import org.apache.ranger.plugin.policyevaluator.RangerOptimizedPolicyEvaluator;
+import org.apache.ranger.plugin.policyevaluator.RangerPolicyEvaluator;
+import org.apache.ranger.plugin.util.RangerResourceTrie;
+import org.apache.ranger.plugin.util.ServicePolicies;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Heap retained by the resource tries of generated Hive policies - as ResourceTrieBenchmark builds them - with HashMap
+ * and with compact (array) child nodes. JMH doesn't measure retained heap, hence this separate program.
+ *
+ * The retained heap of a trie is the used heap after a full GC, with the tries built, minus the used heap before; the
+ * policy evaluators the tries refer to are built before, and are not counted. Each measurement is repeated, and the
+ * median is reported. Inputs are the same on every run: HivePolicyGenerator uses a fixed seed.
+ *
+ * Usage: java -Xmx4g -cp ranger-benchmarks/target/benchmarks.jar org.apache.ranger.benchmark.ResourceTrieHeapUsage [policyCount ...]
+ */
+public class ResourceTrieHeapUsage {
+	private static final int      REPEAT_COUNT   = 5;
+	private static final String[] RESOURCE_NAMES = { "database", "table", "column" };
+	private static final int[]    DEFAULT_COUNTS = { 1000, 10000, 100000 };
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] policyCounts = DEFAULT_COUNTS;
+
+		if (args.length > 0) {
+			policyCounts = new int[args.length];
+
+			for (int i = 0; i < args.length; i++) {
+				policyCounts[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.println("policyCount presetupTrie  mapNodes(KB) compactNodes(KB) compact/map");
+
+		for (int policyCount : policyCounts) {
+			HivePolicyGenerator         generator       = new HivePolicyGenerator(policyCount, 0);
+			ServicePolicies             servicePolicies = generator.createServicePolicies();
+			RangerServiceDef            serviceDef      = servicePolicies.getServiceDef();
+			RangerPolicyEngineOptions   options         = new RangerPolicyEngineOptions();
+			List<RangerPolicyEvaluator> evaluators      = new ArrayList<>();
+
+			for (RangerPolicy policy : servicePolicies.getPolicies()) {
+				RangerOptimizedPolicyEvaluator evaluator = new RangerOptimizedPolicyEvaluator();
+
+				evaluator.init(policy, serviceDef, options);
+
+				evaluators.add(evaluator);
+			}
+
+			for (boolean presetupTrie : new boolean[] { false, true }) {
+				long mapNodesBytes     = getRetainedHeap(serviceDef, evaluators, false, presetupTrie);
+				long compactNodesBytes = getRetainedHeap(serviceDef, evaluators, true, presetupTrie);
+
+				System.out.println(String.format("%11d %12s %13d %16d %11.2f", policyCount, presetupTrie, mapNodesBytes / 1024, compactNodesBytes / 1024, (double) compactNodesBytes / mapNodesBytes));
+			}
+		}
+	}
+
+	private static long getRetainedHeap(RangerServiceDef serviceDef, List<RangerPolicyEvaluator> evaluators, boolean compactTrieNodes, boolean presetupTrie) throws InterruptedException {
+		long[] samples = new long[REPEAT_COUNT];
+
+		for (int i = 0; i < REPEAT_COUNT; i++) {
+			long                                            before = getUsedHeapAfterGC();
+			List<RangerResourceTrie<RangerPolicyEvaluator>> tries  = createTries(serviceDef, evaluators, compactTrieNodes, presetupTrie);
+			long                                            after  = getUsedHeapAfterGC();
+
+			samples[i] = after - before;
+
+			if (tries.size() != RESOURCE_NAMES.length) { // keeps tries reachable until after the measurement
+				throw new IllegalStateException("expected " + RESOURCE_NAMES.length + " tries; found " + tries.size());
+			}
+		}
+
+		Arrays.sort(samples);
+
+		return samples[REPEAT_COUNT / 2];
+	}
+
+	private static List<RangerResourceTrie<RangerPolicyEvaluator>> createTries(RangerServiceDef serviceDef, List<RangerPolicyEvaluator> evaluators, boolean compactTrieNodes, boolean presetupTrie) {
+		List<RangerResourceTrie<RangerPolicyEvaluator>> ret = new ArrayList<>();
+
+		for (String resourceName : RESOURCE_NAMES) {
+			for (RangerResourceDef resourceDef : serviceDef.getResources()) {
+				if (resourceDef.getName().equals(resourceName)) {
+					ret.add(new RangerResourceTrie<>(resourceDef, evaluators, null, false, compactTrieNodes, presetupTrie));
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	// runs GC until used heap stops going down
+	private static long getUsedHeapAfterGC() throws InterruptedException {
+		MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+		long         ret        = Long.MAX_VALUE;
+
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			Thread.sleep(50);
+
+			long used = memoryBean.getHeapMemoryUsage().getUsed();
+
+			if (used >= ret) {
+				break;
+			}
+
+			ret = used;
+		}
+
+		return ret;
+	}
+}
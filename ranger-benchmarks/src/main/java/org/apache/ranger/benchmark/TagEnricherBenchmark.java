@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ranger.benchmark;
+
+import org.apache.ranger.plugin.contextenricher.RangerTagEnricher;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
+import org.apache.ranger.plugin.util.RangerAccessRequestUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tag lookup by RangerTagEnricher, for requests on tagged and untagged tables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TagEnricherBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int policyCount;
+
+	private RangerTagEnricher             tagEnricher;
+	private List<RangerAccessRequestImpl> requests;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		HivePolicyGenerator generator = new HivePolicyGenerator(policyCount, 0);
+
+		tagEnricher = PolicyEngineBenchmark.createTagEnricher(generator);
+		requests    = generator.createRequests(RequestCursor.POOL_SIZE);
+	}
+
+	@Benchmark
+	public Object enrich(RequestCursor cursor) {
+		RangerAccessRequestImpl request = requests.get(cursor.next());
+
+		tagEnricher.enrich(request);
+
+		return RangerAccessRequestUtil.getRequestTagsFromContext(request.getContext());
+	}
+}